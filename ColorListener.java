@@ -0,0 +1,17 @@
+import java.awt.Color;
+
+/**
+ *  Receives a notification every time a graph component changes color.
+ *  See {@link GraphComp#addColorListener(ColorListener)} and
+ *  {@link GraphComp#setRecorder(ColorListener)}.
+ */
+interface ColorListener {
+	/**
+	 *  Called after the color of a component has changed.
+	 *  
+	 *  @param comp the component that changed
+	 *  @param oldColor the color before the change
+	 *  @param newColor the color after the change
+	 */
+	public void colorChanged(GraphComp comp, Color oldColor, Color newColor);
+}
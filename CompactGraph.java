@@ -0,0 +1,385 @@
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.util.Pair;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, array-based snapshot of an undirected graph.
+ *
+ * <p>Vertices and edges are renumbered to dense indices (0..n-1 and 0..m-1)
+ * and adjacency is stored in compressed sparse row form: the neighbors of
+ * vertex v are {@code targets[offsets[v]]} to {@code targets[offsets[v+1]-1]},
+ * and {@code targetEdges} holds the matching edge indices. Algorithms that
+ * need to scan the graph many times (traversals, labelings) work on this
+ * snapshot instead of the map-of-maps storage of {@link Graph310}.
+ */
+class CompactGraph {
+    /**
+     * The vertices, by index.
+     */
+    private final GraphNode[] nodes;
+    /**
+     * The index of each vertex, by vertex id (-1 if the id is not in the graph).
+     */
+    private final int[] indexOfId;
+    /**
+     * The start of the adjacency of each vertex (length n+1).
+     */
+    private final int[] offsets;
+    /**
+     * The neighbor indices, grouped by vertex.
+     */
+    private final int[] targets;
+    /**
+     * The edge index of each adjacency entry.
+     */
+    private final int[] targetEdges;
+    /**
+     * The edges, by index.
+     */
+    private final GraphEdge[] edges;
+    /**
+     * The index of each edge, by edge id (-1 if the id is not in the graph).
+     */
+    private final int[] edgeIndexOfId;
+    /**
+     * The first endpoint of each edge.
+     */
+    private final int[] edgeU;
+    /**
+     * The second endpoint of each edge.
+     */
+    private final int[] edgeV;
+    /**
+     * The weight of each edge.
+     */
+    private final int[] weights;
+
+    /**
+     * Constructs a snapshot from already-built arrays.
+     *
+     * @param nodes   the vertices, by index.
+     * @param edges   the edges, by index.
+     * @param edgeU   the first endpoint of each edge (a vertex index).
+     * @param edgeV   the second endpoint of each edge (a vertex index).
+     * @param weights the weight of each edge.
+     */
+    CompactGraph(GraphNode[] nodes, GraphEdge[] edges, int[] edgeU, int[] edgeV, int[] weights) {
+        int n = nodes.length;
+        int m = edges.length;
+        this.nodes = nodes;
+        this.edges = edges;
+        this.edgeU = edgeU;
+        this.edgeV = edgeV;
+        this.weights = weights;
+
+        int maxId = -1;
+        for (GraphNode node : nodes) {
+            if (node != null) {
+                if (node.getId() < 0) {
+                    throw new IllegalArgumentException("Negative vertex id: " + node.getId());
+                }
+                maxId = Math.max(maxId, node.getId());
+            }
+        }
+        indexOfId = new int[maxId + 1];
+        Arrays.fill(indexOfId, -1);
+        for (int i = 0; i < n; i++) {
+            if (nodes[i] != null) {
+                indexOfId[nodes[i].getId()] = i;
+            }
+        }
+        int maxEdgeId = -1;
+        for (GraphEdge edge : edges) {
+            maxEdgeId = Math.max(maxEdgeId, edge.getId());
+        }
+        edgeIndexOfId = new int[maxEdgeId + 1];
+        Arrays.fill(edgeIndexOfId, -1);
+        for (int e = 0; e < m; e++) {
+            if (edges[e].getId() >= 0) {
+                edgeIndexOfId[edges[e].getId()] = e;
+            }
+        }
+
+        //counting sort of the 2m adjacency entries by source vertex
+        offsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            offsets[edgeU[e] + 1]++;
+            offsets[edgeV[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        targets = new int[2 * m];
+        targetEdges = new int[2 * m];
+        int[] fill = Arrays.copyOf(offsets, n);
+        for (int e = 0; e < m; e++) {
+            int u = edgeU[e];
+            int v = edgeV[e];
+            targets[fill[u]] = v;
+            targetEdges[fill[u]++] = e;
+            targets[fill[v]] = u;
+            targetEdges[fill[v]++] = e;
+        }
+    }
+
+    /**
+     * Takes a snapshot of any graph. Graph310 keeps its own (see
+     * {@link Graph310#compact()}); other graphs are copied edge by edge.
+     *
+     * @param g the graph.
+     * @return the snapshot.
+     */
+    public static CompactGraph of(Graph<GraphNode, GraphEdge> g) {
+        if (g instanceof Graph310) {
+            return ((Graph310) g).compact();
+        }
+        GraphNode[] nodes = g.getVertices().toArray(new GraphNode[0]);
+        GraphEdge[] edges = g.getEdges().toArray(new GraphEdge[0]);
+        CompactGraph byId = new CompactGraph(nodes, new GraphEdge[0], new int[0], new int[0], new int[0]);
+        int[] edgeU = new int[edges.length];
+        int[] edgeV = new int[edges.length];
+        int[] weights = new int[edges.length];
+        for (int e = 0; e < edges.length; e++) {
+            Pair<GraphNode> ends = g.getEndpoints(edges[e]);
+            edgeU[e] = byId.indexOf(ends.getFirst());
+            edgeV[e] = byId.indexOf(ends.getSecond());
+            weights[e] = edges[e].getWeight();
+        }
+        return new CompactGraph(nodes, edges, edgeU, edgeV, weights);
+    }
+
+    /**
+     * Returns a copy of the snapshot with the vertices renumbered, so that
+     * the vertex at index i of the copy is the vertex at index order[i] of
+     * this one. The edges are renumbered too, in order of their (lower, upper)
+     * endpoints, so edge arrays and adjacency lists follow the new order;
+     * each vertex's neighbors are listed in increasing index order.
+     * The vertices and edges are the same objects, so {@link #getNode} and
+     * {@link #indexOf} map between the new indices and the graph.
+     * See {@link VertexOrder} for orders that improve memory locality.
+     *
+     * @param order the old index of each new index (a permutation of 0..n-1).
+     * @return the renumbered snapshot.
+     * @throws IllegalArgumentException if order is not a permutation of the vertex indices.
+     */
+    public CompactGraph reorder(int[] order) {
+        int n = nodes.length;
+        int m = edges.length;
+        if (order.length != n) {
+            throw new IllegalArgumentException("Order of " + order.length + " vertices for " + n);
+        }
+        int[] newIndex = new int[n];
+        Arrays.fill(newIndex, -1);
+        GraphNode[] newNodes = new GraphNode[n];
+        for (int i = 0; i < n; i++) {
+            int v = order[i];
+            if (v < 0 || v >= n || newIndex[v] >= 0) {
+                throw new IllegalArgumentException("Not a permutation: " + v + " at " + i);
+            }
+            newIndex[v] = i;
+            newNodes[i] = nodes[v];
+        }
+
+        //two counting sorts: by upper endpoint, then (stably) by lower endpoint
+        int[] low = new int[m];
+        int[] high = new int[m];
+        for (int e = 0; e < m; e++) {
+            int u = newIndex[edgeU[e]];
+            int v = newIndex[edgeV[e]];
+            low[e] = Math.min(u, v);
+            high[e] = Math.max(u, v);
+        }
+        int[] byHigh = countingSort(high, identity(m), n);
+        int[] sorted = countingSort(low, byHigh, n);
+
+        GraphEdge[] newEdges = new GraphEdge[m];
+        int[] newU = new int[m];
+        int[] newV = new int[m];
+        int[] newWeights = new int[m];
+        for (int i = 0; i < m; i++) {
+            int e = sorted[i];
+            newEdges[i] = edges[e];
+            newU[i] = low[e];
+            newV[i] = high[e];
+            newWeights[i] = weights[e];
+        }
+        return new CompactGraph(newNodes, newEdges, newU, newV, newWeights);
+    }
+
+    /**
+     * Internal method to make the array 0, 1, ..., m-1.
+     *
+     * @param m the length.
+     * @return the array.
+     */
+    private static int[] identity(int m) {
+        int[] a = new int[m];
+        for (int i = 0; i < m; i++) {
+            a[i] = i;
+        }
+        return a;
+    }
+
+    /**
+     * Internal method to sort items stably by a small integer key.
+     *
+     * @param key   the key of each item (0..range-1).
+     * @param items the items, in their current order.
+     * @param range the number of keys.
+     * @return the items, sorted by key.
+     */
+    private static int[] countingSort(int[] key, int[] items, int range) {
+        int[] start = new int[range + 1];
+        for (int item : items) {
+            start[key[item] + 1]++;
+        }
+        for (int k = 0; k < range; k++) {
+            start[k + 1] += start[k];
+        }
+        int[] sorted = new int[items.length];
+        for (int item : items) {
+            sorted[start[key[item]]++] = item;
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the number of vertices.
+     *
+     * @return the number of vertices.
+     */
+    public int getVertexCount() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the number of edges.
+     *
+     * @return the number of edges.
+     */
+    public int getEdgeCount() {
+        return edges.length;
+    }
+
+    /**
+     * Returns the vertex at an index.
+     *
+     * @param v the vertex index.
+     * @return the vertex.
+     */
+    public GraphNode getNode(int v) {
+        return nodes[v];
+    }
+
+    /**
+     * Returns the index of a vertex.
+     *
+     * @param node the vertex to look up.
+     * @return the index of the vertex, or -1 if it is not in the graph.
+     */
+    public int indexOf(GraphNode node) {
+        if (node == null) {
+            return -1;
+        }
+        int id = node.getId();
+        return (id >= 0 && id < indexOfId.length) ? indexOfId[id] : -1;
+    }
+
+    /**
+     * Returns the edge at an index.
+     *
+     * @param e the edge index.
+     * @return the edge.
+     */
+    public GraphEdge getEdge(int e) {
+        return edges[e];
+    }
+
+    /**
+     * Returns the index of an edge.
+     *
+     * @param edge the edge to look up.
+     * @return the index of the edge, or -1 if it is not in the graph
+     *         (edges are matched by id, then checked to be the same edge).
+     */
+    public int indexOf(GraphEdge edge) {
+        if (edge == null) {
+            return -1;
+        }
+        int id = edge.getId();
+        int e = (id >= 0 && id < edgeIndexOfId.length) ? edgeIndexOfId[id] : -1;
+        return (e >= 0 && edges[e] == edge) ? e : -1;
+    }
+
+    /**
+     * Returns the first endpoint of an edge.
+     *
+     * @param e the edge index.
+     * @return the vertex index of the first endpoint.
+     */
+    public int getEdgeU(int e) {
+        return edgeU[e];
+    }
+
+    /**
+     * Returns the second endpoint of an edge.
+     *
+     * @param e the edge index.
+     * @return the vertex index of the second endpoint.
+     */
+    public int getEdgeV(int e) {
+        return edgeV[e];
+    }
+
+    /**
+     * Returns the weight of an edge.
+     *
+     * @param e the edge index.
+     * @return the weight of the edge.
+     */
+    public int getWeight(int e) {
+        return weights[e];
+    }
+
+    /**
+     * Returns the number of neighbors of a vertex.
+     *
+     * @param v the vertex index.
+     * @return the degree of the vertex.
+     */
+    public int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * Returns the position of the first adjacency entry of a vertex.
+     * The entries of v are at positions adjStart(v) to adjStart(v+1)-1.
+     *
+     * @param v the vertex index (0..n).
+     * @return the position of its first adjacency entry.
+     */
+    public int adjStart(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * Returns the neighbor stored at an adjacency position.
+     *
+     * @param pos the adjacency position.
+     * @return the vertex index of the neighbor.
+     */
+    public int adjTarget(int pos) {
+        return targets[pos];
+    }
+
+    /**
+     * Returns the edge stored at an adjacency position.
+     *
+     * @param pos the adjacency position.
+     * @return the edge index.
+     */
+    public int adjEdge(int pos) {
+        return targetEdges[pos];
+    }
+}
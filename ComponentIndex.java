@@ -0,0 +1,247 @@
+import java.util.Arrays;
+
+/**
+ * Labels every vertex of a graph with the id of its connected component.
+ *
+ * <p>The index is a union-find over vertex ids (union by size, path halving),
+ * so adding vertices and edges updates it in near-constant time. Each
+ * component also keeps a circular list of its members, which lets the
+ * members of one component be walked in O(component) without a traversal.
+ *
+ * <p>Vertex ids are expected to be non-negative and reasonably dense, as
+ * produced by {@link GraphNode#getFactory()}.
+ */
+class ComponentIndex {
+
+    /**
+     * The initial number of vertex slots.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * The vertices of the index, by id (null if the id is unused).
+     */
+    private GraphNode[] nodes;
+    /**
+     * The union-find parent of each vertex id.
+     */
+    private int[] parent;
+    /**
+     * The size of each component, valid for component roots only.
+     */
+    private int[] size;
+    /**
+     * The next member of the same component (a circular list).
+     */
+    private int[] next;
+    /**
+     * The number of vertices in the index.
+     */
+    private int vertexCount;
+    /**
+     * The number of components in the index.
+     */
+    private int componentCount;
+
+    /**
+     * Constructs an empty index.
+     */
+    public ComponentIndex() {
+        clear();
+    }
+
+    /**
+     * Removes all vertices from the index.
+     */
+    public void clear() {
+        nodes = new GraphNode[INITIAL_CAPACITY];
+        parent = new int[INITIAL_CAPACITY];
+        size = new int[INITIAL_CAPACITY];
+        next = new int[INITIAL_CAPACITY];
+        vertexCount = 0;
+        componentCount = 0;
+    }
+
+    /**
+     * Adds a vertex to the index as a component of its own.
+     *
+     * @param vertex the vertex to add.
+     * @return true if the vertex was added, false if it was already present.
+     * @throws IllegalArgumentException if the vertex is null or has a negative id.
+     */
+    public boolean addVertex(GraphNode vertex) {
+        if (vertex == null || vertex.getId() < 0) {
+            throw new IllegalArgumentException();
+        }
+        int id = vertex.getId();
+        ensureCapacity(id + 1);
+        if (nodes[id] != null) {
+            return false;
+        }
+        nodes[id] = vertex;
+        parent[id] = id;
+        size[id] = 1;
+        next[id] = id;
+        vertexCount++;
+        componentCount++;
+        return true;
+    }
+
+    /**
+     * Merges the components of two vertices (as if an edge was added between them).
+     *
+     * @param v1 the first vertex.
+     * @param v2 the second vertex.
+     * @return true if two different components were merged, false otherwise.
+     */
+    public boolean union(GraphNode v1, GraphNode v2) {
+        if (!contains(v1) || !contains(v2)) {
+            return false;
+        }
+        int r1 = find(v1.getId());
+        int r2 = find(v2.getId());
+        if (r1 == r2) {
+            return false;
+        }
+        if (size[r1] < size[r2]) {
+            int tmp = r1;
+            r1 = r2;
+            r2 = tmp;
+        }
+        parent[r2] = r1;
+        size[r1] += size[r2];
+
+        //splice the two circular member lists together
+        int tmp = next[r1];
+        next[r1] = next[r2];
+        next[r2] = tmp;
+
+        componentCount--;
+        return true;
+    }
+
+    /**
+     * Returns true if the vertex is in the index.
+     *
+     * @param vertex the vertex to look for.
+     * @return true if the vertex is in the index.
+     */
+    public boolean contains(GraphNode vertex) {
+        if (vertex == null) {
+            return false;
+        }
+        int id = vertex.getId();
+        return id >= 0 && id < nodes.length && nodes[id] != null;
+    }
+
+    /**
+     * Returns the component id of a vertex. Two vertices have the same
+     * component id iff they are connected. Ids remain stable until the
+     * next call to union().
+     *
+     * @param vertex the vertex to look up.
+     * @return the component id of the vertex, or -1 if it is not in the index.
+     */
+    public int componentOf(GraphNode vertex) {
+        if (!contains(vertex)) {
+            return -1;
+        }
+        return find(vertex.getId());
+    }
+
+    /**
+     * Returns true if the two vertices are in the same component.
+     *
+     * @param v1 the first vertex.
+     * @param v2 the second vertex.
+     * @return true if both vertices are present and connected.
+     */
+    public boolean connected(GraphNode v1, GraphNode v2) {
+        if (!contains(v1) || !contains(v2)) {
+            return false;
+        }
+        return find(v1.getId()) == find(v2.getId());
+    }
+
+    /**
+     * Returns the number of vertices in the component of a vertex.
+     *
+     * @param vertex the vertex to look up.
+     * @return the size of its component, or 0 if it is not in the index.
+     */
+    public int componentSize(GraphNode vertex) {
+        if (!contains(vertex)) {
+            return 0;
+        }
+        return size[find(vertex.getId())];
+    }
+
+    /**
+     * Copies the members of the component of a vertex into an array.
+     * The vertex itself is always the first element.
+     *
+     * @param vertex the vertex to look up.
+     * @return the members of its component, or an empty array if it is not in the index.
+     */
+    public GraphNode[] members(GraphNode vertex) {
+        if (!contains(vertex)) {
+            return new GraphNode[0];
+        }
+        int start = vertex.getId();
+        GraphNode[] ret = new GraphNode[size[find(start)]];
+        int i = 0;
+        int cur = start;
+        do {
+            ret[i++] = nodes[cur];
+            cur = next[cur];
+        } while (cur != start);
+        return ret;
+    }
+
+    /**
+     * Returns the number of components in the index.
+     *
+     * @return the number of components.
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Returns the number of vertices in the index.
+     *
+     * @return the number of vertices.
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Internal method to find the root of a vertex id (with path halving).
+     *
+     * @param id the vertex id.
+     * @return the id of the root of its component.
+     */
+    private int find(int id) {
+        while (parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+        return id;
+    }
+
+    /**
+     * Internal method to grow the id-indexed arrays.
+     *
+     * @param capacity the number of ids that must fit.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= nodes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, nodes.length * 2);
+        nodes = Arrays.copyOf(nodes, newCapacity);
+        parent = Arrays.copyOf(parent, newCapacity);
+        size = Arrays.copyOf(size, newCapacity);
+        next = Arrays.copyOf(next, newCapacity);
+    }
+}
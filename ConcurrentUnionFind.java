@@ -0,0 +1,316 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free union-find over the integers 0 to n-1, safe for concurrent
+ * {@link #find}, {@link #union} and {@link #connected} from any number of
+ * threads.
+ *
+ * <p>The parents live in an {@code AtomicIntegerArray}. Every element has a
+ * fixed random priority, and a union links the root with the lower priority
+ * under the other with one compare-and-set (retrying from the new roots if
+ * another thread got there first). Since links always go up in priority,
+ * no cycle can form, and the random priorities keep the trees shallow in
+ * expectation (like union by rank, without a rank to keep consistent).
+ * Finds compress paths by splitting: each visited element is moved to its
+ * grandparent with a compare-and-set that is simply dropped if it fails,
+ * since any parent on the path is still a correct ancestor.
+ *
+ * <p>This is the randomized linking with path splitting of Jayanti and
+ * Tarjan. With one thread it is about twice as slow as {@link UnionFind}
+ * (atomic reads and compare-and-sets instead of plain array accesses, see
+ * {@link #main}), so it only pays off when several threads share it.
+ */
+class ConcurrentUnionFind {
+    /**
+     * The parent of each element (a root is its own parent).
+     */
+    private final AtomicIntegerArray parent;
+    /**
+     * The random linking priority of each element (a permutation of 0..n-1).
+     */
+    private final int[] priority;
+    /**
+     * The number of successful links.
+     */
+    private final LongAdder links = new LongAdder();
+
+    /**
+     * Constructs n singleton sets.
+     *
+     * @param n    the number of elements.
+     * @param seed the seed of the random priorities.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    public ConcurrentUnionFind(int n, long seed) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Negative size: " + n);
+        }
+        parent = new AtomicIntegerArray(n);
+        priority = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent.set(i, i);
+            priority[i] = i;
+        }
+        Random rand = new Random(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int tmp = priority[i];
+            priority[i] = priority[j];
+            priority[j] = tmp;
+        }
+    }
+
+    /**
+     * Returns the current root of an element's set. Under concurrent
+     * unions the root may stop being one right after it is returned.
+     *
+     * @param x the element.
+     * @return the root of its set.
+     * @throws IndexOutOfBoundsException if x is not an element.
+     */
+    public int find(int x) {
+        while (true) {
+            int p = parent.get(x);
+            if (p == x) {
+                return x;
+            }
+            int gp = parent.get(p);
+            if (gp != p) {
+                //path splitting: a failed CAS means someone else shortened it
+                parent.compareAndSet(x, p, gp);
+            }
+            x = p;
+        }
+    }
+
+    /**
+     * Merges the sets of two elements.
+     *
+     * @param x the first element.
+     * @param y the second element.
+     * @return true if this call merged two different sets, false if they were already one.
+     * @throws IndexOutOfBoundsException if x or y is not an element.
+     */
+    public boolean union(int x, int y) {
+        while (true) {
+            x = find(x);
+            y = find(y);
+            if (x == y) {
+                return false;
+            }
+            if (priority[x] > priority[y]) {
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+            //link the lower-priority root; fails if x stopped being a root
+            if (parent.compareAndSet(x, x, y)) {
+                links.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns whether two elements are in the same set. The answer is
+     * correct at some moment during the call: sets only ever grow, so a
+     * true answer stays true.
+     *
+     * @param x the first element.
+     * @param y the second element.
+     * @return true if they are in the same set.
+     * @throws IndexOutOfBoundsException if x or y is not an element.
+     */
+    public boolean connected(int x, int y) {
+        while (true) {
+            x = find(x);
+            y = find(y);
+            if (x == y) {
+                return true;
+            }
+            //x was a root after y's root was found: they really were apart
+            if (parent.get(x) == x) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of disjoint sets (exact once no union is running).
+     *
+     * @return the number of sets.
+     */
+    public int count() {
+        return (int) (parent.length() - links.sum());
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return n.
+     */
+    public int elements() {
+        return parent.length();
+    }
+
+    /**
+     * Stress-tests the structure against {@link UnionFind} from many threads,
+     * then times both on the same unions.
+     *
+     * @param args [0] = elements (default 2000000), [1] = unions (default 4000000),
+     *             [2] = threads (default: the number of processors, at least 4).
+     * @throws Exception if a worker fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int m = args.length > 1 ? Integer.parseInt(args[1]) : 4_000_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+            : Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            //stress: small sets so that threads collide on the same roots
+            int bad = 0;
+            for (int round = 0; round < 20; round++) {
+                bad += stress(pool, threads, 1000 + round * 500, 3000 + round * 1000, round);
+            }
+            bad += stress(pool, threads, n, m, 99);
+            System.out.println(bad == 0 ? "stress: 21 rounds agree with UnionFind" : "stress: " + bad + " DISAGREEMENTS");
+
+            Random rand = new Random(1);
+            int[] us = new int[m];
+            int[] vs = new int[m];
+            for (int i = 0; i < m; i++) {
+                us[i] = rand.nextInt(n);
+                vs[i] = rand.nextInt(n);
+            }
+            for (int rep = 0; rep < 3; rep++) {
+                long start = System.nanoTime();
+                UnionFind seq = new UnionFind(n);
+                for (int i = 0; i < m; i++) {
+                    seq.union(us[i], vs[i]);
+                }
+                long seqNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                ConcurrentUnionFind one = new ConcurrentUnionFind(n, rep);
+                for (int i = 0; i < m; i++) {
+                    one.union(us[i], vs[i]);
+                }
+                long oneNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                ConcurrentUnionFind many = new ConcurrentUnionFind(n, rep);
+                runSlices(pool, threads, m, (lo, hi) -> {
+                    for (int i = lo; i < hi; i++) {
+                        many.union(us[i], vs[i]);
+                    }
+                });
+                long manyNanos = System.nanoTime() - start;
+                System.out.printf("%,d unions on %,d elements: UnionFind %.1f ms, concurrent 1 thread %.1f ms, "
+                        + "%d threads %.1f ms (%d sets)%n",
+                    m, n, seqNanos / 1e6, oneNanos / 1e6, threads, manyNanos / 1e6, many.count());
+            }
+            System.out.printf("(%d processors available)%n", Runtime.getRuntime().availableProcessors());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Work on a slice of a range, for {@link #runSlices}.
+     */
+    private interface Slice {
+        /**
+         * Does the work for one slice.
+         *
+         * @param lo the first index of the slice.
+         * @param hi one past the last index.
+         */
+        void run(int lo, int hi);
+    }
+
+    /**
+     * Internal method to split a range between threads and wait for them.
+     *
+     * @param pool    the threads.
+     * @param threads the number of slices.
+     * @param size    the size of the range.
+     * @param slice   the work for each slice.
+     * @throws Exception if a slice fails.
+     */
+    private static void runSlices(ExecutorService pool, int threads, int size, Slice slice) throws Exception {
+        Future<?>[] done = new Future<?>[threads];
+        for (int t = 0; t < threads; t++) {
+            int lo = (int) ((long) size * t / threads);
+            int hi = (int) ((long) size * (t + 1) / threads);
+            done[t] = pool.submit(() -> slice.run(lo, hi));
+        }
+        for (Future<?> f : done) {
+            f.get();
+        }
+    }
+
+    /**
+     * Internal method to run random unions (and connectivity checks) from
+     * many threads and compare the resulting sets with a sequential run.
+     *
+     * @param pool    the threads.
+     * @param threads the number of threads.
+     * @param n       the number of elements.
+     * @param m       the number of unions.
+     * @param seed    the seed of the unions.
+     * @return the number of disagreements.
+     * @throws Exception if a worker fails.
+     */
+    private static int stress(ExecutorService pool, int threads, int n, int m, long seed) throws Exception {
+        Random rand = new Random(seed);
+        int[] us = new int[m];
+        int[] vs = new int[m];
+        for (int i = 0; i < m; i++) {
+            us[i] = rand.nextInt(n);
+            vs[i] = rand.nextInt(n);
+        }
+        ConcurrentUnionFind cuf = new ConcurrentUnionFind(n, seed);
+        LongAdder merged = new LongAdder();
+        LongAdder broken = new LongAdder();
+        runSlices(pool, threads, m, (lo, hi) -> {
+            for (int i = lo; i < hi; i++) {
+                if (cuf.union(us[i], vs[i])) {
+                    merged.increment();
+                }
+                //whatever other threads do, a union is never undone
+                if (!cuf.connected(us[i], vs[i])) {
+                    broken.increment();
+                }
+            }
+        });
+
+        UnionFind seq = new UnionFind(n);
+        for (int i = 0; i < m; i++) {
+            seq.union(us[i], vs[i]);
+        }
+        int bad = (int) broken.sum();
+        if (merged.sum() != n - seq.count() || cuf.count() != seq.count()) {
+            bad++;
+        }
+        //same partition: the root of each element maps to one sequential root, and back
+        int[] map = new int[n];
+        Arrays.fill(map, -1);
+        for (int x = 0; x < n; x++) {
+            int r = cuf.find(x);
+            int s = seq.find(x);
+            if (map[r] == -1) {
+                map[r] = s;
+            } else if (map[r] != s) {
+                bad++;
+            }
+        }
+        return bad;
+    }
+}
@@ -0,0 +1,421 @@
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The single-linkage hierarchical clustering of a graph's vertices, read
+ * off the order in which Kruskal's algorithm joins components.
+ *
+ * <p>The vertices are the leaves 0 to n-1 (the indices of the graph's
+ * {@link CompactGraph}); merge k creates the cluster n+k from two earlier
+ * clusters, at the weight of the MST edge that joined them. Merges are in
+ * ascending weight order, with equal weights ordered by edge id as in
+ * {@link GraphEdge#compareTo}. A disconnected graph has fewer than n-1
+ * merges and never becomes one cluster.
+ *
+ * <p>The whole dendrogram is a few int arrays, and cutting it into
+ * clusters (by count or by weight) is one O(V) pass: the clusters are the
+ * subtrees below the merges that are not applied.
+ */
+class Dendrogram {
+    /**
+     * The graph snapshot (leaf i is its vertex i).
+     */
+    private final CompactGraph graph;
+    /**
+     * The first cluster joined by each merge.
+     */
+    private final int[] left;
+    /**
+     * The second cluster joined by each merge.
+     */
+    private final int[] right;
+    /**
+     * The weight at which each merge happened (ascending).
+     */
+    private final int[] heights;
+    /**
+     * The number of vertices in the cluster each merge creates.
+     */
+    private final int[] sizes;
+    /**
+     * The MST edge behind each merge.
+     */
+    private final GraphEdge[] edges;
+    /**
+     * The merge that absorbs each cluster (n+k for merge k), or -1 for a top cluster.
+     */
+    private final int[] parent;
+    /**
+     * The number of merges.
+     */
+    private final int mergeCount;
+
+    /**
+     * Builds the dendrogram of a graph. The graph may be an MST or forest
+     * already (such as {@link Kruskal310#getForest()}), or any graph, whose
+     * MST is then found on the way.
+     *
+     * @param g the graph.
+     */
+    public Dendrogram(Graph<GraphNode, GraphEdge> g) {
+        graph = CompactGraph.of(g);
+        int n = graph.getVertexCount();
+        int m = graph.getEdgeCount();
+        //primitive sorts: rank the edges by id, then order by (weight, rank)
+        long[] keys = new long[m];
+        for (int e = 0; e < m; e++) {
+            keys[e] = (long) graph.getEdge(e).getId() << 32 | e;
+        }
+        Arrays.sort(keys);
+        int[] byRank = new int[m];
+        for (int r = 0; r < m; r++) {
+            byRank[r] = (int) keys[r];
+            keys[r] = (long) graph.getWeight(byRank[r]) << 32 | r;
+        }
+        Arrays.sort(keys);
+
+        int capacity = Math.max(0, n - 1);
+        left = new int[capacity];
+        right = new int[capacity];
+        heights = new int[capacity];
+        sizes = new int[capacity];
+        edges = new GraphEdge[capacity];
+        parent = new int[n + capacity];
+        Arrays.fill(parent, -1);
+        //the union-find root of each set, and the cluster it currently is
+        UnionFind uf = new UnionFind(n);
+        int[] clusterOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            clusterOf[i] = i;
+        }
+        int k = 0;
+        for (int i = 0; i < m && k < capacity; i++) {
+            int e = byRank[(int) keys[i]];
+            int ru = uf.find(graph.getEdgeU(e));
+            int rv = uf.find(graph.getEdgeV(e));
+            if (ru == rv) {
+                continue;
+            }
+            int a = clusterOf[ru];
+            int b = clusterOf[rv];
+            left[k] = Math.min(a, b);
+            right[k] = Math.max(a, b);
+            heights[k] = graph.getWeight(e);
+            sizes[k] = size(a) + size(b);
+            edges[k] = graph.getEdge(e);
+            parent[a] = n + k;
+            parent[b] = n + k;
+            uf.union(ru, rv);
+            clusterOf[uf.find(ru)] = n + k;
+            k++;
+        }
+        mergeCount = k;
+    }
+
+    /**
+     * Internal method to find the number of vertices in a cluster.
+     *
+     * @param cluster a leaf or a merge (n+k).
+     * @return its size.
+     */
+    private int size(int cluster) {
+        int n = graph.getVertexCount();
+        return cluster < n ? 1 : sizes[cluster - n];
+    }
+
+    /**
+     * Returns the number of leaves (vertices).
+     *
+     * @return n.
+     */
+    public int getLeafCount() {
+        return graph.getVertexCount();
+    }
+
+    /**
+     * Returns the number of merges (n minus the number of connected components).
+     *
+     * @return the merge count.
+     */
+    public int getMergeCount() {
+        return mergeCount;
+    }
+
+    /**
+     * Returns the vertex of a leaf.
+     *
+     * @param leaf the leaf, 0 to n-1.
+     * @return the vertex.
+     */
+    public GraphNode getNode(int leaf) {
+        return graph.getNode(leaf);
+    }
+
+    /**
+     * Returns the leaf of a vertex.
+     *
+     * @param node the vertex.
+     * @return its leaf, or -1 if it was not in the graph.
+     */
+    public int indexOf(GraphNode node) {
+        return graph.indexOf(node);
+    }
+
+    /**
+     * Returns the first cluster joined by a merge (the smaller id).
+     *
+     * @param k the merge, 0 to getMergeCount()-1.
+     * @return a leaf (below n) or an earlier merge (n+j).
+     * @throws IndexOutOfBoundsException if k is not a merge.
+     */
+    public int getLeft(int k) {
+        checkMerge(k);
+        return left[k];
+    }
+
+    /**
+     * Returns the second cluster joined by a merge (the larger id).
+     *
+     * @param k the merge.
+     * @return a leaf (below n) or an earlier merge (n+j).
+     * @throws IndexOutOfBoundsException if k is not a merge.
+     */
+    public int getRight(int k) {
+        checkMerge(k);
+        return right[k];
+    }
+
+    /**
+     * Returns the weight at which a merge happened.
+     *
+     * @param k the merge.
+     * @return the weight of its MST edge.
+     * @throws IndexOutOfBoundsException if k is not a merge.
+     */
+    public int getHeight(int k) {
+        checkMerge(k);
+        return heights[k];
+    }
+
+    /**
+     * Returns the number of vertices in the cluster a merge creates.
+     *
+     * @param k the merge.
+     * @return the cluster size.
+     * @throws IndexOutOfBoundsException if k is not a merge.
+     */
+    public int getSize(int k) {
+        checkMerge(k);
+        return sizes[k];
+    }
+
+    /**
+     * Returns the MST edge behind a merge.
+     *
+     * @param k the merge.
+     * @return the edge.
+     * @throws IndexOutOfBoundsException if k is not a merge.
+     */
+    public GraphEdge getEdge(int k) {
+        checkMerge(k);
+        return edges[k];
+    }
+
+    /**
+     * Internal method to reject an index that is not a merge.
+     *
+     * @param k the index.
+     * @throws IndexOutOfBoundsException if k is not a merge.
+     */
+    private void checkMerge(int k) {
+        if (k < 0 || k >= mergeCount) {
+            throw new IndexOutOfBoundsException("No merge " + k);
+        }
+    }
+
+    /**
+     * Cuts the dendrogram into k clusters by undoing its k-1 highest
+     * merges. A disconnected graph cannot have fewer clusters than
+     * components, so it gets max(k, components).
+     *
+     * @param k the number of clusters, 1 to n.
+     * @return the cluster of each leaf, numbered from 0.
+     * @throws IllegalArgumentException if k is not in 1..n.
+     */
+    public int[] cutAtK(int k) {
+        int n = graph.getVertexCount();
+        if (k < 1 || k > Math.max(1, n)) {
+            throw new IllegalArgumentException("Cannot cut " + n + " vertices into " + k + " clusters");
+        }
+        return cut(Math.min(mergeCount, Math.max(0, n - k)));
+    }
+
+    /**
+     * Cuts the dendrogram at a weight: two vertices share a cluster when a
+     * path of edges no heavier than the weight joins them.
+     *
+     * @param maxWeight the heaviest merge kept.
+     * @return the cluster of each leaf, numbered from 0.
+     */
+    public int[] cutAtThreshold(int maxWeight) {
+        //the number of merges with height <= maxWeight (heights ascend)
+        int lo = 0;
+        int hi = mergeCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (heights[mid] <= maxWeight) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return cut(lo);
+    }
+
+    /**
+     * Returns the number of clusters a cut produced.
+     *
+     * @param labels the cluster of each leaf, from a cut.
+     * @return one more than the largest label (0 for no leaves).
+     */
+    public static int clusterCount(int[] labels) {
+        int max = -1;
+        for (int label : labels) {
+            max = Math.max(max, label);
+        }
+        return max + 1;
+    }
+
+    /**
+     * Internal method to label the leaves when only the first merges are
+     * applied. Clusters are visited from the newest down, so each one's
+     * parent is labeled before it.
+     *
+     * @param applied the number of merges kept.
+     * @return the cluster of each leaf.
+     */
+    private int[] cut(int applied) {
+        int n = graph.getVertexCount();
+        int[] label = new int[n + mergeCount];
+        int next = 0;
+        for (int id = n + mergeCount - 1; id >= 0; id--) {
+            if (id >= n + applied) {
+                continue;
+            }
+            int p = parent[id];
+            if (p < 0 || p >= n + applied) {
+                label[id] = next++;
+            } else {
+                label[id] = label[p];
+            }
+        }
+        return Arrays.copyOf(label, n);
+    }
+
+    /**
+     * Checks cuts against union-find on the sorted edges, and times the
+     * dendrogram and its cuts on a large sparse graph.
+     *
+     * @param args [0] = vertices (default 1000000).
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random rand = new Random(3);
+
+        int bad = 0;
+        for (int t = 0; t < 100; t++) {
+            int size = 1 + rand.nextInt(60);
+            UndirectedSparseGraph<GraphNode, GraphEdge> g = randomGraph(rand, size, size + rand.nextInt(2 * size));
+            Dendrogram d = new Dendrogram(g);
+            CompactGraph c = CompactGraph.of(g);
+            for (int w = 0; w <= 21; w++) {
+                //reference: union every edge of weight <= w
+                UnionFind uf = new UnionFind(size);
+                for (int e = 0; e < c.getEdgeCount(); e++) {
+                    if (c.getWeight(e) <= w) {
+                        uf.union(c.getEdgeU(e), c.getEdgeV(e));
+                    }
+                }
+                int[] labels = d.cutAtThreshold(w);
+                if (!samePartition(labels, uf) || clusterCount(labels) != uf.count()) {
+                    bad++;
+                }
+                int[] byCount = d.cutAtK(uf.count());
+                if (clusterCount(byCount) != uf.count()) {
+                    bad++;
+                }
+            }
+        }
+        System.out.println(bad == 0 ? "100 random graphs: every cut agrees with union-find" : bad + " WRONG cuts");
+
+        UndirectedSparseGraph<GraphNode, GraphEdge> big = randomGraph(rand, n, 2 * n);
+        for (int rep = 0; rep < 3; rep++) {
+            long start = System.nanoTime();
+            Dendrogram d = new Dendrogram(big);
+            long mid = System.nanoTime();
+            int clusters = 0;
+            for (int k = 1; k <= 1000; k *= 10) {
+                clusters += clusterCount(d.cutAtK(Math.max(k, n - d.getMergeCount())));
+            }
+            for (int w = 1; w <= 20; w += 5) {
+                clusters += clusterCount(d.cutAtThreshold(w));
+            }
+            long end = System.nanoTime();
+            System.out.printf("%,d vertices: dendrogram (%,d merges) %.1f ms, 8 cuts (%,d clusters) %.1f ms%n",
+                n, d.getMergeCount(), (mid - start) / 1e6, clusters, (end - mid) / 1e6);
+        }
+    }
+
+    /**
+     * Internal method to build a random graph with weights 1..20.
+     *
+     * @param rand  the random numbers.
+     * @param n     the number of vertices.
+     * @param tries the number of edges to try (repeats and loops are dropped).
+     * @return the graph.
+     */
+    private static UndirectedSparseGraph<GraphNode, GraphEdge> randomGraph(Random rand, int n, int tries) {
+        UndirectedSparseGraph<GraphNode, GraphEdge> g = new UndirectedSparseGraph<>();
+        GraphNode[] nodes = new GraphNode[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new GraphNode(i);
+            g.addVertex(nodes[i]);
+        }
+        int id = 0;
+        for (int t = 0; t < tries; t++) {
+            int u = rand.nextInt(n);
+            int v = rand.nextInt(n);
+            if (u != v && g.findEdge(nodes[u], nodes[v]) == null) {
+                g.addEdge(new GraphEdge(id++, 1 + rand.nextInt(20)), nodes[u], nodes[v]);
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Internal method to check that labels give the same partition as a union-find.
+     *
+     * @param labels the cluster of each element.
+     * @param uf     the union-find.
+     * @return true if two elements share a label exactly when they share a set.
+     */
+    private static boolean samePartition(int[] labels, UnionFind uf) {
+        int[] rootOfLabel = new int[labels.length];
+        int[] labelOfRoot = new int[labels.length];
+        Arrays.fill(rootOfLabel, -1);
+        Arrays.fill(labelOfRoot, -1);
+        for (int i = 0; i < labels.length; i++) {
+            int r = uf.find(i);
+            if (rootOfLabel[labels[i]] == -1 && labelOfRoot[r] == -1) {
+                rootOfLabel[labels[i]] = r;
+                labelOfRoot[r] = labels[i];
+            } else if (rootOfLabel[labels[i]] != r || labelOfRoot[r] != labels[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,161 @@
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.graph.util.Pair;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.VisualizationViewer;
+import edu.uci.ics.jung.visualization.transform.MutableTransformer;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.HashSet;
+
+/**
+ * Collects the graph components whose color changed since the last frame
+ * and repaints only the parts of the view they cover.
+ *
+ * <p>Color changes may be reported from any thread (the simulation runs on
+ * a worker thread); {@link #repaint(VisualizationViewer)} is called on the
+ * EDT. If more than {@code limit} components changed, or {@link #markAll()}
+ * was called, the whole view is repainted instead, since one big region is
+ * cheaper than many small ones at that point.
+ */
+class DirtyRegion implements ColorListener {
+    /**
+     * How far (in layout units) the area of a vertex reaches from its center.
+     */
+    private static final int VERTEX_REACH = 20;
+    /**
+     * How far (in layout units) an edge's curve and label reach past the
+     * box around its endpoints.
+     */
+    private static final int EDGE_REACH = 30;
+
+    /**
+     * The most components repainted one by one.
+     */
+    private final int limit;
+    /**
+     * The nodes whose color changed since the last repaint.
+     */
+    private final HashSet<GraphNode> nodes = new HashSet<>();
+    /**
+     * The edges whose color changed since the last repaint.
+     */
+    private final HashSet<GraphEdge> edges = new HashSet<>();
+    /**
+     * Whether the whole view needs to be repainted.
+     */
+    private boolean all = true;
+
+    /**
+     * Constructs an empty tracker (the first repaint covers the whole view).
+     *
+     * @param limit the most components repainted one by one.
+     */
+    public DirtyRegion(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void colorChanged(GraphComp comp, Color oldColor, Color newColor) {
+        if (all) {
+            return;
+        }
+        if (comp instanceof GraphNode) {
+            nodes.add((GraphNode) comp);
+        } else if (comp instanceof GraphEdge) {
+            edges.add((GraphEdge) comp);
+        }
+        if (nodes.size() + edges.size() > limit) {
+            markAll();
+        }
+    }
+
+    /**
+     * Marks the whole view as needing to be repainted.
+     */
+    public synchronized void markAll() {
+        all = true;
+        nodes.clear();
+        edges.clear();
+    }
+
+    /**
+     * Repaints the parts of a view covered by the components that changed
+     * since the last call, and forgets them.
+     *
+     * @param vv the view to repaint.
+     */
+    public void repaint(VisualizationViewer<GraphNode, GraphEdge> vv) {
+        GraphNode[] dirtyNodes;
+        GraphEdge[] dirtyEdges;
+        synchronized (this) {
+            if (all) {
+                all = false;
+                vv.repaint();
+                return;
+            }
+            dirtyNodes = nodes.toArray(new GraphNode[0]);
+            dirtyEdges = edges.toArray(new GraphEdge[0]);
+            nodes.clear();
+            edges.clear();
+        }
+
+        Layout<GraphNode, GraphEdge> layout = vv.getGraphLayout();
+        //a Graph310 keeps an array snapshot that finds edge endpoints without touching its maps
+        CompactGraph cg = layout.getGraph() instanceof Graph310 ? ((Graph310) layout.getGraph()).compact() : null;
+        MutableTransformer layoutTransformer = vv.getRenderContext().getMultiLayerTransformer().getTransformer(Layer.LAYOUT);
+        MutableTransformer viewTransformer = vv.getRenderContext().getMultiLayerTransformer().getTransformer(Layer.VIEW);
+        double scale = layoutTransformer.getScale() * viewTransformer.getScale();
+
+        for (GraphNode v : dirtyNodes) {
+            Rectangle box = around(vv, layout.transform(v), (int) Math.ceil(VERTEX_REACH * scale));
+            if (box != null) {
+                vv.repaint(box);
+            }
+        }
+        int reach = (int) Math.ceil(EDGE_REACH * scale);
+        for (GraphEdge e : dirtyEdges) {
+            GraphNode first;
+            GraphNode second;
+            if (cg != null) {
+                int i = cg.indexOf(e);
+                if (i < 0) {
+                    continue;
+                }
+                first = cg.getNode(cg.getEdgeU(i));
+                second = cg.getNode(cg.getEdgeV(i));
+            } else {
+                Pair<GraphNode> ends = layout.getGraph().getEndpoints(e);
+                if (ends == null) {
+                    continue;
+                }
+                first = ends.getFirst();
+                second = ends.getSecond();
+            }
+            Rectangle box = around(vv, layout.transform(first), reach);
+            Rectangle other = around(vv, layout.transform(second), reach);
+            if (box != null && other != null) {
+                vv.repaint(box.union(other));
+            }
+        }
+    }
+
+    /**
+     * Internal method to find the view box around a layout point.
+     *
+     * @param vv    the view.
+     * @param p     the point in layout coordinates.
+     * @param reach how far (in view pixels) the box reaches from the point.
+     * @return the box, or null if the point is unknown.
+     */
+    private static Rectangle around(VisualizationViewer<GraphNode, GraphEdge> vv, Point2D p, int reach) {
+        if (p == null) {
+            return null;
+        }
+        Point2D view = vv.getRenderContext().getMultiLayerTransformer().transform(p);
+        return new Rectangle((int) view.getX() - reach, (int) view.getY() - reach, 2 * reach, 2 * reach);
+    }
+}
@@ -0,0 +1,750 @@
+import edu.uci.ics.jung.algorithms.layout.Layout;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The minimum spanning tree of points in the plane under Euclidean
+ * distance, computed without building the complete graph.
+ *
+ * <p>The points go into a k-d tree, and Boruvka's algorithm runs over it:
+ * each round, every point searches the tree for its nearest point in
+ * another component, and each component then links along the shortest
+ * such edge. A round takes O(n log n) on typical inputs, and there are at
+ * most log n rounds. Several things keep the searches short: they start
+ * at the searcher's own leaf and climb only until nothing outside can be
+ * nearer; a tree node whose points are all in the searcher's component is
+ * skipped; all points of a component share one bound (the best edge found
+ * so far for the component); and a point whose distance to other
+ * components is known to exceed that bound (distances only grow as
+ * components merge) does not search at all.
+ *
+ * <p>Equal distances are ordered by the endpoint indices, so every
+ * candidate edge is chosen under one total order and the candidates of a
+ * round never close a cycle.
+ */
+class EuclideanMst {
+    /**
+     * The most points in a leaf of the k-d tree.
+     */
+    private static final int LEAF_SIZE = 8;
+
+    /**
+     * The vertices the points belong to (null for bare coordinates).
+     */
+    private final GraphNode[] nodes;
+    /**
+     * The x coordinate of each point.
+     */
+    private final double[] xs;
+    /**
+     * The y coordinate of each point.
+     */
+    private final double[] ys;
+    /**
+     * The first endpoint (a point index) of each tree edge.
+     */
+    private final int[] edgeU;
+    /**
+     * The second endpoint of each tree edge.
+     */
+    private final int[] edgeV;
+    /**
+     * The length of each tree edge.
+     */
+    private final double[] lengths;
+    /**
+     * The number of Boruvka rounds run.
+     */
+    private int rounds = 0;
+
+    /**
+     * Computes the tree of bare coordinates.
+     *
+     * @param xs the x coordinate of each point.
+     * @param ys the y coordinate of each point.
+     * @throws IllegalArgumentException if the arrays differ in length or hold a non-finite value.
+     */
+    public EuclideanMst(double[] xs, double[] ys) {
+        this(null, xs, ys);
+    }
+
+    /**
+     * Computes the tree of points that belong to vertices.
+     *
+     * @param nodes the vertex of each point, or null.
+     * @param xs    the x coordinate of each point.
+     * @param ys    the y coordinate of each point.
+     * @throws IllegalArgumentException if the arrays differ in length or hold a non-finite value.
+     */
+    private EuclideanMst(GraphNode[] nodes, double[] xs, double[] ys) {
+        if (xs.length != ys.length || (nodes != null && nodes.length != xs.length)) {
+            throw new IllegalArgumentException("Coordinate arrays differ in length");
+        }
+        for (int i = 0; i < xs.length; i++) {
+            if (!Double.isFinite(xs[i]) || !Double.isFinite(ys[i])) {
+                throw new IllegalArgumentException("Point " + i + " is not finite");
+            }
+        }
+        this.nodes = nodes;
+        this.xs = xs.clone();
+        this.ys = ys.clone();
+        int n = xs.length;
+        edgeU = new int[Math.max(0, n - 1)];
+        edgeV = new int[Math.max(0, n - 1)];
+        lengths = new double[Math.max(0, n - 1)];
+        if (n > 1) {
+            new Boruvka().run();
+        }
+    }
+
+    /**
+     * Computes the tree of the current positions of a layout's vertices.
+     *
+     * @param layout the layout.
+     * @return the tree.
+     */
+    public static EuclideanMst fromLayout(Layout<GraphNode, GraphEdge> layout) {
+        Collection<GraphNode> vertices = layout.getGraph().getVertices();
+        GraphNode[] nodes = new GraphNode[vertices.size()];
+        double[] xs = new double[nodes.length];
+        double[] ys = new double[nodes.length];
+        int i = 0;
+        for (GraphNode v : vertices) {
+            Point2D p = layout.transform(v);
+            nodes[i] = v;
+            xs[i] = p.getX();
+            ys[i] = p.getY();
+            i++;
+        }
+        return new EuclideanMst(nodes, xs, ys);
+    }
+
+    /**
+     * Computes the tree of the points in a text file: one point per line,
+     * its x and y separated by white space or a comma. Blank lines and
+     * lines starting with # are skipped.
+     *
+     * @param file the file.
+     * @return the tree.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line is not a point.
+     */
+    public static EuclideanMst read(Path file) throws IOException {
+        double[] xs = new double[1024];
+        double[] ys = new double[1024];
+        int n = 0;
+        int lineNumber = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("[\\s,]+");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + ": expected x and y");
+                }
+                if (n == xs.length) {
+                    xs = Arrays.copyOf(xs, 2 * n);
+                    ys = Arrays.copyOf(ys, 2 * n);
+                }
+                try {
+                    xs[n] = Double.parseDouble(parts[0]);
+                    ys[n] = Double.parseDouble(parts[1]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + ": " + e.getMessage());
+                }
+                n++;
+            }
+        }
+        return new EuclideanMst(Arrays.copyOf(xs, n), Arrays.copyOf(ys, n));
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return the number of points.
+     */
+    public int getPointCount() {
+        return xs.length;
+    }
+
+    /**
+     * Returns the number of tree edges (one less than the points).
+     *
+     * @return the number of edges.
+     */
+    public int getEdgeCount() {
+        return edgeU.length;
+    }
+
+    /**
+     * Returns the first endpoint of a tree edge.
+     *
+     * @param e the edge index.
+     * @return a point index.
+     */
+    public int getEdgeU(int e) {
+        return edgeU[e];
+    }
+
+    /**
+     * Returns the second endpoint of a tree edge.
+     *
+     * @param e the edge index.
+     * @return a point index.
+     */
+    public int getEdgeV(int e) {
+        return edgeV[e];
+    }
+
+    /**
+     * Returns the length of a tree edge.
+     *
+     * @param e the edge index.
+     * @return its Euclidean length.
+     */
+    public double getLength(int e) {
+        return lengths[e];
+    }
+
+    /**
+     * Returns the total length of the tree.
+     *
+     * @return the sum of the edge lengths.
+     */
+    public double getTotalLength() {
+        double total = 0;
+        for (double length : lengths) {
+            total += length;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of Boruvka rounds the computation took.
+     *
+     * @return the rounds.
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Builds a Graph310 of the tree. Points from a layout keep their
+     * vertices; bare points get new ones from {@link GraphNode#getFactory()}.
+     * Edge weights are the lengths rounded to integers (at least 1), since
+     * {@link GraphEdge} weights are integers; the tree itself was chosen
+     * on the exact lengths. Edge ids continue from {@link GraphEdge#edgeCount}.
+     * The graph is built in one O(n log n) pass with {@link Graph310#build}.
+     *
+     * @return the graph.
+     */
+    public Graph310 toGraph() {
+        GraphNode[] vertices = nodes;
+        if (vertices == null) {
+            vertices = new GraphNode[xs.length];
+            for (int i = 0; i < vertices.length; i++) {
+                vertices[i] = GraphNode.getFactory().create();
+            }
+        }
+        int m = edgeU.length;
+        GraphEdge[] edges = new GraphEdge[m];
+        GraphNode[] ends1 = new GraphNode[m];
+        GraphNode[] ends2 = new GraphNode[m];
+        for (int e = 0; e < m; e++) {
+            int weight = (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(lengths[e])));
+            edges[e] = new GraphEdge(GraphEdge.edgeCount++, weight);
+            ends1[e] = vertices[edgeU[e]];
+            ends2[e] = vertices[edgeV[e]];
+        }
+        //a tree has no parallel edges, so skip addEdge()'s per-edge checks
+        return Graph310.build(vertices, edges, ends1, ends2);
+    }
+
+    /**
+     * The k-d tree and the Boruvka rounds over it.
+     */
+    private class Boruvka {
+        /**
+         * The point indices, in tree order (each node covers a range).
+         */
+        private final int[] order;
+        /**
+         * The coordinates in tree order, for locality.
+         */
+        private final double[] px;
+        /**
+         * The y coordinates in tree order.
+         */
+        private final double[] py;
+        /**
+         * The component (union-find root) of each point, in tree order.
+         */
+        private final int[] comp;
+        /**
+         * The first position of each tree node.
+         */
+        private final int[] lo;
+        /**
+         * One past the last position of each tree node.
+         */
+        private final int[] hi;
+        /**
+         * The children of each tree node (-1 for a leaf).
+         */
+        private final int[] left;
+        /**
+         * The second child of each tree node.
+         */
+        private final int[] right;
+        /**
+         * The parent of each tree node (-1 for the root).
+         */
+        private final int[] parent;
+        /**
+         * The leaf holding each position.
+         */
+        private final int[] leafOf;
+        /**
+         * The bounding box of each tree node.
+         */
+        private final double[] minX;
+        /**
+         * The bounding box of each tree node.
+         */
+        private final double[] maxX;
+        /**
+         * The bounding box of each tree node.
+         */
+        private final double[] minY;
+        /**
+         * The bounding box of each tree node.
+         */
+        private final double[] maxY;
+        /**
+         * The component shared by all points of each tree node, or -1.
+         */
+        private final int[] nodeComp;
+        /**
+         * The number of tree nodes.
+         */
+        private int nodeCount = 0;
+        /**
+         * The squared length of the best edge out of each component, by root.
+         */
+        private final double[] best;
+        /**
+         * A lower bound on each point's distance (squared) to other
+         * components, in tree order. Components only merge, so it stays
+         * valid from round to round.
+         */
+        private final double[] lower;
+        /**
+         * The squared distance to the nearest other-component point seen by
+         * the current search.
+         */
+        private double seen;
+        /**
+         * The lower endpoint of the best edge out of each component.
+         */
+        private final int[] bestA;
+        /**
+         * The higher endpoint of the best edge out of each component.
+         */
+        private final int[] bestB;
+
+        /**
+         * Builds the k-d tree.
+         */
+        Boruvka() {
+            int n = xs.length;
+            order = new int[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            int maxNodes = 2 * Math.max(1, (n + LEAF_SIZE - 1) / LEAF_SIZE * 2);
+            lo = new int[maxNodes];
+            hi = new int[maxNodes];
+            left = new int[maxNodes];
+            right = new int[maxNodes];
+            parent = new int[maxNodes];
+            leafOf = new int[n];
+            minX = new double[maxNodes];
+            maxX = new double[maxNodes];
+            minY = new double[maxNodes];
+            maxY = new double[maxNodes];
+            nodeComp = new int[maxNodes];
+            parent[build(0, n)] = -1;
+            px = new double[n];
+            py = new double[n];
+            for (int i = 0; i < n; i++) {
+                px[i] = xs[order[i]];
+                py[i] = ys[order[i]];
+            }
+            comp = new int[n];
+            best = new double[n];
+            bestA = new int[n];
+            bestB = new int[n];
+            lower = new double[n];
+        }
+
+        /**
+         * Internal method to build the subtree over a range of positions,
+         * splitting the wider side of the bounding box at the median.
+         *
+         * @param from the first position.
+         * @param to   one past the last position.
+         * @return the index of the subtree's root node.
+         */
+        private int build(int from, int to) {
+            int node = nodeCount++;
+            lo[node] = from;
+            hi[node] = to;
+            double x0 = Double.POSITIVE_INFINITY;
+            double x1 = Double.NEGATIVE_INFINITY;
+            double y0 = Double.POSITIVE_INFINITY;
+            double y1 = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                double x = xs[order[i]];
+                double y = ys[order[i]];
+                x0 = Math.min(x0, x);
+                x1 = Math.max(x1, x);
+                y0 = Math.min(y0, y);
+                y1 = Math.max(y1, y);
+            }
+            minX[node] = x0;
+            maxX[node] = x1;
+            minY[node] = y0;
+            maxY[node] = y1;
+            if (to - from <= LEAF_SIZE) {
+                left[node] = -1;
+                right[node] = -1;
+                Arrays.fill(leafOf, from, to, node);
+                return node;
+            }
+            int mid = (from + to) >>> 1;
+            select(from, to - 1, mid, x1 - x0 >= y1 - y0 ? xs : ys);
+            left[node] = build(from, mid);
+            right[node] = build(mid, to);
+            parent[left[node]] = node;
+            parent[right[node]] = node;
+            return node;
+        }
+
+        /**
+         * Internal method to partially sort a range of positions so that
+         * position k holds the k-th smallest coordinate (quickselect).
+         *
+         * @param from  the first position.
+         * @param to    the last position (inclusive).
+         * @param k     the position to settle.
+         * @param coord the coordinate to order by.
+         */
+        private void select(int from, int to, int k, double[] coord) {
+            while (from < to) {
+                double pivot = coord[order[(from + to) >>> 1]];
+                int i = from;
+                int j = to;
+                while (i <= j) {
+                    while (coord[order[i]] < pivot) {
+                        i++;
+                    }
+                    while (coord[order[j]] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        int tmp = order[i];
+                        order[i] = order[j];
+                        order[j] = tmp;
+                        i++;
+                        j--;
+                    }
+                }
+                if (k <= j) {
+                    to = j;
+                } else if (k >= i) {
+                    from = i;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Runs Boruvka rounds until one component is left.
+         */
+        void run() {
+            int n = xs.length;
+            UnionFind uf = new UnionFind(n);
+            int added = 0;
+            while (uf.count() > 1) {
+                rounds++;
+                for (int i = 0; i < n; i++) {
+                    comp[i] = uf.find(order[i]);
+                    best[comp[i]] = Double.POSITIVE_INFINITY;
+                }
+                labelNodes(0);
+                for (int i = 0; i < n; i++) {
+                    int c = comp[i];
+                    //this point cannot beat (or tie) its component's best edge
+                    if (lower[i] > best[c]) {
+                        continue;
+                    }
+                    seen = Double.POSITIVE_INFINITY;
+                    searchUp(i, c);
+                    //every pruned subtree was farther than the final best
+                    lower[i] = Math.min(seen, best[c]);
+                }
+                for (int i = 0; i < n; i++) {
+                    int c = comp[i];
+                    //each component's edge is added once, by its first point
+                    if (best[c] < Double.POSITIVE_INFINITY && uf.union(bestA[c], bestB[c])) {
+                        edgeU[added] = bestA[c];
+                        edgeV[added] = bestB[c];
+                        lengths[added] = Math.sqrt(best[c]);
+                        added++;
+                    }
+                    best[c] = Double.POSITIVE_INFINITY;
+                }
+            }
+        }
+
+        /**
+         * Internal method to search for a point's nearest other-component
+         * point from its own leaf upwards: each step up searches the sibling
+         * subtree, and the climb stops once the ball of the component's best
+         * edge lies inside the current node's box (nothing outside can beat it).
+         *
+         * @param i the position of the searching point.
+         * @param c its component.
+         */
+        private void searchUp(int i, int c) {
+            double x = px[i];
+            double y = py[i];
+            int node = leafOf[i];
+            nearest(node, i, c);
+            while (parent[node] >= 0) {
+                int up = parent[node];
+                nearest(left[up] == node ? right[up] : left[up], i, c);
+                node = up;
+                double margin = Math.min(Math.min(x - minX[node], maxX[node] - x),
+                    Math.min(y - minY[node], maxY[node] - y));
+                if (margin * margin > best[c]) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Internal method to record, bottom up, which tree nodes hold
+         * points of a single component.
+         *
+         * @param node the subtree root.
+         * @return the component shared by the subtree, or -1.
+         */
+        private int labelNodes(int node) {
+            int shared;
+            if (left[node] < 0) {
+                shared = comp[lo[node]];
+                for (int i = lo[node] + 1; i < hi[node]; i++) {
+                    if (comp[i] != shared) {
+                        shared = -1;
+                        break;
+                    }
+                }
+            } else {
+                int a = labelNodes(left[node]);
+                int b = labelNodes(right[node]);
+                shared = a == b ? a : -1;
+            }
+            nodeComp[node] = shared;
+            return shared;
+        }
+
+        /**
+         * Internal method to search a subtree for points of other components
+         * that beat the best edge of a point's component.
+         *
+         * @param node the subtree root.
+         * @param i    the position of the searching point.
+         * @param c    its component.
+         */
+        private void nearest(int node, int i, int c) {
+            if (nodeComp[node] == c) {
+                return;
+            }
+            double x = px[i];
+            double y = py[i];
+            double dx = Math.max(0, Math.max(minX[node] - x, x - maxX[node]));
+            double dy = Math.max(0, Math.max(minY[node] - y, y - maxY[node]));
+            if (dx * dx + dy * dy > best[c]) {
+                return;
+            }
+            if (left[node] < 0) {
+                for (int j = lo[node]; j < hi[node]; j++) {
+                    if (comp[j] != c) {
+                        double ex = px[j] - x;
+                        double ey = py[j] - y;
+                        double d2 = ex * ex + ey * ey;
+                        seen = Math.min(seen, d2);
+                        offer(c, d2, order[i], order[j]);
+                    }
+                }
+                return;
+            }
+            //the nearer child first, so the bound tightens sooner
+            int a = left[node];
+            int b = right[node];
+            if (boxDistance(b, x, y) < boxDistance(a, x, y)) {
+                a = right[node];
+                b = left[node];
+            }
+            nearest(a, i, c);
+            nearest(b, i, c);
+        }
+
+        /**
+         * Internal method to find the squared distance from a point to a
+         * tree node's bounding box.
+         *
+         * @param node the tree node.
+         * @param x    the point's x.
+         * @param y    the point's y.
+         * @return the squared distance (0 inside the box).
+         */
+        private double boxDistance(int node, double x, double y) {
+            double dx = Math.max(0, Math.max(minX[node] - x, x - maxX[node]));
+            double dy = Math.max(0, Math.max(minY[node] - y, y - maxY[node]));
+            return dx * dx + dy * dy;
+        }
+
+        /**
+         * Internal method to keep an edge if it beats a component's best,
+         * by squared length and then by endpoint indices.
+         *
+         * @param c  the component.
+         * @param d2 the squared length.
+         * @param p  one endpoint.
+         * @param q  the other endpoint.
+         */
+        private void offer(int c, double d2, int p, int q) {
+            int a = Math.min(p, q);
+            int b = Math.max(p, q);
+            if (d2 < best[c] || (d2 == best[c] && (a < bestA[c] || (a == bestA[c] && b < bestB[c])))) {
+                best[c] = d2;
+                bestA[c] = a;
+                bestB[c] = b;
+            }
+        }
+    }
+
+    /**
+     * Checks the tree against Prim's algorithm on the complete graph for
+     * small inputs, and times large ones.
+     *
+     * @param args [0] = the number of points to time (default 1000000), or a
+     *             file of points whose tree length is printed.
+     * @throws IOException if the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && !args[0].matches("\\d+")) {
+            EuclideanMst mst = read(Path.of(args[0]));
+            System.out.printf("%d points: tree length %.3f in %d rounds%n",
+                mst.getPointCount(), mst.getTotalLength(), mst.getRounds());
+            return;
+        }
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random rand = new Random(11);
+
+        int bad = 0;
+        for (int t = 0; t < 200; t++) {
+            int size = 1 + rand.nextInt(300);
+            double[] xs = new double[size];
+            double[] ys = new double[size];
+            for (int i = 0; i < size; i++) {
+                //a coarse grid half the time, for ties and duplicate points
+                xs[i] = t % 2 == 0 ? rand.nextDouble() * 1000 : rand.nextInt(10);
+                ys[i] = t % 2 == 0 ? rand.nextDouble() * 1000 : rand.nextInt(10);
+            }
+            EuclideanMst mst = new EuclideanMst(xs, ys);
+            if (Math.abs(mst.getTotalLength() - primLength(xs, ys)) > 1e-6 || !spans(mst)) {
+                bad++;
+            }
+        }
+        System.out.println(bad == 0 ? "200 random point sets agree with Prim" : bad + " WRONG trees");
+
+        List<Double> times = new ArrayList<>();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = rand.nextDouble();
+            ys[i] = rand.nextDouble();
+        }
+        for (int rep = 0; rep < 3; rep++) {
+            long start = System.nanoTime();
+            EuclideanMst mst = new EuclideanMst(xs, ys);
+            times.add((System.nanoTime() - start) / 1e6);
+            System.out.printf("%,d uniform points: length %.3f, %d rounds, %.1f ms%n",
+                n, mst.getTotalLength(), mst.getRounds(), times.get(rep));
+        }
+    }
+
+    /**
+     * Internal method to compute the tree length with O(n^2) Prim, for checking.
+     *
+     * @param xs the x coordinates.
+     * @param ys the y coordinates.
+     * @return the tree length.
+     */
+    private static double primLength(double[] xs, double[] ys) {
+        int n = xs.length;
+        double[] dist = new double[n];
+        boolean[] in = new boolean[n];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[0] = 0;
+        double total = 0;
+        for (int k = 0; k < n; k++) {
+            int u = -1;
+            for (int i = 0; i < n; i++) {
+                if (!in[i] && (u < 0 || dist[i] < dist[u])) {
+                    u = i;
+                }
+            }
+            in[u] = true;
+            total += dist[u];
+            for (int i = 0; i < n; i++) {
+                if (!in[i]) {
+                    dist[i] = Math.min(dist[i], Math.hypot(xs[i] - xs[u], ys[i] - ys[u]));
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Internal method to check that the edges connect every point.
+     *
+     * @param mst the tree.
+     * @return true if the edges span the points.
+     */
+    private static boolean spans(EuclideanMst mst) {
+        UnionFind uf = new UnionFind(mst.getPointCount());
+        for (int e = 0; e < mst.getEdgeCount(); e++) {
+            uf.union(mst.getEdgeU(e), mst.getEdgeV(e));
+        }
+        return uf.count() <= 1;
+    }
+}
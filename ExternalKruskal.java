@@ -0,0 +1,725 @@
+import edu.uci.ics.jung.graph.Graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Kruskal's algorithm for edge sets too large for the heap.
+ *
+ * <p>Edges are added one at a time and buffered; whenever the buffer is
+ * full it is sorted (by weight, then id, like {@link GraphEdge#compareTo})
+ * and written to a temporary file as a sorted run. {@link #computeMst()}
+ * then merges the runs, at most {@link #FAN_IN} at a time, until one
+ * merge can read all that are left; that last merge is not written back
+ * but streamed through a {@link UnionFind} cycle check. Apart from the
+ * run buffer, only the O(V) union-find and the selected edge ids are kept
+ * in memory, and the merge stops as soon as V-1 edges are selected.
+ *
+ * <p>Each edge is a 16-byte record (endpoints, weight, id) in buffered
+ * sequential files. The bytes read and written, the files made and the
+ * time taken are reported for each phase (see {@link #getStats()}).
+ */
+class ExternalKruskal {
+    /**
+     * The size of one edge record on disk.
+     */
+    public static final int RECORD_BYTES = 16;
+    /**
+     * The most runs merged at once.
+     */
+    public static final int FAN_IN = 64;
+    /**
+     * The buffer size of each run file stream.
+     */
+    private static final int IO_BUFFER = 1 << 16;
+
+    /**
+     * The I/O done by one phase of the computation.
+     */
+    static final class IoStats {
+        /**
+         * The name of the phase.
+         */
+        private final String phase;
+        /**
+         * The bytes read from run files.
+         */
+        private long bytesRead = 0;
+        /**
+         * The bytes written to run files.
+         */
+        private long bytesWritten = 0;
+        /**
+         * The run files created.
+         */
+        private int files = 0;
+        /**
+         * The time spent, in nanoseconds.
+         */
+        private long nanos = 0;
+
+        /**
+         * Constructs empty statistics.
+         *
+         * @param phase the name of the phase.
+         */
+        IoStats(String phase) {
+            this.phase = phase;
+        }
+
+        /**
+         * Returns the name of the phase.
+         *
+         * @return the phase.
+         */
+        public String getPhase() {
+            return phase;
+        }
+
+        /**
+         * Returns the bytes read from run files.
+         *
+         * @return the bytes read.
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * Returns the bytes written to run files.
+         *
+         * @return the bytes written.
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * Returns the number of run files created.
+         *
+         * @return the number of files.
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * Returns the time spent, in nanoseconds.
+         *
+         * @return the time.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("%-12s read %,14d B  written %,14d B  files %4d  %,9.1f ms",
+                phase, bytesRead, bytesWritten, files, nanos / 1e6);
+        }
+    }
+
+    /**
+     * The number of vertices (endpoints are 0 to vertexCount-1).
+     */
+    private final int vertexCount;
+    /**
+     * Where the run files are made.
+     */
+    private final Path tempDir;
+    /**
+     * The buffered edges: first endpoints.
+     */
+    private final int[] bufU;
+    /**
+     * The buffered edges: second endpoints.
+     */
+    private final int[] bufV;
+    /**
+     * The buffered edges: weights.
+     */
+    private final int[] bufWeight;
+    /**
+     * The buffered edges: ids.
+     */
+    private final int[] bufId;
+    /**
+     * The sort order of the buffer.
+     */
+    private final int[] order;
+    /**
+     * Scratch space for the sort.
+     */
+    private final int[] scratch;
+    /**
+     * The number of buffered edges.
+     */
+    private int buffered = 0;
+    /**
+     * The sorted runs on disk.
+     */
+    private final List<Path> runs = new ArrayList<>();
+    /**
+     * Every temporary file made (deleted when the MST is computed).
+     */
+    private final List<Path> temps = new ArrayList<>();
+    /**
+     * The number of edges added.
+     */
+    private long edgeCount = 0;
+    /**
+     * The statistics of writing the initial runs.
+     */
+    private final IoStats runStats = new IoStats("runs");
+    /**
+     * The statistics of the merges written back to disk.
+     */
+    private final IoStats mergeStats = new IoStats("merge passes");
+    /**
+     * The statistics of the final merge into the cycle check.
+     */
+    private final IoStats finalStats = new IoStats("final merge");
+    /**
+     * Whether computeMst() was called.
+     */
+    private boolean computed = false;
+
+    /**
+     * Constructs an empty edge set.
+     *
+     * @param vertexCount the number of vertices.
+     * @param runEdges    the number of edges sorted in memory per run.
+     * @param tempDir     where to make the run files.
+     * @throws IllegalArgumentException if vertexCount is negative or runEdges is not positive.
+     */
+    public ExternalKruskal(int vertexCount, int runEdges, Path tempDir) {
+        if (vertexCount < 0 || runEdges <= 0) {
+            throw new IllegalArgumentException("Bad sizes: " + vertexCount + " vertices, " + runEdges + " edges per run");
+        }
+        this.vertexCount = vertexCount;
+        this.tempDir = tempDir;
+        bufU = new int[runEdges];
+        bufV = new int[runEdges];
+        bufWeight = new int[runEdges];
+        bufId = new int[runEdges];
+        order = new int[runEdges];
+        scratch = new int[runEdges];
+    }
+
+    /**
+     * Adds an edge, writing a sorted run to disk if the buffer is full.
+     *
+     * @param u      one endpoint.
+     * @param v      the other endpoint.
+     * @param weight the weight.
+     * @param id     the edge id (used to break ties between equal weights).
+     * @throws IllegalArgumentException if an endpoint is out of range or the id is negative.
+     * @throws IllegalStateException if the MST was already computed.
+     * @throws IOException if the run cannot be written.
+     */
+    public void addEdge(int u, int v, int weight, int id) throws IOException {
+        if (u < 0 || u >= vertexCount || v < 0 || v >= vertexCount || id < 0) {
+            throw new IllegalArgumentException("Bad edge " + id + ": " + u + "-" + v);
+        }
+        if (computed) {
+            throw new IllegalStateException("The MST was already computed");
+        }
+        if (buffered == bufU.length) {
+            spill();
+        }
+        bufU[buffered] = u;
+        bufV[buffered] = v;
+        bufWeight[buffered] = weight;
+        bufId[buffered] = id;
+        buffered++;
+        edgeCount++;
+    }
+
+    /**
+     * Computes the minimum spanning forest of the added edges. The run
+     * files are deleted afterwards, whatever happens.
+     *
+     * @return the selected edges and their weight.
+     * @throws IllegalStateException if the MST was already computed.
+     * @throws IOException if a run cannot be written or read.
+     */
+    public MstResult computeMst() throws IOException {
+        if (computed) {
+            throw new IllegalStateException("The MST was already computed");
+        }
+        computed = true;
+        try {
+            if (buffered > 0) {
+                spill();
+            }
+            //merge passes until one merge can read every run
+            long start = System.nanoTime();
+            while (runs.size() > FAN_IN) {
+                List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += FAN_IN) {
+                    List<Path> group = runs.subList(i, Math.min(runs.size(), i + FAN_IN));
+                    merged.add(group.size() == 1 ? group.get(0) : mergeToFile(group));
+                }
+                runs.clear();
+                runs.addAll(merged);
+            }
+            mergeStats.nanos += System.nanoTime() - start;
+            return mergeIntoForest();
+        } finally {
+            for (Path p : temps) {
+                Files.deleteIfExists(p);
+            }
+            temps.clear();
+            runs.clear();
+        }
+    }
+
+    /**
+     * Returns the number of edges added.
+     *
+     * @return the number of edges.
+     */
+    public long getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns the I/O statistics of each phase so far: writing the runs,
+     * the merge passes written back to disk, and the final merge.
+     *
+     * @return the statistics, in phase order.
+     */
+    public List<IoStats> getStats() {
+        List<IoStats> ret = new ArrayList<>();
+        ret.add(runStats);
+        ret.add(mergeStats);
+        ret.add(finalStats);
+        return Collections.unmodifiableList(ret);
+    }
+
+    /**
+     * Computes the MST of a graph out of core (the graph itself must fit
+     * in memory; this is mostly useful to check the external algorithm).
+     *
+     * @param graph    the graph.
+     * @param runEdges the number of edges sorted in memory per run.
+     * @param tempDir  where to make the run files.
+     * @return the selected edges and their weight.
+     * @throws IOException if a run cannot be written or read.
+     */
+    public static MstResult computeMst(Graph<GraphNode, GraphEdge> graph, int runEdges, Path tempDir) throws IOException {
+        CompactGraph cg = CompactGraph.of(graph);
+        ExternalKruskal ek = new ExternalKruskal(cg.getVertexCount(), runEdges, tempDir);
+        for (int e = 0; e < cg.getEdgeCount(); e++) {
+            ek.addEdge(cg.getEdgeU(e), cg.getEdgeV(e), cg.getWeight(e), cg.getEdge(e).getId());
+        }
+        return ek.computeMst();
+    }
+
+    /**
+     * Internal method to sort the buffer and write it as a run.
+     *
+     * @throws IOException if the run cannot be written.
+     */
+    private void spill() throws IOException {
+        long start = System.nanoTime();
+        sortBuffer();
+        Path run = Files.createTempFile(tempDir, "mst-run", ".bin");
+        runs.add(run);
+        temps.add(run);
+        runStats.files++;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER))) {
+            for (int i = 0; i < buffered; i++) {
+                int e = order[i];
+                out.writeInt(bufU[e]);
+                out.writeInt(bufV[e]);
+                out.writeInt(bufWeight[e]);
+                out.writeInt(bufId[e]);
+            }
+        }
+        runStats.bytesWritten += (long) buffered * RECORD_BYTES;
+        buffered = 0;
+        runStats.nanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Internal method to sort the buffered edges by weight, then id
+     * (a bottom-up merge sort of the indices in order).
+     */
+    private void sortBuffer() {
+        int n = buffered;
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        int[] from = order;
+        int[] to = scratch;
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo;
+                int j = mid;
+                for (int k = lo; k < hi; k++) {
+                    if (i < mid && (j >= hi || key(from[i]) <= key(from[j]))) {
+                        to[k] = from[i++];
+                    } else {
+                        to[k] = from[j++];
+                    }
+                }
+            }
+            int[] tmp = from;
+            from = to;
+            to = tmp;
+        }
+        if (from != order) {
+            System.arraycopy(from, 0, order, 0, n);
+        }
+    }
+
+    /**
+     * Internal method to get the sort key of a buffered edge.
+     *
+     * @param e the buffer index.
+     * @return the weight in the high half, the (non-negative) id in the low half.
+     */
+    private long key(int e) {
+        return ((long) bufWeight[e] << 32) | bufId[e];
+    }
+
+    /**
+     * Internal method to merge a group of runs into a new run.
+     *
+     * @param group the runs (deleted once merged).
+     * @return the merged run.
+     * @throws IOException if a run cannot be written or read.
+     */
+    private Path mergeToFile(List<Path> group) throws IOException {
+        Path merged = Files.createTempFile(tempDir, "mst-merge", ".bin");
+        temps.add(merged);
+        mergeStats.files++;
+        try (RunMerger in = new RunMerger(group, mergeStats);
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(merged), IO_BUFFER))) {
+            while (in.next()) {
+                out.writeInt(in.u);
+                out.writeInt(in.v);
+                out.writeInt(in.weight);
+                out.writeInt(in.id);
+                mergeStats.bytesWritten += RECORD_BYTES;
+            }
+        }
+        for (Path p : group) {
+            Files.deleteIfExists(p);
+        }
+        return merged;
+    }
+
+    /**
+     * Internal method to stream the last runs, in order, through the
+     * cycle check.
+     *
+     * @return the selected edges and their weight.
+     * @throws IOException if a run cannot be read.
+     */
+    private MstResult mergeIntoForest() throws IOException {
+        long start = System.nanoTime();
+        UnionFind forest = new UnionFind(vertexCount);
+        int[] selected = new int[Math.max(0, vertexCount - 1)];
+        int count = 0;
+        long weight = 0;
+        try (RunMerger in = new RunMerger(runs, finalStats)) {
+            //a spanning tree has V-1 edges: nothing after that can join it
+            while (count < selected.length && in.next()) {
+                if (forest.union(in.u, in.v)) {
+                    selected[count++] = in.id;
+                    weight += in.weight;
+                }
+            }
+        }
+        finalStats.nanos += System.nanoTime() - start;
+        int[] ids = new int[count];
+        System.arraycopy(selected, 0, ids, 0, count);
+        return new MstResult(ids, weight);
+    }
+
+    /**
+     * A k-way merge of sorted runs, with a binary heap of the runs by their
+     * current record.
+     */
+    private static final class RunMerger implements AutoCloseable {
+        /**
+         * The open runs.
+         */
+        private final DataInputStream[] inputs;
+        /**
+         * The current record of each run.
+         */
+        private final int[] curU;
+        /**
+         * The current record of each run.
+         */
+        private final int[] curV;
+        /**
+         * The current record of each run.
+         */
+        private final int[] curWeight;
+        /**
+         * The current record of each run.
+         */
+        private final int[] curId;
+        /**
+         * The runs that have a current record, as a min-heap by (weight, id).
+         */
+        private final int[] heap;
+        /**
+         * The number of runs in the heap.
+         */
+        private int heapSize = 0;
+        /**
+         * Where the bytes read are counted.
+         */
+        private final IoStats stats;
+        /**
+         * The run whose record was returned last (-1 before the first).
+         */
+        private int last = -1;
+        /**
+         * The last record returned: first endpoint.
+         */
+        int u;
+        /**
+         * The last record returned: second endpoint.
+         */
+        int v;
+        /**
+         * The last record returned: weight.
+         */
+        int weight;
+        /**
+         * The last record returned: id.
+         */
+        int id;
+
+        /**
+         * Opens the runs and reads their first records.
+         *
+         * @param runs  the runs.
+         * @param stats where to count the bytes read.
+         * @throws IOException if a run cannot be read.
+         */
+        RunMerger(List<Path> runs, IoStats stats) throws IOException {
+            int k = runs.size();
+            this.stats = stats;
+            inputs = new DataInputStream[k];
+            curU = new int[k];
+            curV = new int[k];
+            curWeight = new int[k];
+            curId = new int[k];
+            heap = new int[k];
+            try {
+                for (int r = 0; r < k; r++) {
+                    inputs[r] = new DataInputStream(new BufferedInputStream(Files.newInputStream(runs.get(r)), IO_BUFFER));
+                    if (advance(r)) {
+                        heap[heapSize] = r;
+                        siftUp(heapSize++);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Moves to the next record in (weight, id) order.
+         *
+         * @return false if every run is exhausted.
+         * @throws IOException if a run cannot be read.
+         */
+        boolean next() throws IOException {
+            //the run of the last record moves on only now, so its fields stayed valid
+            if (last >= 0) {
+                if (advance(last)) {
+                    siftDown(0);
+                } else {
+                    heap[0] = heap[--heapSize];
+                    siftDown(0);
+                }
+            }
+            if (heapSize == 0) {
+                last = -1;
+                return false;
+            }
+            last = heap[0];
+            u = curU[last];
+            v = curV[last];
+            weight = curWeight[last];
+            id = curId[last];
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void close() throws IOException {
+            IOException failure = null;
+            for (DataInputStream in : inputs) {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        /**
+         * Internal method to read the next record of a run.
+         *
+         * @param r the run.
+         * @return false if the run is exhausted.
+         * @throws IOException if the run cannot be read.
+         */
+        private boolean advance(int r) throws IOException {
+            DataInputStream in = inputs[r];
+            try {
+                curU[r] = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            curV[r] = in.readInt();
+            curWeight[r] = in.readInt();
+            curId[r] = in.readInt();
+            stats.bytesRead += RECORD_BYTES;
+            return true;
+        }
+
+        /**
+         * Internal method to compare the current records of two runs.
+         *
+         * @param a one run.
+         * @param b the other run.
+         * @return true if a's record comes first.
+         */
+        private boolean before(int a, int b) {
+            return curWeight[a] != curWeight[b] ? curWeight[a] < curWeight[b] : curId[a] < curId[b];
+        }
+
+        /**
+         * Internal method to move a heap entry up to its place.
+         *
+         * @param i the heap position.
+         */
+        private void siftUp(int i) {
+            int r = heap[i];
+            while (i > 0 && before(r, heap[(i - 1) / 2])) {
+                heap[i] = heap[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heap[i] = r;
+        }
+
+        /**
+         * Internal method to move a heap entry down to its place.
+         *
+         * @param i the heap position.
+         */
+        private void siftDown(int i) {
+            if (heapSize == 0) {
+                return;
+            }
+            int r = heap[i];
+            while (2 * i + 1 < heapSize) {
+                int c = 2 * i + 1;
+                if (c + 1 < heapSize && before(heap[c + 1], heap[c])) {
+                    c++;
+                }
+                if (!before(heap[c], r)) {
+                    break;
+                }
+                heap[i] = heap[c];
+                i = c;
+            }
+            heap[i] = r;
+        }
+    }
+
+    /**
+     * Checks the external MST against the in-memory one on a random graph
+     * and reports the I/O of each phase.
+     *
+     * @param args [0] = vertices (default 100000), [1] = edges (default 2000000),
+     *             [2] = edges per run (default 50000).
+     * @throws IOException if the run files cannot be used.
+     */
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int m = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int runEdges = args.length > 2 ? Integer.parseInt(args[2]) : 50_000;
+
+        Random rand = new Random(42);
+        int[] us = new int[m];
+        int[] vs = new int[m];
+        int[] ws = new int[m];
+        ExternalKruskal ek = new ExternalKruskal(n, runEdges, Path.of(System.getProperty("java.io.tmpdir")));
+        for (int e = 0; e < m; e++) {
+            us[e] = rand.nextInt(n);
+            vs[e] = rand.nextInt(n);
+            ws[e] = 1 + rand.nextInt(1000);
+            ek.addEdge(us[e], vs[e], ws[e], e);
+        }
+        long start = System.nanoTime();
+        MstResult external = ek.computeMst();
+        long externalNanos = System.nanoTime() - start;
+
+        //the same edges sorted in memory
+        start = System.nanoTime();
+        long[] keys = new long[m];
+        for (int e = 0; e < m; e++) {
+            keys[e] = ((long) ws[e] << 32) | e;
+        }
+        Arrays.sort(keys);
+        UnionFind uf = new UnionFind(n);
+        int[] ids = new int[Math.max(0, n - 1)];
+        int count = 0;
+        long weight = 0;
+        for (int i = 0; i < m && count < ids.length; i++) {
+            int e = (int) keys[i];
+            if (uf.union(us[e], vs[e])) {
+                ids[count++] = e;
+                weight += ws[e];
+            }
+        }
+        MstResult internal = new MstResult(Arrays.copyOf(ids, count), weight);
+        long internalNanos = System.nanoTime() - start;
+
+        System.out.printf("%,d vertices, %,d edges, %,d edges per run%n", n, m, runEdges);
+        for (IoStats s : ek.getStats()) {
+            System.out.println(s);
+        }
+        System.out.printf("external MST: %,d edges, weight %,d (%.1f ms after the runs)%n",
+            external.getEdgeCount(), external.getTotalWeight(), externalNanos / 1e6);
+        System.out.printf("in-memory MST: %,d edges, weight %,d (%.1f ms)%n",
+            internal.getEdgeCount(), internal.getTotalWeight(), internalNanos / 1e6);
+        System.out.println(external.equals(internal) ? "same MST" : "DIFFERENT MST");
+    }
+}
@@ -0,0 +1,594 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A multilevel force-directed layout with Barnes-Hut approximation, for
+ * graphs too big for JUNG's O(V^2)-per-iteration layouts.
+ *
+ * <p>The graph is first coarsened repeatedly by merging matched pairs of
+ * neighbors, until it is small. The coarsest graph is laid out with plain
+ * Fruchterman-Reingold forces; each finer level then starts from the
+ * positions of its merged parent and is refined with a few iterations.
+ * Repulsion between all pairs of vertices is approximated with a quadtree
+ * (Barnes-Hut, opening angle {@link #THETA}), so an iteration costs
+ * O(V log V + E) instead of O(V^2). Merged vertices carry the mass of the
+ * vertices they stand for, so coarse layouts have the right spread.
+ *
+ * <p>The result is deterministic for a given graph and seed.
+ */
+final class ForceLayout {
+    /**
+     * The Barnes-Hut opening angle: a quadtree cell is treated as one body
+     * when its width divided by its distance is below this.
+     */
+    private static final double THETA = 0.9;
+    /**
+     * The relative strength of repulsion.
+     */
+    private static final double REPULSION = 0.2;
+    /**
+     * Coarsening stops at this many vertices.
+     */
+    private static final int COARSEST = 32;
+    /**
+     * Iterations on the coarsest level.
+     */
+    private static final int COARSE_ITERATIONS = 300;
+    /**
+     * Iterations on every other level.
+     */
+    private static final int REFINE_ITERATIONS = 60;
+
+    /**
+     * Not instantiable.
+     */
+    private ForceLayout() {
+    }
+
+    /**
+     * Lays out a graph in a rectangle.
+     *
+     * @param graph    the graph.
+     * @param width    the width of the rectangle.
+     * @param height   the height of the rectangle.
+     * @param seed     the seed of the random choices.
+     * @param progress receives progress reports; may cancel (may be null).
+     * @return the positions, by compact vertex index: x at 2v, y at 2v+1.
+     * @throws CancellationException if the progress callback cancelled the layout.
+     */
+    public static double[] compute(CompactGraph graph, double width, double height, long seed,
+                                   LayoutProgress progress) {
+        int n = graph.getVertexCount();
+        double[] pos = new double[2 * n];
+        if (n == 0) {
+            return pos;
+        }
+        Random rand = new Random(seed);
+
+        //build the levels, finest first
+        Level[] levels = new Level[1];
+        levels[0] = Level.of(graph);
+        while (levels[levels.length - 1].n > COARSEST) {
+            Level coarse = levels[levels.length - 1].coarsen(rand);
+            if (coarse.n > 0.9 * levels[levels.length - 1].n) {
+                break; //matching no longer shrinks the graph (e.g. a star)
+            }
+            levels = Arrays.copyOf(levels, levels.length + 1);
+            levels[levels.length - 1] = coarse;
+        }
+
+        long total = 0;
+        for (int i = 0; i < levels.length; i++) {
+            total += (long) iterations(i, levels.length) * (levels[i].n + levels[i].targets.length);
+        }
+        long[] done = {0};
+
+        //lay out the coarsest level from random positions, then refine
+        Level coarsest = levels[levels.length - 1];
+        double[] cur = new double[2 * coarsest.n];
+        double spread = Math.sqrt(graph.getVertexCount());
+        for (int i = 0; i < cur.length; i++) {
+            cur[i] = rand.nextDouble() * spread;
+        }
+        for (int i = levels.length - 1; i >= 0; i--) {
+            Level level = levels[i];
+            if (i < levels.length - 1) {
+                //each vertex starts near the merged vertex it belongs to
+                double[] fine = new double[2 * level.n];
+                for (int v = 0; v < level.n; v++) {
+                    fine[2 * v] = cur[2 * level.parent[v]] + (rand.nextDouble() - 0.5) * 0.1;
+                    fine[2 * v + 1] = cur[2 * level.parent[v] + 1] + (rand.nextDouble() - 0.5) * 0.1;
+                }
+                cur = fine;
+            }
+            boolean coarse = i == levels.length - 1;
+            relax(level, cur, iterations(i, levels.length), coarse ? spread / 4 : 1.0,
+                total, done, progress);
+        }
+
+        fit(cur, width, height);
+        return cur;
+    }
+
+    /**
+     * Internal method to get the number of iterations of a level.
+     *
+     * @param level  the level (0 is the finest).
+     * @param levels the number of levels.
+     * @return the number of iterations.
+     */
+    private static int iterations(int level, int levels) {
+        return level == levels - 1 ? COARSE_ITERATIONS : REFINE_ITERATIONS;
+    }
+
+    /**
+     * Internal method to run force-directed iterations on one level.
+     *
+     * @param level      the level.
+     * @param pos        the positions (updated).
+     * @param iterations the number of iterations.
+     * @param step       the initial move limit.
+     * @param total      the total work of the layout (for progress).
+     * @param done       the work done so far (updated).
+     * @param progress   receives progress reports (may be null).
+     */
+    private static void relax(Level level, double[] pos, int iterations, double step,
+                              long total, long[] done, LayoutProgress progress) {
+        int n = level.n;
+        double[] force = new double[2 * n];
+        QuadTree tree = new QuadTree(n);
+        for (int it = 0; it < iterations; it++) {
+            Arrays.fill(force, 0);
+
+            //repulsion between all pairs, approximated
+            tree.build(pos, level.mass);
+            for (int v = 0; v < n; v++) {
+                tree.repel(v, pos, level.mass, force);
+            }
+
+            //attraction along edges
+            for (int v = 0; v < n; v++) {
+                for (int p = level.offsets[v]; p < level.offsets[v + 1]; p++) {
+                    int w = level.targets[p];
+                    double dx = pos[2 * w] - pos[2 * v];
+                    double dy = pos[2 * w + 1] - pos[2 * v + 1];
+                    double d = Math.sqrt(dx * dx + dy * dy);
+                    force[2 * v] += dx * d;
+                    force[2 * v + 1] += dy * d;
+                }
+            }
+
+            //move every vertex along its force, at most step
+            for (int v = 0; v < n; v++) {
+                double fx = force[2 * v];
+                double fy = force[2 * v + 1];
+                double f = Math.sqrt(fx * fx + fy * fy);
+                if (f > 0) {
+                    double move = Math.min(step, f) / f;
+                    pos[2 * v] += fx * move;
+                    pos[2 * v + 1] += fy * move;
+                }
+            }
+            step = Math.max(step * 0.95, 0.01);
+
+            done[0] += n + level.targets.length;
+            if (progress != null && !progress.update((double) done[0] / total)) {
+                throw new CancellationException("Layout cancelled");
+            }
+        }
+    }
+
+    /**
+     * Internal method to scale positions into a rectangle, keeping the
+     * aspect ratio and leaving a margin.
+     *
+     * @param pos    the positions (updated).
+     * @param width  the width of the rectangle.
+     * @param height the height of the rectangle.
+     */
+    private static void fit(double[] pos, double width, double height) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < pos.length; i += 2) {
+            minX = Math.min(minX, pos[i]);
+            maxX = Math.max(maxX, pos[i]);
+            minY = Math.min(minY, pos[i + 1]);
+            maxY = Math.max(maxY, pos[i + 1]);
+        }
+        double margin = 30;
+        double scale = Math.min((width - 2 * margin) / Math.max(maxX - minX, 1e-9),
+            (height - 2 * margin) / Math.max(maxY - minY, 1e-9));
+        double offX = (width - (maxX - minX) * scale) / 2;
+        double offY = (height - (maxY - minY) * scale) / 2;
+        for (int i = 0; i < pos.length; i += 2) {
+            pos[i] = offX + (pos[i] - minX) * scale;
+            pos[i + 1] = offY + (pos[i + 1] - minY) * scale;
+        }
+    }
+
+    /**
+     * One level of the multilevel hierarchy: a graph in adjacency arrays,
+     * the mass of each vertex, and the coarser vertex each vertex was merged into.
+     */
+    private static final class Level {
+        /**
+         * The number of vertices.
+         */
+        final int n;
+        /**
+         * The start of each vertex's neighbors (length n+1).
+         */
+        final int[] offsets;
+        /**
+         * The neighbors, grouped by vertex.
+         */
+        final int[] targets;
+        /**
+         * The number of original vertices each vertex stands for.
+         */
+        final double[] mass;
+        /**
+         * The vertex of the next coarser level each vertex was merged into
+         * (set by coarsen()).
+         */
+        int[] parent;
+
+        /**
+         * Constructs a level.
+         *
+         * @param n       the number of vertices.
+         * @param offsets the start of each vertex's neighbors.
+         * @param targets the neighbors.
+         * @param mass    the mass of each vertex.
+         */
+        Level(int n, int[] offsets, int[] targets, double[] mass) {
+            this.n = n;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.mass = mass;
+        }
+
+        /**
+         * Makes the finest level from a compact graph.
+         *
+         * @param graph the graph.
+         * @return the level.
+         */
+        static Level of(CompactGraph graph) {
+            int n = graph.getVertexCount();
+            int[] offsets = new int[n + 1];
+            for (int v = 0; v <= n; v++) {
+                offsets[v] = graph.adjStart(v);
+            }
+            int[] targets = new int[offsets[n]];
+            for (int p = 0; p < targets.length; p++) {
+                targets[p] = graph.adjTarget(p);
+            }
+            double[] mass = new double[n];
+            Arrays.fill(mass, 1);
+            return new Level(n, offsets, targets, mass);
+        }
+
+        /**
+         * Merges a maximal matching of neighbor pairs (lightest neighbor
+         * first, vertices in random order) into the next coarser level.
+         *
+         * @param rand the random order source.
+         * @return the coarser level.
+         */
+        Level coarsen(Random rand) {
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) {
+                int j = rand.nextInt(i + 1);
+                order[i] = order[j];
+                order[j] = i;
+            }
+            parent = new int[n];
+            Arrays.fill(parent, -1);
+            int coarseN = 0;
+            for (int v : order) {
+                if (parent[v] >= 0) {
+                    continue;
+                }
+                int match = -1;
+                for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                    int w = targets[p];
+                    if (w != v && parent[w] < 0 && (match < 0 || mass[w] < mass[match])) {
+                        match = w;
+                    }
+                }
+                parent[v] = coarseN;
+                if (match >= 0) {
+                    parent[match] = coarseN;
+                }
+                coarseN++;
+            }
+
+            double[] coarseMass = new double[coarseN];
+            for (int v = 0; v < n; v++) {
+                coarseMass[parent[v]] += mass[v];
+            }
+
+            //collect the coarse neighbors of every coarse vertex, without duplicates
+            int[] members = new int[n];
+            int[] memberStart = new int[coarseN + 1];
+            for (int v = 0; v < n; v++) {
+                memberStart[parent[v] + 1]++;
+            }
+            for (int c = 0; c < coarseN; c++) {
+                memberStart[c + 1] += memberStart[c];
+            }
+            int[] fill = Arrays.copyOf(memberStart, coarseN);
+            for (int v = 0; v < n; v++) {
+                members[fill[parent[v]]++] = v;
+            }
+            int[] seen = new int[coarseN];
+            Arrays.fill(seen, -1);
+            int[] coarseOffsets = new int[coarseN + 1];
+            int[] coarseTargets = new int[targets.length];
+            int count = 0;
+            for (int c = 0; c < coarseN; c++) {
+                coarseOffsets[c] = count;
+                seen[c] = c;
+                for (int i = memberStart[c]; i < memberStart[c + 1]; i++) {
+                    int v = members[i];
+                    for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                        int d = parent[targets[p]];
+                        if (seen[d] != c) {
+                            seen[d] = c;
+                            coarseTargets[count++] = d;
+                        }
+                    }
+                }
+            }
+            coarseOffsets[coarseN] = count;
+            return new Level(coarseN, coarseOffsets, Arrays.copyOf(coarseTargets, count), coarseMass);
+        }
+    }
+
+    /**
+     * An array-based quadtree of weighted points, rebuilt every iteration,
+     * that approximates the repulsion on a point from all the others.
+     */
+    private static final class QuadTree {
+        /**
+         * The deepest level subdivided (coincident points share a leaf below it).
+         */
+        private static final int MAX_DEPTH = 40;
+
+        /**
+         * The center x of each cell.
+         */
+        private double[] cx;
+        /**
+         * The center y of each cell.
+         */
+        private double[] cy;
+        /**
+         * Half the width of each cell.
+         */
+        private double[] half;
+        /**
+         * The total mass in each cell.
+         */
+        private double[] mass;
+        /**
+         * The mass-weighted sum of x in each cell.
+         */
+        private double[] sumX;
+        /**
+         * The mass-weighted sum of y in each cell.
+         */
+        private double[] sumY;
+        /**
+         * The first of the four children of each cell (-1 for a leaf).
+         */
+        private int[] child;
+        /**
+         * The point in each leaf (-1 if empty).
+         */
+        private int[] point;
+        /**
+         * The number of cells in use.
+         */
+        private int cells;
+        /**
+         * The cells still to visit in repel().
+         */
+        private int[] stack = new int[64];
+
+        /**
+         * Constructs a tree with room for about n points.
+         *
+         * @param n the number of points.
+         */
+        QuadTree(int n) {
+            allocate(Math.max(16, 2 * n));
+        }
+
+        /**
+         * Rebuilds the tree over a set of points.
+         *
+         * @param pos    the positions: x at 2v, y at 2v+1.
+         * @param masses the mass of each point.
+         */
+        void build(double[] pos, double[] masses) {
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < pos.length; i += 2) {
+                minX = Math.min(minX, pos[i]);
+                maxX = Math.max(maxX, pos[i]);
+                minY = Math.min(minY, pos[i + 1]);
+                maxY = Math.max(maxY, pos[i + 1]);
+            }
+            cells = 0;
+            int root = newCell((minX + maxX) / 2, (minY + maxY) / 2,
+                Math.max(maxX - minX, maxY - minY) / 2 + 1e-9);
+            for (int v = 0; v < masses.length; v++) {
+                insert(root, v, pos, masses, 0);
+            }
+        }
+
+        /**
+         * Adds the approximate repulsion on a point from all other points to its force.
+         *
+         * @param v      the point.
+         * @param pos    the positions.
+         * @param masses the mass of each point.
+         * @param force  the forces: x at 2v, y at 2v+1 (updated).
+         */
+        void repel(int v, double[] pos, double[] masses, double[] force) {
+            double x = pos[2 * v];
+            double y = pos[2 * v + 1];
+            double fx = 0;
+            double fy = 0;
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int c = stack[--top];
+                if (mass[c] == 0 || point[c] == v) {
+                    continue;
+                }
+                double mx = sumX[c] / mass[c];
+                double my = sumY[c] / mass[c];
+                double dx = x - mx;
+                double dy = y - my;
+                double d2 = dx * dx + dy * dy;
+                if (child[c] < 0 || 4 * half[c] * half[c] < THETA * THETA * d2) {
+                    if (d2 < 1e-12) {
+                        //coincident points: push apart in a fixed direction
+                        dx = 1e-3 * ((v & 1) == 0 ? 1 : -1);
+                        dy = 1e-3;
+                        d2 = 2e-6;
+                    }
+                    //magnitude REPULSION * m_v * m_c / d, along (dx, dy) / d
+                    double f = REPULSION * masses[v] * mass[c] / d2;
+                    fx += dx * f;
+                    fy += dy * f;
+                } else {
+                    if (top + 4 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    for (int k = 0; k < 4; k++) {
+                        stack[top++] = child[c] + k;
+                    }
+                }
+            }
+            force[2 * v] += fx;
+            force[2 * v + 1] += fy;
+        }
+
+        /**
+         * Internal method to insert a point below a cell.
+         *
+         * @param c      the cell.
+         * @param v      the point.
+         * @param pos    the positions.
+         * @param masses the mass of each point.
+         * @param depth  the depth of the cell.
+         */
+        private void insert(int c, int v, double[] pos, double[] masses, int depth) {
+            double x = pos[2 * v];
+            double y = pos[2 * v + 1];
+            while (true) {
+                mass[c] += masses[v];
+                sumX[c] += masses[v] * x;
+                sumY[c] += masses[v] * y;
+                if (child[c] < 0) {
+                    if (point[c] < 0 && mass[c] == masses[v]) {
+                        point[c] = v; //empty leaf
+                        return;
+                    }
+                    if (depth >= MAX_DEPTH) {
+                        point[c] = -1; //several coincident points share this leaf
+                        return;
+                    }
+                    //split the leaf and push its point down
+                    int old = point[c];
+                    point[c] = -1;
+                    split(c);
+                    if (old >= 0) {
+                        int k = quadrant(c, pos[2 * old], pos[2 * old + 1]);
+                        int oc = child[c] + k;
+                        mass[oc] += masses[old];
+                        sumX[oc] += masses[old] * pos[2 * old];
+                        sumY[oc] += masses[old] * pos[2 * old + 1];
+                        point[oc] = old;
+                    }
+                }
+                c = child[c] + quadrant(c, x, y);
+                depth++;
+            }
+        }
+
+        /**
+         * Internal method to find the child quadrant of a cell containing a point.
+         *
+         * @param c the cell.
+         * @param x the x of the point.
+         * @param y the y of the point.
+         * @return the quadrant (0 to 3).
+         */
+        private int quadrant(int c, double x, double y) {
+            return (x >= cx[c] ? 1 : 0) + (y >= cy[c] ? 2 : 0);
+        }
+
+        /**
+         * Internal method to give a leaf four empty children.
+         *
+         * @param c the cell.
+         */
+        private void split(int c) {
+            double h = half[c] / 2;
+            int first = newCell(cx[c] - h, cy[c] - h, h);
+            newCell(cx[c] + h, cy[c] - h, h);
+            newCell(cx[c] - h, cy[c] + h, h);
+            newCell(cx[c] + h, cy[c] + h, h);
+            child[c] = first;
+        }
+
+        /**
+         * Internal method to add an empty leaf.
+         *
+         * @param x the center x.
+         * @param y the center y.
+         * @param h half the width.
+         * @return the new cell.
+         */
+        private int newCell(double x, double y, double h) {
+            if (cells == child.length) {
+                allocate(cells * 2);
+            }
+            cx[cells] = x;
+            cy[cells] = y;
+            half[cells] = h;
+            mass[cells] = 0;
+            sumX[cells] = 0;
+            sumY[cells] = 0;
+            child[cells] = -1;
+            point[cells] = -1;
+            return cells++;
+        }
+
+        /**
+         * Internal method to grow the cell arrays.
+         *
+         * @param capacity the number of cells that must fit.
+         */
+        private void allocate(int capacity) {
+            cx = cx == null ? new double[capacity] : Arrays.copyOf(cx, capacity);
+            cy = cy == null ? new double[capacity] : Arrays.copyOf(cy, capacity);
+            half = half == null ? new double[capacity] : Arrays.copyOf(half, capacity);
+            mass = mass == null ? new double[capacity] : Arrays.copyOf(mass, capacity);
+            sumX = sumX == null ? new double[capacity] : Arrays.copyOf(sumX, capacity);
+            sumY = sumY == null ? new double[capacity] : Arrays.copyOf(sumY, capacity);
+            child = child == null ? new int[capacity] : Arrays.copyOf(child, capacity);
+            point = point == null ? new int[capacity] : Arrays.copyOf(point, capacity);
+        }
+    }
+}
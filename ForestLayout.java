@@ -0,0 +1,645 @@
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.algorithms.util.IterativeContext;
+import edu.uci.ics.jung.graph.Graph;
+
+import org.apache.commons.collections15.Transformer;
+
+import java.awt.Dimension;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lays out a spanning forest (the MST edges selected so far) with every
+ * tree drawn radially around its center, and the trees packed in rows.
+ *
+ * <p>The layout is built incrementally: {@link #setForest(GraphEdge[], int)}
+ * hands it the edges selected so far (in selection order), and
+ * {@link #step()} merges the trees joined by the new edges and lays out
+ * again only the trees that changed, in O(size of the tree) each. The
+ * other trees keep their shape and are only moved by the packing, which
+ * places every tree again: O(number of trees) per step, as only the trees
+ * that changed are sorted (by size) and merged into the last packing's
+ * order. Going back to fewer edges (seeking back through the steps)
+ * rebuilds the forest from the first edges in O(V).
+ *
+ * <p>A tree is laid out around its center (the middle of a longest path),
+ * so its depth is as small as possible; every vertex gets a wedge of its
+ * parent's angle in proportion to the number of leaves below it. Edges of
+ * the graph that are not in the forest are not considered, so the MST is
+ * drawn without crossings.
+ *
+ * <p>The vertices are the ones of the graph when the layout was made;
+ * vertices added later are placed in the middle.
+ */
+class ForestLayout implements Layout<GraphNode, GraphEdge>, IterativeContext {
+    /**
+     * The least distance (in layout units) between two rings of a tree.
+     */
+    private static final double RING = 60;
+    /**
+     * The distance (in layout units) wanted between two leaves on the outer ring.
+     */
+    private static final double SPACING = 40;
+    /**
+     * How far a vertex reaches from its position (the margin around a tree).
+     */
+    private static final double MARGIN = 20;
+
+    /**
+     * The graph.
+     */
+    private Graph<GraphNode, GraphEdge> graph;
+    /**
+     * The size of the layout.
+     */
+    private Dimension size;
+    /**
+     * The snapshot of the graph the layout is built on.
+     */
+    private CompactGraph cg;
+
+    /**
+     * The union-find parent of each vertex (its tree is the root's).
+     */
+    private int[] parent;
+    /**
+     * The number of vertices of each tree, valid for roots only.
+     */
+    private int[] treeSize;
+    /**
+     * The first forest adjacency entry of each vertex (-1 if none).
+     */
+    private int[] head;
+    /**
+     * The next adjacency entry of the same vertex.
+     */
+    private int[] adjNext;
+    /**
+     * The neighbor of each adjacency entry.
+     */
+    private int[] adjTo;
+    /**
+     * The number of adjacency entries used.
+     */
+    private int adjCount;
+
+    /**
+     * The position of each vertex relative to the center of its tree.
+     */
+    private double[] localX;
+    /**
+     * The position of each vertex relative to the center of its tree.
+     */
+    private double[] localY;
+    /**
+     * The radius of each tree, valid for roots only.
+     */
+    private double[] radius;
+    /**
+     * Where the center of each tree is placed, valid for roots only.
+     */
+    private double[] offsetX;
+    /**
+     * Where the center of each tree is placed, valid for roots only.
+     */
+    private double[] offsetY;
+    /**
+     * The scale and shift that fit the packed trees into the layout size.
+     */
+    private double scale = 1;
+    /**
+     * The scale and shift that fit the packed trees into the layout size.
+     */
+    private double shiftX = 0;
+    /**
+     * The scale and shift that fit the packed trees into the layout size.
+     */
+    private double shiftY = 0;
+
+    /**
+     * The roots of the trees to lay out again.
+     */
+    private int[] dirtyRoots;
+    /**
+     * The number of dirty roots.
+     */
+    private int dirtyCount;
+    /**
+     * Whether a root is in the dirty list.
+     */
+    private boolean[] dirtyFlag;
+    /**
+     * Whether the trees must be packed again.
+     */
+    private boolean repack;
+    /**
+     * The pack keys (see {@link #packKey(int)}) of the roots, in the order
+     * of the last packing.
+     */
+    private long[] packed;
+    /**
+     * The number of pack keys in the last packing.
+     */
+    private int packedCount;
+    /**
+     * Scratch array the next packing order is merged into.
+     */
+    private long[] packScratch;
+
+    /**
+     * Scratch arrays for the traversals of one tree.
+     */
+    private int[] order;
+    /**
+     * The BFS parent of each vertex in the last traversal.
+     */
+    private int[] bfsParent;
+    /**
+     * The depth of each vertex in the last traversal.
+     */
+    private int[] depth;
+    /**
+     * The number of leaves below each vertex.
+     */
+    private int[] leaves;
+    /**
+     * The first angle of the wedge of each vertex.
+     */
+    private double[] wedgeStart;
+    /**
+     * The angle of the wedge of each vertex.
+     */
+    private double[] wedgeSpan;
+
+    /**
+     * The forest edges, in selection order (only the first forestCount are read).
+     */
+    private GraphEdge[] forest = new GraphEdge[0];
+    /**
+     * The number of forest edges wanted.
+     */
+    private int forestCount = 0;
+    /**
+     * The number of forest edges merged into the layout.
+     */
+    private int applied = 0;
+
+    /**
+     * Vertices moved by hand, and where to.
+     */
+    private final Map<GraphNode, Point2D> moved = new HashMap<>();
+    /**
+     * The locked vertices.
+     */
+    private final Set<GraphNode> locked = new HashSet<>();
+
+    /**
+     * Constructs a layout with no forest edges yet (every vertex a tree of its own).
+     *
+     * @param graph the graph.
+     * @param size  the size of the layout.
+     */
+    public ForestLayout(Graph<GraphNode, GraphEdge> graph, Dimension size) {
+        this.graph = graph;
+        this.size = size;
+        rebuild();
+    }
+
+    /**
+     * Sets the forest to show. The edges must be given in the order they
+     * were selected, and a later call may only add edges at the end or
+     * take some off the end. Nothing moves until {@link #step()} is called.
+     *
+     * @param edges the forest edges (only the first count are read; the
+     *              array is kept, so the first count must not change).
+     * @param count the number of forest edges.
+     * @throws IllegalArgumentException if count is negative or more than the array holds.
+     */
+    public void setForest(GraphEdge[] edges, int count) {
+        if (count < 0 || count > edges.length) {
+            throw new IllegalArgumentException("Bad forest size: " + count);
+        }
+        forest = edges;
+        forestCount = count;
+        if (count < applied) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Merges the new forest edges and lays out again the trees they changed.
+     */
+    public void step() {
+        if (graphChanged()) {
+            rebuild();
+        }
+        for (; applied < forestCount; applied++) {
+            int e = cg.indexOf(forest[applied]);
+            if (e >= 0) {
+                merge(cg.getEdgeU(e), cg.getEdgeV(e));
+            }
+        }
+        for (int i = 0; i < dirtyCount; i++) {
+            int r = dirtyRoots[i];
+            if (parent[r] == r) {
+                layoutTree(r);
+            }
+        }
+        if (repack) {
+            pack();
+            repack = false;
+            moved.clear();
+        }
+        for (int i = 0; i < dirtyCount; i++) {
+            dirtyFlag[dirtyRoots[i]] = false;
+        }
+        dirtyCount = 0;
+    }
+
+    /**
+     * Returns whether every forest edge is laid out.
+     *
+     * @return true if {@link #step()} has nothing to do.
+     */
+    public boolean done() {
+        return applied == forestCount && dirtyCount == 0 && !repack;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Point2D transform(GraphNode v) {
+        Point2D p = moved.get(v);
+        if (p != null) {
+            return new Point2D.Double(p.getX(), p.getY());
+        }
+        int i = cg.indexOf(v);
+        if (i < 0) {
+            return new Point2D.Double(size.getWidth() / 2, size.getHeight() / 2);
+        }
+        int r = find(i);
+        return new Point2D.Double(shiftX + scale * (offsetX[r] + localX[i]),
+            shiftY + scale * (offsetY[r] + localY[i]));
+    }
+
+    /**
+     * Lays out the forest from scratch.
+     */
+    public void initialize() {
+        rebuild();
+        step();
+    }
+
+    /**
+     * Does nothing: the positions come from the forest.
+     *
+     * @param initializer ignored.
+     */
+    public void setInitializer(Transformer<GraphNode, Point2D> initializer) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setGraph(Graph<GraphNode, GraphEdge> graph) {
+        this.graph = graph;
+        rebuild();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Graph<GraphNode, GraphEdge> getGraph() {
+        return graph;
+    }
+
+    /**
+     * Lays out the forest from scratch.
+     */
+    public void reset() {
+        initialize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setSize(Dimension size) {
+        this.size = size;
+        repack = true;
+        step();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Dimension getSize() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void lock(GraphNode v, boolean state) {
+        if (state) {
+            locked.add(v);
+        } else {
+            locked.remove(v);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isLocked(GraphNode v) {
+        return locked.contains(v);
+    }
+
+    /**
+     * Moves a vertex by hand. It stays there until the trees are packed again.
+     *
+     * @param v        the vertex.
+     * @param location where to put it.
+     */
+    public void setLocation(GraphNode v, Point2D location) {
+        if (!locked.contains(v)) {
+            moved.put(v, new Point2D.Double(location.getX(), location.getY()));
+        }
+    }
+
+    /**
+     * Internal method to tell whether the graph changed since the snapshot
+     * was taken. A Graph310 keeps its snapshot until it is edited, so
+     * comparing snapshots is enough; other graphs are compared by size.
+     *
+     * @return true if the layout must be rebuilt.
+     */
+    private boolean graphChanged() {
+        if (graph instanceof Graph310) {
+            return ((Graph310) graph).compact() != cg;
+        }
+        return cg.getVertexCount() != graph.getVertexCount() || cg.getEdgeCount() != graph.getEdgeCount();
+    }
+
+    /**
+     * Internal method to start over from a new snapshot of the graph,
+     * with every vertex a tree of its own (the forest edges are merged
+     * again by the next {@link #step()}).
+     */
+    private void rebuild() {
+        cg = CompactGraph.of(graph);
+        int n = cg.getVertexCount();
+        parent = new int[n];
+        treeSize = new int[n];
+        head = new int[n];
+        adjNext = new int[2 * n];
+        adjTo = new int[2 * n];
+        adjCount = 0;
+        localX = new double[n];
+        localY = new double[n];
+        radius = new double[n];
+        offsetX = new double[n];
+        offsetY = new double[n];
+        dirtyRoots = new int[n];
+        dirtyFlag = new boolean[n];
+        dirtyCount = 0;
+        order = new int[n];
+        bfsParent = new int[n];
+        depth = new int[n];
+        leaves = new int[n];
+        wedgeStart = new double[n];
+        wedgeSpan = new double[n];
+        packed = new long[n];
+        packScratch = new long[n];
+        for (int v = 0; v < n; v++) {
+            parent[v] = v;
+            treeSize[v] = 1;
+            head[v] = -1;
+            radius[v] = MARGIN;
+            packed[v] = packKey(v);
+        }
+        packedCount = n;
+        applied = 0;
+        repack = true;
+        moved.clear();
+    }
+
+    /**
+     * Internal method to find the root of a vertex's tree (with path halving).
+     *
+     * @param v the vertex.
+     * @return the root of its tree.
+     */
+    private int find(int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    /**
+     * Internal method to join two trees with a forest edge.
+     *
+     * @param u one endpoint.
+     * @param v the other endpoint.
+     */
+    private void merge(int u, int v) {
+        int ru = find(u);
+        int rv = find(v);
+        if (ru == rv || adjCount + 2 > adjTo.length) {
+            return;
+        }
+        if (treeSize[ru] < treeSize[rv]) {
+            int tmp = ru;
+            ru = rv;
+            rv = tmp;
+        }
+        parent[rv] = ru;
+        treeSize[ru] += treeSize[rv];
+
+        adjTo[adjCount] = v;
+        adjNext[adjCount] = head[u];
+        head[u] = adjCount++;
+        adjTo[adjCount] = u;
+        adjNext[adjCount] = head[v];
+        head[v] = adjCount++;
+
+        if (!dirtyFlag[ru]) {
+            dirtyFlag[ru] = true;
+            dirtyRoots[dirtyCount++] = ru;
+        }
+        repack = true;
+    }
+
+    /**
+     * Internal method to walk a tree breadth first, filling order,
+     * bfsParent and depth.
+     *
+     * @param start the vertex to start from.
+     * @return the number of vertices reached (the tree size).
+     */
+    private int bfs(int start) {
+        order[0] = start;
+        bfsParent[start] = -1;
+        depth[start] = 0;
+        int count = 1;
+        for (int i = 0; i < count; i++) {
+            int v = order[i];
+            for (int a = head[v]; a >= 0; a = adjNext[a]) {
+                int w = adjTo[a];
+                if (w != bfsParent[v]) {
+                    bfsParent[w] = v;
+                    depth[w] = depth[v] + 1;
+                    order[count++] = w;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Internal method to lay out one tree radially around its center,
+     * in O(size of the tree).
+     *
+     * @param root the root of the tree (in the union-find sense).
+     */
+    private void layoutTree(int root) {
+        //the center of a tree is the middle of a longest path, found with two walks
+        int count = bfs(root);
+        int far = order[count - 1];
+        count = bfs(far);
+        int center = order[count - 1];
+        for (int steps = depth[center] / 2; steps > 0; steps--) {
+            center = bfsParent[center];
+        }
+        count = bfs(center);
+
+        //leaves below each vertex, from the bottom up
+        for (int i = count - 1; i >= 0; i--) {
+            leaves[order[i]] = 0;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int v = order[i];
+            leaves[v] = Math.max(leaves[v], 1);
+            leaves[bfsParent[v]] += leaves[v];
+        }
+        leaves[center] = Math.max(leaves[center], 1);
+
+        //rings far enough apart for the leaves to fit on the outer one
+        int maxDepth = depth[order[count - 1]];
+        double ring = maxDepth == 0 ? RING
+            : Math.max(RING, SPACING * leaves[center] / (2 * Math.PI * maxDepth));
+
+        //each vertex shares out its wedge among its children, by leaves
+        wedgeStart[center] = 0;
+        wedgeSpan[center] = 2 * Math.PI;
+        localX[center] = 0;
+        localY[center] = 0;
+        for (int i = 0; i < count; i++) {
+            int v = order[i];
+            double angle = wedgeStart[v];
+            for (int a = head[v]; a >= 0; a = adjNext[a]) {
+                int w = adjTo[a];
+                if (w != bfsParent[v]) {
+                    wedgeStart[w] = angle;
+                    wedgeSpan[w] = wedgeSpan[v] * leaves[w] / leaves[v];
+                    angle += wedgeSpan[w];
+                    double mid = wedgeStart[w] + wedgeSpan[w] / 2;
+                    localX[w] = depth[w] * ring * Math.cos(mid);
+                    localY[w] = depth[w] * ring * Math.sin(mid);
+                }
+            }
+        }
+        radius[root] = maxDepth * ring + MARGIN;
+    }
+
+    /**
+     * Internal method to make the key a root is sorted by for packing:
+     * its radius, then its index (the bits of a positive float sort like
+     * the float).
+     *
+     * @param r the root.
+     * @return the pack key.
+     */
+    private long packKey(int r) {
+        return ((long) Float.floatToIntBits((float) radius[r]) << 32) | r;
+    }
+
+    /**
+     * Internal method to pack the trees in rows, largest first, and fit
+     * the rows into the layout size. Must be called before the dirty roots
+     * are cleared: only they are sorted again, the other trees keep their
+     * place in the last packing's order.
+     */
+    private void pack() {
+        int n = cg.getVertexCount();
+        if (n == 0) {
+            return;
+        }
+        //the trees laid out again are sorted on their own
+        long[] fresh = new long[dirtyCount];
+        int freshCount = 0;
+        for (int i = 0; i < dirtyCount; i++) {
+            int r = dirtyRoots[i];
+            if (parent[r] == r) {
+                fresh[freshCount++] = packKey(r);
+            }
+        }
+        Arrays.sort(fresh, 0, freshCount);
+
+        //and merged with the trees of the last packing that are unchanged
+        long[] keys = packScratch;
+        int trees = 0;
+        int j = 0;
+        double area = 0;
+        for (int i = 0; i <= packedCount; i++) {
+            int old = i < packedCount ? (int) packed[i] : -1;
+            if (old >= 0 && (parent[old] != old || dirtyFlag[old])) {
+                continue;
+            }
+            while (j < freshCount && (old < 0 || fresh[j] < packed[i])) {
+                keys[trees++] = fresh[j++];
+            }
+            if (old >= 0) {
+                keys[trees++] = packed[i];
+            }
+        }
+        for (int i = 0; i < trees; i++) {
+            int r = (int) keys[i];
+            area += 4 * radius[r] * radius[r];
+        }
+        packScratch = packed;
+        packed = keys;
+        packedCount = trees;
+
+        //rows as wide as the layout's aspect ratio wants
+        double aspect = size.getWidth() / Math.max(1, size.getHeight());
+        double rowWidth = Math.sqrt(area * aspect);
+        double x = 0;
+        double y = 0;
+        double rowHeight = 0;
+        double width = 0;
+        for (int i = trees - 1; i >= 0; i--) {
+            int r = (int) keys[i];
+            double d = 2 * radius[r];
+            if (x > 0 && x + d > rowWidth) {
+                y += rowHeight;
+                x = 0;
+                rowHeight = 0;
+            }
+            offsetX[r] = x + radius[r];
+            offsetY[r] = y + radius[r];
+            x += d;
+            rowHeight = Math.max(rowHeight, d);
+            width = Math.max(width, x);
+        }
+        double height = y + rowHeight;
+        scale = Math.min(1, Math.min(size.getWidth() / width, size.getHeight() / height));
+        shiftX = (size.getWidth() - scale * width) / 2;
+        shiftY = (size.getHeight() - scale * height) / 2;
+    }
+}
@@ -7,7 +7,9 @@ import edu.uci.ics.jung.graph.util.EdgeType;
 
 import org.apache.commons.collections15.Factory;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 
 /**
  * A class that implements the UndirectedGraph interface.
@@ -18,16 +20,75 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
      * The maximum number of nodes allowed in the graph.
      */
     private static final int MAX_NUMBER_OF_NODES = 200;
+    /**
+     * The number of sets the graph builds for its answers (when metrics are on).
+     */
+    private static final Metrics.Counter SET_COPIES =
+        Metrics.counter("graph310_set_copies_total", "Set310 instances built by Graph310 methods");
+    /**
+     * The number of elements copied into those sets (when metrics are on).
+     */
+    private static final Metrics.Counter SET_COPY_ELEMENTS =
+        Metrics.counter("graph310_set_copy_elements_total", "Elements copied into Set310 instances by Graph310 methods");
     /**
      * The storage for the graph.
      */
     private Map310<GraphNode, Map310<GraphNode, GraphEdge>> storage;
+    /**
+     * The endpoints of every edge (lower id first), so that an edge can be
+     * looked up without scanning the adjacency of every vertex.
+     */
+    private final HashMap<GraphEdge, Pair<GraphNode>> endpoints = new HashMap<>();
+    /**
+     * The connected components of the graph. Kept up to date as vertices and
+     * edges are added, and rebuilt on demand after a removal.
+     */
+    private ComponentIndex components;
+    /**
+     * Whether the component index needs to be rebuilt (after a removal).
+     */
+    private boolean componentsStale = false;
+    /**
+     * The number of structural changes made to the graph so far.
+     */
+    private int modCount = 0;
+    /**
+     * The last compact snapshot of the graph (may be out of date).
+     */
+    private CompactGraph compact = null;
+    /**
+     * The value of modCount when the compact snapshot was taken.
+     */
+    private int compactModCount = -1;
+    /**
+     * Whether the traversals run on a copy of the snapshot renumbered for
+     * memory locality (see setReordered).
+     */
+    private boolean reordered = false;
+    /**
+     * The renumbered copy of the snapshot (null until first needed).
+     */
+    private CompactGraph reorderedSnapshot = null;
+    /**
+     * The snapshot the renumbered copy was made from.
+     */
+    private CompactGraph reorderedFrom = null;
+    /**
+     * A traversal of the traversal snapshot, kept for reachableSet with its
+     * marks cleared after every run (null until first needed).
+     */
+    private GraphTraversal traversal = null;
+    /**
+     * The snapshot the kept traversal walks.
+     */
+    private CompactGraph traversalGraph = null;
 
     /**
      * Constructs an empty graph.
      */
     public Graph310() {
         storage = new Map310<>();
+        components = new ComponentIndex();
     }
 
     /**
@@ -38,10 +99,19 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
      * @return a Collection view of all edges in this graph.
      */
     public Collection<GraphEdge> getEdges() {
+        GraphOperationEvent event = new GraphOperationEvent();
+        event.begin();
         Set310<GraphEdge> edges = new Set310<>();
         for (GraphNode node : storage.keySet()) {
             edges.addAll(storage.get(node).values());
         }
+        event.end();
+        if (Metrics.ENABLED) {
+            countCopy(edges.size());
+        }
+        if (event.shouldCommit()) {
+            commitOperation(event, "getEdges", -1, edges.size());
+        }
         return edges;
 
     }
@@ -55,6 +125,9 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
     public Collection<GraphNode> getVertices() {
         Set310<GraphNode> vertices = new Set310<>();
         vertices.addAll(storage.keySet());
+        if (Metrics.ENABLED) {
+            countCopy(vertices.size());
+        }
         return vertices;
     }
 
@@ -64,7 +137,7 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
      * @return the number of edges in this graph.
      */
     public int getEdgeCount() {
-        return getEdges().size();
+        return endpoints.size();
     }
 
     /**
@@ -73,7 +146,7 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
      * @return the number of vertices in this graph.
      */
     public int getVertexCount() {
-        return getVertices().size();
+        return storage.size();
     }
 
     /**
@@ -87,7 +160,7 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
         if (vertex == null) {
             return false;
         } else {
-            return getVertices().contains(vertex);
+            return storage.containsKey(vertex);
         }
     }
 
@@ -169,6 +242,23 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
         }
     }
 
+    /**
+     * Returns the edge stored between two vertices, reading the adjacency
+     * map of v1 only. Unlike {@link #findEdge} this skips the incidence
+     * checks (which copy the incident edges of v1), so it costs two map lookups instead of O(degree).
+     *
+     * @param v1 the first vertex.
+     * @param v2 the second vertex.
+     * @return the edge that connects v1 to v2, or null if there is none (or v1 is not present).
+     */
+    public GraphEdge edgeBetween(GraphNode v1, GraphNode v2) {
+        if (v1 == null || v2 == null) {
+            return null;
+        }
+        Map310<GraphNode, GraphEdge> adjacent = storage.get(v1);
+        return adjacent == null ? null : adjacent.get(v2);
+    }
+
     /**
      * Returns true if vertex and edge.
      * are incident to each other.
@@ -197,32 +287,24 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
      * @return the endpoints (incident vertices) of edge or null if edge is not present.
      */
     public Pair<GraphNode> getEndpoints(GraphEdge edge) {
-        if (edge == null) {
-            return null;
+        GraphOperationEvent event = new GraphOperationEvent();
+        event.begin();
+        Pair<GraphNode> ret = findEndpoints(edge);
+        event.end();
+        if (event.shouldCommit()) {
+            commitOperation(event, "getEndpoints", edge == null ? -1 : edge.getId(), ret == null ? 0 : 2);
         }
+        return ret;
+    }
 
-        GraphNode node1 = null;
-        GraphNode node2 = null;
-
-        for (GraphNode node : storage.keySet()) {
-            if (storage.get(node).containsValue(edge)) {
-                if (node1 == null) {
-                    node1 = node;
-                } else {
-                    node2 = node;
-                    break;
-                }
-            }
-        }
-        if (node1 == null || node2 == null) {
-            return null;
-        } else {
-            if (node1.getId() < node2.getId()) {
-                return new Pair<>(node1, node2);
-            } else {
-                return new Pair<>(node2, node1);
-            }
-        }
+    /**
+     * Internal method to look up the endpoints of an edge. O(1).
+     *
+     * @param edge the edge whose endpoints are to be returned.
+     * @return the endpoints of edge (lower id first), or null if edge is not present.
+     */
+    private Pair<GraphNode> findEndpoints(GraphEdge edge) {
+        return edge == null ? null : endpoints.get(edge);
     }
 
     /**
@@ -283,6 +365,11 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
             } else {
                 storage.get(v2).put(v1, e);
             }
+            endpoints.put(e, v1.getId() < v2.getId() ? new Pair<>(v1, v2) : new Pair<>(v2, v1));
+            if (!componentsStale) {
+                components.union(v1, v2);
+            }
+            modCount++;
             return true;
         }
     }
@@ -300,11 +387,15 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
         if (vertex == null) {
             throw new IllegalArgumentException();
         } else {
-            if (getVertices().contains(vertex)) {
+            if (containsVertex(vertex)) {
                 return false;
             }
             if (storage.get(vertex) == null) {
                 storage.put(vertex, new Map310<>());
+                if (!componentsStale) {
+                    components.addVertex(vertex);
+                }
+                modCount++;
                 return true;
             } else {
                 return false;
@@ -334,6 +425,9 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
                 } else {
                     storage.get(node1).remove(node2);
                     storage.get(node2).remove(node1);
+                    endpoints.remove(edge);
+                    componentsStale = true;
+                    modCount++;
                     return true;
                 }
             }
@@ -369,9 +463,11 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
                 return false;
             } else {
                 for (GraphNode node : storage.get(vertex).keySet()) {
-                    storage.get(node).remove(vertex);
+                    endpoints.remove(storage.get(node).remove(vertex));
                 }
                 storage.remove(vertex);
+                componentsStale = true;
+                modCount++;
                 return true;
             }
         }
@@ -387,39 +483,424 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
      * Report a set of graph nodes that are reachable from the given vertex.
      * Do not include vertex itself in the set.
      * No particular order is required (hence a set).
+     * Runs a breadth-first search over {@link #traversalSnapshot()}, so O(C log C + E_C):
+     * C and E_C are the vertices and edges of the component of vertex
+     * (plus O(V + E) to rebuild the snapshot and its traversal if the graph
+     * has changed).
      *
      * @param vertex the vertex whose reachable set is to be returned.
      * @return a set of graph nodes that are reachable from vertex, or an empty set if none, return null if vertex is not present.
      */
 
     public Set310<GraphNode> reachableSet(GraphNode vertex) {
-        Set310<GraphNode> set = new Set310<>();
         if (vertex == null || !storage.containsKey(vertex)) {
             return null;
         } else {
-            reachableSetHelper(vertex, set);
-            set.remove(vertex);
-            return set;
+            GraphOperationEvent event = new GraphOperationEvent();
+            event.begin();
+            CompactGraph cg = traversalSnapshot();
+            if (traversalGraph != cg) {
+                traversal = new GraphTraversal(cg);
+                traversalGraph = cg;
+            }
+            int source = cg.indexOf(vertex);
+            int[] reached = new int[componentSize(vertex) - 1];
+            int[] count = {0};
+            traversal.bfs(source, new TraversalVisitor() {
+                public void treeEdge(int from, int to, int edge) {
+                    reached[count[0]++] = to;
+                }
+            });
+            //undo the run's marks, so the next call can use the traversal again
+            traversal.clear(source);
+            for (int i = 0; i < count[0]; i++) {
+                traversal.clear(reached[i]);
+            }
+            //the snapshot's vertices are sorted, so sorting indices sorts the nodes
+            //(a renumbered copy's are not: its nodes are sorted instead)
+            if (cg == compact) {
+                Arrays.sort(reached, 0, count[0]);
+            }
+            GraphNode[] others = new GraphNode[count[0]];
+            for (int i = 0; i < others.length; i++) {
+                others[i] = cg.getNode(reached[i]);
+            }
+            if (cg != compact) {
+                Arrays.sort(others);
+            }
+            if (Metrics.ENABLED) {
+                countCopy(others.length);
+            }
+            Set310<GraphNode> ret = balancedSet(others);
+            event.end();
+            if (event.shouldCommit()) {
+                commitOperation(event, "reachableSet", vertex.getId(), others.length);
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Returns true if there is a path between the two vertices.
+     * O(1) amortized, except right after a removal.
+     *
+     * @param v1 the first vertex.
+     * @param v2 the second vertex.
+     * @return true if both vertices are present and connected, false otherwise.
+     */
+    public boolean isConnected(GraphNode v1, GraphNode v2) {
+        if (v1 == null || v2 == null || !storage.containsKey(v1) || !storage.containsKey(v2)) {
+            return false;
+        }
+        return getComponents().connected(v1, v2);
+    }
+
+    /**
+     * Returns the number of vertices in the connected component of vertex
+     * (including vertex itself).
+     *
+     * @param vertex the vertex whose component size is to be returned.
+     * @return the size of the component of vertex, or 0 if vertex is not present.
+     */
+    public int componentSize(GraphNode vertex) {
+        if (vertex == null || !storage.containsKey(vertex)) {
+            return 0;
+        }
+        return getComponents().componentSize(vertex);
+    }
+
+    /**
+     * Returns the number of connected components in the graph.
+     *
+     * @return the number of connected components.
+     */
+    public int componentCount() {
+        return getComponents().getComponentCount();
+    }
+
+    /**
+     * Returns true if the graph contains a cycle.
+     * O(V + E), iterative.
+     *
+     * @return true if the graph has a cycle.
+     */
+    public boolean hasCycle() {
+        return new GraphTraversal(traversalSnapshot()).hasCycle();
+    }
+
+    /**
+     * Traverses everything reachable from start, reporting vertices and
+     * edges (as indices into {@link #traversalSnapshot()}) to the visitor.
+     * O(V + E), iterative.
+     *
+     * @param start       the vertex to start from.
+     * @param depthFirst  true for depth-first order, false for breadth-first.
+     * @param visitor     the callbacks.
+     * @return the number of vertices visited, or 0 if start is not present.
+     */
+    public int traverse(GraphNode start, boolean depthFirst, TraversalVisitor visitor) {
+        CompactGraph cg = traversalSnapshot();
+        int source = cg.indexOf(start);
+        if (source < 0) {
+            return 0;
+        }
+        GraphTraversal traversal = new GraphTraversal(cg);
+        return depthFirst ? traversal.dfs(source, visitor) : traversal.bfs(source, visitor);
+    }
+
+    /**
+     * Builds a new graph from vertices and edges in one pass, for callers
+     * that already hold a simple graph (no repeated vertices, self-loops or
+     * parallel edges). Keys are inserted into the adjacency maps median-first,
+     * so the trees stay balanced even when the vertices come in id order
+     * (one addVertex/addEdge at a time would build a path). O((V + E) log V).
+     *
+     * @param nodes the vertices.
+     * @param edges the edges.
+     * @param ends1 the first endpoint of each edge.
+     * @param ends2 the second endpoint of each edge.
+     * @return the graph.
+     * @throws IllegalArgumentException if the input is not a simple graph on these vertices.
+     */
+    static Graph310 build(GraphNode[] nodes, GraphEdge[] edges, GraphNode[] ends1, GraphNode[] ends2) {
+        if (edges.length != ends1.length || edges.length != ends2.length) {
+            throw new IllegalArgumentException("One pair of endpoints is needed per edge");
+        }
+        int n = nodes.length;
+        int m = edges.length;
+        GraphNode[] sorted = nodes.clone();
+        Arrays.sort(sorted);
+        for (int v = 1; v < n; v++) {
+            if (sorted[v].compareTo(sorted[v - 1]) == 0) {
+                throw new IllegalArgumentException("Repeated vertex " + sorted[v]);
+            }
+        }
+
+        //adjacency by sorted index: start[v]..start[v+1] in neighbor/via
+        int[] u = new int[m];
+        int[] w = new int[m];
+        int[] start = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            u[e] = Arrays.binarySearch(sorted, ends1[e]);
+            w[e] = Arrays.binarySearch(sorted, ends2[e]);
+            if (u[e] < 0 || w[e] < 0 || u[e] == w[e] || edges[e] == null) {
+                throw new IllegalArgumentException("Bad edge " + edges[e]);
+            }
+            start[u[e] + 1]++;
+            start[w[e] + 1]++;
         }
+        for (int v = 0; v < n; v++) {
+            start[v + 1] += start[v];
+        }
+        int[] fill = Arrays.copyOf(start, n);
+        long[] slots = new long[2 * m];
+        for (int e = 0; e < m; e++) {
+            slots[fill[u[e]]++] = (long) w[e] << 32 | e;
+            slots[fill[w[e]]++] = (long) u[e] << 32 | e;
+        }
+
+        Graph310 g = new Graph310();
+        for (int v : balancedOrder(n)) {
+            g.storage.put(sorted[v], new Map310<>());
+            g.components.addVertex(sorted[v]);
+        }
+        for (int v = 0; v < n; v++) {
+            Arrays.sort(slots, start[v], start[v + 1]);
+            int degree = start[v + 1] - start[v];
+            for (int i = 1; i < degree; i++) {
+                if (slots[start[v] + i] >>> 32 == slots[start[v] + i - 1] >>> 32) {
+                    throw new IllegalArgumentException("Parallel edges at " + sorted[v]);
+                }
+            }
+            Map310<GraphNode, GraphEdge> adjacent = g.storage.get(sorted[v]);
+            for (int i : balancedOrder(degree)) {
+                long slot = slots[start[v] + i];
+                adjacent.put(sorted[(int) (slot >>> 32)], edges[(int) slot]);
+            }
+        }
+        for (int e = 0; e < m; e++) {
+            GraphNode a = sorted[u[e]];
+            GraphNode b = sorted[w[e]];
+            g.endpoints.put(edges[e], a.getId() < b.getId() ? new Pair<>(a, b) : new Pair<>(b, a));
+            g.components.union(a, b);
+        }
+        g.modCount = n + m;
+        return g;
     }
 
     /**
-     * Helper method for reachableSet.
+     * Internal method to list 0..n-1 in an order that builds a balanced
+     * binary search tree when inserted one by one: the middle of each
+     * range comes before the two halves.
      *
-     * @param vertex  the vertex whose reachable set is to be returned.
-     * @param set the set of visited nodes.
+     * @param n the number of positions.
+     * @return the positions, in insertion order.
      */
-    private void reachableSetHelper(GraphNode vertex, Set310<GraphNode> set) {
-        Collection<GraphNode> neighbors = getNeighbors(vertex);
-        if(neighbors == null){
-            return;
+    private static int[] balancedOrder(int n) {
+        int[] order = new int[n];
+        int[] ranges = new int[4 * n + 2];
+        int count = 0;
+        int head = 0;
+        int tail = 0;
+        ranges[tail++] = 0;
+        ranges[tail++] = n;
+        while (head < tail) {
+            int lo = ranges[head++];
+            int hi = ranges[head++];
+            if (lo >= hi) {
+                continue;
+            }
+            int mid = (lo + hi) >>> 1;
+            order[count++] = mid;
+            ranges[tail++] = lo;
+            ranges[tail++] = mid;
+            ranges[tail++] = mid + 1;
+            ranges[tail++] = hi;
         }
-        for (GraphNode neighbor : neighbors) {
-            if (!set.contains(neighbor)) {
-                set.add(neighbor);
-                reachableSetHelper(neighbor, set);
+        return order;
+    }
+
+    /**
+     * Returns an array-based snapshot of the graph. The snapshot is cached
+     * and only rebuilt after the graph has been changed.
+     *
+     * @return a compact snapshot of the current graph.
+     */
+    public CompactGraph compact() {
+        if (compact == null || compactModCount != modCount) {
+            int n = storage.size();
+            GraphNode[] nodes = new GraphNode[n];
+            int i = 0;
+            int m = 0;
+            for (GraphNode node : storage.keySet()) {
+                nodes[i++] = node;
+                m += storage.get(node).size();
+            }
+            Arrays.sort(nodes);
+            m /= 2;
+
+            //every edge is stored under both endpoints: keep it from the smaller one
+            GraphEdge[] edges = new GraphEdge[m];
+            int[] edgeU = new int[m];
+            int[] edgeV = new int[m];
+            int[] weights = new int[m];
+            int e = 0;
+            for (int u = 0; u < n; u++) {
+                Map310<GraphNode, GraphEdge> neighbors = storage.get(nodes[u]);
+                for (GraphNode other : neighbors.keySet()) {
+                    int v = Arrays.binarySearch(nodes, other);
+                    if (v > u) {
+                        edges[e] = neighbors.get(other);
+                        edgeU[e] = u;
+                        edgeV[e] = v;
+                        weights[e] = edges[e].getWeight();
+                        e++;
+                    }
+                }
             }
+            compact = new CompactGraph(nodes, edges, edgeU, edgeV, weights);
+            compactModCount = modCount;
         }
+        return compact;
+    }
+
+    /**
+     * Turns renumbering of the traversal snapshot on or off. When on, the
+     * traversals (reachableSet, hasCycle, traverse and the relabeling of
+     * components after a removal) run on a copy of {@link #compact()} whose
+     * vertices are renumbered in breadth-first order ({@link VertexOrder#bfs}),
+     * so that neighbors get nearby indices and a traversal stays in cache.
+     * The copy costs another O(V + E) after every edit (a few traversals'
+     * worth), so it pays off only for large graphs that are traversed many
+     * times between edits; that is why it is off by default. The map
+     * storage itself is the same either way.
+     *
+     * @param reordered true to traverse a renumbered copy of the snapshot.
+     */
+    public void setReordered(boolean reordered) {
+        this.reordered = reordered;
+        reorderedSnapshot = null;
+        reorderedFrom = null;
+    }
+
+    /**
+     * Returns whether the traversals run on a renumbered snapshot.
+     *
+     * @return true if renumbering is on.
+     */
+    public boolean isReordered() {
+        return reordered;
+    }
+
+    /**
+     * Returns the snapshot the traversals run on: {@link #compact()}, or
+     * its renumbered copy if {@link #setReordered renumbering} is on. Like
+     * compact(), it is cached until the graph is changed.
+     *
+     * @return the traversal snapshot.
+     */
+    public CompactGraph traversalSnapshot() {
+        CompactGraph cg = compact();
+        if (!reordered) {
+            return cg;
+        }
+        if (reorderedFrom != cg) {
+            reorderedSnapshot = cg.reorder(VertexOrder.bfs(cg));
+            reorderedFrom = cg;
+        }
+        return reorderedSnapshot;
+    }
+
+    /**
+     * Returns the component index, relabeling the graph first if a removal
+     * has made it stale.
+     *
+     * @return the up-to-date component index.
+     */
+    private ComponentIndex getComponents() {
+        if (componentsStale) {
+            CompactGraph cg = traversalSnapshot();
+            int n = cg.getVertexCount();
+            int[] labels = new int[n];
+            int count = new GraphTraversal(cg).labelComponents(labels);
+
+            //join every vertex with the first vertex seen with the same label
+            GraphNode[] first = new GraphNode[count];
+            components.clear();
+            for (int v = 0; v < n; v++) {
+                GraphNode node = cg.getNode(v);
+                components.addVertex(node);
+                if (first[labels[v]] == null) {
+                    first[labels[v]] = node;
+                } else {
+                    components.union(first[labels[v]], node);
+                }
+            }
+            componentsStale = false;
+        }
+        return components;
+    }
+
+    /**
+     * Internal method to fill in and commit a flight recorder event for a
+     * slow call (only called when the event is being recorded).
+     *
+     * @param event      the ended event.
+     * @param operation  the method called.
+     * @param argumentId the id of the edge or vertex asked about (-1 if none).
+     * @param resultSize the number of elements in the answer.
+     */
+    private void commitOperation(GraphOperationEvent event, String operation, int argumentId, int resultSize) {
+        event.operation = operation;
+        event.argumentId = argumentId;
+        event.resultSize = resultSize;
+        event.vertexCount = storage.size();
+        event.commit();
+    }
+
+    /**
+     * Internal method to count a set built for an answer.
+     *
+     * @param elements the number of elements copied into it.
+     */
+    private static void countCopy(int elements) {
+        SET_COPIES.increment();
+        SET_COPY_ELEMENTS.add(elements);
+    }
+
+    /**
+     * Builds a set from sorted nodes, inserting them middle-first so that
+     * the underlying BST stays balanced (and shallow) for any input size.
+     *
+     * @param sorted the nodes in ascending order.
+     * @return a set of the given nodes.
+     */
+    private static Set310<GraphNode> balancedSet(GraphNode[] sorted) {
+        Set310<GraphNode> set = new Set310<>();
+        //queue of [lo, hi) ranges, visited breadth-first
+        int[] ranges = new int[2 * sorted.length + 2];
+        int head = 0;
+        int tail = 0;
+        ranges[tail++] = 0;
+        ranges[tail++] = sorted.length;
+        while (head < tail) {
+            int lo = ranges[head++];
+            int hi = ranges[head++];
+            if (lo >= hi) {
+                continue;
+            }
+            int mid = (lo + hi) >>> 1;
+            set.add(sorted[mid]);
+            if (lo < mid) {
+                ranges[tail++] = lo;
+                ranges[tail++] = mid;
+            }
+            if (mid + 1 < hi) {
+                ranges[tail++] = mid + 1;
+                ranges[tail++] = hi;
+            }
+        }
+        return set;
     }
 
     /**
@@ -611,6 +1092,9 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
         Set310<GraphNode> ret = new Set310<>();
         ret.add(p.getFirst());
         ret.add(p.getSecond());
+        if (Metrics.ENABLED) {
+            countCopy(2);
+        }
         return ret;
     }
 
@@ -720,6 +1204,9 @@ class Graph310 implements Graph<GraphNode, GraphEdge>, UndirectedGraph<GraphNode
 
         Set310<GraphEdge> ret = new Set310<>();
         ret.add(edge);
+        if (Metrics.ENABLED) {
+            countCopy(1);
+        }
         return ret;
 
     }
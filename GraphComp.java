@@ -1,5 +1,7 @@
 import java.awt.Color;
 
+import java.util.Arrays;
+
 /**
  *  An parent class for graph components, such as nodes and edges.
  *  
@@ -21,7 +23,7 @@ class GraphComp implements Comparable<GraphComp> {
 	/**
 	 *  The color of the component (for the GUI).
 	 */
-	protected Color color;
+	protected volatile Color color;
 	
 	/**
 	 *  Fetches the color of the component.
@@ -35,7 +37,95 @@ class GraphComp implements Comparable<GraphComp> {
 	 *  
 	 *  @param color the color of the component
 	 */
-	public void setColor(Color color) { this.color = color; }
+	public void setColor(Color color) {
+		Color oldColor = this.color;
+		this.color = color;
+		
+		if(oldColor == color) {
+			return;
+		}
+		if(recorderCount != 0) {
+			ColorListener r = recorder.get();
+			if(r != null) {
+				r.colorChanged(this, oldColor, color);
+			}
+		}
+		ColorListener[] listeners = colorListeners;
+		for(ColorListener l : listeners) {
+			l.colorChanged(this, oldColor, color);
+		}
+	}
+	
+	/**
+	 *  The listener recording the color changes made by each thread
+	 *  (see setRecorder()).
+	 */
+	private static final ThreadLocal<ColorListener> recorder = new ThreadLocal<>();
+	
+	/**
+	 *  The number of threads with a recorder, so setColor() only looks
+	 *  one up while some thread is recording.
+	 */
+	private static volatile int recorderCount = 0;
+	
+	/**
+	 *  Sets the listener told about the color changes made by the current
+	 *  thread (and no other), replacing any earlier one. Unlike
+	 *  addColorListener(), this copies nothing, so it can be set and
+	 *  cleared around every step of an algorithm.
+	 *  
+	 *  @param listener the listener, or null to stop recording
+	 */
+	public static void setRecorder(ColorListener listener) {
+		boolean had = recorder.get() != null;
+		if(listener == null) {
+			recorder.remove();
+		} else {
+			recorder.set(listener);
+		}
+		if(had != (listener != null)) {
+			synchronized(GraphComp.class) {
+				recorderCount += had ? -1 : 1;
+			}
+		}
+	}
+	
+	/**
+	 *  The listeners told about every color change (copied on write,
+	 *  so setColor() only pays for a length check when there are none).
+	 */
+	private static volatile ColorListener[] colorListeners = new ColorListener[0];
+	
+	/**
+	 *  Registers a listener for the color changes of all components,
+	 *  made by any thread.
+	 *  
+	 *  @param listener the listener to add
+	 */
+	public static synchronized void addColorListener(ColorListener listener) {
+		ColorListener[] old = colorListeners;
+		ColorListener[] listeners = Arrays.copyOf(old, old.length + 1);
+		listeners[old.length] = listener;
+		colorListeners = listeners;
+	}
+	
+	/**
+	 *  Unregisters a listener added with addColorListener().
+	 *  
+	 *  @param listener the listener to remove
+	 */
+	public static synchronized void removeColorListener(ColorListener listener) {
+		ColorListener[] old = colorListeners;
+		for(int i = 0; i < old.length; i++) {
+			if(old[i] == listener) {
+				ColorListener[] listeners = new ColorListener[old.length - 1];
+				System.arraycopy(old, 0, listeners, 0, i);
+				System.arraycopy(old, i + 1, listeners, i, old.length - i - 1);
+				colorListeners = listeners;
+				return;
+			}
+		}
+	}
 	
 	/**
 	 *  {@inheritDoc}
@@ -0,0 +1,118 @@
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Structural hashing of graphs.
+ *
+ * <p>The hash covers the vertex ids and, for every edge, its id, its two
+ * endpoint ids and its weight. Colors and other GUI state are ignored.
+ * Each vertex and edge is mixed into 64 bits on its own and the results
+ * are summed, so the hash does not depend on iteration order and costs
+ * O(V + E) with no sorting.
+ */
+final class GraphHash {
+    /**
+     * Not instantiable.
+     */
+    private GraphHash() {
+    }
+
+    /**
+     * Computes the structural hash of a graph.
+     *
+     * @param graph the graph to hash.
+     * @return a 64-bit hash of the graph's structure and weights.
+     */
+    public static long of(Graph<GraphNode, GraphEdge> graph) {
+        if (graph instanceof Graph310) {
+            return of(((Graph310) graph).compact());
+        }
+        long h = mix(graph.getVertexCount()) ^ mix(~(long) graph.getEdgeCount());
+        for (GraphNode node : graph.getVertices()) {
+            h += vertexHash(node.getId());
+        }
+        for (GraphEdge edge : graph.getEdges()) {
+            Pair<GraphNode> ends = graph.getEndpoints(edge);
+            h += edgeHash(edge.getId(), ends.getFirst().getId(), ends.getSecond().getId(), edge.getWeight());
+        }
+        return mix(h);
+    }
+
+    /**
+     * Computes the structural hash of a compact graph.
+     * Gives the same value as {@link #of(Graph)} on the graph it was taken from.
+     *
+     * @param graph the graph to hash.
+     * @return a 64-bit hash of the graph's structure and weights.
+     */
+    public static long of(CompactGraph graph) {
+        long h = mix(graph.getVertexCount()) ^ mix(~(long) graph.getEdgeCount());
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            h += vertexHash(graph.getNode(v).getId());
+        }
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            h += edgeHash(graph.getEdge(e).getId(), graph.getNode(graph.getEdgeU(e)).getId(),
+                graph.getNode(graph.getEdgeV(e)).getId(), graph.getWeight(e));
+        }
+        return mix(h);
+    }
+
+    /**
+     * Computes a hash of a compact graph's topology only: vertex ids, edge ids
+     * and endpoints, but not weights. Anything that depends only on where the
+     * edges are (such as a layout) can be cached under this hash.
+     *
+     * @param graph the graph to hash.
+     * @return a 64-bit hash of the graph's structure.
+     */
+    public static long topology(CompactGraph graph) {
+        long h = mix(graph.getVertexCount()) ^ mix(~(long) graph.getEdgeCount() * 31);
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            h += vertexHash(graph.getNode(v).getId());
+        }
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            h += edgeHash(graph.getEdge(e).getId(), graph.getNode(graph.getEdgeU(e)).getId(),
+                graph.getNode(graph.getEdgeV(e)).getId(), 0);
+        }
+        return mix(h);
+    }
+
+    /**
+     * Internal method to hash one vertex.
+     *
+     * @param id the vertex id.
+     * @return the hash of the vertex.
+     */
+    private static long vertexHash(int id) {
+        return mix(0x9E3779B97F4A7C15L ^ id);
+    }
+
+    /**
+     * Internal method to hash one edge. The endpoints are unordered.
+     *
+     * @param id     the edge id.
+     * @param u      the id of one endpoint.
+     * @param v      the id of the other endpoint.
+     * @param weight the edge weight.
+     * @return the hash of the edge.
+     */
+    private static long edgeHash(int id, int u, int v, int weight) {
+        long lo = Math.min(u, v);
+        long hi = Math.max(u, v);
+        long h = mix(id + 0x632BE59BD9B4E019L);
+        h = mix(h ^ ((lo << 32) | (hi & 0xFFFFFFFFL)));
+        return mix(h ^ weight);
+    }
+
+    /**
+     * Internal method to scramble 64 bits (the SplitMix64 finalizer).
+     *
+     * @param z the value to scramble.
+     * @return the scrambled value.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,47 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Java Flight Recorder event for an expensive {@link Graph310} call
+ * ({@code getEndpoints}, {@code getEdges}, {@code reachableSet}).
+ *
+ * <p>Only calls slower than the threshold (20 microseconds by default,
+ * changeable in the recording settings) are recorded, so the frequent
+ * cheap calls do not flood a recording. Stack traces are kept so slow
+ * calls can be traced to their callers.
+ */
+@Name("mst.GraphOperation")
+@Label("Graph Operation")
+@Category({"MST", "Graph"})
+@Description("A slow Graph310 query")
+@Threshold("20 us")
+@StackTrace(true)
+class GraphOperationEvent extends jdk.jfr.Event {
+    /**
+     * The method called.
+     */
+    @Label("Operation")
+    String operation;
+
+    /**
+     * The id of the edge or vertex asked about (-1 if none).
+     */
+    @Label("Argument Id")
+    int argumentId = -1;
+
+    /**
+     * The number of elements in the answer.
+     */
+    @Label("Result Size")
+    int resultSize;
+
+    /**
+     * The number of vertices in the graph.
+     */
+    @Label("Vertex Count")
+    int vertexCount;
+}
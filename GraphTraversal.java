@@ -0,0 +1,230 @@
+import java.util.Arrays;
+
+/**
+ * Iterative breadth-first and depth-first traversals over a {@link CompactGraph}.
+ *
+ * <p>The traversal keeps its own stack/queue of vertex indices and marks
+ * visited vertices (and seen edges) in {@code long[]} bitsets, so a run is
+ * O(V + E), allocates nothing per visit, and cannot overflow the call stack
+ * on deep graphs. Visited marks persist between runs until {@link #reset()},
+ * which is what lets a series of runs label every component once, or
+ * until the vertices a run visited are {@link #clear(int) cleared}.
+ */
+class GraphTraversal {
+    /**
+     * The graph being traversed.
+     */
+    private final CompactGraph graph;
+    /**
+     * Visited marks, one bit per vertex.
+     */
+    private final long[] visited;
+    /**
+     * Seen marks, one bit per edge (so each edge is reported once).
+     */
+    private final long[] seenEdges;
+    /**
+     * The DFS stack or BFS queue of vertex indices.
+     */
+    private final int[] pending;
+    /**
+     * The next adjacency position to scan for each vertex on the DFS stack.
+     */
+    private final int[] cursor;
+
+    /**
+     * Constructs a traversal for a graph.
+     *
+     * @param graph the graph to traverse.
+     */
+    public GraphTraversal(CompactGraph graph) {
+        this.graph = graph;
+        int n = graph.getVertexCount();
+        visited = new long[(n + 63) >>> 6];
+        seenEdges = new long[(graph.getEdgeCount() + 63) >>> 6];
+        pending = new int[n];
+        cursor = new int[n];
+    }
+
+    /**
+     * Clears all visited marks.
+     */
+    public void reset() {
+        Arrays.fill(visited, 0L);
+        Arrays.fill(seenEdges, 0L);
+    }
+
+    /**
+     * Clears the visited mark of one vertex and the seen marks of its
+     * edges. Clearing every vertex a run visited undoes that run in time
+     * linear in what it visited, where {@link #reset()} is linear in the
+     * whole graph.
+     *
+     * @param v the vertex index.
+     */
+    public void clear(int v) {
+        visited[v >>> 6] &= ~(1L << v);
+        int end = graph.adjStart(v + 1);
+        for (int pos = graph.adjStart(v); pos < end; pos++) {
+            int e = graph.adjEdge(pos);
+            seenEdges[e >>> 6] &= ~(1L << e);
+        }
+    }
+
+    /**
+     * Returns true if a vertex has been visited since the last reset.
+     *
+     * @param v the vertex index.
+     * @return true if the vertex has been visited.
+     */
+    public boolean isVisited(int v) {
+        return (visited[v >>> 6] & (1L << v)) != 0;
+    }
+
+    /**
+     * Visits everything reachable from source in breadth-first order.
+     * Does nothing if source was already visited.
+     *
+     * @param source  the vertex index to start from.
+     * @param visitor the callbacks (may be null).
+     * @return the number of vertices visited by this run.
+     */
+    public int bfs(int source, TraversalVisitor visitor) {
+        if (isVisited(source)) {
+            return 0;
+        }
+        int head = 0;
+        int tail = 0;
+        mark(source, visitor);
+        pending[tail++] = source;
+        while (head < tail) {
+            int v = pending[head++];
+            int end = graph.adjStart(v + 1);
+            for (int pos = graph.adjStart(v); pos < end; pos++) {
+                if (follow(v, pos, visitor)) {
+                    pending[tail++] = graph.adjTarget(pos);
+                }
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Visits everything reachable from source in depth-first order.
+     * Does nothing if source was already visited.
+     *
+     * @param source  the vertex index to start from.
+     * @param visitor the callbacks (may be null).
+     * @return the number of vertices visited by this run.
+     */
+    public int dfs(int source, TraversalVisitor visitor) {
+        if (isVisited(source)) {
+            return 0;
+        }
+        int top = 0;
+        int count = 1;
+        mark(source, visitor);
+        cursor[source] = graph.adjStart(source);
+        pending[top++] = source;
+        while (top > 0) {
+            int v = pending[top - 1];
+            if (cursor[v] == graph.adjStart(v + 1)) {
+                top--;
+                continue;
+            }
+            int pos = cursor[v]++;
+            if (follow(v, pos, visitor)) {
+                int w = graph.adjTarget(pos);
+                cursor[w] = graph.adjStart(w);
+                pending[top++] = w;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Labels every vertex with the index of its connected component
+     * (components are numbered 0, 1, 2, ... in order of their smallest vertex).
+     * Resets the visited marks first.
+     *
+     * @param labels the array to fill, of length at least the vertex count.
+     * @return the number of components.
+     */
+    public int labelComponents(int[] labels) {
+        reset();
+        int count = 0;
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            if (isVisited(v)) {
+                continue;
+            }
+            int size = bfs(v, null);
+            //the run's vertices are still in the queue, in visit order
+            for (int i = 0; i < size; i++) {
+                labels[pending[i]] = count;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if the graph contains a cycle.
+     * A forest with C components has exactly V - C edges, so any extra
+     * edge closes a cycle. Resets the visited marks first.
+     *
+     * @return true if the graph has a cycle.
+     */
+    public boolean hasCycle() {
+        reset();
+        int components = 0;
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            if (bfs(v, null) > 0) {
+                components++;
+            }
+        }
+        return graph.getEdgeCount() > graph.getVertexCount() - components;
+    }
+
+    /**
+     * Internal method to mark a vertex visited and report it.
+     *
+     * @param v       the vertex index.
+     * @param visitor the callbacks (may be null).
+     */
+    private void mark(int v, TraversalVisitor visitor) {
+        visited[v >>> 6] |= 1L << v;
+        if (visitor != null) {
+            visitor.visitVertex(v);
+        }
+    }
+
+    /**
+     * Internal method to look at one adjacency entry of a vertex.
+     * Reports the edge (once) and marks the neighbor if it is new.
+     *
+     * @param v       the vertex being scanned.
+     * @param pos     the adjacency position.
+     * @param visitor the callbacks (may be null).
+     * @return true if the neighbor was reached for the first time.
+     */
+    private boolean follow(int v, int pos, TraversalVisitor visitor) {
+        int e = graph.adjEdge(pos);
+        if ((seenEdges[e >>> 6] & (1L << e)) != 0) {
+            return false;
+        }
+        seenEdges[e >>> 6] |= 1L << e;
+        int w = graph.adjTarget(pos);
+        if (isVisited(w)) {
+            if (visitor != null) {
+                visitor.nonTreeEdge(v, w, e);
+            }
+            return false;
+        }
+        if (visitor != null) {
+            visitor.treeEdge(v, w, e);
+        }
+        mark(w, visitor);
+        return true;
+    }
+}
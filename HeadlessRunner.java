@@ -0,0 +1,89 @@
+import edu.uci.ics.jung.algorithms.generators.random.ErdosRenyiGenerator;
+import edu.uci.ics.jung.graph.Graph;
+
+import java.util.Random;
+
+/**
+ * Runs the simulation without a GUI: generates a random graph the way
+ * {@link SimGUI} does, runs Kruskal's algorithm to the end, and prints a
+ * summary and the collected metrics.
+ *
+ * <p>Usage:
+ * {@code java -Dmst.metrics=true HeadlessRunner [numNodes] [connectProb] [seed] [json|prometheus]}.
+ * Without {@code -Dmst.metrics=true} nothing is measured and only the
+ * summary is printed.
+ */
+final class HeadlessRunner {
+    /**
+     * Not instantiable.
+     */
+    private HeadlessRunner() {
+    }
+
+    /**
+     * Generates a random graph like {@link SimGUI#genGraph()}.
+     *
+     * @param numNodes the number of nodes.
+     * @param prob     the probability that two nodes are connected with an edge.
+     * @param seed     the seed of the random number generator.
+     * @return the graph.
+     */
+    public static Graph<GraphNode, GraphEdge> generate(int numNodes, double prob, int seed) {
+        GraphNode.nodeCount = 0;
+        GraphEdge.edgeCount = 0;
+        ErdosRenyiGenerator<GraphNode, GraphEdge> gen = new ErdosRenyiGenerator<>(
+            Graph310.<GraphNode, GraphEdge>getFactory(),
+            GraphNode.getFactory(), GraphEdge.getFactory(),
+            numNodes, prob);
+        gen.setSeed(new Random(seed).nextInt());
+        return gen.create();
+    }
+
+    /**
+     * Runs an algorithm on a graph until it has no more steps.
+     *
+     * @param alg   the algorithm.
+     * @param graph the graph.
+     * @return the number of steps run.
+     */
+    public static int run(ThreeTenAlg alg, Graph<GraphNode, GraphEdge> graph) {
+        alg.reset(graph);
+        int steps = 0;
+        while (alg.step()) {
+            steps++;
+        }
+        return steps;
+    }
+
+    /**
+     * Runs the simulation and prints the metrics.
+     *
+     * @param args [0] = the number of nodes, [1] = the connection probability,
+     *             [2] = the seed, [3] = "json" (the default) or "prometheus".
+     */
+    public static void main(String[] args) {
+        int numNodes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        double prob = args.length > 1 ? Double.parseDouble(args[1]) : 0.1;
+        int seed = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        String format = args.length > 3 ? args[3] : "json";
+        if (!format.equals("json") && !format.equals("prometheus")) {
+            System.err.println("Unknown format " + format + ": use json or prometheus");
+            return;
+        }
+
+        Graph<GraphNode, GraphEdge> graph = generate(numNodes, prob, seed);
+        Kruskal310 alg = new Kruskal310();
+        long start = System.nanoTime();
+        int steps = run(alg, graph);
+        long elapsed = System.nanoTime() - start;
+
+        MstResult result = alg.getResult();
+        System.err.printf("%d vertices, %d edges: %d steps in %.1f ms, MST weight %d%n",
+            graph.getVertexCount(), graph.getEdgeCount(), steps, elapsed / 1e6, result.getTotalWeight());
+        if (!Metrics.ENABLED) {
+            System.err.println("Metrics are off: run with -Dmst.metrics=true to collect them");
+            return;
+        }
+        System.out.print(format.equals("json") ? Metrics.toJson() : Metrics.toPrometheus());
+    }
+}
@@ -0,0 +1,114 @@
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.algorithms.layout.LayoutDecorator;
+import edu.uci.ics.jung.graph.Graph;
+
+import java.awt.Dimension;
+import java.awt.geom.Point2D;
+
+/**
+ * A layout that keeps a {@link LayoutIndex} of its own positions up to date.
+ *
+ * <p>Moving one vertex (as the picking mouse does when a vertex is dragged)
+ * updates the index in O(degree). Anything that may move every vertex at
+ * once (resizing, resetting, stepping an iterative layout, changing the
+ * graph) drops the index, and the next call to {@link #getIndex()} builds
+ * a new one. Vertices and edges added to the graph are noticed the same way.
+ */
+class IndexedLayout extends LayoutDecorator<GraphNode, GraphEdge> {
+    /**
+     * How far a vertex reaches from its position (in layout units).
+     */
+    private final double radius;
+    /**
+     * The index of the current positions (null until it is needed).
+     */
+    private LayoutIndex index = null;
+
+    /**
+     * Wraps a layout.
+     *
+     * @param delegate the layout that places the vertices.
+     * @param radius   how far a vertex reaches from its position (in layout units).
+     */
+    public IndexedLayout(Layout<GraphNode, GraphEdge> delegate, double radius) {
+        super(delegate);
+        this.radius = radius;
+    }
+
+    /**
+     * Returns the index of the current positions, building it if needed.
+     *
+     * @return an up-to-date index.
+     */
+    public LayoutIndex getIndex() {
+        if (index == null || index.isStale()) {
+            index = new LayoutIndex(this, radius);
+        }
+        return index;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLocation(GraphNode v, Point2D location) {
+        super.setLocation(v, location);
+        if (index != null) {
+            index.moved(v);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step() {
+        super.step();
+        index = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initialize() {
+        super.initialize();
+        index = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSize(Dimension d) {
+        super.setSize(d);
+        index = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        index = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setGraph(Graph<GraphNode, GraphEdge> graph) {
+        super.setGraph(graph);
+        index = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDelegate(Layout<GraphNode, GraphEdge> delegate) {
+        super.setDelegate(delegate);
+        index = null;
+    }
+}
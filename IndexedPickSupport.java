@@ -0,0 +1,343 @@
+import edu.uci.ics.jung.algorithms.layout.CircleLayout;
+import edu.uci.ics.jung.algorithms.layout.FRLayout;
+import edu.uci.ics.jung.algorithms.layout.GraphElementAccessor;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+import edu.uci.ics.jung.graph.util.Context;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.MultiLayerTransformer;
+import edu.uci.ics.jung.visualization.RenderContext;
+import edu.uci.ics.jung.visualization.VisualizationServer;
+import edu.uci.ics.jung.visualization.VisualizationViewer;
+import edu.uci.ics.jung.visualization.picking.ShapePickSupport;
+
+import java.awt.Dimension;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Finds the vertex or edge under the mouse using the spatial index of an
+ * {@link IndexedLayout}, instead of testing the shape of every component.
+ *
+ * <p>Like JUNG's {@code ShapePickSupport}, the shapes are tested in the
+ * coordinates after the layout transform (the mouse point is taken out of
+ * the view transform first), so picking matches what is drawn. Only the
+ * components whose index box is near the mouse are tested, which makes a
+ * pick cost O(nearby components) instead of O(V+E). Layouts that are not
+ * indexed are handed to a plain {@code ShapePickSupport}.
+ */
+class IndexedPickSupport implements GraphElementAccessor<GraphNode, GraphEdge> {
+    /**
+     * How far (in layout units, before zooming) a vertex shape reaches from its center.
+     */
+    private static final double VERTEX_REACH = 20;
+    /**
+     * How far (in layout units, before zooming) an edge curve bulges from its chord.
+     */
+    private static final double EDGE_BULGE = 30;
+
+    /**
+     * The view being picked from.
+     */
+    private final VisualizationServer<GraphNode, GraphEdge> vv;
+    /**
+     * The size (in pixels) of the area around the mouse that must touch an edge.
+     */
+    private final float pickSize;
+    /**
+     * The fallback for layouts without an index.
+     */
+    private final ShapePickSupport<GraphNode, GraphEdge> fallback;
+
+    /**
+     * Constructs pick support for a view.
+     *
+     * @param vv       the view.
+     * @param pickSize the size (in pixels) of the area around the mouse that must touch an edge.
+     */
+    public IndexedPickSupport(VisualizationServer<GraphNode, GraphEdge> vv, float pickSize) {
+        this.vv = vv;
+        this.pickSize = pickSize;
+        this.fallback = new ShapePickSupport<>(vv, pickSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public GraphNode getVertex(Layout<GraphNode, GraphEdge> layout, double x, double y) {
+        if (!(layout instanceof IndexedLayout)) {
+            return fallback.getVertex(layout, x, y);
+        }
+        LayoutIndex idx = ((IndexedLayout) layout).getIndex();
+        RenderContext<GraphNode, GraphEdge> rc = vv.getRenderContext();
+        MultiLayerTransformer transformer = rc.getMultiLayerTransformer();
+        Point2D ip = transformer.inverseTransform(Layer.VIEW, new Point2D.Double(x, y));
+        Point2D lp = transformer.inverseTransform(Layer.LAYOUT, ip);
+        double reach = VERTEX_REACH / transformer.getTransformer(Layer.LAYOUT).getScale();
+
+        CompactGraph graph = idx.getGraph();
+        int[] best = {-1};
+        double[] bestDistance = {Double.POSITIVE_INFINITY};
+        idx.vertexIndicesIn(lp.getX() - reach, lp.getY() - reach, lp.getX() + reach, lp.getY() + reach, v -> {
+            Point2D p = transformer.transform(Layer.LAYOUT, new Point2D.Double(idx.getX(v), idx.getY(v)));
+            Shape shape = rc.getVertexShapeTransformer().transform(graph.getNode(v));
+            //the point is moved into the shape's frame, as ShapePickSupport does
+            double dx = ip.getX() - p.getX();
+            double dy = ip.getY() - p.getY();
+            if (!shape.contains(dx, dy)) {
+                return;
+            }
+            //like ShapePickSupport's CENTERED style: the closest center wins,
+            //and of equally close ones, the first in the graph's vertex order
+            Rectangle2D bounds = shape.getBounds2D();
+            double cx = bounds.getCenterX() - dx;
+            double cy = bounds.getCenterY() - dy;
+            double distance = cx * cx + cy * cy;
+            if (distance < bestDistance[0] || (distance == bestDistance[0] && v < best[0])) {
+                best[0] = v;
+                bestDistance[0] = distance;
+            }
+        });
+        return best[0] < 0 ? null : graph.getNode(best[0]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Collection<GraphNode> getVertices(Layout<GraphNode, GraphEdge> layout, Shape rectangle) {
+        if (!(layout instanceof IndexedLayout)) {
+            return fallback.getVertices(layout, rectangle);
+        }
+        LayoutIndex idx = ((IndexedLayout) layout).getIndex();
+        MultiLayerTransformer transformer = vv.getRenderContext().getMultiLayerTransformer();
+        Shape area = transformer.inverseTransform(Layer.VIEW, rectangle);
+        Rectangle2D box = transformer.inverseTransform(Layer.LAYOUT, area).getBounds2D();
+
+        CompactGraph graph = idx.getGraph();
+        Collection<GraphNode> ret = new HashSet<>();
+        idx.vertexIndicesIn(box.getMinX(), box.getMinY(), box.getMaxX(), box.getMaxY(), v -> {
+            Point2D p = transformer.transform(Layer.LAYOUT, new Point2D.Double(idx.getX(v), idx.getY(v)));
+            if (area.contains(p)) {
+                ret.add(graph.getNode(v));
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public GraphEdge getEdge(Layout<GraphNode, GraphEdge> layout, double x, double y) {
+        if (!(layout instanceof IndexedLayout)) {
+            return fallback.getEdge(layout, x, y);
+        }
+        LayoutIndex idx = ((IndexedLayout) layout).getIndex();
+        RenderContext<GraphNode, GraphEdge> rc = vv.getRenderContext();
+        MultiLayerTransformer transformer = rc.getMultiLayerTransformer();
+        Point2D ip = transformer.inverseTransform(Layer.VIEW, new Point2D.Double(x, y));
+        Point2D lp = transformer.inverseTransform(Layer.LAYOUT, ip);
+        double reach = (EDGE_BULGE + pickSize) / transformer.getTransformer(Layer.LAYOUT).getScale();
+
+        //ShapePickSupport works in floats, so the same rounding is done here
+        Rectangle2D pickArea = new Rectangle2D.Float((float) ip.getX() - pickSize / 2, (float) ip.getY() - pickSize / 2,
+            pickSize, pickSize);
+        CompactGraph graph = idx.getGraph();
+        Graph<GraphNode, GraphEdge> g = layout.getGraph();
+        int[] best = {-1};
+        float[] bestDistance = {Float.POSITIVE_INFINITY};
+        float[] coords = new float[6];
+        idx.edgeIndicesIn(lp.getX() - reach, lp.getY() - reach, lp.getX() + reach, lp.getY() + reach, e -> {
+            Shape shape = edgeShape(rc, g, graph.getEdge(e),
+                transformer.transform(Layer.LAYOUT, new Point2D.Double(idx.getX(graph.getEdgeU(e)), idx.getY(graph.getEdgeU(e)))),
+                transformer.transform(Layer.LAYOUT, new Point2D.Double(idx.getX(graph.getEdgeV(e)), idx.getY(graph.getEdgeV(e)))),
+                ip, pickSize);
+            if (shape == null || !shape.intersects(pickArea)) {
+                return;
+            }
+            //like ShapePickSupport: of the edges hit, the one whose first
+            //segment point (the control point of a curve) is closest wins,
+            //and of equally close ones, the first in the graph's edge order
+            PathIterator pi = new GeneralPath(shape).getPathIterator(null);
+            pi.next();
+            if (pi.isDone()) {
+                return;
+            }
+            pi.currentSegment(coords);
+            float dx = (float) (coords[0] - ip.getX());
+            float dy = (float) (coords[1] - ip.getY());
+            float distance = dx * dx + dy * dy;
+            if (distance < bestDistance[0] || (distance == bestDistance[0] && e < best[0])) {
+                best[0] = e;
+                bestDistance[0] = distance;
+            }
+        });
+        return best[0] < 0 ? null : graph.getEdge(best[0]);
+    }
+
+    /**
+     * Internal method to place an edge's shape between its endpoints,
+     * the same way the edge renderer does. The shape is first checked
+     * against a point cheaply: the edge shape is drawn in a frame whose x
+     * axis runs along the chord, so the point must fall in the shape's
+     * bounds in that frame (grown by a margin) for the shape to be near it.
+     *
+     * @param rc     the render context.
+     * @param g      the graph.
+     * @param edge   the edge.
+     * @param p1     the first endpoint (after the layout transform).
+     * @param p2     the second endpoint (after the layout transform).
+     * @param near   the point the shape must come near.
+     * @param margin how near the shape must come to the point.
+     * @return the edge shape, or null for a loop (not drawn between two points)
+     *         or an edge that does not come near the point.
+     */
+    private static Shape edgeShape(RenderContext<GraphNode, GraphEdge> rc, Graph<GraphNode, GraphEdge> g,
+                                   GraphEdge edge, Point2D p1, Point2D p2, Point2D near, double margin) {
+        //in floats, as the renderer and ShapePickSupport do
+        float x1 = (float) p1.getX();
+        float y1 = (float) p1.getY();
+        float dx = (float) p2.getX() - x1;
+        float dy = (float) p2.getY() - y1;
+        if (dx == 0 && dy == 0) {
+            return null;
+        }
+        Shape shape = rc.getEdgeShapeTransformer().transform(Context.<Graph<GraphNode, GraphEdge>, GraphEdge>getInstance(g, edge));
+        double length = Math.sqrt(dx * dx + dy * dy);
+        double along = ((near.getX() - x1) * dx + (near.getY() - y1) * dy) / length;
+        double across = ((near.getY() - y1) * dx - (near.getX() - x1) * dy) / length;
+        Rectangle2D bounds = shape.getBounds2D();
+        if (along < bounds.getMinX() * length - margin || along > bounds.getMaxX() * length + margin
+            || across < bounds.getMinY() - margin || across > bounds.getMaxY() + margin) {
+            return null;
+        }
+        AffineTransform xform = AffineTransform.getTranslateInstance(x1, y1);
+        xform.rotate(Math.atan2(dy, dx));
+        xform.scale((float) Math.sqrt(dx * dx + dy * dy), 1.0);
+        return xform.createTransformedShape(shape);
+    }
+
+    /**
+     * Compares picking against JUNG's ShapePickSupport on a random graph,
+     * laid out by FRLayout and by CircleLayout (whose long chords cross
+     * most of the view), at three zoom levels: how often the two pick
+     * something different. Then times a vertex and an edge pick with each.
+     *
+     * @param args [0] = the number of vertices (default 400),
+     *             [1] = the number of edges tried per vertex (default 2),
+     *             [2] = the number of random picks per zoom (default 20000).
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int perVertex = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int picks = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+        Random rand = new Random(2);
+        UndirectedSparseGraph<GraphNode, GraphEdge> graph = new UndirectedSparseGraph<>();
+        GraphNode[] nodes = new GraphNode[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new GraphNode(i);
+            graph.addVertex(nodes[i]);
+        }
+        int id = 0;
+        for (int i = 0; i < perVertex * n; i++) {
+            int u = rand.nextInt(n);
+            int v = rand.nextInt(n);
+            if (u != v && graph.findEdge(nodes[u], nodes[v]) == null) {
+                graph.addEdge(new GraphEdge(id++), nodes[u], nodes[v]);
+            }
+        }
+        System.out.printf("%,d vertices, %,d edges, %,d random picks per zoom%n", n, graph.getEdgeCount(), picks);
+
+        List<Layout<GraphNode, GraphEdge>> layouts = List.of(new FRLayout<>(graph), new CircleLayout<>(graph));
+        for (Layout<GraphNode, GraphEdge> inner : layouts) {
+            IndexedLayout layout = new IndexedLayout(inner, 15);
+            layout.setSize(inner instanceof CircleLayout ? new Dimension(800, 600) : new Dimension(3000, 3000));
+            VisualizationViewer<GraphNode, GraphEdge> vv = new VisualizationViewer<>(layout);
+            //the viewer relaxes an iterative layout in the background; the
+            //two pickers must see the same positions
+            vv.getModel().getRelaxer().stop();
+            vv.setSize(800, 600);
+            Shape circle = new Ellipse2D.Double(-15, -15, 30, 30);
+            vv.getRenderContext().setVertexShapeTransformer(v -> circle);
+            ShapePickSupport<GraphNode, GraphEdge> reference = new ShapePickSupport<>(vv, 2f);
+            IndexedPickSupport indexed = new IndexedPickSupport(vv, 2f);
+            System.out.println(inner.getClass().getSimpleName() + ":");
+
+            MultiLayerTransformer mlt = vv.getRenderContext().getMultiLayerTransformer();
+            for (double scale : new double[] {1.0, 0.3, 2.0}) {
+                mlt.getTransformer(Layer.VIEW).setScale(scale, scale, new Point2D.Double(400, 300));
+                int vertexHits = 0;
+                int vertexMismatches = 0;
+                int edgeHits = 0;
+                int edgeMismatches = 0;
+                for (int q = 0; q < picks; q++) {
+                    double x = rand.nextDouble() * 800;
+                    double y = rand.nextDouble() * 600;
+                    GraphNode v1 = reference.getVertex(layout, x, y);
+                    if (v1 != null) {
+                        vertexHits++;
+                    }
+                    if (v1 != indexed.getVertex(layout, x, y)) {
+                        vertexMismatches++;
+                    }
+                    GraphEdge e1 = reference.getEdge(layout, x, y);
+                    GraphEdge e2 = indexed.getEdge(layout, x, y);
+                    if (e1 != null || e2 != null) {
+                        edgeHits++;
+                        if (e1 != e2) {
+                            edgeMismatches++;
+                        }
+                    }
+                }
+                System.out.printf("  zoom %.1f: vertex hits %,d (%d differ), edge hits %,d (%d differ)%n",
+                    scale, vertexHits, vertexMismatches, edgeHits, edgeMismatches);
+            }
+
+            mlt.getTransformer(Layer.VIEW).setScale(1.0, 1.0, new Point2D.Double(400, 300));
+            layout.getIndex();
+            for (int round = 0; round < 3; round++) {
+                double[] vertexMicros = time(rand, q -> indexed.getVertex(layout, q.getX(), q.getY()),
+                    q -> reference.getVertex(layout, q.getX(), q.getY()));
+                double[] edgeMicros = time(rand, q -> indexed.getEdge(layout, q.getX(), q.getY()),
+                    q -> reference.getEdge(layout, q.getX(), q.getY()));
+                System.out.printf("  vertex pick: indexed %.2f us, ShapePickSupport %.2f us (%.0fx); "
+                        + "edge pick: indexed %.2f us, ShapePickSupport %.2f us (%.0fx)%n",
+                    vertexMicros[0], vertexMicros[1], vertexMicros[1] / vertexMicros[0],
+                    edgeMicros[0], edgeMicros[1], edgeMicros[1] / edgeMicros[0]);
+            }
+        }
+    }
+
+    /**
+     * Internal method to time picks at random points of an 800x600 view,
+     * with the index and with the reference.
+     *
+     * @param rand      the random numbers.
+     * @param indexed   picks with the index.
+     * @param reference picks with ShapePickSupport.
+     * @return the microseconds per pick of each.
+     */
+    private static double[] time(Random rand, Consumer<Point2D> indexed, Consumer<Point2D> reference) {
+        long start = System.nanoTime();
+        for (int q = 0; q < 20000; q++) {
+            indexed.accept(new Point2D.Double(rand.nextDouble() * 800, rand.nextDouble() * 600));
+        }
+        double indexedMicros = (System.nanoTime() - start) / 1e3 / 20000;
+        start = System.nanoTime();
+        for (int q = 0; q < 500; q++) {
+            reference.accept(new Point2D.Double(rand.nextDouble() * 800, rand.nextDouble() * 600));
+        }
+        double referenceMicros = (System.nanoTime() - start) / 1e3 / 500;
+        return new double[] {indexedMicros, referenceMicros};
+    }
+}
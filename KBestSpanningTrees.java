@@ -0,0 +1,628 @@
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Enumerates the spanning trees (or forests) of a graph in order of
+ * weight: the MST first, then the second-best tree, and so on, each one
+ * computed only when it is asked for.
+ *
+ * <p>This is the partition scheme of Katoh, Ibaraki and Mine. Every
+ * pending subproblem is a set of trees described by edges that must be
+ * in them and edges that must not, together with its best tree T and the
+ * cheapest swap in it (remove tree edge f, add the lightest edge e that
+ * reconnects the two halves). The next tree overall is T - f + e for the
+ * subproblem whose swap costs least. That subproblem is then split in
+ * two: the trees that keep f (best tree T, which needs a new swap) and
+ * the trees without f (best tree T - f + e). Only the two new swaps are
+ * computed per tree, each in one pass over the edges, which are sorted
+ * once: O(k E alpha(V)) for k trees.
+ *
+ * <p>Trees are {@link MstResult}s, so they compare with the output of
+ * {@link Kruskal310#getResult()}; {@link #applyColors} shows one with
+ * Kruskal310's colors.
+ */
+class KBestSpanningTrees implements Iterator<MstResult> {
+    /**
+     * The graph snapshot.
+     */
+    private final CompactGraph graph;
+    /**
+     * The edges in Kruskal order (by weight, then id).
+     */
+    private final int[] sorted;
+    /**
+     * The position of each edge in that order.
+     */
+    private final int[] rank;
+    /**
+     * The subproblems still to be split, by the weight of their next tree.
+     */
+    private final PriorityQueue<Subproblem> pending = new PriorityQueue<>();
+    /**
+     * The MST, until it has been returned.
+     */
+    private MstResult first;
+    /**
+     * The number of subproblems created (to order ties by age).
+     */
+    private long created = 0;
+
+    /**
+     * A set of spanning trees: those containing every edge of {@code in}
+     * and no edge of {@code out}. The constraint lists are shared with the
+     * parent subproblem and grow by one edge per split.
+     */
+    private final class Subproblem implements Comparable<Subproblem> {
+        /**
+         * The best tree of the subproblem, as edge indices.
+         */
+        private final int[] tree;
+        /**
+         * The weight of that tree.
+         */
+        private final long weight;
+        /**
+         * The edges that must stay (newest first).
+         */
+        private final Constraint in;
+        /**
+         * The edges that must not be used (newest first).
+         */
+        private final Constraint out;
+        /**
+         * The tree edge removed by the cheapest swap.
+         */
+        private int swapOut = -1;
+        /**
+         * The edge added by the cheapest swap.
+         */
+        private int swapIn = -1;
+        /**
+         * The weight of the tree after the cheapest swap.
+         */
+        private long nextWeight = Long.MAX_VALUE;
+        /**
+         * When the subproblem was created.
+         */
+        private final long order = created++;
+
+        /**
+         * Constructs a subproblem and finds its cheapest swap.
+         *
+         * @param tree   its best tree.
+         * @param weight the weight of that tree.
+         * @param in     the edges that must stay.
+         * @param out    the edges that must not be used.
+         */
+        Subproblem(int[] tree, long weight, Constraint in, Constraint out) {
+            this.tree = tree;
+            this.weight = weight;
+            this.in = in;
+            this.out = out;
+            findSwap(this);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int compareTo(Subproblem other) {
+            if (nextWeight != other.nextWeight) {
+                return Long.compare(nextWeight, other.nextWeight);
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+
+    /**
+     * One link of a persistent list of constrained edges.
+     */
+    private static final class Constraint {
+        /**
+         * The edge.
+         */
+        private final int edge;
+        /**
+         * The rest of the list (null at the end).
+         */
+        private final Constraint next;
+
+        /**
+         * Constructs a link.
+         *
+         * @param edge the edge.
+         * @param next the rest of the list.
+         */
+        Constraint(int edge, Constraint next) {
+            this.edge = edge;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Constructs the enumerator and finds the MST.
+     *
+     * @param g the graph.
+     */
+    public KBestSpanningTrees(Graph<GraphNode, GraphEdge> g) {
+        graph = CompactGraph.of(g);
+        int m = graph.getEdgeCount();
+        sorted = kruskalOrder(graph);
+        rank = new int[m];
+        for (int r = 0; r < m; r++) {
+            rank[sorted[r]] = r;
+        }
+
+        UnionFind uf = new UnionFind(graph.getVertexCount());
+        int[] tree = new int[Math.max(0, graph.getVertexCount() - 1)];
+        int size = 0;
+        long weight = 0;
+        for (int e : sorted) {
+            if (uf.union(graph.getEdgeU(e), graph.getEdgeV(e))) {
+                tree[size++] = e;
+                weight += graph.getWeight(e);
+            }
+        }
+        tree = Arrays.copyOf(tree, size);
+        first = toResult(tree, weight);
+        Subproblem root = new Subproblem(tree, weight, null, null);
+        if (root.swapOut >= 0) {
+            pending.add(root);
+        }
+    }
+
+    /**
+     * Returns whether there is another spanning tree.
+     *
+     * @return true if next() will return a tree.
+     */
+    @Override
+    public boolean hasNext() {
+        return first != null || !pending.isEmpty();
+    }
+
+    /**
+     * Returns the next spanning tree in order of weight (ties in no
+     * particular order). Each tree is returned once.
+     *
+     * @return the next tree.
+     * @throws NoSuchElementException if every spanning tree was returned.
+     */
+    @Override
+    public MstResult next() {
+        if (first != null) {
+            MstResult mst = first;
+            first = null;
+            return mst;
+        }
+        Subproblem p = pending.poll();
+        if (p == null) {
+            throw new NoSuchElementException("No more spanning trees");
+        }
+        int[] swapped = p.tree.clone();
+        for (int i = 0; i < swapped.length; i++) {
+            if (swapped[i] == p.swapOut) {
+                swapped[i] = p.swapIn;
+                break;
+            }
+        }
+        Subproblem keep = new Subproblem(p.tree, p.weight, new Constraint(p.swapOut, p.in), p.out);
+        Subproblem drop = new Subproblem(swapped, p.nextWeight, p.in, new Constraint(p.swapOut, p.out));
+        if (keep.swapOut >= 0) {
+            pending.add(keep);
+        }
+        if (drop.swapOut >= 0) {
+            pending.add(drop);
+        }
+        return toResult(swapped, p.nextWeight);
+    }
+
+    /**
+     * Internal method to find a subproblem's cheapest swap. The tree is
+     * rooted, and the allowed non-tree edges are taken lightest first:
+     * each one covers the tree edges on its path that no lighter edge
+     * covered, found by climbing with a union-find that skips covered
+     * edges. The lightest cover of each removable tree edge then gives the
+     * cost of removing it.
+     *
+     * @param p the subproblem.
+     */
+    private void findSwap(Subproblem p) {
+        int n = graph.getVertexCount();
+        int m = graph.getEdgeCount();
+        //0 = free, 1 = in the tree, 2 = in the tree and required, 3 = excluded
+        byte[] state = new byte[m];
+        for (int e : p.tree) {
+            state[e] = 1;
+        }
+        for (Constraint c = p.in; c != null; c = c.next) {
+            state[c.edge] = 2;
+        }
+        for (Constraint c = p.out; c != null; c = c.next) {
+            state[c.edge] = 3;
+        }
+
+        //root each tree of the forest
+        int[] head = new int[n];
+        Arrays.fill(head, -1);
+        int[] nextAdj = new int[2 * p.tree.length];
+        int[] adjEdge = new int[2 * p.tree.length];
+        for (int i = 0; i < p.tree.length; i++) {
+            int e = p.tree[i];
+            adjEdge[2 * i] = e;
+            nextAdj[2 * i] = head[graph.getEdgeU(e)];
+            head[graph.getEdgeU(e)] = 2 * i;
+            adjEdge[2 * i + 1] = e;
+            nextAdj[2 * i + 1] = head[graph.getEdgeV(e)];
+            head[graph.getEdgeV(e)] = 2 * i + 1;
+        }
+        int[] parent = new int[n];
+        int[] parentEdge = new int[n];
+        int[] depth = new int[n];
+        int[] queue = new int[n];
+        Arrays.fill(parent, -2);
+        for (int s = 0; s < n; s++) {
+            if (parent[s] != -2) {
+                continue;
+            }
+            parent[s] = -1;
+            parentEdge[s] = -1;
+            int qHead = 0;
+            int qTail = 0;
+            queue[qTail++] = s;
+            while (qHead < qTail) {
+                int v = queue[qHead++];
+                for (int a = head[v]; a >= 0; a = nextAdj[a]) {
+                    int e = adjEdge[a];
+                    int w = graph.getEdgeU(e) == v ? graph.getEdgeV(e) : graph.getEdgeU(e);
+                    if (parent[w] == -2) {
+                        parent[w] = v;
+                        parentEdge[w] = e;
+                        depth[w] = depth[v] + 1;
+                        queue[qTail++] = w;
+                    }
+                }
+            }
+        }
+
+        //up[v] leads to the nearest ancestor-or-self whose parent edge is uncovered
+        int[] up = new int[n];
+        for (int v = 0; v < n; v++) {
+            up[v] = v;
+        }
+        int[] cover = new int[n];
+        Arrays.fill(cover, -1);
+        int uncovered = p.tree.length;
+        for (int r = 0; r < m && uncovered > 0; r++) {
+            int e = sorted[r];
+            if (state[e] != 0) {
+                continue;
+            }
+            int a = climb(up, graph.getEdgeU(e));
+            int b = climb(up, graph.getEdgeV(e));
+            while (a != b) {
+                if (depth[a] < depth[b]) {
+                    int tmp = a;
+                    a = b;
+                    b = tmp;
+                }
+                cover[a] = e;
+                uncovered--;
+                up[a] = parent[a];
+                a = climb(up, a);
+            }
+        }
+
+        for (int v = 0; v < n; v++) {
+            int f = parentEdge[v];
+            int e = cover[v];
+            if (f < 0 || e < 0 || state[f] == 2) {
+                continue;
+            }
+            long w = p.weight - graph.getWeight(f) + graph.getWeight(e);
+            if (w < p.nextWeight || (w == p.nextWeight
+                && (rank[e] < rank[p.swapIn] || (e == p.swapIn && rank[f] < rank[p.swapOut])))) {
+                p.nextWeight = w;
+                p.swapIn = e;
+                p.swapOut = f;
+            }
+        }
+    }
+
+    /**
+     * Internal method to follow the skip links up to the nearest
+     * ancestor-or-self whose parent edge is uncovered (path halving).
+     *
+     * @param up the skip links.
+     * @param v  the starting vertex.
+     * @return that ancestor.
+     */
+    private static int climb(int[] up, int v) {
+        while (up[v] != v) {
+            up[v] = up[up[v]];
+            v = up[v];
+        }
+        return v;
+    }
+
+    /**
+     * Internal method to turn edge indices into a result.
+     *
+     * @param tree   the edge indices.
+     * @param weight their total weight.
+     * @return the result.
+     */
+    private MstResult toResult(int[] tree, long weight) {
+        int[] ids = new int[tree.length];
+        for (int i = 0; i < tree.length; i++) {
+            ids[i] = graph.getEdge(tree[i]).getId();
+        }
+        return new MstResult(ids, weight);
+    }
+
+    /**
+     * Internal method to order the edges as Kruskal310 takes them: by
+     * weight, then by id.
+     *
+     * @param graph the graph.
+     * @return the edge indices in that order.
+     */
+    private static int[] kruskalOrder(CompactGraph graph) {
+        int m = graph.getEdgeCount();
+        long[] keys = new long[m];
+        for (int e = 0; e < m; e++) {
+            keys[e] = (long) graph.getEdge(e).getId() << 32 | e;
+        }
+        Arrays.sort(keys);
+        int[] byId = new int[m];
+        for (int r = 0; r < m; r++) {
+            byId[r] = (int) keys[r];
+            keys[r] = (long) graph.getWeight(byId[r]) << 32 | r;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[m];
+        for (int r = 0; r < m; r++) {
+            order[r] = byId[(int) keys[r]];
+        }
+        return order;
+    }
+
+    /**
+     * Colors the graph the way Kruskal310 leaves it when it finishes with
+     * a tree: the tree's edges and their endpoints selected, other edges
+     * inactive, and vertices the tree does not reach as warnings.
+     *
+     * @param tree a tree of this graph.
+     */
+    public void applyColors(MstResult tree) {
+        boolean[] reached = new boolean[graph.getVertexCount()];
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            if (tree.contains(graph.getEdge(e).getId())) {
+                graph.getEdge(e).setColor(Kruskal310.COLOR_SELECTED);
+                reached[graph.getEdgeU(e)] = true;
+                reached[graph.getEdgeV(e)] = true;
+            } else {
+                graph.getEdge(e).setColor(Kruskal310.COLOR_INACTIVE_EDGE);
+            }
+        }
+        for (int v = 0; v < reached.length; v++) {
+            graph.getNode(v).setColor(reached[v] ? Kruskal310.COLOR_SELECTED : Kruskal310.COLOR_WARNING);
+        }
+    }
+
+    /**
+     * Builds a Graph310 of a tree, holding every vertex of the graph and
+     * the tree's edges (like {@link Kruskal310#getForest()}).
+     *
+     * @param tree a tree of this graph.
+     * @return the forest.
+     */
+    public Graph310 toForest(MstResult tree) {
+        int n = graph.getVertexCount();
+        GraphNode[] nodes = new GraphNode[n];
+        for (int v = 0; v < n; v++) {
+            nodes[v] = graph.getNode(v);
+        }
+        GraphEdge[] edges = new GraphEdge[tree.getEdgeCount()];
+        GraphNode[] ends1 = new GraphNode[edges.length];
+        GraphNode[] ends2 = new GraphNode[edges.length];
+        int count = 0;
+        for (int e = 0; e < graph.getEdgeCount() && count < edges.length; e++) {
+            if (tree.contains(graph.getEdge(e).getId())) {
+                edges[count] = graph.getEdge(e);
+                ends1[count] = nodes[graph.getEdgeU(e)];
+                ends2[count] = nodes[graph.getEdgeV(e)];
+                count++;
+            }
+        }
+        //a tree has no self-loops or parallel edges, so it is built in one pass
+        return Graph310.build(nodes, Arrays.copyOf(edges, count), Arrays.copyOf(ends1, count), Arrays.copyOf(ends2, count));
+    }
+
+    /**
+     * Finds the second-best spanning tree (or forest): the MST with one
+     * edge swapped at the least extra cost. Every non-tree edge is tested
+     * against the heaviest edge on the tree path between its endpoints
+     * with a {@link PathMaxIndex}, so this takes O(E log V).
+     *
+     * @param g the graph.
+     * @return the second-best tree, or null if the MST is the only spanning tree.
+     */
+    public static MstResult secondBest(Graph<GraphNode, GraphEdge> g) {
+        CompactGraph graph = CompactGraph.of(g);
+        int[] order = kruskalOrder(graph);
+        UnionFind uf = new UnionFind(graph.getVertexCount());
+        boolean[] inTree = new boolean[graph.getEdgeCount()];
+        UndirectedSparseGraph<GraphNode, GraphEdge> mst = new UndirectedSparseGraph<>();
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            mst.addVertex(graph.getNode(v));
+        }
+        long weight = 0;
+        List<Integer> ids = new ArrayList<>();
+        for (int e : order) {
+            if (uf.union(graph.getEdgeU(e), graph.getEdgeV(e))) {
+                inTree[e] = true;
+                mst.addEdge(graph.getEdge(e), graph.getNode(graph.getEdgeU(e)), graph.getNode(graph.getEdgeV(e)));
+                weight += graph.getWeight(e);
+                ids.add(graph.getEdge(e).getId());
+            }
+        }
+
+        PathMaxIndex index = new PathMaxIndex(mst);
+        int best = -1;
+        long bestDelta = Long.MAX_VALUE;
+        for (int e : order) {
+            if (inTree[e]) {
+                continue;
+            }
+            //in Kruskal order, the first edge with the smallest delta wins ties
+            long delta = (long) graph.getWeight(e)
+                - index.maxWeight(graph.getNode(graph.getEdgeU(e)), graph.getNode(graph.getEdgeV(e)));
+            if (delta < bestDelta) {
+                bestDelta = delta;
+                best = e;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        GraphEdge removed = index.maxEdge(graph.getNode(graph.getEdgeU(best)), graph.getNode(graph.getEdgeV(best)));
+        ids.remove(Integer.valueOf(removed.getId()));
+        ids.add(graph.getEdge(best).getId());
+        int[] result = new int[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return new MstResult(result, weight + bestDelta);
+    }
+
+    /**
+     * Checks the enumeration against brute force on small graphs, and
+     * times the second-best tree and the first trees of a large graph.
+     *
+     * @param args [0] = vertices of the large graph (default 100000), [1] = trees to enumerate (default 100).
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Random rand = new Random(9);
+
+        int bad = 0;
+        for (int t = 0; t < 200; t++) {
+            int size = 2 + rand.nextInt(5);
+            UndirectedSparseGraph<GraphNode, GraphEdge> g = randomGraph(rand, size, 3 * size, 1 + rand.nextInt(5));
+            List<Long> expected = bruteForce(g);
+            KBestSpanningTrees trees = new KBestSpanningTrees(g);
+            List<MstResult> seen = new ArrayList<>();
+            while (trees.hasNext()) {
+                MstResult tree = trees.next();
+                if (seen.contains(tree)) {
+                    bad++;
+                }
+                seen.add(tree);
+            }
+            if (seen.size() != expected.size()) {
+                bad++;
+                continue;
+            }
+            for (int i = 0; i < seen.size(); i++) {
+                if (seen.get(i).getTotalWeight() != expected.get(i)) {
+                    bad++;
+                }
+            }
+            MstResult second = secondBest(g);
+            if ((second == null) != (expected.size() < 2)
+                || (second != null && second.getTotalWeight() != expected.get(1))) {
+                bad++;
+            }
+        }
+        System.out.println(bad == 0 ? "200 small graphs: every spanning tree, in weight order" : bad + " WRONG enumerations");
+
+        UndirectedSparseGraph<GraphNode, GraphEdge> big = randomGraph(rand, n, 3 * n, 1_000_000);
+        for (int rep = 0; rep < 3; rep++) {
+            long start = System.nanoTime();
+            MstResult second = secondBest(big);
+            long mid = System.nanoTime();
+            KBestSpanningTrees trees = new KBestSpanningTrees(big);
+            long last = 0;
+            for (int i = 0; i < k && trees.hasNext(); i++) {
+                last = trees.next().getTotalWeight();
+            }
+            long end = System.nanoTime();
+            System.out.printf("%,d vertices: second best %,d in %.1f ms; %d best trees (last %,d) in %.1f ms%n",
+                n, second.getTotalWeight(), (mid - start) / 1e6, k, last, (end - mid) / 1e6);
+        }
+    }
+
+    /**
+     * Internal method to build a random graph.
+     *
+     * @param rand      the random numbers.
+     * @param n         the number of vertices.
+     * @param tries     the number of edges to try (repeats and loops are dropped).
+     * @param maxWeight the largest weight.
+     * @return the graph.
+     */
+    private static UndirectedSparseGraph<GraphNode, GraphEdge> randomGraph(Random rand, int n, int tries, int maxWeight) {
+        UndirectedSparseGraph<GraphNode, GraphEdge> g = new UndirectedSparseGraph<>();
+        GraphNode[] nodes = new GraphNode[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new GraphNode(i);
+            g.addVertex(nodes[i]);
+        }
+        int id = 0;
+        for (int t = 0; t < tries; t++) {
+            int u = rand.nextInt(n);
+            int v = rand.nextInt(n);
+            if (u != v && g.findEdge(nodes[u], nodes[v]) == null) {
+                g.addEdge(new GraphEdge(id++, 1 + rand.nextInt(maxWeight)), nodes[u], nodes[v]);
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Internal method to list the weights of all spanning forests (edge
+     * subsets of maximal size without a cycle), sorted.
+     *
+     * @param g a small graph.
+     * @return the sorted weights.
+     */
+    private static List<Long> bruteForce(Graph<GraphNode, GraphEdge> g) {
+        CompactGraph c = CompactGraph.of(g);
+        int m = c.getEdgeCount();
+        UnionFind all = new UnionFind(c.getVertexCount());
+        for (int e = 0; e < m; e++) {
+            all.union(c.getEdgeU(e), c.getEdgeV(e));
+        }
+        int size = c.getVertexCount() - all.count();
+        List<Long> weights = new ArrayList<>();
+        for (int mask = 0; mask < 1 << m; mask++) {
+            if (Integer.bitCount(mask) != size) {
+                continue;
+            }
+            UnionFind uf = new UnionFind(c.getVertexCount());
+            boolean forest = true;
+            long w = 0;
+            for (int e = 0; e < m && forest; e++) {
+                if ((mask >> e & 1) != 0) {
+                    forest = uf.union(c.getEdgeU(e), c.getEdgeV(e));
+                    w += c.getWeight(e);
+                }
+            }
+            if (forest) {
+                weights.add(w);
+            }
+        }
+        weights.sort(null);
+        return weights;
+    }
+}
@@ -3,6 +3,7 @@ import edu.uci.ics.jung.graph.util.EdgeType;
 import edu.uci.ics.jung.graph.util.Pair;
 
 import java.awt.Color;
+import java.util.Arrays;
 
 import javax.swing.JPanel;
 
@@ -39,6 +40,25 @@ class Kruskal310 implements ThreeTenAlg {
      * The color when a node/edge is selected and added to MST.
      */
     public static final Color COLOR_SELECTED = Color.BLUE;
+    /**
+     * How many of the smallest queued edges are kept in the window.
+     */
+    public static final int WINDOW_SIZE = 7;
+    /**
+     * How long each doNextStep takes (when metrics are on).
+     */
+    private static final Metrics.Histogram STEP_NANOS =
+        Metrics.histogram("kruskal_step_nanos", "Time taken by one Kruskal310.doNextStep, in nanoseconds");
+    /**
+     * The number of edges still queued (when metrics are on).
+     */
+    private static final Metrics.Gauge QUEUE_SIZE =
+        Metrics.gauge("kruskal_queue_size", "Edges still in the Kruskal310 priority queue");
+    /**
+     * The number of edges selected so far (when metrics are on).
+     */
+    private static final Metrics.Gauge SELECTED =
+        Metrics.gauge("kruskal_selected_edges", "Edges selected for the MST so far");
     /**
      * The graph the algorithm will run on.
      */
@@ -47,10 +67,40 @@ class Kruskal310 implements ThreeTenAlg {
      * The priority queue of edges for the algorithm.
      */
     WeissBST<GraphEdge> pqueue;
+    /**
+     * The number of edges in the priority queue (WeissBST.size() is O(n)).
+     */
+    private int queueCount = 0;
+    /**
+     * The smallest queued edges in order, kept up to date as the queue changes.
+     */
+    private GraphEdge[] window = new GraphEdge[WINDOW_SIZE];
+    /**
+     * The number of edges in the window.
+     */
+    private int windowCount = 0;
     /**
      * The subgraph of the MST in construction.
      */
     private Graph310 markedGraph;
+    /**
+     * The edges added to the MST so far, in the order they were selected.
+     */
+    private GraphEdge[] selected = new GraphEdge[16];
+    /**
+     * The number of selected edges.
+     */
+    private int selectedCount = 0;
+    /**
+     * The number of vertices of the graph when the algorithm started.
+     */
+    private int vertexCount = 0;
+    /**
+     * The number of edges a spanning forest of the graph has (V minus the
+     * number of connected components): once that many are selected, no
+     * queued edge can join the MST.
+     */
+    private int forestSize = 0;
     /**
      * Whether or not the algorithm has been started.
      */
@@ -70,6 +120,10 @@ class Kruskal310 implements ThreeTenAlg {
         this.graph = graph;
         started = false;
         pqueue = null;
+        queueCount = 0;
+        windowCount = 0;
+        selectedCount = 0;
+        forestSize = 0;
         markedGraph = new Graph310();
     }
 
@@ -91,6 +145,8 @@ class Kruskal310 implements ThreeTenAlg {
      * {@inheritDoc}
      */
     public void start() {
+        MstPhaseEvent event = new MstPhaseEvent();
+        event.begin();
         started = true;
 
         //----------------------------------------------------
@@ -98,8 +154,15 @@ class Kruskal310 implements ThreeTenAlg {
         // - add all edges into the priority queue
         //----------------------------------------------------
         pqueue = new WeissBST<>();
+        vertexCount = graph.getVertexCount();
+        forestSize = vertexCount - countComponents();
         for (GraphEdge e : graph.getEdges()) {
             pqueue.insert(e);
+            queueCount++;
+        }
+        fillWindow();
+        if (Metrics.ENABLED) {
+            QUEUE_SIZE.set(queueCount);
         }
         //----------------------------------------------------
         // End of missing part
@@ -107,7 +170,7 @@ class Kruskal310 implements ThreeTenAlg {
 
         //highlight the edge with min weight
         highlightNext();
-
+        commitPhase(event, "start");
     }
 
     /**
@@ -129,6 +192,8 @@ class Kruskal310 implements ThreeTenAlg {
      * {@inheritDoc}
      */
     public void finish() {
+        MstPhaseEvent event = new MstPhaseEvent();
+        event.begin();
 
         //wrapping up the algorithm
         // - mark all edges not selected to be inactive
@@ -144,6 +209,16 @@ class Kruskal310 implements ThreeTenAlg {
                 n.setColor(COLOR_WARNING);
             }
         }
+
+        // - the edges left in the queue (if the forest was completed early)
+        //   were all marked above: drop them at once, without cycle tests
+        pqueue.makeEmpty();
+        queueCount = 0;
+        windowCount = 0;
+        if (Metrics.ENABLED) {
+            QUEUE_SIZE.set(0);
+        }
+        commitPhase(event, "finish");
     }
 
     /**
@@ -154,7 +229,11 @@ class Kruskal310 implements ThreeTenAlg {
         //decide whether we are done with the MST algorithm
         // return true if more steps to continue; return false if done
         // Hint: you may not always need to check all edges.
-        return !pqueue.isEmpty();
+        MstPhaseEvent event = new MstPhaseEvent();
+        event.begin();
+        boolean more = selectedCount < forestSize && !pqueue.isEmpty();
+        commitPhase(event, "setupNextStep");
+        return more;
     }
 
     /**
@@ -167,10 +246,17 @@ class Kruskal310 implements ThreeTenAlg {
         //     the edge and nodes (COLOR_SELECTED)
         // - if edge should not be included, change its color to COLOR_INACTIVE_EDGE
         // - if MST is not completed, highlight next min edge
+        long startTime = Metrics.ENABLED ? System.nanoTime() : 0;
+        MstPhaseEvent event = new MstPhaseEvent();
+        event.begin();
         if (!pqueue.isEmpty()) {
             GraphEdge minEdge = pqueue.findMin();
             pqueue.removeMin();
+            queueCount--;
+            shiftWindow();
             if (minEdge != null) {
+                event.edgeId = minEdge.getId();
+                event.weight = minEdge.getWeight();
                 Pair<GraphNode> nodes = graph.getEndpoints(minEdge);
                 if (nodes != null && nodes.getFirst() != null && nodes.getSecond() != null) {
 
@@ -182,8 +268,13 @@ class Kruskal310 implements ThreeTenAlg {
                         markedGraph.addVertex(nodes.getSecond());
                     }
 
-                    if (!markedGraph.reachableSet(nodes.getFirst()).contains(nodes.getSecond())) {
+                    if (!markedGraph.isConnected(nodes.getFirst(), nodes.getSecond())) {
                         markedGraph.addEdge(minEdge, nodes.getFirst(), nodes.getSecond());
+                        if (selectedCount == selected.length) {
+                            selected = Arrays.copyOf(selected, selectedCount * 2);
+                        }
+                        selected[selectedCount++] = minEdge;
+                        event.selected = true;
                         setTheColor(nodes.getFirst(), nodes.getSecond(), minEdge);
                     } else {
                         minEdge.setColor(COLOR_INACTIVE_EDGE);
@@ -192,8 +283,165 @@ class Kruskal310 implements ThreeTenAlg {
                 }
             }
         }
-        highlightNext();
+        if (selectedCount < forestSize) {
+            highlightNext();
+        }
+        if (Metrics.ENABLED) {
+            STEP_NANOS.record(System.nanoTime() - startTime);
+            QUEUE_SIZE.set(queueCount);
+            SELECTED.set(selectedCount);
+        }
+        commitPhase(event, "doNextStep");
+    }
+
+    /**
+     * Internal method to count the connected components of the graph.
+     * Graph310 keeps them up to date; other graphs are labeled with a
+     * {@link ComponentIndex} in near-linear time.
+     *
+     * @return the number of connected components.
+     */
+    private int countComponents() {
+        if (graph instanceof Graph310) {
+            return ((Graph310) graph).componentCount();
+        }
+        ComponentIndex index = new ComponentIndex();
+        for (GraphNode v : graph.getVertices()) {
+            index.addVertex(v);
+        }
+        for (GraphEdge e : graph.getEdges()) {
+            Pair<GraphNode> ends = graph.getEndpoints(e);
+            index.union(ends.getFirst(), ends.getSecond());
+        }
+        return index.getComponentCount();
+    }
+
+    /**
+     * Internal method to fill in and commit a flight recorder event for a
+     * phase (nothing is done unless a recording wants it).
+     *
+     * @param event the event, begun when the phase started.
+     * @param phase the name of the phase.
+     */
+    private void commitPhase(MstPhaseEvent event, String phase) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.queueSize = queueCount;
+            //every selected edge joined two trees
+            event.componentCount = vertexCount - selectedCount;
+            event.commit();
+        }
     }
+
+    /**
+     * Returns the edges selected so far and their total weight.
+     * After the algorithm finishes this is the minimum spanning forest.
+     *
+     * @return the selected edges.
+     */
+    public MstResult getResult() {
+        CompactGraph forest = markedGraph.compact();
+        int[] ids = new int[forest.getEdgeCount()];
+        long total = 0;
+        for (int e = 0; e < ids.length; e++) {
+            ids[e] = forest.getEdge(e).getId();
+            total += forest.getWeight(e);
+        }
+        return new MstResult(ids, total);
+    }
+
+    /**
+     * Returns the spanning forest built so far. The graph belongs to the
+     * algorithm: callers must not change it.
+     *
+     * @return the forest of selected edges and the vertices they touch.
+     */
+    public Graph310 getForest() {
+        return markedGraph;
+    }
+
+    /**
+     * Builds a bottleneck query index over the forest built so far
+     * (the MST, once the algorithm is finished).
+     *
+     * @return the index.
+     */
+    public PathMaxIndex getPathMaxIndex() {
+        return new PathMaxIndex(markedGraph);
+    }
+
+    /**
+     * Returns the number of edges selected for the MST so far.
+     *
+     * @return the number of selected edges.
+     */
+    public int getSelectedCount() {
+        return selectedCount;
+    }
+
+    /**
+     * Returns a selected edge, in the order the edges were selected.
+     *
+     * @param i the position in the selection order (0 is the first edge selected).
+     * @return the selected edge.
+     * @throws IndexOutOfBoundsException if fewer than i+1 edges were selected.
+     */
+    public GraphEdge getSelectedEdge(int i) {
+        if (i < 0 || i >= selectedCount) {
+            throw new IndexOutOfBoundsException("No selected edge " + i);
+        }
+        return selected[i];
+    }
+
+    /**
+     * Returns the number of edges still in the priority queue.
+     *
+     * @return the queue size.
+     */
+    public int getQueueSize() {
+        return queueCount;
+    }
+
+    /**
+     * Returns the smallest edges still in the priority queue, in order
+     * (at most WINDOW_SIZE of them). O(WINDOW_SIZE), however large the queue is.
+     *
+     * @return a copy of the window.
+     */
+    public GraphEdge[] peekQueue() {
+        return Arrays.copyOf(window, windowCount);
+    }
+
+    /**
+     * Internal method to fill the window from the start of the queue.
+     */
+    private void fillWindow() {
+        windowCount = 0;
+        GraphEdge next = pqueue.findMin();
+        while (next != null && windowCount < WINDOW_SIZE) {
+            window[windowCount++] = next;
+            next = pqueue.successor(next);
+        }
+    }
+
+    /**
+     * Internal method to drop the first edge of the window after the
+     * queue's min was removed, pulling in the next edge after the window.
+     */
+    private void shiftWindow() {
+        if (windowCount == 0) {
+            return;
+        }
+        GraphEdge last = window[windowCount - 1];
+        System.arraycopy(window, 1, window, 0, windowCount - 1);
+        windowCount--;
+        window[windowCount] = null;
+        if (queueCount > windowCount) {
+            window[windowCount++] = pqueue.successor(last);
+        }
+    }
+
     /**
      * Function that will set the color of the nodes and edges to be selected.
      * @param node1 the first node.
@@ -0,0 +1,244 @@
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.graph.Graph;
+
+import java.awt.Dimension;
+import java.awt.geom.Point2D;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * A spatial index over the layout positions of a graph's vertices and edges.
+ *
+ * <p>The graph is snapshotted into a {@link CompactGraph} when the index is
+ * built, and vertex positions are cached in arrays, so queries never touch
+ * the layout or the graph. Vertices are indexed by their box (position plus
+ * a radius) and edges by the segment between their endpoints (so a long
+ * edge is only found near the line it is drawn on); both live in a
+ * {@link SpatialGrid} keyed by their compact index.
+ *
+ * <p>The index does not watch the graph: {@link #isStale()} tells whether
+ * the graph changed since it was built (in which case a new index should be
+ * built), and {@link #moved(GraphNode)} must be called when the layout
+ * moves a vertex.
+ */
+class LayoutIndex {
+    /**
+     * About how many grid cells an edge of average length is stored in, at most.
+     */
+    private static final int EDGE_CELLS = 16;
+
+    /**
+     * The layout whose positions are indexed.
+     */
+    private final Layout<GraphNode, GraphEdge> layout;
+    /**
+     * The snapshot of the graph when the index was built.
+     */
+    private final CompactGraph graph;
+    /**
+     * How far a vertex reaches from its position.
+     */
+    private final double radius;
+    /**
+     * The x position of each vertex, by compact index.
+     */
+    private final double[] xs;
+    /**
+     * The y position of each vertex, by compact index.
+     */
+    private final double[] ys;
+    /**
+     * The vertex boxes.
+     */
+    private final SpatialGrid vertexGrid;
+    /**
+     * The edge segments.
+     */
+    private final SpatialGrid edgeGrid;
+
+    /**
+     * Builds an index over the current positions of a layout.
+     *
+     * @param layout the layout to index.
+     * @param radius how far a vertex reaches from its position (in layout units).
+     */
+    public LayoutIndex(Layout<GraphNode, GraphEdge> layout, double radius) {
+        this.layout = layout;
+        this.radius = radius;
+        this.graph = CompactGraph.of(layout.getGraph());
+        int n = graph.getVertexCount();
+        int m = graph.getEdgeCount();
+        xs = new double[n];
+        ys = new double[n];
+
+        Dimension size = layout.getSize();
+        double width = size == null ? 600 : size.getWidth();
+        double height = size == null ? 600 : size.getHeight();
+        vertexGrid = new SpatialGrid(0, 0, width, height, n);
+        for (int v = 0; v < n; v++) {
+            place(v);
+        }
+
+        //an edge is stored in every cell it crosses, so the cells are sized
+        //like the vertices' (about one vertex per cell), but made big enough
+        //that an average edge crosses at most EDGE_CELLS of them
+        double length = 0;
+        for (int e = 0; e < m; e++) {
+            length += Math.hypot(xs[graph.getEdgeU(e)] - xs[graph.getEdgeV(e)], ys[graph.getEdgeU(e)] - ys[graph.getEdgeV(e)]);
+        }
+        double cellSize = m == 0 ? 0 : length / m / EDGE_CELLS;
+        int cells = cellSize > 0 ? (int) Math.min(n, width * height / (cellSize * cellSize)) : n;
+        edgeGrid = new SpatialGrid(0, 0, width, height, cells);
+        for (int e = 0; e < m; e++) {
+            placeEdge(e);
+        }
+    }
+
+    /**
+     * Returns the layout this index was built for.
+     *
+     * @return the layout.
+     */
+    public Layout<GraphNode, GraphEdge> getLayout() {
+        return layout;
+    }
+
+    /**
+     * Returns the graph snapshot the index was built from.
+     *
+     * @return the snapshot.
+     */
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns true if the graph changed since the index was built. A
+     * {@link Graph310} caches its snapshot until it is modified, so any
+     * change (even one that keeps the counts) gives a new snapshot; other
+     * graphs can only be checked by their vertex and edge counts.
+     *
+     * @return whether a new index is needed.
+     */
+    public boolean isStale() {
+        Graph<GraphNode, GraphEdge> g = layout.getGraph();
+        if (g instanceof Graph310) {
+            return ((Graph310) g).compact() != graph;
+        }
+        return g.getVertexCount() != graph.getVertexCount() || g.getEdgeCount() != graph.getEdgeCount();
+    }
+
+    /**
+     * Updates the index after the layout moved a vertex (and so its edges).
+     *
+     * @param node the vertex that moved.
+     */
+    public void moved(GraphNode node) {
+        int v = graph.indexOf(node);
+        if (v < 0) {
+            return;
+        }
+        place(v);
+        for (int pos = graph.adjStart(v); pos < graph.adjStart(v + 1); pos++) {
+            placeEdge(graph.adjEdge(pos));
+        }
+    }
+
+    /**
+     * Returns the cached x position of a vertex.
+     *
+     * @param v the compact index of the vertex.
+     * @return its x position in layout coordinates.
+     */
+    public double getX(int v) {
+        return xs[v];
+    }
+
+    /**
+     * Returns the cached y position of a vertex.
+     *
+     * @param v the compact index of the vertex.
+     * @return its y position in layout coordinates.
+     */
+    public double getY(int v) {
+        return ys[v];
+    }
+
+    /**
+     * Reports the compact index of every vertex whose box intersects a box.
+     *
+     * @param minX    the left edge of the box (layout coordinates).
+     * @param minY    the top edge of the box.
+     * @param maxX    the right edge of the box.
+     * @param maxY    the bottom edge of the box.
+     * @param visitor receives the vertex indices.
+     * @return the number of vertices reported.
+     */
+    public int vertexIndicesIn(double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        return vertexGrid.query(minX, minY, maxX, maxY, visitor);
+    }
+
+    /**
+     * Reports the compact index of every edge that may cross a box: all
+     * the edges that do, and some that only pass near it.
+     *
+     * @param minX    the left edge of the box (layout coordinates).
+     * @param minY    the top edge of the box.
+     * @param maxX    the right edge of the box.
+     * @param maxY    the bottom edge of the box.
+     * @param visitor receives the edge indices.
+     * @return the number of edges reported.
+     */
+    public int edgeIndicesIn(double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        return edgeGrid.query(minX, minY, maxX, maxY, visitor);
+    }
+
+    /**
+     * Reports every vertex whose box intersects a box.
+     *
+     * @param minX    the left edge of the box (layout coordinates).
+     * @param minY    the top edge of the box.
+     * @param maxX    the right edge of the box.
+     * @param maxY    the bottom edge of the box.
+     * @param visitor receives the vertices.
+     */
+    public void verticesIn(double minX, double minY, double maxX, double maxY, Consumer<GraphNode> visitor) {
+        vertexGrid.query(minX, minY, maxX, maxY, v -> visitor.accept(graph.getNode(v)));
+    }
+
+    /**
+     * Reports every edge that may cross a box (see {@link #edgeIndicesIn}).
+     *
+     * @param minX    the left edge of the box (layout coordinates).
+     * @param minY    the top edge of the box.
+     * @param maxX    the right edge of the box.
+     * @param maxY    the bottom edge of the box.
+     * @param visitor receives the edges.
+     */
+    public void edgesIn(double minX, double minY, double maxX, double maxY, Consumer<GraphEdge> visitor) {
+        edgeGrid.query(minX, minY, maxX, maxY, e -> visitor.accept(graph.getEdge(e)));
+    }
+
+    /**
+     * Internal method to read a vertex position from the layout and index it.
+     *
+     * @param v the compact index of the vertex.
+     */
+    private void place(int v) {
+        Point2D p = layout.transform(graph.getNode(v));
+        xs[v] = p == null ? 0 : p.getX();
+        ys[v] = p == null ? 0 : p.getY();
+        vertexGrid.put(v, xs[v] - radius, ys[v] - radius, xs[v] + radius, ys[v] + radius);
+    }
+
+    /**
+     * Internal method to index an edge by the segment between its endpoints.
+     *
+     * @param e the compact index of the edge.
+     */
+    private void placeEdge(int e) {
+        int u = graph.getEdgeU(e);
+        int v = graph.getEdgeV(e);
+        edgeGrid.putSegment(e, xs[u], ys[u], xs[v], ys[v], 0);
+    }
+}
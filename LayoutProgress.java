@@ -0,0 +1,13 @@
+/**
+ *  Receives progress reports from a long-running layout computation
+ *  and tells it whether to go on.
+ */
+interface LayoutProgress {
+	/**
+	 *  Reports how far the computation has come.
+	 *
+	 *  @param fraction the fraction of the work done (0 to 1)
+	 *  @return false if the computation should stop (it was cancelled)
+	 */
+	public boolean update(double fraction);
+}
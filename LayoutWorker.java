@@ -0,0 +1,323 @@
+import edu.uci.ics.jung.algorithms.layout.KKLayout;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.algorithms.layout.StaticLayout;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+
+import java.awt.Dimension;
+import java.awt.geom.Point2D;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Computes graph layouts on a background thread, with progress reports,
+ * cancellation, and a cache of finished layouts.
+ *
+ * <p>Finished layouts are cached by the graph's topology (see
+ * {@link GraphHash#topology(CompactGraph)}), the kind of layout and the
+ * size, so laying out the same graph again (after a reset that regenerates
+ * it, or when switching back to a layout) reuses the coordinates at once.
+ * The cache holds at most a fixed number of layouts and evicts the least
+ * recently used one.
+ *
+ * <p>Only one layout is computed at a time: starting a new one cancels the
+ * one in progress. Callbacks are run on the EDT, and never for a cancelled
+ * layout.
+ */
+class LayoutWorker {
+    /**
+     * The kinds of layout the worker can compute.
+     */
+    enum Kind {
+        /**
+         * Vertices on a circle (cheap enough to compute on the EDT).
+         */
+        CIRCLE("Circle"),
+        /**
+         * The multilevel Barnes-Hut force-directed layout of {@link ForceLayout}.
+         */
+        FORCE("Force-directed"),
+        /**
+         * JUNG's Kamada-Kawai layout (O(V^2) per iteration: small graphs only).
+         */
+        KK("Kamada-Kawai"),
+        /**
+         * The trees of the MST built so far, laid out on the EDT by
+         * {@link ForestLayout} as the edges are selected (never computed
+         * by the worker).
+         */
+        FOREST("MST forest");
+
+        /**
+         * The name shown in menus.
+         */
+        private final String label;
+
+        /**
+         * Constructs a kind.
+         *
+         * @param label the name shown in menus.
+         */
+        Kind(String label) {
+            this.label = label;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * The number of Kamada-Kawai iterations.
+     */
+    private static final int KK_ITERATIONS = 500;
+
+    /**
+     * The thread the layouts are computed on.
+     */
+    private final ExecutorService worker;
+    /**
+     * The finished layouts (vertex id to position), in least-recently-used-first order.
+     */
+    private final LinkedHashMap<Long, Map<Integer, Point2D>> cache;
+    /**
+     * The maximum number of cached layouts.
+     */
+    private final int maxEntries;
+    /**
+     * Set to cancel the layout in progress (replaced for every layout).
+     */
+    private AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    /**
+     * Constructs a worker with its own thread.
+     *
+     * @param maxEntries the maximum number of cached layouts.
+     * @throws IllegalArgumentException if maxEntries is not positive.
+     */
+    public LayoutWorker(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "layout-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns a finished layout from the cache.
+     *
+     * @param graph the graph.
+     * @param kind  the kind of layout.
+     * @param size  the size of the layout.
+     * @return the cached layout, or null if it has not been computed.
+     */
+    public Layout<GraphNode, GraphEdge> getCached(Graph<GraphNode, GraphEdge> graph, Kind kind, Dimension size) {
+        Map<Integer, Point2D> positions;
+        synchronized (cache) {
+            positions = cache.get(key(CompactGraph.of(graph), kind, size));
+        }
+        return positions == null ? null : toLayout(graph, positions, size);
+    }
+
+    /**
+     * Starts computing a layout on the worker thread, cancelling the one in
+     * progress. The graph is snapshotted first (on the calling thread), and the
+     * worker only reads the snapshot, so the graph may change meanwhile.
+     *
+     * @param graph      the graph.
+     * @param kind       the kind of layout.
+     * @param size       the size of the layout.
+     * @param onProgress receives the fraction done, on the EDT (whenever it grows by a percent).
+     * @param onDone     receives the finished layout, on the EDT.
+     * @throws IllegalArgumentException if kind is {@link Kind#FOREST}.
+     */
+    public void compute(Graph<GraphNode, GraphEdge> graph, Kind kind, Dimension size,
+                        DoubleConsumer onProgress, Consumer<Layout<GraphNode, GraphEdge>> onDone) {
+        if (kind == Kind.FOREST) {
+            throw new IllegalArgumentException("The forest layout follows the simulation; use ForestLayout");
+        }
+        cancel();
+        AtomicBoolean stop = new AtomicBoolean(false);
+        cancelled = stop;
+        CompactGraph cg = CompactGraph.of(graph);
+        long key = key(cg, kind, size);
+        int[] lastPercent = {-1};
+        LayoutProgress progress = fraction -> {
+            int percent = (int) (fraction * 100);
+            if (percent != lastPercent[0]) {
+                lastPercent[0] = percent;
+                SwingUtilities.invokeLater(() -> {
+                    if (!stop.get()) {
+                        onProgress.accept(fraction);
+                    }
+                });
+            }
+            return !stop.get();
+        };
+
+        worker.submit(() -> {
+            Map<Integer, Point2D> positions;
+            try {
+                positions = run(cg, kind, size, progress);
+            } catch (CancellationException e) {
+                return;
+            }
+            synchronized (cache) {
+                cache.put(key, positions);
+                if (cache.size() > maxEntries) {
+                    cache.remove(cache.keySet().iterator().next());
+                }
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (!stop.get()) {
+                    onDone.accept(toLayout(graph, positions, size));
+                }
+            });
+        });
+    }
+
+    /**
+     * Cancels the layout in progress, if any.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * Returns the number of cached layouts.
+     *
+     * @return the cache size.
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Internal method to compute a layout (on the worker thread).
+     *
+     * @param cg       the snapshot of the graph.
+     * @param kind     the kind of layout.
+     * @param size     the size of the layout.
+     * @param progress receives progress reports; may cancel.
+     * @return the position of every vertex, by vertex id.
+     * @throws CancellationException if the layout was cancelled.
+     */
+    private static Map<Integer, Point2D> run(CompactGraph cg, Kind kind, Dimension size, LayoutProgress progress) {
+        Map<Integer, Point2D> positions = new LinkedHashMap<>();
+        if (kind == Kind.KK) {
+            //JUNG's layout needs a Graph: give it a private copy, not the live one
+            KKLayout<GraphNode, GraphEdge> kk = new KKLayout<>(copyOf(cg));
+            kk.setMaxIterations(KK_ITERATIONS);
+            kk.setSize(size);
+            int steps = 0;
+            while (!kk.done()) {
+                kk.step();
+                if (!progress.update(++steps / (double) KK_ITERATIONS)) {
+                    throw new CancellationException("Layout cancelled");
+                }
+            }
+            for (int v = 0; v < cg.getVertexCount(); v++) {
+                Point2D p = kk.transform(cg.getNode(v));
+                positions.put(cg.getNode(v).getId(), new Point2D.Double(p.getX(), p.getY()));
+            }
+        } else {
+            //the circle needs no worker, but is computed the same way for uniformity
+            double[] pos = kind == Kind.FORCE
+                ? ForceLayout.compute(cg, size.getWidth(), size.getHeight(), GraphHash.topology(cg), progress)
+                : circle(cg.getVertexCount(), size);
+            for (int v = 0; v < cg.getVertexCount(); v++) {
+                positions.put(cg.getNode(v).getId(), new Point2D.Double(pos[2 * v], pos[2 * v + 1]));
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Internal method to rebuild a graph snapshot as a separate JUNG graph
+     * (sharing the vertex and edge objects, but not the structure).
+     *
+     * @param cg the snapshot.
+     * @return a new graph with the snapshot's vertices and edges.
+     */
+    private static Graph<GraphNode, GraphEdge> copyOf(CompactGraph cg) {
+        Graph<GraphNode, GraphEdge> copy = new UndirectedSparseGraph<>();
+        for (int v = 0; v < cg.getVertexCount(); v++) {
+            copy.addVertex(cg.getNode(v));
+        }
+        for (int e = 0; e < cg.getEdgeCount(); e++) {
+            copy.addEdge(cg.getEdge(e), cg.getNode(cg.getEdgeU(e)), cg.getNode(cg.getEdgeV(e)));
+        }
+        return copy;
+    }
+
+    /**
+     * Internal method to place n vertices evenly on a circle.
+     *
+     * @param n    the number of vertices.
+     * @param size the size of the layout.
+     * @return the positions: x at 2v, y at 2v+1.
+     */
+    private static double[] circle(int n, Dimension size) {
+        double[] pos = new double[2 * n];
+        double radius = 0.45 * Math.min(size.getWidth(), size.getHeight());
+        for (int v = 0; v < n; v++) {
+            double angle = 2 * Math.PI * v / n;
+            pos[2 * v] = size.getWidth() / 2 + radius * Math.cos(angle);
+            pos[2 * v + 1] = size.getHeight() / 2 + radius * Math.sin(angle);
+        }
+        return pos;
+    }
+
+    /**
+     * Internal method to wrap finished positions in a layout. Vertices
+     * added since the layout was computed start in the middle.
+     *
+     * @param graph     the graph.
+     * @param positions the position of every vertex, by vertex id.
+     * @param size      the size of the layout.
+     * @return the layout.
+     */
+    private static Layout<GraphNode, GraphEdge> toLayout(Graph<GraphNode, GraphEdge> graph,
+                                                         Map<Integer, Point2D> positions, Dimension size) {
+        return new StaticLayout<>(graph, v -> {
+            Point2D p = positions.get(v.getId());
+            return p == null
+                ? new Point2D.Double(size.getWidth() / 2, size.getHeight() / 2)
+                : new Point2D.Double(p.getX(), p.getY());
+        }, size);
+    }
+
+    /**
+     * Internal method to make the cache key of a layout.
+     *
+     * @param cg   the graph snapshot.
+     * @param kind the kind of layout.
+     * @param size the size of the layout.
+     * @return the key.
+     */
+    private static long key(CompactGraph cg, Kind kind, Dimension size) {
+        long h = GraphHash.topology(cg);
+        h = h * 31 + kind.ordinal();
+        h = h * 31 + size.width;
+        return h * 31 + size.height;
+    }
+}
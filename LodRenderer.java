@@ -0,0 +1,291 @@
+import edu.uci.ics.jung.algorithms.layout.CircleLayout;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.MultiLayerTransformer;
+import edu.uci.ics.jung.visualization.RenderContext;
+import edu.uci.ics.jung.visualization.VisualizationViewer;
+import edu.uci.ics.jung.visualization.renderers.BasicRenderer;
+import edu.uci.ics.jung.visualization.transform.shape.GraphicsDecorator;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.Stroke;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import javax.swing.JComponent;
+
+/**
+ * A level-of-detail renderer for large graphs.
+ *
+ * <p>Only the vertices whose boxes and the edges whose segments reach the
+ * viewport are drawn; they are found with a {@link LayoutIndex} over the layout
+ * positions instead of by walking the whole graph. What is drawn then
+ * depends on how much is visible and how far the view is zoomed out:
+ * <ul>
+ * <li>zoomed in with few visible components, each one is drawn by the usual
+ * JUNG vertex/edge renderers, so the view looks exactly like before;</li>
+ * <li>below {@link #LABEL_SCALE}, labels are dropped;</li>
+ * <li>below {@link #BATCH_SCALE}, or with more than {@link #DETAIL_LIMIT}
+ * visible components, edges are drawn as straight lines with one
+ * {@code Path2D} per paint and vertices as one filled path per paint
+ * plus one outline path. The paints come from the render context's
+ * edge draw and vertex fill transformers, as in the detailed view.</li>
+ * </ul>
+ */
+class LodRenderer extends BasicRenderer<GraphNode, GraphEdge> {
+    /**
+     * The zoom below which labels are not drawn.
+     */
+    public static final double LABEL_SCALE = 0.6;
+    /**
+     * The zoom below which components are drawn in batches.
+     */
+    public static final double BATCH_SCALE = 0.35;
+    /**
+     * The most visible components drawn one by one.
+     */
+    public static final int DETAIL_LIMIT = 3000;
+    /**
+     * How far a vertex reaches from its position (in layout units).
+     */
+    private static final double VERTEX_RADIUS = 15;
+    /**
+     * How far past the viewport components are still drawn (curves and labels).
+     */
+    private static final double MARGIN = 20;
+    /**
+     * The stroke of batched lines.
+     */
+    private static final Stroke THIN = new BasicStroke(1f);
+
+    /**
+     * The index of the layout being drawn.
+     */
+    private LayoutIndex index = null;
+    /**
+     * The visible vertices of the current frame (compact indices).
+     */
+    private int[] visibleVertices = new int[64];
+    /**
+     * The number of visible vertices.
+     */
+    private int vertexCount = 0;
+    /**
+     * The visible edges of the current frame (compact indices).
+     */
+    private int[] visibleEdges = new int[64];
+    /**
+     * The number of visible edges.
+     */
+    private int edgeCount = 0;
+
+    /**
+     * Returns the index of a layout. An {@link IndexedLayout} keeps its own;
+     * for other layouts a new one is built if the layout or the graph's
+     * vertices and edges changed since the last one (vertices moved by
+     * hand are not noticed).
+     *
+     * @param layout the layout.
+     * @return an up-to-date index.
+     */
+    public LayoutIndex getIndex(Layout<GraphNode, GraphEdge> layout) {
+        if (layout instanceof IndexedLayout) {
+            return ((IndexedLayout) layout).getIndex();
+        }
+        if (index == null || index.getLayout() != layout || index.isStale()) {
+            index = new LayoutIndex(layout, VERTEX_RADIUS);
+        }
+        return index;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void render(RenderContext<GraphNode, GraphEdge> rc, Layout<GraphNode, GraphEdge> layout) {
+        JComponent screen = rc.getScreenDevice();
+        if (screen == null) {
+            super.render(rc, layout);
+            return;
+        }
+        LayoutIndex idx = getIndex(layout);
+        MultiLayerTransformer transformer = rc.getMultiLayerTransformer();
+        Rectangle2D view = transformer.inverseTransform(
+            new Rectangle(0, 0, screen.getWidth(), screen.getHeight())).getBounds2D();
+        double scale = transformer.getTransformer(Layer.LAYOUT).getScale()
+            * transformer.getTransformer(Layer.VIEW).getScale();
+
+        double minX = view.getMinX() - MARGIN;
+        double minY = view.getMinY() - MARGIN;
+        double maxX = view.getMaxX() + MARGIN;
+        double maxY = view.getMaxY() + MARGIN;
+        edgeCount = 0;
+        idx.edgeIndicesIn(minX, minY, maxX, maxY, e -> {
+            if (edgeCount == visibleEdges.length) {
+                visibleEdges = Arrays.copyOf(visibleEdges, edgeCount * 2);
+            }
+            visibleEdges[edgeCount++] = e;
+        });
+        vertexCount = 0;
+        idx.vertexIndicesIn(minX, minY, maxX, maxY, v -> {
+            if (vertexCount == visibleVertices.length) {
+                visibleVertices = Arrays.copyOf(visibleVertices, vertexCount * 2);
+            }
+            visibleVertices[vertexCount++] = v;
+        });
+
+        if (scale < BATCH_SCALE || edgeCount + vertexCount > DETAIL_LIMIT) {
+            renderBatched(rc, idx, scale);
+            return;
+        }
+        boolean labels = scale >= LABEL_SCALE;
+        CompactGraph graph = idx.getGraph();
+        for (int i = 0; i < edgeCount; i++) {
+            GraphEdge e = graph.getEdge(visibleEdges[i]);
+            renderEdge(rc, layout, e);
+            if (labels) {
+                renderEdgeLabel(rc, layout, e);
+            }
+        }
+        for (int i = 0; i < vertexCount; i++) {
+            GraphNode v = graph.getNode(visibleVertices[i]);
+            renderVertex(rc, layout, v);
+            if (labels) {
+                renderVertexLabel(rc, layout, v);
+            }
+        }
+    }
+
+    /**
+     * Internal method to draw the visible components in batches, without labels.
+     *
+     * @param rc    the render context.
+     * @param idx   the layout index.
+     * @param scale the current zoom.
+     */
+    private void renderBatched(RenderContext<GraphNode, GraphEdge> rc, LayoutIndex idx, double scale) {
+        GraphicsDecorator g = rc.getGraphicsContext();
+        MultiLayerTransformer transformer = rc.getMultiLayerTransformer();
+        CompactGraph graph = idx.getGraph();
+        Stroke oldStroke = g.getStroke();
+        Paint oldPaint = g.getPaint();
+        g.setStroke(THIN);
+
+        //edges: one path per paint, built in layout coordinates and transformed once
+        Map<Paint, Path2D.Double> edgePaths = new HashMap<>();
+        for (int i = 0; i < edgeCount; i++) {
+            int e = visibleEdges[i];
+            int u = graph.getEdgeU(e);
+            int v = graph.getEdgeV(e);
+            Path2D.Double path = edgePaths.computeIfAbsent(
+                paintOf(rc.getEdgeDrawPaintTransformer().transform(graph.getEdge(e))), c -> new Path2D.Double());
+            path.moveTo(idx.getX(u), idx.getY(u));
+            path.lineTo(idx.getX(v), idx.getY(v));
+        }
+        for (Map.Entry<Paint, Path2D.Double> entry : edgePaths.entrySet()) {
+            g.setPaint(entry.getKey());
+            g.draw(transformer.transform(entry.getValue()));
+        }
+
+        //vertices: one filled path per paint plus one outline, in view coordinates
+        double r = Math.max(1.5, VERTEX_RADIUS * transformer.getTransformer(Layer.VIEW).getScale());
+        Map<Paint, Path2D.Double> vertexPaths = new HashMap<>();
+        Path2D.Double outline = new Path2D.Double();
+        Ellipse2D.Double dot = new Ellipse2D.Double();
+        Point2D.Double p = new Point2D.Double();
+        for (int i = 0; i < vertexCount; i++) {
+            int v = visibleVertices[i];
+            p.setLocation(idx.getX(v), idx.getY(v));
+            Point2D at = transformer.transform(p);
+            dot.setFrame(at.getX() - r, at.getY() - r, 2 * r, 2 * r);
+            Paint fill = paintOf(rc.getVertexFillPaintTransformer().transform(graph.getNode(v)));
+            vertexPaths.computeIfAbsent(fill, c -> new Path2D.Double()).append(dot, false);
+            outline.append(dot, false);
+        }
+        for (Map.Entry<Paint, Path2D.Double> entry : vertexPaths.entrySet()) {
+            g.setPaint(entry.getKey());
+            g.fill(entry.getValue());
+        }
+        if (scale >= BATCH_SCALE / 4) {
+            g.setPaint(Color.BLACK);
+            g.draw(outline);
+        }
+
+        g.setStroke(oldStroke);
+        g.setPaint(oldPaint);
+    }
+
+    /**
+     * Internal method to get the paint to draw a component with.
+     *
+     * @param paint the paint the render context gave for the component.
+     * @return the paint, or black if there is none.
+     */
+    private static Paint paintOf(Paint paint) {
+        return paint == null ? Color.BLACK : paint;
+    }
+
+    /**
+     * Times frames of a large random graph drawn into an offscreen image,
+     * fully zoomed out (batched) and at zoom 1 (culled, drawn one by one).
+     *
+     * @param args [0] = the number of vertices (default 5000), [1] = edge attempts (default 100000).
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int tries = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        Random rand = new Random(1);
+        UndirectedSparseGraph<GraphNode, GraphEdge> graph = new UndirectedSparseGraph<>();
+        GraphNode[] nodes = new GraphNode[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new GraphNode(i);
+            graph.addVertex(nodes[i]);
+        }
+        for (int i = 0; i < tries; i++) {
+            int u = rand.nextInt(n);
+            int v = rand.nextInt(n);
+            if (u != v && graph.findEdge(nodes[u], nodes[v]) == null) {
+                graph.addEdge(new GraphEdge(i), nodes[u], nodes[v]);
+            }
+        }
+        Layout<GraphNode, GraphEdge> layout = new CircleLayout<>(graph);
+        layout.setSize(new Dimension(4000, 4000));
+        VisualizationViewer<GraphNode, GraphEdge> vv = new VisualizationViewer<>(layout);
+        vv.setSize(800, 600);
+        LodRenderer renderer = new LodRenderer();
+        vv.setRenderer(renderer);
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+        RenderContext<GraphNode, GraphEdge> rc = vv.getRenderContext();
+        rc.setGraphicsContext(new GraphicsDecorator(image.createGraphics()));
+        rc.setScreenDevice(vv);
+        System.out.printf("%,d vertices, %,d edges, 800x600 software rendering%n", n, graph.getEdgeCount());
+
+        long start = System.nanoTime();
+        renderer.getIndex(layout);
+        System.out.printf("index build: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        for (double scale : new double[] {0.1, 1.0}) {
+            rc.getMultiLayerTransformer().getTransformer(Layer.VIEW).setScale(scale, scale, new Point2D.Double(0, 0));
+            double[] times = new double[12];
+            for (int k = 0; k < times.length; k++) {
+                start = System.nanoTime();
+                renderer.render(rc, layout);
+                times[k] = (System.nanoTime() - start) / 1e6;
+            }
+            Arrays.sort(times);
+            System.out.printf("zoom %.1f: median frame %.1f ms (fastest %.1f, slowest %.1f)%n",
+                scale, times[times.length / 2], times[0], times[times.length - 1]);
+        }
+    }
+}
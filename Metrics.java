@@ -0,0 +1,540 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, histograms and gauges for the hot paths of the algorithms and
+ * data structures, with a registry that prints them as JSON or in the
+ * Prometheus text format.
+ *
+ * <p>Metrics are off unless the JVM is started with
+ * {@code -Dmst.metrics=true}. Every update site is guarded by the
+ * {@link #ENABLED} constant, so when metrics are off the JIT drops the
+ * updates entirely. When they are on, counters and histogram buckets are
+ * {@code LongAdder}s, so threads updating them do not contend.
+ *
+ * <p>Metrics are registered by name once (usually in a static field of
+ * the class they measure); asking for a name again returns the same metric.
+ */
+final class Metrics {
+    /**
+     * Whether metrics are collected (the system property {@code mst.metrics}).
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("mst.metrics");
+
+    /**
+     * The registered metrics, by name (sorted, so dumps are stable).
+     */
+    private static final Map<String, Metric> REGISTRY = new ConcurrentSkipListMap<>();
+
+    /**
+     * Not instantiable.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Returns the counter with a name, registering it if needed.
+     *
+     * @param name the metric name (letters, digits and underscores).
+     * @param help what the counter counts.
+     * @return the counter.
+     * @throws IllegalArgumentException if the name is taken by another kind of metric.
+     */
+    public static Counter counter(String name, String help) {
+        return register(Counter.class, new Counter(name, help));
+    }
+
+    /**
+     * Returns the histogram with a name, registering it if needed.
+     *
+     * @param name the metric name (letters, digits and underscores).
+     * @param help what the histogram measures.
+     * @return the histogram.
+     * @throws IllegalArgumentException if the name is taken by another kind of metric.
+     */
+    public static Histogram histogram(String name, String help) {
+        return register(Histogram.class, new Histogram(name, help));
+    }
+
+    /**
+     * Returns the gauge with a name, registering it if needed.
+     *
+     * @param name the metric name (letters, digits and underscores).
+     * @param help what the gauge shows.
+     * @return the gauge.
+     * @throws IllegalArgumentException if the name is taken by another kind of metric.
+     */
+    public static Gauge gauge(String name, String help) {
+        return register(Gauge.class, new Gauge(name, help));
+    }
+
+    /**
+     * Sets every registered metric back to zero.
+     */
+    public static void reset() {
+        for (Metric m : REGISTRY.values()) {
+            m.reset();
+        }
+    }
+
+    /**
+     * Returns every registered metric as a JSON object keyed by name.
+     *
+     * @return the JSON text.
+     */
+    public static String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        for (Metric m : REGISTRY.values()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append("\n  \"").append(m.name).append("\": ");
+            m.writeJson(sb);
+        }
+        return sb.append("\n}\n").toString();
+    }
+
+    /**
+     * Returns every registered metric in the Prometheus text exposition format.
+     *
+     * @return the Prometheus text.
+     */
+    public static String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        for (Metric m : REGISTRY.values()) {
+            sb.append("# HELP ").append(m.name).append(' ').append(m.help).append('\n');
+            sb.append("# TYPE ").append(m.name).append(' ').append(m.type()).append('\n');
+            m.writePrometheus(sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns one short line per registered metric, for on-screen display.
+     *
+     * @return the lines.
+     */
+    public static List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        for (Metric m : REGISTRY.values()) {
+            lines.add(m.name + " " + m.summary());
+        }
+        return lines;
+    }
+
+    /**
+     * Internal method to register a metric unless its name is taken.
+     *
+     * @param <M>    the kind of metric.
+     * @param kind   the class of the metric.
+     * @param metric the new metric.
+     * @return the registered metric with that name.
+     * @throws IllegalArgumentException if the name is taken by another kind of metric.
+     */
+    private static <M extends Metric> M register(Class<M> kind, M metric) {
+        Metric m = REGISTRY.putIfAbsent(metric.name, metric);
+        if (m == null) {
+            return metric;
+        }
+        if (!kind.isInstance(m)) {
+            throw new IllegalArgumentException("Metric " + metric.name + " is a " + m.type());
+        }
+        return kind.cast(m);
+    }
+
+    /**
+     * A named metric.
+     */
+    abstract static class Metric {
+        /**
+         * The name.
+         */
+        final String name;
+        /**
+         * What the metric measures.
+         */
+        final String help;
+
+        /**
+         * Constructs a metric.
+         *
+         * @param name the name (letters, digits and underscores).
+         * @param help what the metric measures.
+         * @throws IllegalArgumentException if the name is empty or has other characters.
+         */
+        Metric(String name, String help) {
+            if (name == null || !name.matches("[a-zA-Z_][a-zA-Z0-9_]*")) {
+                throw new IllegalArgumentException("Bad metric name: " + name);
+            }
+            this.name = name;
+            this.help = help;
+        }
+
+        /**
+         * Returns the Prometheus type of the metric.
+         *
+         * @return the type.
+         */
+        abstract String type();
+
+        /**
+         * Sets the metric back to zero.
+         */
+        abstract void reset();
+
+        /**
+         * Appends the value of the metric as JSON.
+         *
+         * @param sb where to append.
+         */
+        abstract void writeJson(StringBuilder sb);
+
+        /**
+         * Appends the samples of the metric in the Prometheus text format.
+         *
+         * @param sb where to append.
+         */
+        abstract void writePrometheus(StringBuilder sb);
+
+        /**
+         * Returns the value of the metric in a few words.
+         *
+         * @return the summary.
+         */
+        abstract String summary();
+    }
+
+    /**
+     * A count that only goes up.
+     */
+    static final class Counter extends Metric {
+        /**
+         * The count.
+         */
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Constructs a counter.
+         *
+         * @param name the name.
+         * @param help what it counts.
+         */
+        Counter(String name, String help) {
+            super(name, help);
+        }
+
+        /**
+         * Adds one.
+         */
+        public void increment() {
+            count.increment();
+        }
+
+        /**
+         * Adds an amount.
+         *
+         * @param n the amount.
+         */
+        public void add(long n) {
+            count.add(n);
+        }
+
+        /**
+         * Returns the count.
+         *
+         * @return the count.
+         */
+        public long get() {
+            return count.sum();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        String type() {
+            return "counter";
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        void reset() {
+            count.reset();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        void writeJson(StringBuilder sb) {
+            sb.append(get());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        void writePrometheus(StringBuilder sb) {
+            sb.append(name).append(' ').append(get()).append('\n');
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        String summary() {
+            return String.format("%,d", get());
+        }
+    }
+
+    /**
+     * A value that is set (or raised) rather than counted.
+     */
+    static final class Gauge extends Metric {
+        /**
+         * The value.
+         */
+        private final AtomicLong value = new AtomicLong();
+
+        /**
+         * Constructs a gauge.
+         *
+         * @param name the name.
+         * @param help what it shows.
+         */
+        Gauge(String name, String help) {
+            super(name, help);
+        }
+
+        /**
+         * Sets the value.
+         *
+         * @param v the value.
+         */
+        public void set(long v) {
+            value.set(v);
+        }
+
+        /**
+         * Raises the value to v if it is smaller.
+         *
+         * @param v the candidate value.
+         */
+        public void max(long v) {
+            long old = value.get();
+            while (v > old && !value.compareAndSet(old, v)) {
+                old = value.get();
+            }
+        }
+
+        /**
+         * Returns the value.
+         *
+         * @return the value.
+         */
+        public long get() {
+            return value.get();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        String type() {
+            return "gauge";
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        void reset() {
+            value.set(0);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        void writeJson(StringBuilder sb) {
+            sb.append(get());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        void writePrometheus(StringBuilder sb) {
+            sb.append(name).append(' ').append(get()).append('\n');
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        String summary() {
+            return String.format("%,d", get());
+        }
+    }
+
+    /**
+     * A distribution of non-negative values in power-of-two buckets:
+     * bucket 0 holds 0, and bucket i holds 2^(i-1) to 2^i - 1.
+     */
+    static final class Histogram extends Metric {
+        /**
+         * The number of buckets (enough for any long).
+         */
+        private static final int BUCKETS = 64;
+
+        /**
+         * The number of values in each bucket.
+         */
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        /**
+         * The sum of the values.
+         */
+        private final LongAdder sum = new LongAdder();
+        /**
+         * The largest value.
+         */
+        private final Gauge max;
+
+        /**
+         * Constructs a histogram.
+         *
+         * @param name the name.
+         * @param help what it measures.
+         */
+        Histogram(String name, String help) {
+            super(name, help);
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+            max = new Gauge(name + "_max", help);
+        }
+
+        /**
+         * Records a value (negative values count as 0).
+         *
+         * @param v the value.
+         */
+        public void record(long v) {
+            v = Math.max(v, 0);
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(v))].increment();
+            sum.add(v);
+            max.max(v);
+        }
+
+        /**
+         * Returns the number of recorded values.
+         *
+         * @return the count.
+         */
+        public long getCount() {
+            long n = 0;
+            for (LongAdder b : buckets) {
+                n += b.sum();
+            }
+            return n;
+        }
+
+        /**
+         * Returns the sum of the recorded values.
+         *
+         * @return the sum.
+         */
+        public long getSum() {
+            return sum.sum();
+        }
+
+        /**
+         * Returns the largest recorded value.
+         *
+         * @return the largest value (0 if none).
+         */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * Returns the number of values in a bucket.
+         *
+         * @param i the bucket.
+         * @return the number of values from 2^(i-1) to 2^i - 1 (just 0 for bucket 0).
+         * @throws IndexOutOfBoundsException if there is no bucket i.
+         */
+        public long getBucket(int i) {
+            return buckets[i].sum();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        String type() {
+            return "histogram";
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        void reset() {
+            for (LongAdder b : buckets) {
+                b.reset();
+            }
+            sum.reset();
+            max.reset();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        void writeJson(StringBuilder sb) {
+            sb.append("{\"count\": ").append(getCount())
+                .append(", \"sum\": ").append(getSum())
+                .append(", \"max\": ").append(getMax())
+                .append(", \"buckets\": {");
+            boolean first = true;
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = getBucket(i);
+                if (n > 0) {
+                    sb.append(first ? "" : ", ").append('"').append(upperBound(i)).append("\": ").append(n);
+                    first = false;
+                }
+            }
+            sb.append("}}");
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        void writePrometheus(StringBuilder sb) {
+            long count = 0;
+            int last = BUCKETS - 1;
+            while (last > 0 && getBucket(last) == 0) {
+                last--;
+            }
+            for (int i = 0; i <= last; i++) {
+                count += getBucket(i);
+                sb.append(name).append("_bucket{le=\"").append(upperBound(i)).append("\"} ").append(count).append('\n');
+            }
+            sb.append(name).append("_bucket{le=\"+Inf\"} ").append(count).append('\n');
+            sb.append(name).append("_sum ").append(getSum()).append('\n');
+            sb.append(name).append("_count ").append(count).append('\n');
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        String summary() {
+            long n = getCount();
+            return n == 0 ? "n=0" : String.format("n=%,d mean=%,.1f max=%,d", n, getSum() / (double) n, getMax());
+        }
+
+        /**
+         * Internal method to get the largest value of a bucket.
+         *
+         * @param i the bucket.
+         * @return 2^i - 1 (Long.MAX_VALUE for the last bucket).
+         */
+        private static long upperBound(int i) {
+            return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+import edu.uci.ics.jung.graph.Graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of MST results keyed by the structural hash of the graph
+ * (see {@link GraphHash}).
+ *
+ * <p>The in-memory tier holds at most a fixed number of results and evicts
+ * the least recently used one when full. An optional on-disk tier keeps
+ * every result in its own small binary file, so results survive restarts
+ * and memory evictions. Hit, miss and eviction counts are kept for both tiers.
+ *
+ * <p>Keys are 64-bit hashes: two different graphs with the same hash would
+ * share a result. This is vanishingly unlikely but not impossible; with
+ * {@link #setVerifying verification} on, the cache checks every hit with {@link MstVerifier}
+ * and recomputes (and replaces) any result that is not an MST of the graph.
+ */
+class MstCache {
+    /**
+     * Marks the start of an on-disk entry ("MST1").
+     */
+    private static final int FILE_MAGIC = 0x4D535431;
+    /**
+     * The suffix of on-disk entries.
+     */
+    private static final String FILE_SUFFIX = ".mst";
+
+    /**
+     * The in-memory tier, in least-recently-used-first order.
+     */
+    private final LinkedHashMap<Long, MstResult> memory;
+    /**
+     * The maximum number of results in the in-memory tier.
+     */
+    private final int maxEntries;
+    /**
+     * The directory of the on-disk tier, or null if there is none.
+     */
+    private final File directory;
+    /**
+     * Whether hits are checked against the graph before being returned.
+     */
+    private volatile boolean verifying = false;
+
+    /**
+     * Lookups answered by the in-memory tier.
+     */
+    private long hits = 0;
+    /**
+     * Lookups answered by the on-disk tier.
+     */
+    private long diskHits = 0;
+    /**
+     * Lookups answered by neither tier.
+     */
+    private long misses = 0;
+    /**
+     * Results dropped from the in-memory tier to make room.
+     */
+    private long evictions = 0;
+    /**
+     * Hits that failed verification and were recomputed.
+     */
+    private long rejected = 0;
+    /**
+     * On-disk reads and writes that failed with an I/O error.
+     */
+    private long diskErrors = 0;
+
+    /**
+     * Constructs a memory-only cache.
+     *
+     * @param maxEntries the maximum number of results kept in memory.
+     */
+    public MstCache(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    /**
+     * Constructs a cache with an on-disk tier.
+     *
+     * @param maxEntries the maximum number of results kept in memory.
+     * @param directory  the directory for on-disk results (created if needed), or null for none.
+     * @throws IllegalArgumentException if maxEntries is not positive or the directory cannot be used.
+     */
+    public MstCache(int maxEntries, File directory) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Not a usable directory: " + directory);
+        }
+        this.maxEntries = maxEntries;
+        this.directory = directory;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the MST of a graph, from the cache if possible. On a miss the
+     * MST is computed with {@link Kruskal310} (which recolors the graph as usual)
+     * and stored in every tier. With verification on, a hit that is not an
+     * MST of this graph counts as rejected and is recomputed.
+     *
+     * @param graph the graph.
+     * @return the MST of the graph.
+     */
+    public MstResult getOrCompute(Graph<GraphNode, GraphEdge> graph) {
+        long key = GraphHash.of(graph);
+        MstResult result = get(key);
+        if (result != null && verifying && !MstVerifier.verify(graph, result).isValid()) {
+            synchronized (this) {
+                rejected++;
+            }
+            result = null;
+        }
+        if (result == null) {
+            Kruskal310 alg = new Kruskal310();
+            alg.reset(graph);
+            while (alg.step()) {
+                //run to the end
+            }
+            result = alg.getResult();
+            put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Looks up a result by key, trying memory first and then disk.
+     * A disk hit is promoted into memory. The disk is read without holding
+     * the cache's lock, so other lookups are not held up by it; memory is
+     * checked again before promoting, in case another thread stored the
+     * key meanwhile.
+     *
+     * @param key the graph hash.
+     * @return the cached result, or null if there is none.
+     */
+    public MstResult get(long key) {
+        synchronized (this) {
+            MstResult result = memory.get(key);
+            if (result != null) {
+                hits++;
+                return result;
+            }
+        }
+        MstResult read = readFromDisk(key);
+        synchronized (this) {
+            MstResult result = memory.get(key);
+            if (result != null) {
+                hits++;
+                return result;
+            }
+            if (read != null) {
+                diskHits++;
+                putInMemory(key, read);
+                return read;
+            }
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Stores a result in every tier.
+     *
+     * @param key    the graph hash.
+     * @param result the result to store.
+     */
+    public synchronized void put(long key, MstResult result) {
+        if (result == null) {
+            throw new IllegalArgumentException();
+        }
+        putInMemory(key, result);
+        writeToDisk(key, result);
+    }
+
+    /**
+     * Turns checking of hits by {@link #getOrCompute} on or off.
+     * Verification is linear in the size of the graph, like hashing it.
+     *
+     * @param verifying true to verify every hit.
+     */
+    public void setVerifying(boolean verifying) {
+        this.verifying = verifying;
+    }
+
+    /**
+     * Returns whether hits are verified.
+     *
+     * @return true if hits are verified.
+     */
+    public boolean isVerifying() {
+        return verifying;
+    }
+
+    /**
+     * Removes every result from memory (the on-disk tier is kept).
+     */
+    public synchronized void clearMemory() {
+        memory.clear();
+    }
+
+    /**
+     * Returns the number of results in memory.
+     *
+     * @return the number of results in memory.
+     */
+    public synchronized int size() {
+        return memory.size();
+    }
+
+    /**
+     * Returns the number of lookups answered from memory.
+     *
+     * @return the number of memory hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups answered from disk.
+     *
+     * @return the number of disk hits.
+     */
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * Returns the number of lookups answered by neither tier.
+     *
+     * @return the number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of results evicted from memory.
+     *
+     * @return the number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of hits that failed verification.
+     *
+     * @return the number of rejected hits.
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the number of on-disk reads and writes that failed. A failed
+     * read is treated as a miss (and the damaged entry deleted) and a
+     * failed write leaves the result in memory only.
+     *
+     * @return the number of disk errors.
+     */
+    public synchronized long getDiskErrors() {
+        return diskErrors;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return "MstCache[size=" + memory.size() + "/" + maxEntries + ", hits=" + hits
+            + ", diskHits=" + diskHits + ", misses=" + misses + ", evictions=" + evictions
+            + ", rejected=" + rejected + ", diskErrors=" + diskErrors + "]";
+    }
+
+    /**
+     * Internal method to add to the memory tier, evicting the least recently used result if full.
+     *
+     * @param key    the graph hash.
+     * @param result the result to store.
+     */
+    private void putInMemory(long key, MstResult result) {
+        memory.put(key, result);
+        Iterator<Map.Entry<Long, MstResult>> it = memory.entrySet().iterator();
+        while (memory.size() > maxEntries) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Internal method to find the file of a key.
+     *
+     * @param key the graph hash.
+     * @return the file holding that key's result.
+     */
+    private File fileFor(long key) {
+        return new File(directory, String.format("%016x", key) + FILE_SUFFIX);
+    }
+
+    /**
+     * Internal method to read a result from disk.
+     * The layout is: magic, key, edge count, total weight, then the
+     * ascending edge ids as variable-length gaps. An entry that cannot be
+     * read, or holds a result that makes no sense, counts as a disk error
+     * and is deleted. Called without the cache's lock.
+     *
+     * @param key the graph hash.
+     * @return the stored result, or null if there is none (or it is unreadable).
+     */
+    private MstResult readFromDisk(long key) {
+        if (directory == null) {
+            return null;
+        }
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        long length = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readLong() != key) {
+                return null;
+            }
+            int count = readVarInt(in);
+            if (count < 0 || count > length) {
+                //every id takes at least a byte
+                throw new IOException("Bad edge count " + count + " in " + file);
+            }
+            long total = in.readLong();
+            int[] ids = new int[count];
+            int prev = 0;
+            for (int i = 0; i < count; i++) {
+                prev += readVarInt(in);
+                ids[i] = prev;
+            }
+            return new MstResult(ids, total);
+        } catch (IOException | RuntimeException e) {
+            //a damaged entry is just a miss
+            synchronized (this) {
+                diskErrors++;
+                file.delete();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Internal method to write a result to disk (via a temporary file, so
+     * readers never see a half-written entry). If the write fails the error
+     * is counted and the entry is left out of the on-disk tier.
+     *
+     * @param key    the graph hash.
+     * @param result the result to store.
+     */
+    private void writeToDisk(long key, MstResult result) {
+        if (directory == null) {
+            return;
+        }
+        File file = fileFor(key);
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            int[] ids = result.getEdgeIds();
+            out.writeInt(FILE_MAGIC);
+            out.writeLong(key);
+            writeVarInt(out, ids.length);
+            out.writeLong(result.getTotalWeight());
+            int prev = 0;
+            for (int id : ids) {
+                writeVarInt(out, id - prev);
+                prev = id;
+            }
+        } catch (IOException e) {
+            diskErrors++;
+            tmp.delete();
+            file.delete(); //leave this entry out of the on-disk tier
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                diskErrors++;
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Internal method to write an int using 7 bits per byte.
+     *
+     * @param out   the stream to write to.
+     * @param value the value to write (treated as unsigned).
+     * @throws IOException if the write fails.
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Internal method to read an int written by writeVarInt.
+     *
+     * @param in the stream to read from.
+     * @return the value read.
+     * @throws IOException if the read fails or the value is malformed.
+     */
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length int");
+    }
+}
@@ -0,0 +1,60 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one phase of an MST algorithm:
+ * building the queue ({@code start}), deciding whether to go on
+ * ({@code setupNextStep}), taking one edge ({@code doNextStep}) or
+ * wrapping up ({@code finish}).
+ *
+ * <p>Recorded with the standard JFR tools, e.g.
+ * {@code java -XX:StartFlightRecording=filename=mst.jfr ...}, then
+ * {@code jfr print --events mst.MstPhase mst.jfr}. When no recording is
+ * running, {@code shouldCommit()} is false and the payload is not computed.
+ */
+@Name("mst.MstPhase")
+@Label("MST Phase")
+@Category({"MST", "Algorithm"})
+@Description("One phase of an MST algorithm step")
+@StackTrace(false)
+class MstPhaseEvent extends jdk.jfr.Event {
+    /**
+     * The phase: start, setupNextStep, doNextStep or finish.
+     */
+    @Label("Phase")
+    String phase;
+
+    /**
+     * The id of the edge taken by a doNextStep (-1 otherwise).
+     */
+    @Label("Edge Id")
+    int edgeId = -1;
+
+    /**
+     * The weight of the edge taken by a doNextStep (-1 otherwise).
+     */
+    @Label("Edge Weight")
+    int weight = -1;
+
+    /**
+     * Whether the edge taken by a doNextStep joined the MST.
+     */
+    @Label("Selected")
+    boolean selected;
+
+    /**
+     * The number of edges still queued after the phase.
+     */
+    @Label("Queue Size")
+    int queueSize;
+
+    /**
+     * The number of trees in the forest after the phase.
+     */
+    @Label("Component Count")
+    @Description("Trees in the spanning forest built so far, counting unreached vertices")
+    int componentCount;
+}
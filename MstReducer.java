@@ -0,0 +1,611 @@
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+import edu.uci.ics.jung.graph.UndirectedSparseMultigraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Shrinks a graph before its MST is computed, keeping the edges the
+ * reductions prove to be in the MST.
+ *
+ * <p>Edges are ordered like {@link GraphEdge#compareTo} (by weight, then
+ * id), so the MST is unique and every stage keeps exactly the MST that
+ * {@link Kruskal310} would find on the whole graph:
+ * <ol>
+ * <li>"duplicates": self-loops and all but the lightest of parallel edges
+ * are dropped (they can never be in the MST);</li>
+ * <li>"leaves": vertices of degree 1 are stripped, repeatedly, and their
+ * edges forced into the MST (they are the only way to reach the vertex);
+ * isolated vertices are dropped;</li>
+ * <li>"boruvka": the lightest edge of every remaining vertex is forced
+ * (the cut property) and contracted, which at least halves the vertices;
+ * edges inside a contracted group are dropped, and so are the heavier
+ * of the parallel edges the contraction makes.</li>
+ * </ol>
+ * The reduced graph holds the original vertex (one per contracted group)
+ * and edge objects, so the engine's result needs no translation: the MST
+ * is that result plus the forced edges (see {@link #expand}).
+ */
+class MstReducer {
+    /**
+     * What one stage of the reduction did.
+     */
+    static final class StageStats {
+        /**
+         * The name of the stage.
+         */
+        private final String stage;
+        /**
+         * The vertices before the stage.
+         */
+        private final int verticesBefore;
+        /**
+         * The edges before the stage.
+         */
+        private final int edgesBefore;
+        /**
+         * The vertices after the stage.
+         */
+        private int verticesAfter;
+        /**
+         * The edges after the stage.
+         */
+        private int edgesAfter;
+        /**
+         * The edges the stage forced into the MST.
+         */
+        private int forced = 0;
+        /**
+         * The time spent, in nanoseconds.
+         */
+        private long nanos = 0;
+
+        /**
+         * Constructs statistics for a stage about to start.
+         *
+         * @param stage    the name of the stage.
+         * @param vertices the vertices before the stage.
+         * @param edges    the edges before the stage.
+         */
+        StageStats(String stage, int vertices, int edges) {
+            this.stage = stage;
+            this.verticesBefore = vertices;
+            this.edgesBefore = edges;
+            this.verticesAfter = vertices;
+            this.edgesAfter = edges;
+        }
+
+        /**
+         * Returns the name of the stage.
+         *
+         * @return the stage.
+         */
+        public String getStage() {
+            return stage;
+        }
+
+        /**
+         * Returns the number of vertices before the stage.
+         *
+         * @return the vertices before.
+         */
+        public int getVerticesBefore() {
+            return verticesBefore;
+        }
+
+        /**
+         * Returns the number of vertices after the stage.
+         *
+         * @return the vertices after.
+         */
+        public int getVerticesAfter() {
+            return verticesAfter;
+        }
+
+        /**
+         * Returns the number of edges before the stage.
+         *
+         * @return the edges before.
+         */
+        public int getEdgesBefore() {
+            return edgesBefore;
+        }
+
+        /**
+         * Returns the number of edges after the stage.
+         *
+         * @return the edges after.
+         */
+        public int getEdgesAfter() {
+            return edgesAfter;
+        }
+
+        /**
+         * Returns the number of edges the stage forced into the MST.
+         *
+         * @return the forced edges.
+         */
+        public int getForced() {
+            return forced;
+        }
+
+        /**
+         * Returns the time spent, in nanoseconds.
+         *
+         * @return the time.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("%-10s V %,11d -> %,11d (%5.1f%%)  E %,11d -> %,11d (%5.1f%%)  forced %,10d  %,9.1f ms",
+                stage, verticesBefore, verticesAfter, percent(verticesAfter, verticesBefore),
+                edgesBefore, edgesAfter, percent(edgesAfter, edgesBefore), forced, nanos / 1e6);
+        }
+
+        /**
+         * Internal method to express a size as a percentage of another.
+         *
+         * @param part  the size.
+         * @param whole the size it is compared to.
+         * @return the percentage (100 if whole is 0).
+         */
+        private static double percent(int part, int whole) {
+            return whole == 0 ? 100 : 100.0 * part / whole;
+        }
+    }
+
+    /**
+     * The original graph.
+     */
+    private final Graph<GraphNode, GraphEdge> graph;
+    /**
+     * The reduced graph.
+     */
+    private final Graph<GraphNode, GraphEdge> reduced;
+    /**
+     * The ids of the edges forced into the MST.
+     */
+    private final int[] forcedIds;
+    /**
+     * The total weight of the forced edges.
+     */
+    private final long forcedWeight;
+    /**
+     * What each stage did, in order.
+     */
+    private final List<StageStats> stats = new ArrayList<>();
+
+    /**
+     * Reduces a graph. The reduced graph is of the same kind as the
+     * original (a Graph310 for a Graph310, a sparse JUNG graph otherwise),
+     * so the MST engine runs on it as it would on the original.
+     *
+     * @param graph the graph (self-loops and parallel edges are allowed).
+     */
+    public MstReducer(Graph<GraphNode, GraphEdge> graph) {
+        this.graph = graph;
+        CompactGraph c = CompactGraph.of(graph);
+        int n = c.getVertexCount();
+        int m = c.getEdgeCount();
+        //the edge order of GraphEdge.compareTo (ids are non-negative)
+        long[] key = new long[m];
+        int[] endU = new int[m];
+        int[] endV = new int[m];
+        for (int e = 0; e < m; e++) {
+            key[e] = (long) c.getWeight(e) << 32 | c.getEdge(e).getId();
+            endU[e] = c.getEdgeU(e);
+            endV[e] = c.getEdgeV(e);
+        }
+        int[] forced = new int[Math.max(0, n - 1)];
+        int forcedCount = 0;
+
+        //duplicates
+        StageStats stage = new StageStats("duplicates", n, m);
+        long start = System.nanoTime();
+        int[] all = new int[m];
+        for (int e = 0; e < m; e++) {
+            all[e] = e;
+        }
+        int[] edges = dropDuplicates(n, all, m, endU, endV, key);
+        stage.edgesAfter = edges.length;
+        stage.nanos = System.nanoTime() - start;
+        stats.add(stage);
+
+        //leaves
+        stage = new StageStats("leaves", n, edges.length);
+        start = System.nanoTime();
+        boolean[] alive = new boolean[m];
+        int[] degree = new int[n];
+        for (int e : edges) {
+            alive[e] = true;
+            degree[c.getEdgeU(e)]++;
+            degree[c.getEdgeV(e)]++;
+        }
+        boolean[] removed = new boolean[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (degree[v] <= 1) {
+                removed[v] = true;
+                queue[tail++] = v;
+            }
+        }
+        int aliveCount = edges.length;
+        for (int head = 0; head < tail; head++) {
+            int v = queue[head];
+            if (degree[v] == 0) {
+                continue;
+            }
+            //the one edge left at v
+            int pos = c.adjStart(v);
+            while (!alive[c.adjEdge(pos)]) {
+                pos++;
+            }
+            int e = c.adjEdge(pos);
+            int w = c.adjTarget(pos);
+            alive[e] = false;
+            aliveCount--;
+            forced[forcedCount++] = e;
+            stage.forced++;
+            degree[v] = 0;
+            if (--degree[w] <= 1 && !removed[w]) {
+                removed[w] = true;
+                queue[tail++] = w;
+            }
+        }
+        stage.verticesAfter = n - tail;
+        stage.edgesAfter = aliveCount;
+        stage.nanos = System.nanoTime() - start;
+        stats.add(stage);
+
+        //boruvka: every vertex left has degree 2 or more
+        stage = new StageStats("boruvka", n - tail, aliveCount);
+        start = System.nanoTime();
+        int[] lightest = new int[n];
+        Arrays.fill(lightest, -1);
+        for (int e = 0; e < m; e++) {
+            if (alive[e]) {
+                int u = c.getEdgeU(e);
+                int v = c.getEdgeV(e);
+                if (lightest[u] < 0 || key[e] < key[lightest[u]]) {
+                    lightest[u] = e;
+                }
+                if (lightest[v] < 0 || key[e] < key[lightest[v]]) {
+                    lightest[v] = e;
+                }
+            }
+        }
+        UnionFind groups = new UnionFind(n);
+        for (int v = 0; v < n; v++) {
+            int e = lightest[v];
+            //an edge chosen from both ends is joined (and counted) once
+            if (e >= 0 && groups.union(c.getEdgeU(e), c.getEdgeV(e))) {
+                alive[e] = false;
+                forced[forcedCount++] = e;
+                stage.forced++;
+            }
+        }
+        int[] groupU = new int[m];
+        int[] groupV = new int[m];
+        int[] crossing = new int[aliveCount];
+        int crossingCount = 0;
+        for (int e = 0; e < m; e++) {
+            if (alive[e]) {
+                groupU[e] = groups.find(c.getEdgeU(e));
+                groupV[e] = groups.find(c.getEdgeV(e));
+                crossing[crossingCount++] = e;
+            }
+        }
+        edges = dropDuplicates(n, crossing, crossingCount, groupU, groupV, key);
+        boolean[] used = new boolean[n];
+        int groupCount = 0;
+        for (int e : edges) {
+            if (!used[groupU[e]]) {
+                used[groupU[e]] = true;
+                groupCount++;
+            }
+            if (!used[groupV[e]]) {
+                used[groupV[e]] = true;
+                groupCount++;
+            }
+        }
+        stage.verticesAfter = groupCount;
+        stage.edgesAfter = edges.length;
+        stage.nanos = System.nanoTime() - start;
+        stats.add(stage);
+
+        //the reduced graph, on one original vertex per group
+        stage = new StageStats("rebuild", groupCount, edges.length);
+        start = System.nanoTime();
+        GraphNode[] kept = new GraphNode[groupCount];
+        int keptCount = 0;
+        for (int v = 0; v < n; v++) {
+            if (used[v]) {
+                kept[keptCount++] = c.getNode(v);
+            }
+        }
+        GraphEdge[] keptEdges = new GraphEdge[edges.length];
+        GraphNode[] ends1 = new GraphNode[edges.length];
+        GraphNode[] ends2 = new GraphNode[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            keptEdges[i] = c.getEdge(edges[i]);
+            ends1[i] = c.getNode(groupU[edges[i]]);
+            ends2[i] = c.getNode(groupV[edges[i]]);
+        }
+        if (graph instanceof Graph310) {
+            //the reduced graph is simple, so it is built in one pass
+            reduced = Graph310.build(kept, keptEdges, ends1, ends2);
+        } else {
+            reduced = new UndirectedSparseGraph<>();
+            for (GraphNode v : kept) {
+                reduced.addVertex(v);
+            }
+            for (int i = 0; i < keptEdges.length; i++) {
+                reduced.addEdge(keptEdges[i], ends1[i], ends2[i]);
+            }
+        }
+        stage.nanos = System.nanoTime() - start;
+        stats.add(stage);
+
+        forcedIds = new int[forcedCount];
+        long weight = 0;
+        for (int i = 0; i < forcedCount; i++) {
+            forcedIds[i] = c.getEdge(forced[i]).getId();
+            weight += c.getWeight(forced[i]);
+        }
+        forcedWeight = weight;
+    }
+
+    /**
+     * Internal method to drop self-loops and all but the lightest of
+     * parallel edges, in linear time: the edges are bucketed by their lower
+     * endpoint, and a bucket is scanned with a stamp on the upper endpoints.
+     *
+     * @param n     the number of vertices.
+     * @param edges the edges to filter (indices into the endpoint arrays).
+     * @param count the number of edges to filter.
+     * @param endU  the first endpoint of each edge.
+     * @param endV  the second endpoint of each edge.
+     * @param key   the order of the edges.
+     * @return the edges kept.
+     */
+    private static int[] dropDuplicates(int n, int[] edges, int count, int[] endU, int[] endV, long[] key) {
+        int[] start = new int[n + 1];
+        for (int i = 0; i < count; i++) {
+            int e = edges[i];
+            if (endU[e] != endV[e]) {
+                start[Math.min(endU[e], endV[e]) + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            start[v + 1] += start[v];
+        }
+        int[] bucket = new int[start[n]];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int i = 0; i < count; i++) {
+            int e = edges[i];
+            if (endU[e] != endV[e]) {
+                bucket[fill[Math.min(endU[e], endV[e])]++] = e;
+            }
+        }
+
+        int[] stamp = new int[n];
+        Arrays.fill(stamp, -1);
+        int[] slot = new int[n];
+        int[] kept = new int[bucket.length];
+        int keptCount = 0;
+        for (int low = 0; low < n; low++) {
+            for (int i = start[low]; i < start[low + 1]; i++) {
+                int e = bucket[i];
+                int high = Math.max(endU[e], endV[e]);
+                if (stamp[high] != low) {
+                    stamp[high] = low;
+                    slot[high] = keptCount;
+                    kept[keptCount++] = e;
+                } else if (key[e] < key[kept[slot[high]]]) {
+                    kept[slot[high]] = e;
+                }
+            }
+        }
+        return Arrays.copyOf(kept, keptCount);
+    }
+
+    /**
+     * Returns the original graph.
+     *
+     * @return the graph that was reduced.
+     */
+    public Graph<GraphNode, GraphEdge> getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the reduced graph. Its vertices and edges are objects of the
+     * original graph.
+     *
+     * @return the reduced graph.
+     */
+    public Graph<GraphNode, GraphEdge> getReducedGraph() {
+        return reduced;
+    }
+
+    /**
+     * Returns the edges the reductions forced into the MST.
+     *
+     * @return the forced edges and their total weight.
+     */
+    public MstResult getForced() {
+        return new MstResult(forcedIds, forcedWeight);
+    }
+
+    /**
+     * Returns what each stage did, in order ("duplicates", "leaves",
+     * "boruvka", and "rebuild" for making the reduced graph).
+     *
+     * @return the statistics of the stages.
+     */
+    public List<StageStats> getStats() {
+        return Collections.unmodifiableList(stats);
+    }
+
+    /**
+     * Turns the MST of the reduced graph into the MST of the original.
+     *
+     * @param reducedMst the MST (or spanning forest) of the reduced graph.
+     * @return the MST of the original graph.
+     */
+    public MstResult expand(MstResult reducedMst) {
+        int[] ids = Arrays.copyOf(forcedIds, forcedIds.length + reducedMst.getEdgeCount());
+        System.arraycopy(reducedMst.getEdgeIds(), 0, ids, forcedIds.length, reducedMst.getEdgeCount());
+        return new MstResult(ids, forcedWeight + reducedMst.getTotalWeight());
+    }
+
+    /**
+     * Computes the MST of the original graph by running {@link Kruskal310}
+     * on the reduced graph (which recolors the reduced graph's objects as usual).
+     *
+     * @return the MST of the original graph.
+     */
+    public MstResult computeMst() {
+        Kruskal310 alg = new Kruskal310();
+        HeadlessRunner.run(alg, reduced);
+        return expand(alg.getResult());
+    }
+
+    /**
+     * Checks the reduced MSTs of random multigraphs against Kruskal310 on
+     * the whole graph, and times both on graphs made of chains and pendant
+     * trees around a random core.
+     *
+     * @param args [0] = vertices of the large graphs (default 4000).
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        Random rand = new Random(17);
+
+        int bad = 0;
+        for (int t = 0; t < 200; t++) {
+            int size = 1 + rand.nextInt(60);
+            UndirectedSparseMultigraph<GraphNode, GraphEdge> g = new UndirectedSparseMultigraph<>();
+            GraphNode[] nodes = new GraphNode[size];
+            for (int i = 0; i < size; i++) {
+                nodes[i] = new GraphNode(i);
+                g.addVertex(nodes[i]);
+            }
+            int edges = rand.nextInt(3 * size);
+            for (int id = 0; id < edges; id++) {
+                //small weights for ties, with loops and parallel edges
+                g.addEdge(new GraphEdge(id, 1 + rand.nextInt(5)), nodes[rand.nextInt(size)], nodes[rand.nextInt(size)]);
+            }
+            MstReducer reducer = new MstReducer(g);
+            Kruskal310 alg = new Kruskal310();
+            HeadlessRunner.run(alg, g);
+            if (!reducer.computeMst().equals(alg.getResult())) {
+                bad++;
+            }
+        }
+        System.out.println(bad == 0 ? "200 random multigraphs: reduced MST matches Kruskal310" : bad + " WRONG MSTs");
+
+        //each graph is run as a sparse JUNG graph and as a Graph310 (rebuilt as a Graph310)
+        String[] names = {"chains and pendant trees", "random sparse graph"};
+        List<Graph<GraphNode, GraphEdge>> graphs = new ArrayList<>();
+        for (Graph<GraphNode, GraphEdge> g : List.of(chainGraph(rand, n / 10, n), chainGraph(rand, n, n))) {
+            graphs.add(g);
+            graphs.add(toGraph310(g));
+        }
+        for (int i = 0; i < graphs.size(); i++) {
+            Graph<GraphNode, GraphEdge> g = graphs.get(i);
+            System.out.printf("%s (%s): %,d vertices, %,d edges%n", names[i / 2], g.getClass().getSimpleName(),
+                g.getVertexCount(), g.getEdgeCount());
+            long start = System.nanoTime();
+            Kruskal310 alg = new Kruskal310();
+            HeadlessRunner.run(alg, g);
+            MstResult whole = alg.getResult();
+            long mid = System.nanoTime();
+            MstReducer reducer = new MstReducer(g);
+            long reducedAt = System.nanoTime();
+            MstResult mst = reducer.computeMst();
+            long end = System.nanoTime();
+            for (StageStats s : reducer.getStats()) {
+                System.out.println("  " + s);
+            }
+            System.out.printf("  Kruskal310 %,.1f ms; reduce %,.1f ms + Kruskal310 %,.1f ms = %,.1f ms (%s)%n",
+                (mid - start) / 1e6, (reducedAt - mid) / 1e6, (end - reducedAt) / 1e6, (end - mid) / 1e6,
+                mst.equals(whole) ? "same MST" : "DIFFERENT MST");
+        }
+    }
+
+    /**
+     * Internal method to copy a simple graph into a Graph310.
+     *
+     * @param g the graph.
+     * @return the copy.
+     */
+    private static Graph310 toGraph310(Graph<GraphNode, GraphEdge> g) {
+        GraphEdge[] edges = g.getEdges().toArray(new GraphEdge[0]);
+        GraphNode[] ends1 = new GraphNode[edges.length];
+        GraphNode[] ends2 = new GraphNode[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            ends1[i] = g.getEndpoints(edges[i]).getFirst();
+            ends2[i] = g.getEndpoints(edges[i]).getSecond();
+        }
+        return Graph310.build(g.getVertices().toArray(new GraphNode[0]), edges, ends1, ends2);
+    }
+
+    /**
+     * Internal method to build a graph of a random core whose edges are
+     * drawn out into chains, with pendant trees hung on it.
+     *
+     * @param rand  the random numbers.
+     * @param core  the number of core vertices (about 3 edges each).
+     * @param total the number of vertices.
+     * @return the graph.
+     */
+    private static Graph<GraphNode, GraphEdge> chainGraph(Random rand, int core, int total) {
+        UndirectedSparseGraph<GraphNode, GraphEdge> g = new UndirectedSparseGraph<>();
+        List<GraphNode> nodes = new ArrayList<>();
+        for (int i = 0; i < core; i++) {
+            nodes.add(new GraphNode(i));
+            g.addVertex(nodes.get(i));
+        }
+        int id = 0;
+        int coreEdges = 3 * core;
+        //a third of the vertices left subdivide core edges into chains, the rest hang off as trees
+        int chainVertices = (total - core) / 3;
+        for (int t = 0; t < coreEdges; t++) {
+            GraphNode u = nodes.get(rand.nextInt(core));
+            GraphNode v = nodes.get(rand.nextInt(core));
+            if (u == v || g.findEdge(u, v) != null) {
+                continue;
+            }
+            int links = chainVertices > 0 ? rand.nextInt(2 * chainVertices / coreEdges + 1) : 0;
+            chainVertices -= links;
+            for (int i = 0; i < links; i++) {
+                GraphNode w = new GraphNode(nodes.size());
+                nodes.add(w);
+                g.addVertex(w);
+                g.addEdge(new GraphEdge(id++, 1 + rand.nextInt(1000)), u, w);
+                u = w;
+            }
+            g.addEdge(new GraphEdge(id++, 1 + rand.nextInt(1000)), u, v);
+        }
+        while (nodes.size() < total) {
+            GraphNode w = new GraphNode(nodes.size());
+            GraphNode parent = nodes.get(rand.nextInt(nodes.size()));
+            nodes.add(w);
+            g.addVertex(w);
+            g.addEdge(new GraphEdge(id++, 1 + rand.nextInt(1000)), parent, w);
+        }
+        return g;
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.Arrays;
+
+/**
+ * The outcome of a minimum spanning tree (or forest) computation:
+ * the ids of the selected edges and their total weight.
+ */
+class MstResult {
+    /**
+     * The ids of the selected edges, in ascending order.
+     */
+    private final int[] edgeIds;
+    /**
+     * The total weight of the selected edges.
+     */
+    private final long totalWeight;
+
+    /**
+     * Constructs a result.
+     *
+     * @param edgeIds     the ids of the selected edges (copied and sorted).
+     * @param totalWeight the total weight of the selected edges.
+     */
+    public MstResult(int[] edgeIds, long totalWeight) {
+        this.edgeIds = edgeIds.clone();
+        Arrays.sort(this.edgeIds);
+        this.totalWeight = totalWeight;
+    }
+
+    /**
+     * Returns the ids of the selected edges, in ascending order.
+     *
+     * @return a copy of the selected edge ids.
+     */
+    public int[] getEdgeIds() {
+        return edgeIds.clone();
+    }
+
+    /**
+     * Returns the number of selected edges.
+     *
+     * @return the number of selected edges.
+     */
+    public int getEdgeCount() {
+        return edgeIds.length;
+    }
+
+    /**
+     * Returns true if an edge was selected.
+     *
+     * @param edgeId the id of the edge.
+     * @return true if the edge is part of the result.
+     */
+    public boolean contains(int edgeId) {
+        return Arrays.binarySearch(edgeIds, edgeId) >= 0;
+    }
+
+    /**
+     * Returns the total weight of the selected edges.
+     *
+     * @return the total weight.
+     */
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MstResult)) {
+            return false;
+        }
+        MstResult other = (MstResult) o;
+        return totalWeight == other.totalWeight && Arrays.equals(edgeIds, other.edgeIds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(edgeIds) + Long.hashCode(totalWeight);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "MST of " + edgeIds.length + " edges, weight " + totalWeight;
+    }
+}
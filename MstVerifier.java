@@ -0,0 +1,697 @@
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that a claimed minimum spanning tree (or forest) of a graph is
+ * one, without computing an MST.
+ *
+ * <p>A spanning forest is minimum exactly when no non-tree edge is
+ * lighter than the heaviest tree edge on the path between its endpoints
+ * (the cycle property). All those path maxima are found in one depth-first
+ * pass over the candidate forest with Tarjan's offline LCA: a union-find
+ * merges each finished subtree into its parent and remembers the heaviest
+ * edge along every link, so a query (u, v) gets the u side of its path
+ * when v is reached, and the v side when their lowest common ancestor is
+ * finished. The whole check is O((V + E) alpha(V)).
+ *
+ * <p>Besides violations of the cycle property, the report lists the
+ * structural problems of a candidate: ids that are not edges of the
+ * graph, edges that close a cycle, a forest that does not span the
+ * graph's components, and a stated weight that is not the edges' sum.
+ */
+final class MstVerifier {
+    /**
+     * The most problems of each kind listed in a report (all are counted).
+     */
+    public static final int MAX_LISTED = 100;
+    /**
+     * A vertex the depth-first search has not reached.
+     */
+    private static final byte UNSEEN = 0;
+    /**
+     * A vertex on the depth-first search stack.
+     */
+    private static final byte ACTIVE = 1;
+    /**
+     * A vertex whose subtree has been searched.
+     */
+    private static final byte FINISHED = 2;
+
+    /**
+     * Not instantiable.
+     */
+    private MstVerifier() {
+    }
+
+    /**
+     * A non-tree edge lighter than the heaviest tree edge on its cycle.
+     */
+    static class Violation {
+        /**
+         * The non-tree edge.
+         */
+        private final GraphEdge edge;
+        /**
+         * The heaviest tree edge on the path between its endpoints.
+         */
+        private final GraphEdge heavier;
+
+        /**
+         * Constructs a violation.
+         *
+         * @param edge    the non-tree edge.
+         * @param heavier the heaviest tree edge on its path.
+         */
+        Violation(GraphEdge edge, GraphEdge heavier) {
+            this.edge = edge;
+            this.heavier = heavier;
+        }
+
+        /**
+         * Returns the non-tree edge.
+         *
+         * @return the edge that should replace a tree edge.
+         */
+        public GraphEdge getEdge() {
+            return edge;
+        }
+
+        /**
+         * Returns the tree edge it should replace.
+         *
+         * @return the heaviest tree edge on its path.
+         */
+        public GraphEdge getHeavier() {
+            return heavier;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return edge.getId() + "(" + edge.getWeight() + ") < " + heavier.getId() + "(" + heavier.getWeight() + ")";
+        }
+    }
+
+    /**
+     * The outcome of a verification.
+     */
+    static class Report {
+        /**
+         * The violations of the cycle property (at most MAX_LISTED).
+         */
+        private final List<Violation> violations = new ArrayList<>();
+        /**
+         * The number of violations.
+         */
+        private long violationCount = 0;
+        /**
+         * Candidate ids that are not edges of the graph (at most MAX_LISTED).
+         */
+        private final List<Integer> unknownIds = new ArrayList<>();
+        /**
+         * The number of unknown ids.
+         */
+        private int unknownCount = 0;
+        /**
+         * Candidate edges that close a cycle with earlier ones (at most MAX_LISTED).
+         */
+        private final List<GraphEdge> cycleEdges = new ArrayList<>();
+        /**
+         * The number of candidate edges that close a cycle.
+         */
+        private int cycleCount = 0;
+        /**
+         * How many more edges the forest needs to span the graph's components.
+         */
+        private int missingEdges = 0;
+        /**
+         * The sum of the candidate's edge weights.
+         */
+        private long actualWeight = 0;
+        /**
+         * The weight the candidate claims.
+         */
+        private long claimedWeight = 0;
+
+        /**
+         * Returns whether the candidate is a minimum spanning forest of the
+         * graph with the weight it claims.
+         *
+         * @return true if there is no problem of any kind.
+         */
+        public boolean isValid() {
+            return violationCount == 0 && unknownCount == 0 && cycleCount == 0
+                && missingEdges == 0 && actualWeight == claimedWeight;
+        }
+
+        /**
+         * Returns the first violations of the cycle property.
+         *
+         * @return up to MAX_LISTED violations.
+         */
+        public List<Violation> getViolations() {
+            return Collections.unmodifiableList(violations);
+        }
+
+        /**
+         * Returns the number of non-tree edges that violate the cycle property.
+         *
+         * @return the count.
+         */
+        public long getViolationCount() {
+            return violationCount;
+        }
+
+        /**
+         * Returns the first candidate ids that are not edges of the graph.
+         *
+         * @return up to MAX_LISTED ids.
+         */
+        public List<Integer> getUnknownIds() {
+            return Collections.unmodifiableList(unknownIds);
+        }
+
+        /**
+         * Returns the number of candidate ids that are not edges of the graph.
+         *
+         * @return the count.
+         */
+        public int getUnknownCount() {
+            return unknownCount;
+        }
+
+        /**
+         * Returns the first candidate edges that close a cycle.
+         *
+         * @return up to MAX_LISTED edges.
+         */
+        public List<GraphEdge> getCycleEdges() {
+            return Collections.unmodifiableList(cycleEdges);
+        }
+
+        /**
+         * Returns the number of candidate edges that close a cycle.
+         *
+         * @return the count.
+         */
+        public int getCycleCount() {
+            return cycleCount;
+        }
+
+        /**
+         * Returns how many more edges the candidate needs to span every
+         * connected component of the graph (0 if it spans).
+         *
+         * @return the number of missing edges.
+         */
+        public int getMissingEdges() {
+            return missingEdges;
+        }
+
+        /**
+         * Returns the sum of the candidate's (known) edge weights.
+         *
+         * @return the actual weight.
+         */
+        public long getActualWeight() {
+            return actualWeight;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            if (isValid()) {
+                return "valid MST, weight " + actualWeight;
+            }
+            StringBuilder sb = new StringBuilder("INVALID:");
+            if (violationCount > 0) {
+                sb.append(' ').append(violationCount).append(" lighter non-tree edges ").append(violations);
+            }
+            if (unknownCount > 0) {
+                sb.append(' ').append(unknownCount).append(" unknown ids ").append(unknownIds);
+            }
+            if (cycleCount > 0) {
+                sb.append(' ').append(cycleCount).append(" edges closing cycles ").append(cycleEdges);
+            }
+            if (missingEdges > 0) {
+                sb.append(' ').append(missingEdges).append(" edges short of spanning");
+            }
+            if (actualWeight != claimedWeight) {
+                sb.append(" weight ").append(actualWeight).append(", not ").append(claimedWeight);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Verifies a candidate minimum spanning forest of a graph.
+     *
+     * @param g         the graph.
+     * @param candidate the candidate's edge ids and claimed weight.
+     * @return the report.
+     */
+    public static Report verify(Graph<GraphNode, GraphEdge> g, MstResult candidate) {
+        return verify(CompactGraph.of(g), candidate);
+    }
+
+    /**
+     * Verifies a candidate minimum spanning forest of a compacted graph.
+     *
+     * @param graph     the graph.
+     * @param candidate the candidate's edge ids and claimed weight.
+     * @return the report.
+     */
+    public static Report verify(CompactGraph graph, MstResult candidate) {
+        int n = graph.getVertexCount();
+        int m = graph.getEdgeCount();
+        Report report = new Report();
+        report.claimedWeight = candidate.getTotalWeight();
+
+        int[] ids = candidate.getEdgeIds();
+        int[] match = matchIds(graph, ids);
+        int[] tree = new int[ids.length];
+        int treeSize = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (match[i] >= 0) {
+                tree[treeSize++] = match[i];
+                report.actualWeight += graph.getWeight(match[i]);
+            } else {
+                report.unknownCount++;
+                if (report.unknownIds.size() < MAX_LISTED) {
+                    report.unknownIds.add(ids[i]);
+                }
+            }
+        }
+
+        //the forest must be acyclic (the search below finds whether it spans)
+        boolean[] inTree = new boolean[m];
+        UnionFind forest = new UnionFind(n);
+        for (int i = 0; i < treeSize; i++) {
+            int e = tree[i];
+            if (forest.union(graph.getEdgeU(e), graph.getEdgeV(e))) {
+                inTree[e] = true;
+            } else {
+                report.cycleCount++;
+                if (report.cycleEdges.size() < MAX_LISTED) {
+                    report.cycleEdges.add(graph.getEdge(e));
+                }
+            }
+        }
+
+        checkCycles(graph, inTree, report);
+        return report;
+    }
+
+    /**
+     * Internal method to find the edges of the candidate's ids: through a
+     * table indexed by id when the graph's ids are compact (as the edge
+     * counter makes them), and by sorting them otherwise.
+     *
+     * @param graph the graph.
+     * @param ids   the candidate's ids, ascending.
+     * @return the edge index of each id, or -1 if the graph has no such edge.
+     */
+    private static int[] matchIds(CompactGraph graph, int[] ids) {
+        int m = graph.getEdgeCount();
+        int[] match = new int[ids.length];
+        Arrays.fill(match, -1);
+        int low = Integer.MAX_VALUE;
+        int high = Integer.MIN_VALUE;
+        for (int e = 0; e < m; e++) {
+            int id = graph.getEdge(e).getId();
+            low = Math.min(low, id);
+            high = Math.max(high, id);
+        }
+        if (m > 0 && (long) high - low < 4L * m) {
+            int[] edgeOf = new int[high - low + 1];
+            Arrays.fill(edgeOf, -1);
+            for (int e = 0; e < m; e++) {
+                edgeOf[graph.getEdge(e).getId() - low] = e;
+            }
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] >= low && ids[i] <= high) {
+                    match[i] = edgeOf[ids[i] - low];
+                }
+            }
+            return match;
+        }
+        long[] byId = new long[m];
+        for (int e = 0; e < m; e++) {
+            byId[e] = (long) graph.getEdge(e).getId() << 32 | e;
+        }
+        Arrays.sort(byId);
+        int j = 0;
+        for (int i = 0; i < ids.length; i++) {
+            while (j < m && (int) (byId[j] >> 32) < ids[i]) {
+                j++;
+            }
+            if (j < m && (int) (byId[j] >> 32) == ids[i]) {
+                match[i] = (int) byId[j];
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Internal method to check the cycle property of every non-tree edge
+     * with one depth-first pass over the forest (Tarjan's offline LCA with
+     * heaviest-edge tracking in the union-find). Each non-tree edge is
+     * taken up from the adjacency list of whichever endpoint finishes last;
+     * one whose endpoints are in different trees counts towards the edges
+     * the forest is missing.
+     *
+     * @param graph  the graph.
+     * @param inTree which edges form the (acyclic) candidate forest.
+     * @param report the report to fill.
+     */
+    private static void checkCycles(CompactGraph graph, boolean[] inTree, Report report) {
+        int n = graph.getVertexCount();
+        int m = graph.getEdgeCount();
+        byte[] state = new byte[n];
+
+        //the forest's own adjacency lists, so the search never scans non-tree edges
+        int[] treeStart = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            if (inTree[e]) {
+                treeStart[graph.getEdgeU(e) + 1]++;
+                treeStart[graph.getEdgeV(e) + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            treeStart[v + 1] += treeStart[v];
+        }
+        int[] treeEdges = new int[treeStart[n]];
+        int[] fill = Arrays.copyOf(treeStart, n);
+        for (int e = 0; e < m; e++) {
+            if (inTree[e]) {
+                treeEdges[fill[graph.getEdgeU(e)]++] = e;
+                treeEdges[fill[graph.getEdgeV(e)]++] = e;
+            }
+        }
+
+        //union-find over finished subtrees: link[x] leads up, heavy[x] is the heaviest edge on the way
+        int[] link = new int[n];
+        long[] heavy = new long[n];
+        int[] path = new int[n];
+        for (int v = 0; v < n; v++) {
+            link[v] = v;
+        }
+
+        //non-tree edges whose second half is answered when their LCA finishes
+        int[] deferredHead = new int[n];
+        Arrays.fill(deferredHead, -1);
+        int[] deferredNext = new int[m];
+        int[] deferredFrom = new int[m];
+        long[] deferredMax = new long[m];
+
+        //the trees joined by non-tree edges, made when the first such edge turns up
+        UnionFind joined = null;
+
+        int[] stack = new int[n];
+        int[] cursor = new int[n];
+        for (int root = 0; root < n; root++) {
+            if (state[root] != UNSEEN) {
+                continue;
+            }
+            int depth = 0;
+            stack[0] = root;
+            cursor[0] = treeStart[root];
+            state[root] = ACTIVE;
+            while (depth >= 0) {
+                int v = stack[depth];
+                if (cursor[depth] < treeStart[v + 1]) {
+                    int e = treeEdges[cursor[depth]++];
+                    int w = graph.getEdgeU(e) == v ? graph.getEdgeV(e) : graph.getEdgeU(e);
+                    if (state[w] == UNSEEN) {
+                        state[w] = ACTIVE;
+                        heavy[w] = key(graph, e);
+                        depth++;
+                        stack[depth] = w;
+                        cursor[depth] = treeStart[w];
+                    }
+                    continue;
+                }
+
+                //v is finished and its subtree merged into it, so queries waiting here can finish
+                for (int q = deferredHead[v]; q >= 0; q = deferredNext[q]) {
+                    int from = deferredFrom[q];
+                    find(link, heavy, path, from);
+                    judge(graph, q, Math.max(deferredMax[q], heavy[from]), report);
+                }
+                int end = graph.adjStart(v) + graph.degree(v);
+                for (int pos = graph.adjStart(v); pos < end; pos++) {
+                    int other = graph.adjTarget(pos);
+                    if (state[other] != FINISHED || inTree[graph.adjEdge(pos)]) {
+                        //a tree edge, a loop, or answered from the other end
+                        continue;
+                    }
+                    int q = graph.adjEdge(pos);
+                    int lca = find(link, heavy, path, other);
+                    if (state[lca] == FINISHED) {
+                        //joins this tree to an earlier one, which the forest should have done
+                        if (joined == null) {
+                            joined = new UnionFind(n);
+                        }
+                        if (joined.union(root, lca)) {
+                            report.missingEdges++;
+                        }
+                        continue;
+                    }
+                    if (lca == v) {
+                        judge(graph, q, heavy[other], report);
+                    } else {
+                        deferredFrom[q] = v;
+                        deferredMax[q] = heavy[other];
+                        deferredNext[q] = deferredHead[lca];
+                        deferredHead[lca] = q;
+                    }
+                }
+                state[v] = FINISHED;
+                if (depth > 0) {
+                    link[v] = stack[depth - 1];
+                }
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Internal method to pack an edge's weight and index so that the
+     * heavier edge has the larger key.
+     *
+     * @param graph the graph.
+     * @param e     the edge.
+     * @return the key.
+     */
+    private static long key(CompactGraph graph, int e) {
+        return (long) graph.getWeight(e) << 32 | e;
+    }
+
+    /**
+     * Internal method to find the root of a vertex's set, compressing the
+     * path and keeping on each vertex the heaviest edge up to the root.
+     *
+     * @param link  the union-find links.
+     * @param heavy the key of the heaviest edge on each link (see key).
+     * @param path  scratch space for the path (one slot per vertex).
+     * @param x     the vertex.
+     * @return the root: the lowest unfinished ancestor of x.
+     */
+    private static int find(int[] link, long[] heavy, int[] path, int x) {
+        int length = 0;
+        int root = x;
+        while (link[root] != root) {
+            path[length++] = root;
+            root = link[root];
+        }
+        //top down, so each vertex sees its parent's compressed value
+        for (int i = length - 2; i >= 0; i--) {
+            int v = path[i];
+            heavy[v] = Math.max(heavy[v], heavy[link[v]]);
+            link[v] = root;
+        }
+        return root;
+    }
+
+    /**
+     * Internal method to record a violation if a non-tree edge is lighter
+     * than the heaviest tree edge on its path.
+     *
+     * @param graph  the graph.
+     * @param q      the non-tree edge.
+     * @param max    the key of the heaviest tree edge on its path.
+     * @param report the report.
+     */
+    private static void judge(CompactGraph graph, int q, long max, Report report) {
+        if (graph.getWeight(q) < (int) (max >> 32)) {
+            report.violationCount++;
+            if (report.violations.size() < MAX_LISTED) {
+                report.violations.add(new Violation(graph.getEdge(q), graph.getEdge((int) max)));
+            }
+        }
+    }
+
+    /**
+     * Checks reports on correct and damaged MSTs of random graphs against
+     * brute force, and times verification against recomputation.
+     *
+     * @param args [0] = vertices of the large graph (default 1000000).
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random rand = new Random(13);
+
+        int bad = 0;
+        for (int t = 0; t < 300; t++) {
+            int size = 1 + rand.nextInt(80);
+            UndirectedSparseGraph<GraphNode, GraphEdge> g = randomGraph(rand, size, 2 * size, 10);
+            CompactGraph c = CompactGraph.of(g);
+            int[] tree = kruskal(c);
+            if (!verify(g, result(c, tree)).isValid()) {
+                bad++;
+            }
+            if (tree.length == 0 || tree.length == c.getEdgeCount()) {
+                continue;
+            }
+            //swap a random tree edge for a random non-tree edge and compare with brute force
+            int[] damaged = tree.clone();
+            int slot = rand.nextInt(damaged.length);
+            int e;
+            do {
+                e = rand.nextInt(c.getEdgeCount());
+            } while (contains(tree, e));
+            damaged[slot] = e;
+            MstResult swapped = result(c, damaged);
+            Report report = verify(g, swapped);
+            UnionFind uf = new UnionFind(c.getVertexCount());
+            boolean acyclic = true;
+            for (int d : damaged) {
+                acyclic &= uf.union(c.getEdgeU(d), c.getEdgeV(d));
+            }
+            long best = 0;
+            for (int d : tree) {
+                best += c.getWeight(d);
+            }
+            UnionFind all = new UnionFind(c.getVertexCount());
+            for (int d = 0; d < c.getEdgeCount(); d++) {
+                all.union(c.getEdgeU(d), c.getEdgeV(d));
+            }
+            int missing = uf.count() - all.count();
+            boolean minimum = acyclic && swapped.getTotalWeight() == best;
+            if (report.isValid() != minimum || (report.getCycleCount() > 0) == acyclic
+                || report.getMissingEdges() != missing) {
+                bad++;
+            }
+            if (!verify(g, new MstResult(swapped.getEdgeIds(), swapped.getTotalWeight() + 1)).toString().contains("not")) {
+                bad++;
+            }
+        }
+        System.out.println(bad == 0 ? "300 random graphs: correct and damaged MSTs judged right" : bad + " WRONG reports");
+
+        //time both on the compacted graph, without the JUNG graph's garbage collection load
+        CompactGraph c = CompactGraph.of(randomGraph(rand, n, 3 * n, 1_000_000));
+        for (int rep = 0; rep < 3; rep++) {
+            long start = System.nanoTime();
+            MstResult mst = result(c, kruskal(c));
+            long mid = System.nanoTime();
+            Report report = verify(c, mst);
+            long end = System.nanoTime();
+            System.out.printf("%,d vertices, %,d edges: compute %.1f ms, verify %.1f ms: %s%n",
+                n, c.getEdgeCount(), (mid - start) / 1e6, (end - mid) / 1e6, report);
+        }
+    }
+
+    /**
+     * Internal method to compute an MST by sorting the edges.
+     *
+     * @param c the graph.
+     * @return the tree's edge indices.
+     */
+    private static int[] kruskal(CompactGraph c) {
+        long[] keys = new long[c.getEdgeCount()];
+        for (int e = 0; e < keys.length; e++) {
+            keys[e] = (long) c.getWeight(e) << 32 | e;
+        }
+        Arrays.sort(keys);
+        UnionFind uf = new UnionFind(c.getVertexCount());
+        int[] tree = new int[Math.max(0, c.getVertexCount() - 1)];
+        int size = 0;
+        for (long key : keys) {
+            int e = (int) key;
+            if (uf.union(c.getEdgeU(e), c.getEdgeV(e))) {
+                tree[size++] = e;
+            }
+        }
+        return Arrays.copyOf(tree, size);
+    }
+
+    /**
+     * Internal method to turn edge indices into a result.
+     *
+     * @param c    the graph.
+     * @param tree the edge indices.
+     * @return the result.
+     */
+    private static MstResult result(CompactGraph c, int[] tree) {
+        int[] ids = new int[tree.length];
+        long weight = 0;
+        for (int i = 0; i < tree.length; i++) {
+            ids[i] = c.getEdge(tree[i]).getId();
+            weight += c.getWeight(tree[i]);
+        }
+        return new MstResult(ids, weight);
+    }
+
+    /**
+     * Internal method to test membership in a small array.
+     *
+     * @param a the array.
+     * @param x the value.
+     * @return true if x is in a.
+     */
+    private static boolean contains(int[] a, int x) {
+        for (int y : a) {
+            if (y == x) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Internal method to build a random graph.
+     *
+     * @param rand      the random numbers.
+     * @param n         the number of vertices.
+     * @param tries     the number of edges to try (repeats and loops are dropped).
+     * @param maxWeight the largest weight.
+     * @return the graph.
+     */
+    private static UndirectedSparseGraph<GraphNode, GraphEdge> randomGraph(Random rand, int n, int tries, int maxWeight) {
+        UndirectedSparseGraph<GraphNode, GraphEdge> g = new UndirectedSparseGraph<>();
+        GraphNode[] nodes = new GraphNode[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new GraphNode(i);
+            g.addVertex(nodes[i]);
+        }
+        int id = 0;
+        for (int t = 0; t < tries; t++) {
+            int u = rand.nextInt(n);
+            int v = rand.nextInt(n);
+            if (u != v && g.findEdge(nodes[u], nodes[v]) == null) {
+                g.addEdge(new GraphEdge(id++, 1 + rand.nextInt(maxWeight)), nodes[u], nodes[v]);
+            }
+        }
+        return g;
+    }
+}
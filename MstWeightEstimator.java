@@ -0,0 +1,450 @@
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Estimates the weight of a minimum spanning forest without computing it,
+ * after Chazelle, Rubinfeld and Trevisan.
+ *
+ * <p>With integer weights in 1..W and c(i) the number of connected
+ * components of the subgraph of edges of weight at most i, the forest
+ * weighs {@code n + c(1) + ... + c(W-1) - W c(W)}. Each c(i) is n times the
+ * average over vertices of 1/(size of the vertex's component). A sample
+ * picks a random vertex and a random size limit X with P(X &gt;= k) = 1/k,
+ * and grows the vertex's component by breadth-first search: the chance
+ * that the component fits within X is exactly 1/size. One search serves
+ * every threshold, since raising the threshold only grows the component,
+ * and X is capped so that no search visits more than 2W/epsilon vertices.
+ *
+ * <p>A sample visits O(log(W/epsilon)) vertices in expectation, each
+ * costing its degree in neighbor lookups, so for graphs of bounded degree
+ * the running time depends on epsilon, the confidence and W, not on the
+ * number of edges.
+ */
+class MstWeightEstimator {
+    /**
+     * The fewest samples taken before the variance may stop the sampling.
+     */
+    private static final int MIN_SAMPLES = 1000;
+    /**
+     * How often (in samples) the stopping rule is checked.
+     */
+    private static final int CHECK_INTERVAL = 100;
+
+    /**
+     * The graph.
+     */
+    private final Graph<GraphNode, GraphEdge> graph;
+    /**
+     * The graph as a Graph310 (for its cheap edge lookup), or null.
+     */
+    private final Graph310 graph310;
+    /**
+     * The vertices, for uniform sampling.
+     */
+    private final GraphNode[] vertices;
+    /**
+     * The largest edge weight W.
+     */
+    private final int maxWeight;
+
+    /**
+     * The outcome of an estimate.
+     */
+    static class Estimate {
+        /**
+         * The estimated weight.
+         */
+        private final double weight;
+        /**
+         * The bound on the error, at the requested confidence.
+         */
+        private final double errorBound;
+        /**
+         * The number of sampled vertices.
+         */
+        private final int samples;
+        /**
+         * The variance of the estimate.
+         */
+        private final double variance;
+        /**
+         * The number of vertices visited by all the searches.
+         */
+        private final long visited;
+
+        /**
+         * Constructs an estimate.
+         *
+         * @param weight     the estimated weight.
+         * @param errorBound the bound on the error.
+         * @param samples    the number of sampled vertices.
+         * @param variance   the variance of the estimate.
+         * @param visited    the number of vertices visited.
+         */
+        Estimate(double weight, double errorBound, int samples, double variance, long visited) {
+            this.weight = weight;
+            this.errorBound = errorBound;
+            this.samples = samples;
+            this.variance = variance;
+            this.visited = visited;
+        }
+
+        /**
+         * Returns the estimated weight of the minimum spanning forest.
+         *
+         * @return the estimate.
+         */
+        public double getWeight() {
+            return weight;
+        }
+
+        /**
+         * Returns the bound on the error: the sampling error at the requested
+         * confidence plus the bias from capping the searches.
+         *
+         * @return the error bound.
+         */
+        public double getErrorBound() {
+            return errorBound;
+        }
+
+        /**
+         * Returns the number of sampled vertices.
+         *
+         * @return the sample count.
+         */
+        public int getSamples() {
+            return samples;
+        }
+
+        /**
+         * Returns the (sample) variance of the estimate.
+         *
+         * @return the variance.
+         */
+        public double getVariance() {
+            return variance;
+        }
+
+        /**
+         * Returns the number of vertices visited by all the searches, a
+         * measure of the work done.
+         *
+         * @return the vertices visited.
+         */
+        public long getVisited() {
+            return visited;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("%.1f +- %.1f (%d samples, variance %.1f, %d vertices visited)",
+                weight, errorBound, samples, variance, visited);
+        }
+    }
+
+    /**
+     * Constructs an estimator for a graph. Only the vertex list is read
+     * here; edges are read as the searches reach them.
+     *
+     * @param graph     the graph.
+     * @param maxWeight the largest edge weight W (weights must be in 1..W).
+     * @throws IllegalArgumentException if the graph is null or maxWeight is less than 1.
+     */
+    public MstWeightEstimator(Graph<GraphNode, GraphEdge> graph, int maxWeight) {
+        if (graph == null) {
+            throw new IllegalArgumentException("No graph");
+        }
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Weights must be at least 1, not up to " + maxWeight);
+        }
+        this.graph = graph;
+        this.graph310 = graph instanceof Graph310 ? (Graph310) graph : null;
+        //Set310 does not support toArray, so copy by hand
+        Collection<GraphNode> all = graph.getVertices();
+        this.vertices = new GraphNode[all.size()];
+        int i = 0;
+        for (GraphNode v : all) {
+            vertices[i++] = v;
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Estimates the weight of the minimum spanning forest to within
+     * epsilon times the number of vertices (so within a factor 1 +- epsilon,
+     * roughly, for a connected graph, whose forest weighs at least n-1).
+     *
+     * <p>Half of epsilon goes to capping the searches at 2W/epsilon
+     * vertices. Sampling stops once the normal confidence interval is
+     * within the other half, or at the Hoeffding bound, which holds
+     * whatever the variance.
+     *
+     * @param epsilon    the relative error, in (0, 1].
+     * @param confidence the probability that the error bound holds, in (0, 1).
+     * @param seed       the seed of the sampling.
+     * @return the estimate.
+     * @throws IllegalArgumentException if epsilon or confidence is out of range,
+     *                                  or an edge weight is outside 1..W.
+     */
+    public Estimate estimate(double epsilon, double confidence, long seed) {
+        if (!(epsilon > 0 && epsilon <= 1)) {
+            throw new IllegalArgumentException("Epsilon must be in (0, 1]: " + epsilon);
+        }
+        if (!(confidence > 0 && confidence < 1)) {
+            throw new IllegalArgumentException("Confidence must be in (0, 1): " + confidence);
+        }
+        int n = vertices.length;
+        if (n == 0) {
+            return new Estimate(0, 0, 0, 0, 0);
+        }
+        int cap = (int) Math.min(n, Math.ceil(2.0 * maxWeight / epsilon));
+        double z = normalQuantile(1 - (1 - confidence) / 2);
+        //each sample lies in [-W, W-1]; Hoeffding gives a sample count for +- epsilon/2
+        double range = 2.0 * maxWeight - 1;
+        long bound = (long) Math.ceil(range * range * Math.log(2 / (1 - confidence)) * 2 / (epsilon * epsilon));
+        int maxSamples = (int) Math.min(Integer.MAX_VALUE, Math.max(1, bound));
+
+        Random rand = new Random(seed);
+        Search search = new Search();
+        double mean = 0;
+        double m2 = 0;
+        int s = 0;
+        while (s < maxSamples) {
+            //P(limit >= k) = 1/k, so P(component counts) = 1/size, up to the cap
+            double u = 1 - rand.nextDouble();
+            int limit = (int) Math.min(cap, Math.floor(1 / u));
+            double x = search.sample(vertices[rand.nextInt(n)], limit);
+            s++;
+            double delta = x - mean;
+            mean += delta / s;
+            m2 += delta * (x - mean);
+            if (s >= MIN_SAMPLES && s % CHECK_INTERVAL == 0
+                && z * Math.sqrt(m2 / (s - 1) / s) <= epsilon / 2) {
+                break;
+            }
+        }
+        double sampleVariance = s > 1 ? m2 / (s - 1) : 0;
+        double variance = (double) n * n * sampleVariance / s;
+        double samplingError = s < maxSamples ? z * Math.sqrt(variance) : epsilon / 2 * n;
+        double biasBound = (double) n * maxWeight / cap;
+        if (cap == n) {
+            biasBound = 0;
+        }
+        return new Estimate(n * (1 + mean), samplingError + biasBound, s, variance, search.visited);
+    }
+
+    /**
+     * One breadth-first search at a time, with its buffers kept between samples.
+     */
+    private class Search {
+        /**
+         * The vertices visited by the current search.
+         */
+        private final HashSet<GraphNode> seen = new HashSet<>();
+        /**
+         * The vertices reached by edges within the current threshold.
+         */
+        private final ArrayDeque<GraphNode> queue = new ArrayDeque<>();
+        /**
+         * The vertices reached by heavier edges, by edge weight.
+         */
+        private final List<ArrayDeque<GraphNode>> pending = new ArrayList<>();
+        /**
+         * The number of vertices visited by all searches.
+         */
+        private long visited = 0;
+
+        /**
+         * Constructs the buffers.
+         */
+        Search() {
+            for (int w = 0; w <= maxWeight; w++) {
+                pending.add(new ArrayDeque<>());
+            }
+        }
+
+        /**
+         * Grows the component of a vertex threshold by threshold, stopping
+         * once it has more than a given number of vertices, and returns the
+         * sum over thresholds 1..W-1 of whether the component stayed within
+         * that number, minus W times the same at W.
+         *
+         * @param start the sampled vertex.
+         * @param limit the largest component size that counts.
+         * @return the sample value.
+         */
+        double sample(GraphNode start, int limit) {
+            seen.clear();
+            queue.clear();
+            for (ArrayDeque<GraphNode> bucket : pending) {
+                bucket.clear();
+            }
+            seen.add(start);
+            visited++;
+            scan(start, 1);
+            double x = 0;
+            for (int level = 1; level <= maxWeight; level++) {
+                queue.addAll(pending.get(level));
+                pending.get(level).clear();
+                while (!queue.isEmpty()) {
+                    GraphNode v = queue.poll();
+                    if (!seen.add(v)) {
+                        continue;
+                    }
+                    visited++;
+                    if (seen.size() > limit) {
+                        //components only grow: every higher threshold counts 0 too
+                        return x;
+                    }
+                    scan(v, level);
+                }
+                x += level < maxWeight ? 1 : -maxWeight;
+            }
+            return x;
+        }
+
+        /**
+         * Internal method to sort the unseen neighbors of a vertex into the
+         * queue (edges within the threshold) or the pending buckets.
+         *
+         * @param v     the vertex.
+         * @param level the current threshold.
+         */
+        private void scan(GraphNode v, int level) {
+            Collection<GraphNode> neighbors = graph.getNeighbors(v);
+            if (neighbors == null) {
+                return;
+            }
+            for (GraphNode w : neighbors) {
+                if (seen.contains(w)) {
+                    continue;
+                }
+                GraphEdge e = graph310 != null ? graph310.edgeBetween(v, w) : graph.findEdge(v, w);
+                int weight = e.getWeight();
+                if (weight < 1 || weight > maxWeight) {
+                    throw new IllegalArgumentException("Edge " + e.getId() + " has weight " + weight
+                        + ", outside 1.." + maxWeight);
+                }
+                if (weight <= level) {
+                    queue.add(w);
+                } else {
+                    pending.get(weight).add(w);
+                }
+            }
+        }
+    }
+
+    /**
+     * Internal method to approximate the standard normal quantile
+     * (Abramowitz and Stegun 26.2.23, error below 4.5e-4).
+     *
+     * @param p the probability, in (0, 1).
+     * @return x such that P(Z &lt;= x) is about p.
+     */
+    private static double normalQuantile(double p) {
+        double q = p < 0.5 ? p : 1 - p;
+        double t = Math.sqrt(-2 * Math.log(q));
+        double x = t - (2.515517 + 0.802853 * t + 0.010328 * t * t)
+            / (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+        return p < 0.5 ? -x : x;
+    }
+
+    /**
+     * Internal method to compute the exact forest weight by sorting the
+     * edges, for comparison.
+     *
+     * @param nodes the vertices, indexed by id.
+     * @param us    the first endpoint of each edge.
+     * @param vs    the second endpoint of each edge.
+     * @param ws    the weight of each edge.
+     * @return the weight of the minimum spanning forest.
+     */
+    private static long exactWeight(int nodes, int[] us, int[] vs, int[] ws) {
+        long[] keys = new long[us.length];
+        for (int e = 0; e < us.length; e++) {
+            keys[e] = (long) ws[e] << 32 | e;
+        }
+        Arrays.sort(keys);
+        UnionFind uf = new UnionFind(nodes);
+        long total = 0;
+        for (long key : keys) {
+            int e = (int) key;
+            if (uf.union(us[e], vs[e])) {
+                total += ws[e];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Compares estimates with the exact weight, on a small Graph310 and on a
+     * large random graph of bounded degree.
+     *
+     * @param args [0] = vertices of the large graph (default 300000),
+     *             [1] = epsilon (default 0.1), [2] = confidence (default 0.95).
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        double epsilon = args.length > 1 ? Double.parseDouble(args[1]) : 0.1;
+        double confidence = args.length > 2 ? Double.parseDouble(args[2]) : 0.95;
+
+        //the simulation's own graphs: weights 1..20
+        Graph<GraphNode, GraphEdge> small = HeadlessRunner.generate(200, 0.02, 3);
+        Kruskal310 kruskal = new Kruskal310();
+        HeadlessRunner.run(kruskal, small);
+        Estimate smallEstimate = new MstWeightEstimator(small, 20).estimate(epsilon, confidence, 1);
+        System.out.printf("Graph310, %d vertices: exact %d, estimate %s%n",
+            small.getVertexCount(), kruskal.getResult().getTotalWeight(), smallEstimate);
+
+        //a random graph where each vertex links to 2 random others (average degree 4)
+        Random rand = new Random(5);
+        int m = 2 * n;
+        int[] us = new int[m];
+        int[] vs = new int[m];
+        int[] ws = new int[m];
+        UndirectedSparseGraph<GraphNode, GraphEdge> g = new UndirectedSparseGraph<>();
+        GraphNode[] nodes = new GraphNode[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new GraphNode(i);
+            g.addVertex(nodes[i]);
+        }
+        int added = 0;
+        for (int e = 0; e < m; e++) {
+            int u = e / 2;
+            int v = rand.nextInt(n);
+            int w = 1 + rand.nextInt(20);
+            if (u != v && g.findEdge(nodes[u], nodes[v]) == null) {
+                g.addEdge(new GraphEdge(added, w), nodes[u], nodes[v]);
+                us[added] = u;
+                vs[added] = v;
+                ws[added] = w;
+                added++;
+            }
+        }
+        long start = System.nanoTime();
+        long exact = exactWeight(n, Arrays.copyOf(us, added), Arrays.copyOf(vs, added), Arrays.copyOf(ws, added));
+        long exactNanos = System.nanoTime() - start;
+        MstWeightEstimator estimator = new MstWeightEstimator(g, 20);
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            Estimate est = estimator.estimate(epsilon, confidence, round);
+            long estNanos = System.nanoTime() - start;
+            System.out.printf("%,d vertices, %,d edges: exact %,d (sort + union-find %.1f ms), "
+                    + "estimate %s in %.1f ms, off by %.2f%%%n",
+                n, added, exact, exactNanos / 1e6, est, estNanos / 1e6,
+                100 * Math.abs(est.getWeight() - exact) / exact);
+        }
+    }
+}
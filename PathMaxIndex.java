@@ -0,0 +1,487 @@
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Answers bottleneck queries on a spanning forest (usually the MST, see
+ * {@link Kruskal310#getPathMaxIndex()}): the heaviest edge on the forest
+ * path between two vertices, and whether a new edge would make the forest
+ * lighter.
+ *
+ * <p>Each tree is rooted and every vertex keeps, for each k, its 2^k-th
+ * ancestor and the heaviest edge on the way there (binary lifting). A query
+ * lifts both vertices to their lowest common ancestor in O(log V), taking
+ * the heaviest edge seen. Building takes O(V log V) time and memory.
+ * Edges of equal weight are ordered by id, as in {@link GraphEdge#compareTo},
+ * so the heaviest edge is always the same one.
+ *
+ * <p>The jumps of a vertex are stored together, each as one long holding
+ * the ancestor and the heaviest weight, so the weight queries (the common
+ * case) touch one array and mostly the same cache lines while a vertex is
+ * being lifted. The heaviest edges themselves are kept apart, for
+ * {@link #maxEdge}.
+ *
+ * <p>The index is read-only once built, so the batched queries split large
+ * batches over all cores.
+ */
+class PathMaxIndex {
+    /**
+     * The answer of {@link #maxWeight} when there is no path with an edge.
+     */
+    public static final int NO_PATH = Integer.MIN_VALUE;
+    /**
+     * Batches at least this large are answered in parallel.
+     */
+    private static final int PARALLEL_BATCH = 1 << 14;
+
+    /**
+     * The forest snapshot (vertex and edge numbering).
+     */
+    private final CompactGraph forest;
+    /**
+     * The tree (root index) of each vertex.
+     */
+    private final int[] tree;
+    /**
+     * The depth of each vertex in its tree.
+     */
+    private final int[] depth;
+    /**
+     * The number of jump levels (2^levels is at least the number of vertices).
+     */
+    private final int levels;
+    /**
+     * jump[v*levels+k] holds the 2^k-th ancestor of v (the root if there
+     * are fewer) in the low half and the heaviest weight on the way there
+     * (NO_PATH if none) in the high half.
+     */
+    private final long[] jump;
+    /**
+     * top[v*levels+k] is the heaviest edge on the same way (-1 if none).
+     */
+    private final int[] top;
+
+    /**
+     * Builds the index of a forest.
+     *
+     * @param forest the forest (a graph without cycles).
+     * @throws IllegalArgumentException if the graph has a cycle, or is too large to index.
+     */
+    public PathMaxIndex(Graph<GraphNode, GraphEdge> forest) {
+        this.forest = CompactGraph.of(forest);
+        int n = this.forest.getVertexCount();
+        int l = 1;
+        while ((1 << l) < n) {
+            l++;
+        }
+        levels = l;
+        if ((long) n * levels > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Forest too large to index: " + n + " vertices");
+        }
+        tree = new int[n];
+        depth = new int[n];
+        jump = new long[n * levels];
+        top = new int[n * levels];
+        int[] parent = new int[n];
+
+        //root every tree with a breadth-first walk (parents come before children)
+        int[] order = new int[n];
+        boolean[] seen = new boolean[n];
+        int count = 0;
+        for (int root = 0; root < n; root++) {
+            if (seen[root]) {
+                continue;
+            }
+            seen[root] = true;
+            tree[root] = root;
+            parent[root] = root;
+            top[root * levels] = -1;
+            order[count++] = root;
+            for (int i = count - 1; i < count; i++) {
+                int v = order[i];
+                for (int pos = this.forest.adjStart(v); pos < this.forest.adjStart(v + 1); pos++) {
+                    int w = this.forest.adjTarget(pos);
+                    if (w == parent[v] && this.forest.adjEdge(pos) == top[v * levels]) {
+                        continue;
+                    }
+                    if (seen[w]) {
+                        throw new IllegalArgumentException("Not a forest: cycle through " + this.forest.getNode(w));
+                    }
+                    seen[w] = true;
+                    tree[w] = root;
+                    depth[w] = depth[v] + 1;
+                    parent[w] = v;
+                    top[w * levels] = this.forest.adjEdge(pos);
+                    order[count++] = w;
+                }
+            }
+        }
+
+        for (int v = 0; v < n; v++) {
+            int e = top[v * levels];
+            jump[v * levels] = pack(e < 0 ? NO_PATH : this.forest.getWeight(e), parent[v]);
+        }
+        for (int k = 1; k < levels; k++) {
+            for (int v = 0; v < n; v++) {
+                long half = jump[v * levels + k - 1];
+                int mid = ancestor(half);
+                long rest = jump[mid * levels + k - 1];
+                jump[v * levels + k] = pack(Math.max(weight(half), weight(rest)), ancestor(rest));
+                top[v * levels + k] = heavier(top[v * levels + k - 1], top[mid * levels + k - 1]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of vertices of the forest.
+     *
+     * @return the number of vertices.
+     */
+    public int getVertexCount() {
+        return forest.getVertexCount();
+    }
+
+    /**
+     * Returns the index of a vertex, for the batched queries.
+     *
+     * @param node the vertex.
+     * @return its index, or -1 if it is not in the forest.
+     */
+    public int indexOf(GraphNode node) {
+        return node == null ? -1 : forest.indexOf(node);
+    }
+
+    /**
+     * Returns whether two vertices are in the same tree.
+     *
+     * @param u one vertex.
+     * @param v the other vertex.
+     * @return true if the forest has a path between them.
+     */
+    public boolean connected(GraphNode u, GraphNode v) {
+        int a = indexOf(u);
+        int b = indexOf(v);
+        return a >= 0 && b >= 0 && tree[a] == tree[b];
+    }
+
+    /**
+     * Returns the heaviest edge on the forest path between two vertices.
+     * O(log V).
+     *
+     * @param u one vertex.
+     * @param v the other vertex.
+     * @return the heaviest edge, or null if there is no path or u is v.
+     */
+    public GraphEdge maxEdge(GraphNode u, GraphNode v) {
+        int a = indexOf(u);
+        int b = indexOf(v);
+        if (a < 0 || b < 0) {
+            return null;
+        }
+        int e = maxEdge(a, b);
+        return e < 0 ? null : forest.getEdge(e);
+    }
+
+    /**
+     * Returns the weight of the heaviest edge on the forest path between
+     * two vertices: the minimax (bottleneck) distance between them. O(log V).
+     *
+     * @param u one vertex.
+     * @param v the other vertex.
+     * @return the bottleneck weight, or {@link #NO_PATH} if there is no path or u is v.
+     */
+    public int maxWeight(GraphNode u, GraphNode v) {
+        int a = indexOf(u);
+        int b = indexOf(v);
+        return a < 0 || b < 0 ? NO_PATH : maxWeight(a, b);
+    }
+
+    /**
+     * Returns whether adding an edge would make the forest lighter: either
+     * it joins two trees, or it is lighter than the heaviest edge of the
+     * cycle it closes (which could then be swapped out). O(log V).
+     *
+     * @param u      one endpoint of the new edge.
+     * @param v      the other endpoint.
+     * @param weight the weight of the new edge.
+     * @return true if the edge would improve the forest.
+     */
+    public boolean wouldImprove(GraphNode u, GraphNode v, int weight) {
+        if (u == null || v == null || u.equals(v)) {
+            return false;
+        }
+        int max = maxWeight(u, v);
+        return max == NO_PATH || weight < max;
+    }
+
+    /**
+     * Answers a batch of bottleneck queries, in parallel for large batches.
+     *
+     * @param us  the first vertex of each query (indices, see {@link #indexOf}).
+     * @param vs  the second vertex of each query.
+     * @param out receives the answer of each query, as {@link #maxWeight} would.
+     * @throws IllegalArgumentException if the arrays differ in length.
+     * @throws IndexOutOfBoundsException if an index is not a vertex.
+     */
+    public void maxWeights(int[] us, int[] vs, int[] out) {
+        if (us.length != vs.length || out.length != us.length) {
+            throw new IllegalArgumentException("Batch arrays differ in length");
+        }
+        batch(us.length).forEach(i -> out[i] = maxWeight(us[i], vs[i]));
+    }
+
+    /**
+     * Tells, for a batch of new edges, which would improve the forest, in
+     * parallel for large batches.
+     *
+     * @param us      the first endpoint of each edge (indices, see {@link #indexOf}).
+     * @param vs      the second endpoint of each edge.
+     * @param weights the weight of each edge.
+     * @param out     receives the answer for each edge, as {@link #wouldImprove} would.
+     * @return the number of edges that would improve it.
+     * @throws IllegalArgumentException if the arrays differ in length.
+     * @throws IndexOutOfBoundsException if an index is not a vertex.
+     */
+    public int wouldImprove(int[] us, int[] vs, int[] weights, boolean[] out) {
+        if (us.length != vs.length || weights.length != us.length || out.length != us.length) {
+            throw new IllegalArgumentException("Batch arrays differ in length");
+        }
+        return batch(us.length).map(i -> {
+            if (us[i] == vs[i]) {
+                out[i] = false;
+            } else {
+                int max = maxWeight(us[i], vs[i]);
+                out[i] = max == NO_PATH || weights[i] < max;
+            }
+            return out[i] ? 1 : 0;
+        }).sum();
+    }
+
+    /**
+     * Internal method to get the query numbers of a batch, parallel if it is large.
+     *
+     * @param size the batch size.
+     * @return the stream of query numbers.
+     */
+    private static IntStream batch(int size) {
+        IntStream range = IntStream.range(0, size);
+        return size >= PARALLEL_BATCH ? range.parallel() : range;
+    }
+
+    /**
+     * Internal method to find the bottleneck weight between two vertex indices.
+     *
+     * @param a one vertex.
+     * @param b the other vertex.
+     * @return the bottleneck weight, or NO_PATH.
+     */
+    private int maxWeight(int a, int b) {
+        if (tree[a] != tree[b]) {
+            return NO_PATH;
+        }
+        int best = NO_PATH;
+        if (depth[a] < depth[b]) {
+            int tmp = a;
+            a = b;
+            b = tmp;
+        }
+        //lift the deeper vertex to the depth of the other
+        int diff = depth[a] - depth[b];
+        for (int k = 0; diff != 0; k++, diff >>>= 1) {
+            if ((diff & 1) != 0) {
+                long j = jump[a * levels + k];
+                best = Math.max(best, weight(j));
+                a = ancestor(j);
+            }
+        }
+        if (a == b) {
+            return best;
+        }
+        //lift both to just below their lowest common ancestor
+        for (int k = levels - 1; k >= 0; k--) {
+            long ja = jump[a * levels + k];
+            long jb = jump[b * levels + k];
+            if (ancestor(ja) != ancestor(jb)) {
+                best = Math.max(best, Math.max(weight(ja), weight(jb)));
+                a = ancestor(ja);
+                b = ancestor(jb);
+            }
+        }
+        return Math.max(best, Math.max(weight(jump[a * levels]), weight(jump[b * levels])));
+    }
+
+    /**
+     * Internal method to find the heaviest edge between two vertex indices.
+     *
+     * @param a one vertex.
+     * @param b the other vertex.
+     * @return the edge index, or -1 if there is no path or a is b.
+     */
+    private int maxEdge(int a, int b) {
+        if (tree[a] != tree[b]) {
+            return -1;
+        }
+        int best = -1;
+        if (depth[a] < depth[b]) {
+            int tmp = a;
+            a = b;
+            b = tmp;
+        }
+        //lift the deeper vertex to the depth of the other
+        int diff = depth[a] - depth[b];
+        for (int k = 0; diff != 0; k++, diff >>>= 1) {
+            if ((diff & 1) != 0) {
+                best = heavier(best, top[a * levels + k]);
+                a = ancestor(jump[a * levels + k]);
+            }
+        }
+        if (a == b) {
+            return best;
+        }
+        //lift both to just below their lowest common ancestor
+        for (int k = levels - 1; k >= 0; k--) {
+            int ua = ancestor(jump[a * levels + k]);
+            int ub = ancestor(jump[b * levels + k]);
+            if (ua != ub) {
+                best = heavier(best, heavier(top[a * levels + k], top[b * levels + k]));
+                a = ua;
+                b = ub;
+            }
+        }
+        return heavier(best, heavier(top[a * levels], top[b * levels]));
+    }
+
+    /**
+     * Internal method to pack a jump.
+     *
+     * @param weight   the heaviest weight on the way.
+     * @param ancestor the ancestor reached.
+     * @return the packed jump.
+     */
+    private static long pack(int weight, int ancestor) {
+        return ((long) weight << 32) | (ancestor & 0xffffffffL);
+    }
+
+    /**
+     * Internal method to get the heaviest weight of a packed jump.
+     *
+     * @param jump the packed jump.
+     * @return the weight (NO_PATH if the jump has no edge).
+     */
+    private static int weight(long jump) {
+        return (int) (jump >> 32);
+    }
+
+    /**
+     * Internal method to get the ancestor of a packed jump.
+     *
+     * @param jump the packed jump.
+     * @return the ancestor.
+     */
+    private static int ancestor(long jump) {
+        return (int) jump;
+    }
+
+    /**
+     * Internal method to pick the heavier of two edges (by weight, then id).
+     *
+     * @param e1 an edge index, or -1.
+     * @param e2 an edge index, or -1.
+     * @return the heavier edge, or -1 if both are -1.
+     */
+    private int heavier(int e1, int e2) {
+        if (e1 < 0) {
+            return e2;
+        }
+        if (e2 < 0) {
+            return e1;
+        }
+        int w1 = forest.getWeight(e1);
+        int w2 = forest.getWeight(e2);
+        if (w1 != w2) {
+            return w1 > w2 ? e1 : e2;
+        }
+        return forest.getEdge(e1).getId() > forest.getEdge(e2).getId() ? e1 : e2;
+    }
+
+    /**
+     * Checks the index against a walk of the tree path on a random tree,
+     * and times a batch of queries.
+     *
+     * @param args [0] = vertices (default 1000000), [1] = queries (default 5000000).
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int q = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        Random rand = new Random(7);
+
+        //a random tree: vertex i hangs from a random earlier vertex
+        UndirectedSparseGraph<GraphNode, GraphEdge> g = new UndirectedSparseGraph<>();
+        GraphNode[] nodes = new GraphNode[n];
+        int[] parent = new int[n];
+        int[] parentWeight = new int[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new GraphNode(i);
+            g.addVertex(nodes[i]);
+            if (i > 0) {
+                parent[i] = rand.nextInt(Math.max(0, i - 20), i);
+                parentWeight[i] = 1 + rand.nextInt(1_000_000);
+                g.addEdge(new GraphEdge(i - 1, parentWeight[i]), nodes[i], nodes[parent[i]]);
+            }
+        }
+        long start = System.nanoTime();
+        PathMaxIndex index = new PathMaxIndex(g);
+        System.out.printf("built for %,d vertices in %.1f ms%n", n, (System.nanoTime() - start) / 1e6);
+
+        //check a few queries by walking up the tree (vertex depths follow the ids)
+        int bad = 0;
+        int[] depthOf = new int[n];
+        for (int i = 1; i < n; i++) {
+            depthOf[i] = depthOf[parent[i]] + 1;
+        }
+        for (int t = 0; t < 2000; t++) {
+            int a = rand.nextInt(n);
+            int b = rand.nextInt(n);
+            int expected = NO_PATH;
+            int x = a;
+            int y = b;
+            while (x != y) {
+                if (depthOf[x] < depthOf[y]) {
+                    int tmp = x;
+                    x = y;
+                    y = tmp;
+                }
+                expected = Math.max(expected, parentWeight[x]);
+                x = parent[x];
+            }
+            GraphEdge heaviest = index.maxEdge(nodes[a], nodes[b]);
+            if (index.maxWeight(nodes[a], nodes[b]) != expected
+                || (heaviest == null ? expected != NO_PATH : heaviest.getWeight() != expected)) {
+                bad++;
+            }
+        }
+        System.out.println(bad == 0 ? "2000 checked queries agree" : bad + " WRONG answers");
+
+        int[] us = new int[q];
+        int[] vs = new int[q];
+        int[] ws = new int[q];
+        for (int i = 0; i < q; i++) {
+            us[i] = index.indexOf(nodes[rand.nextInt(n)]);
+            vs[i] = index.indexOf(nodes[rand.nextInt(n)]);
+            ws[i] = 1 + rand.nextInt(1_000_000);
+        }
+        int[] out = new int[q];
+        boolean[] improves = new boolean[q];
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            index.maxWeights(us, vs, out);
+            long mid = System.nanoTime();
+            int improving = index.wouldImprove(us, vs, ws, improves);
+            long end = System.nanoTime();
+            System.out.printf("%,d bottleneck queries: %.1f ms; %,d improvement queries (%,d improve): %.1f ms%n",
+                q, (mid - start) / 1e6, q, improving, (end - mid) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ *  Measures a rate of events per second over a sliding window of
+ *  about one second, so the reported rate follows recent speed
+ *  rather than the average since the start.
+ */
+class RateMeter {
+	/**
+	 *  The length of one half of the window, in nanoseconds.
+	 */
+	private static final long HALF_WINDOW_NANOS = 500_000_000L;
+	
+	/**
+	 *  When the current half-window started.
+	 */
+	private long currentStart;
+	
+	/**
+	 *  The events counted in the current half-window.
+	 */
+	private long currentCount = 0;
+	
+	/**
+	 *  The events counted in the previous half-window.
+	 */
+	private long previousCount = 0;
+	
+	/**
+	 *  The length of the previous half-window (0 if there was none).
+	 */
+	private long previousNanos = 0;
+	
+	/**
+	 *  Constructs a meter starting now.
+	 */
+	public RateMeter() {
+		currentStart = System.nanoTime();
+	}
+	
+	/**
+	 *  Counts some events.
+	 *  
+	 *  @param events the number of events that just happened
+	 */
+	public void add(long events) {
+		roll(System.nanoTime());
+		currentCount += events;
+	}
+	
+	/**
+	 *  Reports the recent rate.
+	 *  
+	 *  @return the number of events per second in the last second or so
+	 */
+	public double rate() {
+		long now = System.nanoTime();
+		roll(now);
+		long nanos = previousNanos + (now - currentStart);
+		if(nanos <= 0) return 0;
+		return (previousCount + currentCount) * 1e9 / nanos;
+	}
+	
+	/**
+	 *  Starts a new half-window if the current one is full.
+	 *  
+	 *  @param now the current time
+	 */
+	private void roll(long now) {
+		if(now - currentStart >= HALF_WINDOW_NANOS) {
+			previousCount = currentCount;
+			previousNanos = now - currentStart;
+			currentCount = 0;
+			currentStart = now;
+		}
+	}
+}
@@ -6,6 +6,7 @@ import edu.uci.ics.jung.algorithms.layout.Layout;
 import edu.uci.ics.jung.algorithms.layout.KKLayout; //undirected graphs
 import edu.uci.ics.jung.algorithms.layout.CircleLayout; //undirected and directed graphs
 import edu.uci.ics.jung.algorithms.layout.ISOMLayout; //directed graphs
+import edu.uci.ics.jung.algorithms.layout.StaticLayout;
 
 import edu.uci.ics.jung.algorithms.generators.random.ErdosRenyiGenerator;
 import edu.uci.ics.jung.algorithms.generators.random.ErdosRenyiGeneratorDirected;
@@ -34,10 +35,15 @@ import java.awt.Color;
 import java.awt.GridLayout;
 import java.awt.BorderLayout;
 
+import java.awt.font.GlyphVector;
+
 import java.awt.geom.Ellipse2D;
+import java.awt.geom.Point2D;
 
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
+import java.awt.event.ItemListener;
+import java.awt.event.ItemEvent;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -45,6 +51,15 @@ import javax.swing.JButton;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JSlider;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.ButtonGroup;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.SwingUtilities;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 /**
  *  GUI for graph interactions.
@@ -77,16 +92,78 @@ class SimGUI {
 	 */
 	private EditingModalGraphMouse<GraphNode, GraphEdge> gm;
 	
+	/**
+	 *  The menu that picks the mouse mode.
+	 */
+	private JMenu modeMenu = null;
+	
+	/**
+	 *  The mouse mode the user picked (restored when edits are allowed again).
+	 */
+	private ModalGraphMouse.Mode userMode = ModalGraphMouse.Mode.EDITING;
+	
+	/**
+	 *  Whether the mouse is kept from editing the graph because the
+	 *  worker thread is using it.
+	 */
+	private boolean editsBlocked = false;
+	
 	/**
 	 *  The panel containing the step, reset, and play buttons.
 	 */
 	private JPanel buttonPanel = null;
 	
+	/**
+	 *  The panel containing the scrub bar and the button panel.
+	 */
+	private JPanel bottomPanel = null;
+	
+	/**
+	 *  The slider for moving back and forth through the recorded steps.
+	 */
+	private JSlider scrubBar = null;
+	
+	/**
+	 *  Whether the scrub bar is being changed by the program
+	 *  (rather than dragged by the user).
+	 */
+	private boolean updatingScrubBar = false;
+	
+	/**
+	 *  The recorded steps of the current simulation.
+	 */
+	private StepTrace trace = null;
+	
+	/**
+	 *  Whether the algorithm has reported that it has no more steps.
+	 */
+	private volatile boolean algDone = false;
+	
+	/**
+	 *  Runs the simulation on a worker thread, off the event dispatch thread.
+	 */
+	private final StepScheduler<SimFrame> scheduler;
+	
+	/**
+	 *  The latest snapshot of the simulation published by the worker.
+	 */
+	private SimFrame shown = null;
+	
+	/**
+	 *  The play/pause/resume button.
+	 */
+	private JButton playButton = null;
+	
+	/**
+	 *  The button that stops playing.
+	 */
+	private JButton stopButton = null;
+	
 	/**
 	 *  The panel containing the information the algorithm would like to
 	 *  display on the right side of the visualization.
 	 */
-	private JPanel sidePanel = null; //not used 
+	private JPanel sidePanel = null; //only used when metrics are collected
 	
 	/**
 	 *  The panel containing the information the algorithm would like to
@@ -94,12 +171,6 @@ class SimGUI {
 	 */
 	private JPanel topPanel = null;
 	
-	/**
-	 *  Whether or not a simulation is currently playing with
-	 *  the play button (i.e. automatically playing).
-	 */
-	private boolean playing = false;
-	
 	/**
 	 *  The seed to use for the random number generator
 	 *  associated with the algorithm simulation.
@@ -118,6 +189,145 @@ class SimGUI {
 	 */
 	private final int numNodes;
 	
+	/**
+	 *  The step rates offered in the speed menu (0 means as fast as possible).
+	 */
+	private static final int[] STEP_RATES = {1, 10, 100, 1000, 0};
+	
+	/**
+	 *  The frame rates offered in the speed menu.
+	 */
+	private static final int[] FRAME_RATES = {10, 30, 60};
+	
+	/**
+	 *  How many algorithm steps the play button runs per second
+	 *  (0 means as many as fit in each frame).
+	 */
+	private int stepsPerSecond = 1;
+	
+	/**
+	 *  The most frames per second rendered while playing,
+	 *  however fast the steps are.
+	 */
+	private int maxFramesPerSecond = 60;
+	
+	/**
+	 *  Computes the slower layouts in the background and caches them.
+	 */
+	private final LayoutWorker layoutWorker = new LayoutWorker(16);
+	
+	/**
+	 *  The kind of layout shown.
+	 */
+	private LayoutWorker.Kind layoutKind = LayoutWorker.Kind.CIRCLE;
+	
+	/**
+	 *  The MST forest layout, while it is the one shown (null otherwise).
+	 */
+	private ForestLayout forestLayout = null;
+	
+	/**
+	 *  The MST edges in the order they were selected (appended on the
+	 *  worker thread; snapshots only read the first edges they count).
+	 */
+	private GraphEdge[] forestEdges = null;
+	
+	/**
+	 *  The number of MST edges selected by each recorded step
+	 *  (written on the worker thread).
+	 */
+	private int[] forestAtStep = null;
+	
+	/**
+	 *  The edges that have been seen at the front of the sorted edge
+	 *  queue, in queue order (appended on the worker thread).
+	 */
+	private GraphEdge[] queueEdges = null;
+	
+	/**
+	 *  The number of edges in queueEdges.
+	 */
+	private int queueEdgeCount = 0;
+	
+	/**
+	 *  The size of the sorted edge queue after each recorded step
+	 *  (written on the worker thread).
+	 */
+	private int[] queueAtStep = null;
+	
+	/**
+	 *  Where the front of the sorted edge queue is in queueEdges
+	 *  after each recorded step (written on the worker thread).
+	 */
+	private int[] queueStartAtStep = null;
+	
+	/**
+	 *  The progress of the layout being computed, for the status line.
+	 */
+	private String layoutStatus = "";
+	
+	/**
+	 *  The stroke of every edge (shared, since strokes are immutable).
+	 */
+	private static final Stroke EDGE_STROKE = new BasicStroke(3);
+	
+	/**
+	 *  The shape of every node (shared; the renderer never changes it).
+	 */
+	private static final Shape NODE_SHAPE = new Ellipse2D.Double(-15, -15, 30, 30);
+	
+	/**
+	 *  The components whose color changed since the last frame.
+	 */
+	private final DirtyRegion dirty = new DirtyRegion(64);
+	
+	/**
+	 *  The font of the sorted edge queue.
+	 */
+	private static final Font QUEUE_FONT = new Font("Courier New", Font.BOLD, 12);
+	
+	/**
+	 *  The font of the metrics in the side panel.
+	 */
+	private static final Font METRICS_FONT = new Font("Courier New", Font.PLAIN, 10);
+	
+	/**
+	 *  The queue text last laid out in the top panel.
+	 */
+	private String queueGlyphText = null;
+	
+	/**
+	 *  The laid out glyphs of queueGlyphText.
+	 */
+	private GlyphVector queueGlyphs = null;
+	
+	/**
+	 *  Shows the current step and the step rate.
+	 */
+	private JLabel statusLabel = null;
+	
+	/**
+	 *  The cluster counts offered in the clusters menu.
+	 */
+	private static final int[] CLUSTER_COUNTS = {2, 3, 4, 6, 8};
+	
+	/**
+	 *  The single-linkage clustering of the graph, rebuilt whenever clusters
+	 *  are chosen so that edits are included (null until then).
+	 */
+	private Dendrogram dendrogram = null;
+	
+	/**
+	 *  The cluster of each vertex (by dendrogram leaf), or null to show
+	 *  the algorithm's colors.
+	 */
+	private int[] clusterLabels = null;
+	
+	/**
+	 *  The fill color of each cluster.
+	 */
+	private Color[] clusterColors = null;
+	
 	/**
 	 *  Load up the GUI.
 	 *  
@@ -136,6 +346,10 @@ class SimGUI {
 		//frame.getContentPane().setLayout(new FlowLayout());
 		frame.getContentPane().setLayout(new BorderLayout(0,0));
 		
+		GraphComp.addColorListener(dirty);
+		scheduler = new StepScheduler<>(this::captureFrame, this::showFrame);
+		scheduler.setMaxFramesPerSecond(maxFramesPerSecond);
+		
 		resetAlg();
 		makeMenu(); //needs to go after so gm is set
 		
@@ -153,6 +367,14 @@ class SimGUI {
 		JMenu simMenu = new JMenu("Simulation");
 		simMenu.setPreferredSize(new Dimension(80,20)); // Change the size 
 		
+		JMenuItem euclidean = new JMenuItem("Euclidean MST of layout");
+		euclidean.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				loadEuclideanMst();
+			}
+		});
+		simMenu.add(euclidean);
+		
 		JMenuItem exit = new JMenuItem("Exit");
 		exit.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent event) {
@@ -162,8 +384,111 @@ class SimGUI {
 		simMenu.add(exit);
 		menuBar.add(simMenu);
 		
+		//play speed options
+		JMenu speedMenu = new JMenu("Speed");
+		ButtonGroup stepGroup = new ButtonGroup();
+		for(final int rate : STEP_RATES) {
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(rate == 0 ? "Unlimited steps/s" : rate + " steps/s");
+			item.setSelected(rate == stepsPerSecond);
+			item.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent event) {
+					stepsPerSecond = rate;
+					if(scheduler.isPlaying() && playButton.isEnabled()) {
+						scheduler.setStepsPerSecond(rate);
+					}
+				}
+			});
+			stepGroup.add(item);
+			speedMenu.add(item);
+		}
+		speedMenu.addSeparator();
+		ButtonGroup frameGroup = new ButtonGroup();
+		for(final int fps : FRAME_RATES) {
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem("At most " + fps + " frames/s");
+			item.setSelected(fps == maxFramesPerSecond);
+			item.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent event) {
+					maxFramesPerSecond = fps;
+					scheduler.setMaxFramesPerSecond(fps);
+				}
+			});
+			frameGroup.add(item);
+			speedMenu.add(item);
+		}
+		menuBar.add(speedMenu);
+		
+		//layout options
+		JMenu layoutMenu = new JMenu("Layout");
+		ButtonGroup layoutGroup = new ButtonGroup();
+		for(final LayoutWorker.Kind kind : LayoutWorker.Kind.values()) {
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(kind.toString());
+			item.setSelected(kind == layoutKind);
+			item.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent event) {
+					layoutKind = kind;
+					applyLayout();
+				}
+			});
+			layoutGroup.add(item);
+			layoutMenu.add(item);
+		}
+		layoutMenu.addSeparator();
+		JMenuItem cancelLayout = new JMenuItem("Cancel layout");
+		cancelLayout.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				layoutWorker.cancel();
+				layoutStatus = "";
+				showStatus();
+			}
+		});
+		layoutMenu.add(cancelLayout);
+		menuBar.add(layoutMenu);
+		
+		//cluster coloring options
+		JMenu clusterMenu = new JMenu("Clusters");
+		ButtonGroup clusterGroup = new ButtonGroup();
+		JRadioButtonMenuItem noClusters = new JRadioButtonMenuItem("Off");
+		noClusters.setSelected(clusterLabels == null);
+		noClusters.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				showClusters(null);
+			}
+		});
+		clusterGroup.add(noClusters);
+		clusterMenu.add(noClusters);
+		for(final int k : CLUSTER_COUNTS) {
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(k + " clusters");
+			item.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent event) {
+					dendrogram = new Dendrogram(graph);
+					showClusters(dendrogram.cutAtK(Math.min(k, Math.max(1, dendrogram.getLeafCount()))));
+				}
+			});
+			clusterGroup.add(item);
+			clusterMenu.add(item);
+		}
+		JRadioButtonMenuItem byWeight = new JRadioButtonMenuItem("Cut at weight...");
+		byWeight.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				String answer = JOptionPane.showInputDialog(frame, "Join vertices linked by edges of weight at most:", "10");
+				if(answer == null) return;
+				try {
+					int maxWeight = Integer.parseInt(answer.trim());
+					dendrogram = new Dendrogram(graph);
+					showClusters(dendrogram.cutAtThreshold(maxWeight));
+				}
+				catch(NumberFormatException e) {
+					JOptionPane.showMessageDialog(frame, "Not a weight: " + answer);
+				}
+			}
+		});
+		clusterGroup.add(byWeight);
+		clusterMenu.add(byWeight);
+		menuBar.add(clusterMenu);
+		
 		//graph editing options
-		JMenu modeMenu = gm.getModeMenu();
+		modeMenu = gm.getModeMenu();
+		modeMenu.setEnabled(!editsBlocked);
 		modeMenu.setText("Mode");
 		modeMenu.setIcon(null); // I'm using this in a main menu
 		modeMenu.setPreferredSize(new Dimension(50,20)); // Change the size 
@@ -180,12 +505,16 @@ class SimGUI {
 		if(visServer != null) frame.remove(visServer);
 		
 		//Layout (KKLayout, ISOMLayout, and CircleLayout look good)
-		Layout<GraphNode, GraphEdge> layout = new CircleLayout<GraphNode, GraphEdge>(graph);
+		//the indexed layout keeps a spatial index of the positions for rendering and picking
+		Layout<GraphNode, GraphEdge> layout = new IndexedLayout(new CircleLayout<GraphNode, GraphEdge>(graph), 15);
 		layout.setSize(new Dimension(frame.getWidth(),frame.getHeight()-100));
 		visServer = new VisualizationViewer<GraphNode, GraphEdge>(layout);
 		visServer.setPreferredSize(new Dimension(frame.getWidth(),frame.getHeight()-30));
 		//need to change if a side panel is needed
 		
+		//only draw what is on screen, in less detail when zoomed out
+		visServer.setRenderer(new LodRenderer());
+		visServer.setPickSupport(new IndexedPickSupport(visServer, 2f));
 		visServer.getRenderer().getVertexLabelRenderer().setPosition(Position.CNTR);
 		RenderContext<GraphNode, GraphEdge> context = visServer.getRenderContext();
 		
@@ -222,7 +551,7 @@ class SimGUI {
 		context.setEdgeStrokeTransformer(
 			new Transformer<GraphEdge,Stroke>(){
 				public Stroke transform(GraphEdge e) {
-					return new BasicStroke(3);
+					return EDGE_STROKE;
 				}
 			}
 		);
@@ -234,8 +563,7 @@ class SimGUI {
 		context.setVertexShapeTransformer(
 			new Transformer<GraphNode,Shape>(){
 				public Shape transform(GraphNode v) {
-					int s = 30;
-					return new Ellipse2D.Double(-s/2.0, -s/2.0, s, s);
+					return NODE_SHAPE;
 				}
 			}
 		);
@@ -249,10 +577,14 @@ class SimGUI {
 			}
 		);
 		
-		//color vertices with node color
+		//color vertices with node color (or cluster color, when clusters are shown)
 		context.setVertexFillPaintTransformer(
 			new Transformer<GraphNode,Paint>(){
 				public Paint transform(GraphNode v) {
+					if(clusterLabels != null) {
+						int leaf = dendrogram.indexOf(v);
+						if(leaf >= 0) return clusterColors[clusterLabels[leaf]];
+					}
 					return v.getColor();
 				}
 			}
@@ -260,12 +592,79 @@ class SimGUI {
 		
 		//Add user interactions
 		gm = new EditingModalGraphMouse<>(context, GraphNode.getFactory(), GraphEdge.getFactory());
+		editsBlocked = false;
+		gm.addItemListener(new ItemListener() {
+			public void itemStateChanged(ItemEvent event) {
+				//remember what the user picked, not the temporary lock
+				if(!editsBlocked && event.getStateChange() == ItemEvent.SELECTED) {
+					userMode = (ModalGraphMouse.Mode) event.getItem();
+				}
+			}
+		});
 		gm.setMode(ModalGraphMouse.Mode.EDITING);
 		visServer.setGraphMouse(gm);
 		
+		//a new view starts with a full repaint
+		dirty.markAll();
+		
 		//frame.add(visServer, 0);
 		frame.add(visServer, BorderLayout.CENTER);
 		frame.revalidate();
+		
+		//the circle is shown right away; slower layouts replace it when ready
+		applyLayout();
+	}
+	
+	/**
+	 *  Shows the selected kind of layout: at once if it is the circle or
+	 *  was computed before, otherwise once the background worker is done
+	 *  (with its progress in the status line).
+	 */
+	public void applyLayout() {
+		Dimension size = visServer.getGraphLayout().getSize();
+		layoutWorker.cancel();
+		layoutStatus = "";
+		forestLayout = null;
+		if(layoutKind == LayoutWorker.Kind.FOREST) {
+			//grows with the simulation: see showFrame()
+			forestLayout = new ForestLayout(graph, size);
+			forestLayout.setForest(shown.forest, shown.forestSize);
+			forestLayout.step();
+			showLayout(forestLayout);
+			return;
+		}
+		if(layoutKind == LayoutWorker.Kind.CIRCLE) {
+			CircleLayout<GraphNode, GraphEdge> circle = new CircleLayout<GraphNode, GraphEdge>(graph);
+			circle.setSize(size);
+			showLayout(circle);
+			return;
+		}
+		Layout<GraphNode, GraphEdge> cached = layoutWorker.getCached(graph, layoutKind, size);
+		if(cached != null) {
+			showLayout(cached);
+			return;
+		}
+		layoutWorker.compute(graph, layoutKind, size,
+			fraction -> {
+				layoutStatus = String.format("   Layout %.0f%%", 100 * fraction);
+				showStatus();
+			},
+			layout -> {
+				layoutStatus = "";
+				showStatus();
+				showLayout(layout);
+			});
+	}
+	
+	/**
+	 *  Replaces the layout of the graph panel.
+	 *  
+	 *  @param layout the new layout
+	 */
+	private void showLayout(Layout<GraphNode, GraphEdge> layout) {
+		visServer.setGraphLayout(new IndexedLayout(layout, 15));
+		dirty.markAll();
+		dirty.repaint(visServer);
 	}
 	
 	/**
@@ -274,14 +673,14 @@ class SimGUI {
 	public void makeAlgPanels() {
 		if(alg == null) return;
 		
-		/* uncomment if a side panel is needed
-		sidePanel = getSidePanel(150, frame.getHeight()-30);
-		if(sidePanel != null) {
-			frame.remove(sidePanel);
+		//the side panel shows the metrics, when they are collected
+		if(Metrics.ENABLED) {
+			if(sidePanel != null) frame.remove(sidePanel);
+			sidePanel = getSidePanel(220, frame.getHeight()-30);
 			frame.add(sidePanel, BorderLayout.LINE_END);
 			sidePanel.setVisible(true);
 			frame.revalidate();
-		}*/
+		}
 		
 		topPanel = getTopPanel(frame.getWidth(), 30);
 		if(topPanel != null) {
@@ -297,7 +696,7 @@ class SimGUI {
 	 */
 	public void makeBottomButtons() {
 		if(alg == null) return;
-		if(buttonPanel != null) frame.remove(buttonPanel);
+		if(bottomPanel != null) frame.remove(bottomPanel);
 		
 		buttonPanel = new JPanel();
 		buttonPanel.setLayout(new GridLayout(1, 2));
@@ -322,58 +721,312 @@ class SimGUI {
 		});
 		buttonPanel.add(reset);
 		
-		//play button
-		JButton play = new JButton("Play");
-		play.addActionListener(new ActionListener() {
-			private void toggle() {
-				//toggle playing and not playing
-				playing = !playing;
-				buttonPanel.getComponent(0).setEnabled(!playing);
-				buttonPanel.getComponent(1).setEnabled(!playing);
-				buttonPanel.getComponent(2).setEnabled(!playing);
-				//((JButton)buttonPanel.getComponent(3)).setText((playing ? "Stop" : "Play"));
+		//play button (also pauses and resumes)
+		playButton = new JButton("Play");
+		playButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				if(!scheduler.isPlaying()) {
+					scheduler.setStepsPerSecond(stepsPerSecond);
+					startPlaying(true);
+				}
+				else if(scheduler.isPaused()) {
+					scheduler.resume();
+					playButton.setText("Pause");
+				}
+				else {
+					scheduler.pause();
+					playButton.setText("Resume");
+				}
 			}
-			
+		});
+		buttonPanel.add(playButton);
+		
+		//back button
+		JButton back = new JButton("Back");
+		back.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent event) {
-				toggle();
-				
-				//if playing, kick off a timer
-				if(playing) {
-					new javax.swing.Timer(1000, new ActionListener() {
-						public void actionPerformed(ActionEvent event) {
-							//someone hit the stop button
-							if(!playing) {
-								((javax.swing.Timer)event.getSource()).stop();
-								return;
-							}
-							else {
-								if(!step()) toggle();
-							}
-						}
-					}).start();
+				if(shown.cursor > 0) {
+					seekTo(shown.cursor - 1);
+				}
+			}
+		});
+		buttonPanel.add(back);
+		
+		//run to end button
+		JButton runToEnd = new JButton("Run to end");
+		runToEnd.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				runToEnd();
+			}
+		});
+		buttonPanel.add(runToEnd);
+		
+		//stop button (cancels play or run to end)
+		stopButton = new JButton("Stop");
+		stopButton.setEnabled(false);
+		stopButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				scheduler.cancel();
+			}
+		});
+		buttonPanel.add(stopButton);
+		
+		//scrub bar over the recorded steps
+		scrubBar = new JSlider(0, shown.stepCount, shown.cursor);
+		scrubBar.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent event) {
+				if(!updatingScrubBar) {
+					seekTo(scrubBar.getValue());
 				}
 			}
 		});
-		buttonPanel.add(play);
 		
 		//frame.add(buttonPanel, 1);
 		
-		frame.add(buttonPanel, BorderLayout.PAGE_END);
+		statusLabel = new JLabel(" ");
+		
+		bottomPanel = new JPanel(new BorderLayout(0,0));
+		bottomPanel.add(scrubBar, BorderLayout.PAGE_START);
+		bottomPanel.add(statusLabel, BorderLayout.CENTER);
+		bottomPanel.add(buttonPanel, BorderLayout.PAGE_END);
+		showStatus();
+		frame.add(bottomPanel, BorderLayout.PAGE_END);
 		frame.revalidate();
 	}
 	
 	/**
-	 *  Calls the step button on the simulation and updates
-	 *  the GUI to display the result.
+	 *  Runs one step of the simulation on the worker thread; the GUI
+	 *  is updated when it is done.
+	 */
+	public void step() {
+		if(scheduler.isPlaying()) return;
+		blockEdits(true);
+		scheduler.submit(this::advance);
+	}
+	
+	/**
+	 *  Moves the simulation forward one step (on the worker thread).
+	 *  Steps that were already run (and then gone back over) are
+	 *  replayed from the trace instead of being run again.
 	 *  
 	 *  @return whether or not the simulation was able to step
 	 */
-	public boolean step() {
-		boolean ret = alg.step();
-		visServer.repaint();
-		//sidePanel.repaint();
-		topPanel.repaint();
-		return ret;
+	private boolean advance() {
+		if(trace.getCursor() < trace.getStepCount()) {
+			trace.seek(trace.getCursor() + 1);
+			return !algDone || trace.getCursor() < trace.getStepCount();
+		}
+		else if(algDone) {
+			return false;
+		}
+		else {
+			boolean ret = trace.record(alg);
+			algDone = !ret;
+			recordForest();
+			recordQueue(trace.getStepCount());
+			return ret;
+		}
+	}
+	
+	/**
+	 *  Records the front of the sorted edge queue after a recorded step
+	 *  (on the worker thread), so that going back to the step shows the
+	 *  queue as it was then. The queue only ever loses its smallest
+	 *  edges, so the windows of all steps are slices of one list.
+	 *  
+	 *  @param step the step just recorded (0 for the initial state)
+	 */
+	private void recordQueue(int step) {
+		int size = 0;
+		int start = 0;
+		GraphEdge[] next = new GraphEdge[0];
+		if(alg instanceof Kruskal310) {
+			Kruskal310 kalg = (Kruskal310) alg;
+			size = kalg.getQueueSize();
+			next = kalg.peekQueue();
+		}
+		if(step > 0 && size > 0 && queueAtStep[step - 1] > 0) {
+			start = queueStartAtStep[step - 1] + queueAtStep[step - 1] - size;
+		}
+		if(step >= queueAtStep.length) {
+			queueAtStep = Arrays.copyOf(queueAtStep, 2 * queueAtStep.length);
+			queueStartAtStep = Arrays.copyOf(queueStartAtStep, 2 * queueStartAtStep.length);
+		}
+		queueAtStep[step] = size;
+		queueStartAtStep[step] = start;
+		
+		//append the part of the window not seen before
+		for(int i = Math.max(0, queueEdgeCount - start); i < next.length; i++) {
+			if(queueEdgeCount == queueEdges.length) {
+				queueEdges = Arrays.copyOf(queueEdges, 2 * queueEdges.length);
+			}
+			queueEdges[queueEdgeCount++] = next[i];
+		}
+	}
+	
+	/**
+	 *  Records the MST edges selected by the step just recorded
+	 *  (on the worker thread).
+	 */
+	private void recordForest() {
+		int count = 0;
+		if(alg instanceof Kruskal310) {
+			Kruskal310 kalg = (Kruskal310) alg;
+			count = kalg.getSelectedCount();
+			int known = forestAtStep[trace.getStepCount() - 1];
+			if(count > forestEdges.length) {
+				forestEdges = Arrays.copyOf(forestEdges, Math.max(count, 2 * forestEdges.length));
+			}
+			for(int i = known; i < count; i++) {
+				forestEdges[i] = kalg.getSelectedEdge(i);
+			}
+		}
+		if(trace.getStepCount() >= forestAtStep.length) {
+			forestAtStep = Arrays.copyOf(forestAtStep, 2 * forestAtStep.length);
+		}
+		forestAtStep[trace.getStepCount()] = count;
+	}
+	
+	/**
+	 *  Runs all remaining steps on the worker thread as fast as possible,
+	 *  without redrawing the graph in between, then shows the final state.
+	 *  The step rate is reported while it runs.
+	 */
+	public void runToEnd() {
+		if(scheduler.isPlaying()) return;
+		scheduler.setStepsPerSecond(0);
+		startPlaying(false);
+	}
+	
+	/**
+	 *  Starts playing on the worker thread and switches the controls
+	 *  to their "playing" state.
+	 *  
+	 *  @param render whether the graph is redrawn while playing
+	 */
+	private void startPlaying(boolean render) {
+		setControlsEnabled(false);
+		blockEdits(true);
+		playButton.setEnabled(render);
+		playButton.setText("Pause");
+		stopButton.setEnabled(true);
+		scheduler.play(this::advance, render);
+	}
+	
+	/**
+	 *  Moves the display to a recorded step, forwards or backwards
+	 *  (on the worker thread).
+	 *  
+	 *  @param step the step to show (0 is the state before the first step)
+	 */
+	public void seekTo(int step) {
+		if(scheduler.isPlaying()) return;
+		blockEdits(true);
+		scheduler.submit(() -> trace.seek(Math.min(step, trace.getStepCount())));
+	}
+	
+	/**
+	 *  Captures what the GUI shows about the simulation. Called on
+	 *  the worker thread, between steps.
+	 *  
+	 *  @return a snapshot of the simulation state
+	 */
+	private SimFrame captureFrame() {
+		//only the next few edges fit on screen, so only they are shown,
+		//as they were at the step the cursor is on
+		int size = queueAtStep[trace.getCursor()];
+		int start = queueStartAtStep[trace.getCursor()];
+		int shownCount = Math.min(Kruskal310.WINDOW_SIZE, size);
+		StringBuilder sb = new StringBuilder();
+		for(int i = start; i < start + shownCount; i++) {
+			sb.append(queueEdges[i]).append(' ');
+		}
+		if(size > shownCount) {
+			sb.append("(+").append(size - shownCount).append(" more)");
+		}
+		String queue = sb.toString();
+		return new SimFrame(trace.getCursor(), trace.getStepCount(), scheduler.getRate(), queue,
+			forestEdges, forestAtStep[trace.getCursor()]);
+	}
+	
+	/**
+	 *  Shows a snapshot published by the worker thread. Called on the EDT.
+	 *  
+	 *  @param snapshot the snapshot to show
+	 *  @param redraw whether the graph should be redrawn
+	 */
+	private void showFrame(SimFrame snapshot, boolean redraw) {
+		shown = snapshot;
+		if(scheduler.isIdle()) {
+			setControlsEnabled(true);
+			blockEdits(false);
+			playButton.setText("Play");
+			stopButton.setEnabled(false);
+		}
+		updateScrubBar();
+		showStatus();
+		if(sidePanel != null) sidePanel.repaint();
+		if(redraw) {
+			if(forestLayout != null) {
+				//the trees joined by the new MST edges are laid out again
+				forestLayout.setForest(snapshot.forest, snapshot.forestSize);
+				if(!forestLayout.done()) {
+					((IndexedLayout) visServer.getGraphLayout()).step();
+					dirty.markAll();
+				}
+			}
+			//only repaint around the components whose color changed
+			dirty.repaint(visServer);
+			topPanel.repaint();
+		}
+	}
+	
+	/**
+	 *  Keeps the mouse from editing the graph while the worker thread is
+	 *  using it (Graph310 is not thread-safe): the mouse is switched to
+	 *  transforming and the mode menu is disabled until edits are allowed
+	 *  again, when the user's mode comes back.
+	 *  
+	 *  @param blocked whether edits should be blocked
+	 */
+	private void blockEdits(boolean blocked) {
+		if(blocked == editsBlocked) return;
+		editsBlocked = blocked;
+		if(modeMenu != null) modeMenu.setEnabled(!blocked);
+		gm.setMode(blocked ? ModalGraphMouse.Mode.TRANSFORMING : userMode);
+	}
+	
+	/**
+	 *  Enables or disables every control that would change the simulation.
+	 *  
+	 *  @param enabled whether the controls should be enabled
+	 */
+	private void setControlsEnabled(boolean enabled) {
+		for(int i = 0; i < buttonPanel.getComponentCount(); i++) {
+			buttonPanel.getComponent(i).setEnabled(enabled);
+		}
+		scrubBar.setEnabled(enabled);
+	}
+	
+	/**
+	 *  Shows the current step, and the step rate while playing, in the status line.
+	 */
+	private void showStatus() {
+		if(statusLabel == null) return;
+		String text = " Step " + shown.cursor + "/" + shown.stepCount;
+		if(shown.rate > 0) text += String.format("   %,.0f steps/s", shown.rate);
+		statusLabel.setText(text + layoutStatus);
+	}
+	
+	/**
+	 *  Makes the scrub bar match the shown snapshot (without seeking).
+	 */
+	private void updateScrubBar() {
+		if(scrubBar == null) return;
+		updatingScrubBar = true;
+		scrubBar.setMaximum(shown.stepCount);
+		scrubBar.setValue(shown.cursor);
+		updatingScrubBar = false;
 	}
 	
 	/**
@@ -422,10 +1075,115 @@ class SimGUI {
 	 *  Load a new simulation.
 	 */
 	public void resetAlg() {
+		//the worker must be idle before the simulation is replaced
+		scheduler.cancelAndWait();
+		layoutWorker.cancel();
 		if(alg == null) alg = new Kruskal310();
 		
 		genGraph();
+		loadGraph();
+	}
+	
+	/**
+	 *  Colors the vertices by cluster, or by the algorithm again.
+	 *  
+	 *  @param labels the cluster of each dendrogram leaf, or null for the algorithm's colors
+	 */
+	private void showClusters(int[] labels) {
+		if(labels != null) {
+			clusterColors = new Color[Dendrogram.clusterCount(labels)];
+			for(int i = 0; i < clusterColors.length; i++) {
+				//golden-ratio hues stay apart however many clusters there are
+				clusterColors[i] = Color.getHSBColor((i * 0.618034f) % 1, 0.45f, 1f);
+			}
+		}
+		clusterLabels = labels;
+		dirty.markAll();
+		dirty.repaint(visServer);
+	}
+	
+	/**
+	 *  Replaces the graph with the Euclidean minimum spanning tree of the
+	 *  vertices' current positions (edge weights are the rounded lengths),
+	 *  and restarts the simulation on it with the vertices where they were.
+	 *  The tree is computed on the worker thread; the controls stay
+	 *  disabled until it is shown.
+	 */
+	public void loadEuclideanMst() {
+		scheduler.cancelAndWait();
+		layoutWorker.cancel();
+		Layout<GraphNode, GraphEdge> current = visServer.getGraphLayout();
+		final Map<GraphNode, Point2D> positions = new HashMap<>();
+		for(GraphNode v : graph.getVertices()) {
+			positions.put(v, new Point2D.Double(current.transform(v).getX(), current.transform(v).getY()));
+		}
+		final Dimension size = current.getSize();
+		final Transformer<GraphNode, Point2D> at = new Transformer<GraphNode, Point2D>() {
+			public Point2D transform(GraphNode v) {
+				return positions.get(v);
+			}
+		};
+		final Layout<GraphNode, GraphEdge> points = new StaticLayout<GraphNode, GraphEdge>(graph, at, size);
+		
+		setControlsEnabled(false);
+		blockEdits(true);
+		layoutStatus = "   Computing the Euclidean MST";
+		showStatus();
+		scheduler.submit(() -> {
+			GraphEdge.edgeCount = 0;
+			graph = EuclideanMst.fromLayout(points).toGraph();
+			//the tree keeps the old vertices, which still have the last run's colors
+			for(GraphNode v : graph.getVertices()) {
+				v.setColor(Kruskal310.COLOR_NONE_NODE);
+			}
+			startSimulation();
+			//runs before the snapshot this task publishes is shown
+			SwingUtilities.invokeLater(() -> {
+				showSimulation();
+				
+				//keep the positions the tree was computed from, instead of the chosen layout
+				layoutWorker.cancel();
+				layoutStatus = "";
+				forestLayout = null;
+				showLayout(new StaticLayout<GraphNode, GraphEdge>(graph, at, size));
+				showStatus();
+			});
+		});
+	}
+	
+	/**
+	 *  Starts a new simulation on the current graph.
+	 */
+	private void loadGraph() {
+		startSimulation();
+		showSimulation();
+	}
+	
+	/**
+	 *  Resets the algorithm and the recorded steps for the current
+	 *  graph (on the worker thread, or while it is idle).
+	 */
+	private void startSimulation() {
 		alg.reset(graph);
+		trace = new StepTrace(graph);
+		algDone = false;
+		forestEdges = new GraphEdge[16];
+		forestAtStep = new int[16];
+		queueEdges = new GraphEdge[16];
+		queueEdgeCount = 0;
+		queueAtStep = new int[16];
+		queueStartAtStep = new int[16];
+		recordQueue(0);
+	}
+	
+	/**
+	 *  Remakes the panels for a simulation started by startSimulation().
+	 *  Called on the EDT.
+	 */
+	private void showSimulation() {
+		dendrogram = null;
+		clusterLabels = null;
+		shown = captureFrame();
 		
 		makeGraphPanel();
 		makeMenu();
@@ -469,22 +1227,24 @@ class SimGUI {
 	public JPanel getSidePanel(int width, int height) {
 		
 		JPanel newPanel = new JPanel() {
-			/* not needed
 			@Override
 			public void paintComponent(Graphics g) {
 				super.paintComponent(g);
-				if(!(alg instanceof Kruskal310)) return;
 				
-				Kruskal310 alg = (Kruskal310) alg;
 				Graphics2D g2 = (Graphics2D)g;
-				
-				g2.setFont(new Font("Courier New", Font.BOLD, 12));
+				g2.setFont(METRICS_FONT);
 				g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 				
-				int shiftAmount = 20;
-				int maxDisplay = 24;
-				
-			}*/
+				//each metric on two lines: the name, then its value indented
+				int shiftAmount = 14;
+				int y = shiftAmount;
+				for(String line : Metrics.summary()) {
+					int space = line.indexOf(' ');
+					g2.drawString(line.substring(0, space), 5, y);
+					g2.drawString(line.substring(space + 1), 15, y + shiftAmount);
+					y += 2 * shiftAmount + 4;
+				}
+			}
 		};
 		newPanel.setPreferredSize(new Dimension(width,height));
 		
@@ -508,27 +1268,78 @@ class SimGUI {
 				super.paintComponent(g);
 				if(!(alg instanceof Kruskal310)) return;
 				
-				Kruskal310 kalg = (Kruskal310) alg;
 				Graphics2D g2 = (Graphics2D)g;
-				
-				g2.setFont(new Font("Courier New", Font.BOLD, 12));
 				g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 				
-				StringBuilder sb = new StringBuilder();
-				sb.append("Sorted Edges: ");
-				
 				int shiftAmount = 20;
-				int maxDisplay = 7;
-				int i = 0;
 				
-				if(kalg.pqueue != null) {
-					sb.append(kalg.pqueue.toString());
+				//the worker captured the queue when it published the last frame;
+				//the text is only laid out again when it changes
+				if(!shown.queueText.equals(queueGlyphText)) {
+					queueGlyphText = shown.queueText;
+					queueGlyphs = QUEUE_FONT.createGlyphVector(g2.getFontRenderContext(), "Sorted Edges: " + queueGlyphText);
 				}
-				g2.drawString(sb.toString(), shiftAmount, shiftAmount);
+				g2.drawGlyphVector(queueGlyphs, shiftAmount, shiftAmount);
 			}
 		};
 		newPanel.setPreferredSize(new Dimension(width,height));
 		
 		return newPanel;
 	}
+	
+	/**
+	 *  A snapshot of the simulation state shown by the GUI, captured
+	 *  on the worker thread and read on the event dispatch thread.
+	 */
+	private static class SimFrame {
+		/**
+		 *  The step being shown.
+		 */
+		final int cursor;
+		
+		/**
+		 *  The number of recorded steps.
+		 */
+		final int stepCount;
+		
+		/**
+		 *  The recent step rate (0 when not playing).
+		 */
+		final double rate;
+		
+		/**
+		 *  The text of the sorted edge queue.
+		 */
+		final String queueText;
+		
+		/**
+		 *  The MST edges in selection order (shared; only the
+		 *  first forestSize are read).
+		 */
+		final GraphEdge[] forest;
+		
+		/**
+		 *  The number of MST edges selected by the step being shown.
+		 */
+		final int forestSize;
+		
+		/**
+		 *  Constructs a snapshot.
+		 *  
+		 *  @param cursor the step being shown
+		 *  @param stepCount the number of recorded steps
+		 *  @param rate the recent step rate
+		 *  @param queueText the text of the sorted edge queue
+		 *  @param forest the MST edges in selection order
+		 *  @param forestSize the number of MST edges selected by the step being shown
+		 */
+		SimFrame(int cursor, int stepCount, double rate, String queueText, GraphEdge[] forest, int forestSize) {
+			this.cursor = cursor;
+			this.stepCount = stepCount;
+			this.rate = rate;
+			this.queueText = queueText;
+			this.forest = forest;
+			this.forestSize = forestSize;
+		}
+	}
 }
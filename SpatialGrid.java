@@ -0,0 +1,523 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A uniform grid over a rectangle of the plane, indexing integer items by
+ * their bounding boxes.
+ *
+ * <p>An item is stored in every cell its box overlaps, so a query only
+ * looks at the cells the query box overlaps. Items whose box would cover
+ * more than {@code MAX_CELLS} cells are kept in a separate list that every
+ * query scans instead. Line segments (edges, typically) can be indexed
+ * with {@link #putSegment} instead: a DDA walk along the segment stores it
+ * only in the cells it crosses, so a long edge costs queries far from it
+ * nothing. Boxes outside the grid's rectangle are clamped to the border
+ * cells, so nothing is ever lost.
+ *
+ * <p>Items are small non-negative ints (indices into the caller's own
+ * arrays). Inserting, moving and removing an item is O(cells it covers).
+ */
+class SpatialGrid {
+    /**
+     * The most cells a box item is stored in before it is kept in the oversized list.
+     */
+    private static final int MAX_CELLS = 16;
+
+    /**
+     * The left edge of the grid.
+     */
+    private final double originX;
+    /**
+     * The top edge of the grid.
+     */
+    private final double originY;
+    /**
+     * The width and height of a cell.
+     */
+    private final double cellSize;
+    /**
+     * The number of cell columns.
+     */
+    private final int cols;
+    /**
+     * The number of cell rows.
+     */
+    private final int rows;
+
+    /**
+     * The items of each cell.
+     */
+    private final int[][] cellItems;
+    /**
+     * The number of items in each cell.
+     */
+    private final int[] cellCounts;
+
+    /**
+     * The number of items in all the cells together (an item counts once per cell).
+     */
+    private long cellEntries = 0;
+
+    /**
+     * The box items too big for the cells.
+     */
+    private int[] oversized = new int[16];
+    /**
+     * The number of oversized items.
+     */
+    private int oversizedCount = 0;
+    /**
+     * The position of each item in the oversized list (-1 if it is not there).
+     */
+    private int[] oversizedPos = new int[0];
+
+    /**
+     * The segment of each item: x1, y1, x2, y2 and the padding (NaN if the item is a box).
+     */
+    private double[] segments = new double[0];
+    /**
+     * The cells of the segment being inserted or removed.
+     */
+    private int[] segmentCells = new int[16];
+
+    /**
+     * The box of each item: minX, minY, maxX, maxY (NaN if the item is absent).
+     */
+    private double[] boxes = new double[0];
+    /**
+     * The last query that reported each item (to report items once per query).
+     */
+    private int[] stamps = new int[0];
+    /**
+     * The number of the current query.
+     */
+    private int stamp = 0;
+    /**
+     * The number of items in the grid.
+     */
+    private int size = 0;
+
+    /**
+     * Constructs an empty grid covering a rectangle, with about
+     * {@code expectedItems} cells.
+     *
+     * @param minX          the left edge of the rectangle.
+     * @param minY          the top edge of the rectangle.
+     * @param maxX          the right edge of the rectangle.
+     * @param maxY          the bottom edge of the rectangle.
+     * @param expectedItems about how many items will be indexed.
+     */
+    public SpatialGrid(double minX, double minY, double maxX, double maxY, int expectedItems) {
+        double width = Math.max(maxX - minX, 1);
+        double height = Math.max(maxY - minY, 1);
+        int cells = Math.max(1, Math.min(expectedItems, 1 << 20));
+        double size = Math.sqrt(width * height / cells);
+        this.originX = minX;
+        this.originY = minY;
+        this.cellSize = size;
+        this.cols = Math.max(1, (int) Math.ceil(width / size));
+        this.rows = Math.max(1, (int) Math.ceil(height / size));
+        this.cellItems = new int[cols * rows][];
+        this.cellCounts = new int[cols * rows];
+    }
+
+    /**
+     * Adds an item, or moves it if it is already in the grid.
+     *
+     * @param item the item.
+     * @param minX the left edge of its box.
+     * @param minY the top edge of its box.
+     * @param maxX the right edge of its box.
+     * @param maxY the bottom edge of its box.
+     * @throws IllegalArgumentException if the item is negative.
+     */
+    public void put(int item, double minX, double minY, double maxX, double maxY) {
+        if (item < 0) {
+            throw new IllegalArgumentException("Negative item: " + item);
+        }
+        remove(item);
+        ensureCapacity(item + 1);
+        boxes[4 * item] = minX;
+        boxes[4 * item + 1] = minY;
+        boxes[4 * item + 2] = maxX;
+        boxes[4 * item + 3] = maxY;
+        size++;
+
+        int c0 = col(minX);
+        int c1 = col(maxX);
+        int r0 = row(minY);
+        int r1 = row(maxY);
+        if ((long) (c1 - c0 + 1) * (r1 - r0 + 1) > MAX_CELLS) {
+            if (oversizedCount == oversized.length) {
+                oversized = Arrays.copyOf(oversized, oversizedCount * 2);
+            }
+            oversizedPos[item] = oversizedCount;
+            oversized[oversizedCount++] = item;
+            return;
+        }
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                addToCell(r * cols + c, item);
+            }
+        }
+    }
+
+    /**
+     * Adds a line segment, or moves it if it is already in the grid. The
+     * segment is stored in every cell that a square of side 2 * pad
+     * touches as its center slides along the segment, and queries test
+     * the segment's padded box, so a query finds it iff the query box
+     * meets both the padded segment's cells and its box.
+     *
+     * @param item the item.
+     * @param x1   the x coordinate of one end.
+     * @param y1   the y coordinate of one end.
+     * @param x2   the x coordinate of the other end.
+     * @param y2   the y coordinate of the other end.
+     * @param pad  how far the segment reaches on each side (at least 0).
+     * @throws IllegalArgumentException if the item or the padding is negative.
+     */
+    public void putSegment(int item, double x1, double y1, double x2, double y2, double pad) {
+        if (item < 0 || !(pad >= 0)) {
+            throw new IllegalArgumentException("Negative item or padding: " + item + ", " + pad);
+        }
+        remove(item);
+        ensureCapacity(item + 1);
+        boxes[4 * item] = Math.min(x1, x2) - pad;
+        boxes[4 * item + 1] = Math.min(y1, y2) - pad;
+        boxes[4 * item + 2] = Math.max(x1, x2) + pad;
+        boxes[4 * item + 3] = Math.max(y1, y2) + pad;
+        segments[5 * item] = x1;
+        segments[5 * item + 1] = y1;
+        segments[5 * item + 2] = x2;
+        segments[5 * item + 3] = y2;
+        segments[5 * item + 4] = pad;
+        size++;
+
+        int count = walkSegment(item);
+        for (int i = 0; i < count; i++) {
+            addToCell(segmentCells[i], item);
+        }
+    }
+
+    /**
+     * Removes an item.
+     *
+     * @param item the item.
+     * @return true if the item was in the grid.
+     */
+    public boolean remove(int item) {
+        if (!contains(item)) {
+            return false;
+        }
+        int pos = oversizedPos[item];
+        if (!Double.isNaN(segments[5 * item])) {
+            int count = walkSegment(item);
+            for (int i = 0; i < count; i++) {
+                removeFromCell(segmentCells[i], item);
+            }
+            segments[5 * item] = Double.NaN;
+        } else if (pos >= 0) {
+            int last = oversized[--oversizedCount];
+            oversized[pos] = last;
+            oversizedPos[last] = pos;
+            oversizedPos[item] = -1;
+        } else {
+            int c0 = col(boxes[4 * item]);
+            int c1 = col(boxes[4 * item + 2]);
+            int r0 = row(boxes[4 * item + 1]);
+            int r1 = row(boxes[4 * item + 3]);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    removeFromCell(r * cols + c, item);
+                }
+            }
+        }
+        boxes[4 * item] = Double.NaN;
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns true if the item is in the grid.
+     *
+     * @param item the item.
+     * @return true if the item is in the grid.
+     */
+    public boolean contains(int item) {
+        return item >= 0 && 4 * item < boxes.length && !Double.isNaN(boxes[4 * item]);
+    }
+
+    /**
+     * Returns the number of items in the grid.
+     *
+     * @return the number of items.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Reports every item whose box intersects a query box, once each.
+     *
+     * @param minX    the left edge of the query box.
+     * @param minY    the top edge of the query box.
+     * @param maxX    the right edge of the query box.
+     * @param maxY    the bottom edge of the query box.
+     * @param visitor receives the items.
+     * @return the number of items reported.
+     */
+    public int query(double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        if (++stamp == 0) {
+            //the stamps wrapped around: start over
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+        int found = 0;
+        int c0 = col(minX);
+        int c1 = col(maxX);
+        int r0 = row(minY);
+        int r1 = row(maxY);
+        if ((double) (c1 - c0 + 1) * (r1 - r0 + 1) / cellCounts.length * cellEntries > stamps.length) {
+            //the cells hold more entries than there are items (a query
+            //over most of the grid): checking every item's box is cheaper
+            for (int item = 0; item < stamps.length; item++) {
+                if (contains(item) && report(item, minX, minY, maxX, maxY, visitor)) {
+                    found++;
+                }
+            }
+            return found;
+        }
+        for (int i = 0; i < oversizedCount; i++) {
+            if (report(oversized[i], minX, minY, maxX, maxY, visitor)) {
+                found++;
+            }
+        }
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                int[] items = cellItems[cell];
+                for (int i = 0; i < cellCounts[cell]; i++) {
+                    if (report(items[i], minX, minY, maxX, maxY, visitor)) {
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Internal method to report an item to a query if its box (or its
+     * padded segment) intersects the query box and it was not reported yet.
+     *
+     * @param item    the item.
+     * @param minX    the left edge of the query box.
+     * @param minY    the top edge of the query box.
+     * @param maxX    the right edge of the query box.
+     * @param maxY    the bottom edge of the query box.
+     * @param visitor receives the item.
+     * @return true if the item was reported.
+     */
+    private boolean report(int item, double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        if (stamps[item] == stamp) {
+            return false;
+        }
+        stamps[item] = stamp;
+        int b = 4 * item;
+        if (boxes[b] > maxX || boxes[b + 2] < minX || boxes[b + 1] > maxY || boxes[b + 3] < minY) {
+            return false;
+        }
+        if (!Double.isNaN(segments[5 * item]) && !segmentMeets(item, minX, minY, maxX, maxY)) {
+            return false;
+        }
+        visitor.accept(item);
+        return true;
+    }
+
+    /**
+     * Internal method to test a segment item against a query box grown by
+     * the segment's padding, by clipping the segment to the box one axis
+     * at a time (Liang-Barsky).
+     *
+     * @param item the item.
+     * @param minX the left edge of the query box.
+     * @param minY the top edge of the query box.
+     * @param maxX the right edge of the query box.
+     * @param maxY the bottom edge of the query box.
+     * @return true if the padded segment meets the box.
+     */
+    private boolean segmentMeets(int item, double minX, double minY, double maxX, double maxY) {
+        int s = 5 * item;
+        double pad = segments[s + 4];
+        double x = segments[s];
+        double y = segments[s + 1];
+        double dx = segments[s + 2] - x;
+        double dy = segments[s + 3] - y;
+        double enter = 0;
+        double leave = 1;
+        if (dx == 0) {
+            if (x < minX - pad || x > maxX + pad) {
+                return false;
+            }
+        } else {
+            double t1 = (minX - pad - x) / dx;
+            double t2 = (maxX + pad - x) / dx;
+            enter = Math.max(enter, Math.min(t1, t2));
+            leave = Math.min(leave, Math.max(t1, t2));
+        }
+        if (dy == 0) {
+            if (y < minY - pad || y > maxY + pad) {
+                return false;
+            }
+        } else {
+            double t1 = (minY - pad - y) / dy;
+            double t2 = (maxY + pad - y) / dy;
+            enter = Math.max(enter, Math.min(t1, t2));
+            leave = Math.min(leave, Math.max(t1, t2));
+        }
+        return enter <= leave;
+    }
+
+    /**
+     * Internal method to add an item to a cell.
+     *
+     * @param cell the cell.
+     * @param item the item.
+     */
+    private void addToCell(int cell, int item) {
+        int[] items = cellItems[cell];
+        if (items == null) {
+            items = new int[4];
+        } else if (cellCounts[cell] == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
+        }
+        items[cellCounts[cell]++] = item;
+        cellItems[cell] = items;
+        cellEntries++;
+    }
+
+    /**
+     * Internal method to remove an item from a cell.
+     *
+     * @param cell the cell.
+     * @param item the item.
+     */
+    private void removeFromCell(int cell, int item) {
+        int[] items = cellItems[cell];
+        for (int i = 0; i < cellCounts[cell]; i++) {
+            if (items[i] == item) {
+                items[i] = items[--cellCounts[cell]];
+                cellEntries--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Internal method to list the cells of a segment item into segmentCells.
+     * A DDA walk steps one cell at a time along the segment's longer axis;
+     * in each step, the span of the other axis covered by the padded
+     * segment is worked out from the line equation (over the step's cell
+     * widened by the padding), so every cell the padded segment touches is
+     * listed once.
+     *
+     * @param item the item.
+     * @return the number of cells listed.
+     */
+    private int walkSegment(int item) {
+        int s = 5 * item;
+        //a little extra padding keeps rounding from missing a cell
+        double pad = segments[s + 4] + cellSize * 1e-9;
+        boolean steep = Math.abs(segments[s + 3] - segments[s + 1]) > Math.abs(segments[s + 2] - segments[s]);
+        //(a, b) are the coordinates along the walked axis and the other one
+        double a1 = steep ? segments[s + 1] : segments[s];
+        double b1 = steep ? segments[s] : segments[s + 1];
+        double a2 = steep ? segments[s + 3] : segments[s + 2];
+        double b2 = steep ? segments[s + 2] : segments[s + 3];
+        double aOrigin = steep ? originY : originX;
+        double bOrigin = steep ? originX : originY;
+        int aLimit = steep ? rows : cols;
+        int bLimit = steep ? cols : rows;
+        double aMin = Math.min(a1, a2);
+        double aMax = Math.max(a1, a2);
+        double slope = a1 == a2 ? 0 : (b2 - b1) / (a2 - a1);
+
+        int first = clamp((int) Math.floor((aMin - pad - aOrigin) / cellSize), aLimit);
+        int last = clamp((int) Math.floor((aMax + pad - aOrigin) / cellSize), aLimit);
+        int count = 0;
+        for (int step = first; step <= last; step++) {
+            //the part of the segment within the padding of this step's cells
+            //(the border cells reach out to infinity, as coordinates are clamped)
+            double lo = step == 0 ? aMin : Math.max(aMin, aOrigin + step * cellSize - pad);
+            double hi = step == aLimit - 1 ? aMax : Math.min(aMax, aOrigin + (step + 1) * cellSize + pad);
+            if (lo > hi) {
+                continue;
+            }
+            double bLo = b1 + (lo - a1) * slope;
+            double bHi = b1 + (hi - a1) * slope;
+            int from = clamp((int) Math.floor((Math.min(bLo, bHi) - pad - bOrigin) / cellSize), bLimit);
+            int to = clamp((int) Math.floor((Math.max(bLo, bHi) + pad - bOrigin) / cellSize), bLimit);
+            if (count + to - from + 1 > segmentCells.length) {
+                segmentCells = Arrays.copyOf(segmentCells, Math.max(2 * segmentCells.length, count + to - from + 1));
+            }
+            for (int other = from; other <= to; other++) {
+                segmentCells[count++] = steep ? step * cols + other : other * cols + step;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Internal method to clamp a cell coordinate to the grid.
+     *
+     * @param cell  the column or row.
+     * @param limit the number of columns or rows.
+     * @return the clamped column or row.
+     */
+    private static int clamp(int cell, int limit) {
+        return Math.max(0, Math.min(limit - 1, cell));
+    }
+
+    /**
+     * Internal method to find the (clamped) column of an x coordinate.
+     *
+     * @param x the x coordinate.
+     * @return the column.
+     */
+    private int col(double x) {
+        int c = (int) Math.floor((x - originX) / cellSize);
+        return Math.max(0, Math.min(cols - 1, c));
+    }
+
+    /**
+     * Internal method to find the (clamped) row of a y coordinate.
+     *
+     * @param y the y coordinate.
+     * @return the row.
+     */
+    private int row(double y) {
+        int r = (int) Math.floor((y - originY) / cellSize);
+        return Math.max(0, Math.min(rows - 1, r));
+    }
+
+    /**
+     * Internal method to grow the per-item arrays.
+     *
+     * @param capacity the number of items that must fit.
+     */
+    private void ensureCapacity(int capacity) {
+        int old = stamps.length;
+        if (capacity <= old) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, old * 2);
+        boxes = Arrays.copyOf(boxes, 4 * newCapacity);
+        Arrays.fill(boxes, 4 * old, boxes.length, Double.NaN);
+        segments = Arrays.copyOf(segments, 5 * newCapacity);
+        Arrays.fill(segments, 5 * old, segments.length, Double.NaN);
+        stamps = Arrays.copyOf(stamps, newCapacity);
+        oversizedPos = Arrays.copyOf(oversizedPos, newCapacity);
+        Arrays.fill(oversizedPos, old, newCapacity, -1);
+    }
+}
@@ -0,0 +1,341 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs simulation work on a dedicated worker thread and publishes the
+ * results to the Swing event dispatch thread in batches.
+ *
+ * <p>All work that changes the simulation (stepping, seeking, resetting)
+ * should go through {@link #submit(Runnable)} or {@link #play(BooleanSupplier, boolean)},
+ * so that only the worker thread ever mutates it. After a batch of work the
+ * worker captures a snapshot of whatever the GUI needs (on the worker
+ * thread) and hands it to a callback on the EDT, with a flag saying
+ * whether the graph itself should be redrawn. Snapshots are published
+ * at most {@code maxFramesPerSecond} times per second and never queue up:
+ * if the EDT has not consumed the last one yet, no new one is sent.
+ *
+ * @param <S> the type of the snapshots handed to the GUI
+ */
+class StepScheduler<S> {
+    /**
+     * The thread the work runs on.
+     */
+    private final ExecutorService worker;
+    /**
+     * Captures a snapshot (called on the worker thread).
+     */
+    private final Supplier<S> snapshot;
+    /**
+     * Consumes a snapshot and whether to redraw the graph (called on the EDT).
+     */
+    private final BiConsumer<S, Boolean> onFrame;
+    /**
+     * Whether a snapshot has been sent to the EDT but not consumed yet.
+     */
+    private final AtomicBoolean framePending = new AtomicBoolean(false);
+    /**
+     * The number of submitted tasks that have not finished yet.
+     */
+    private final AtomicInteger queued = new AtomicInteger(0);
+
+    /**
+     * How many steps per second play() runs (0 means as fast as possible).
+     */
+    private volatile int stepsPerSecond = 1;
+    /**
+     * The most snapshots per second sent while playing.
+     */
+    private volatile int maxFramesPerSecond = 60;
+    /**
+     * Whether play() is paused.
+     */
+    private volatile boolean paused = false;
+    /**
+     * Whether play() has been asked to stop.
+     */
+    private volatile boolean cancelled = false;
+    /**
+     * Whether play() is running (or waiting to run).
+     */
+    private volatile boolean playing = false;
+    /**
+     * Whether the current play() publishes intermediate snapshots for rendering.
+     */
+    private volatile boolean render = true;
+    /**
+     * The recent step rate of play().
+     */
+    private volatile double rate = 0;
+
+    /**
+     * Constructs a scheduler with its own worker thread.
+     *
+     * @param snapshot captures what the GUI needs to show (called on the worker thread).
+     * @param onFrame  shows a snapshot, redrawing the graph if the flag is true (called on the EDT).
+     */
+    public StepScheduler(Supplier<S> snapshot, BiConsumer<S, Boolean> onFrame) {
+        this.snapshot = snapshot;
+        this.onFrame = onFrame;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "simulation-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Runs a task on the worker thread, then publishes a snapshot.
+     *
+     * @param task the task to run.
+     * @return a future that completes when the task has run.
+     */
+    public Future<?> submit(Runnable task) {
+        queued.incrementAndGet();
+        return worker.submit(() -> {
+            try {
+                task.run();
+            } finally {
+                queued.decrementAndGet();
+                publish(true, true);
+            }
+        });
+    }
+
+    /**
+     * Repeatedly runs a step on the worker thread until it returns false or
+     * the run is cancelled, pacing steps to the current step rate.
+     *
+     * @param step   runs one step and returns whether there are more.
+     * @param render whether intermediate snapshots should be published
+     *               (if false, only the final one is, and the rate is still reported).
+     */
+    public void play(BooleanSupplier step, boolean render) {
+        if (playing) {
+            return;
+        }
+        playing = true;
+        cancelled = false;
+        paused = false;
+        this.render = render;
+        worker.submit(() -> {
+            try {
+                runLoop(step);
+            } finally {
+                playing = false;
+                publish(true, true);
+            }
+        });
+    }
+
+    /**
+     * Pauses a running play() after its current step.
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    /**
+     * Resumes a paused play().
+     */
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * Stops a running play() after its current step.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    /**
+     * Stops a running play() and waits until the worker is idle
+     * (so the caller can safely replace the simulation).
+     */
+    public void cancelAndWait() {
+        cancel();
+        try {
+            worker.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sets how many steps per second play() runs. Takes effect immediately.
+     *
+     * @param stepsPerSecond the step rate (0 means as fast as possible).
+     */
+    public void setStepsPerSecond(int stepsPerSecond) {
+        this.stepsPerSecond = Math.max(0, stepsPerSecond);
+    }
+
+    /**
+     * Sets the most snapshots per second published while playing.
+     *
+     * @param maxFramesPerSecond the frame rate cap.
+     */
+    public void setMaxFramesPerSecond(int maxFramesPerSecond) {
+        this.maxFramesPerSecond = Math.max(1, maxFramesPerSecond);
+    }
+
+    /**
+     * Returns true while play() is running (paused or not).
+     *
+     * @return whether play() is running.
+     */
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Returns true if the worker has nothing to do: no play() is running
+     * and every submitted task has finished. The snapshot published after
+     * the last piece of work already sees the scheduler as idle.
+     *
+     * @return whether the worker is idle.
+     */
+    public boolean isIdle() {
+        return !playing && queued.get() == 0;
+    }
+
+    /**
+     * Returns true if play() is paused.
+     *
+     * @return whether play() is paused.
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Returns the recent step rate of play().
+     *
+     * @return steps per second over the last second or so.
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Stops the worker thread. The scheduler cannot be used afterwards.
+     */
+    public void shutdown() {
+        cancel();
+        worker.shutdown();
+    }
+
+    /**
+     * Internal method with the body of play(), run on the worker thread.
+     *
+     * @param step runs one step and returns whether there are more.
+     */
+    private void runLoop(BooleanSupplier step) {
+        RateMeter meter = new RateMeter();
+        int pacedRate = -1;
+        long nextStep = System.nanoTime();
+        long lastFrame = System.nanoTime();
+        boolean more = true;
+
+        while (more && !cancelled) {
+            if (paused) {
+                rate = 0;
+                publish(true, true);
+                if (!waitWhilePaused()) {
+                    break;
+                }
+                nextStep = System.nanoTime();
+            }
+
+            int perSecond = stepsPerSecond;
+            if (perSecond != pacedRate) {
+                //the speed changed: pace from now on
+                pacedRate = perSecond;
+                nextStep = System.nanoTime();
+            }
+            if (perSecond > 0) {
+                long wait = nextStep - System.nanoTime();
+                if (wait > 0) {
+                    sleepNanos(wait);
+                    continue; //re-check cancel/pause/speed after sleeping
+                }
+                nextStep += 1_000_000_000L / perSecond;
+            }
+
+            more = step.getAsBoolean();
+            meter.add(1);
+
+            long now = System.nanoTime();
+            if (now - lastFrame >= 1_000_000_000L / maxFramesPerSecond) {
+                rate = meter.rate();
+                publish(render, false);
+                lastFrame = now;
+            }
+        }
+        rate = meter.rate();
+    }
+
+    /**
+     * Internal method to block while paused.
+     *
+     * @return false if the run was cancelled while paused.
+     */
+    private synchronized boolean waitWhilePaused() {
+        while (paused && !cancelled) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !cancelled;
+    }
+
+    /**
+     * Internal method to sleep for a while (at most 50ms, so speed
+     * changes and cancellation are noticed quickly).
+     *
+     * @param nanos how long to sleep.
+     */
+    private static void sleepNanos(long nanos) {
+        nanos = Math.min(nanos, 50_000_000L);
+        try {
+            Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Internal method to capture a snapshot and send it to the EDT,
+     * unless the previous one has not been consumed yet.
+     *
+     * @param redraw whether the GUI should redraw the graph for this snapshot.
+     * @param force  whether to publish even if the EDT is still busy with the last one.
+     */
+    private void publish(boolean redraw, boolean force) {
+        if (!framePending.compareAndSet(false, true) && !force) {
+            return;
+        }
+        framePending.set(true);
+        S frame = snapshot.get();
+        SwingUtilities.invokeLater(() -> {
+            framePending.set(false);
+            onFrame.accept(frame, redraw);
+        });
+    }
+}
@@ -0,0 +1,333 @@
+import edu.uci.ics.jung.graph.Graph;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An append-only log of the color changes made by each step of an
+ * algorithm run, which can be replayed forwards and backwards.
+ *
+ * <p>While a step is being recorded, every color change the step makes
+ * to a component of the graph is appended as one entry: (component, old
+ * color, new color). Only the recording thread's changes are seen (the
+ * trace is its {@link GraphComp#setRecorder recorder} for the step), and
+ * components of other graphs are ignored.
+ * For Kruskal that is exactly the decision made for each edge (selected,
+ * inactive, highlighted) plus the endpoint recoloring. Seeking moves the
+ * graph's colors to the state after any recorded step by applying entries
+ * forwards or undoing them backwards, without rerunning the algorithm.
+ *
+ * <p>A full color snapshot (checkpoint) is kept every {@code interval}
+ * steps, with the interval doubled whenever it falls below the square root
+ * of the step count. A long seek therefore restores the nearest checkpoint
+ * and then replays at most O(sqrt(n)) steps of entries.
+ *
+ * <p>Components are stored as small integer slots and colors as indices
+ * into a palette, so an entry costs two ints.
+ */
+class StepTrace implements ColorListener {
+    /**
+     * The initial checkpoint interval (in steps).
+     */
+    private static final int MIN_INTERVAL = 16;
+
+    /**
+     * The graph whose components are recorded.
+     */
+    private final Graph<GraphNode, GraphEdge> graph;
+    /**
+     * The components seen so far, by slot.
+     */
+    private GraphComp[] slots = new GraphComp[64];
+    /**
+     * The number of used slots.
+     */
+    private int slotCount = 0;
+    /**
+     * The palette index of each slot's color before the first step.
+     */
+    private int[] initialColor = new int[64];
+    /**
+     * The slot of each node, by node id (-1 if none).
+     */
+    private int[] nodeSlots = new int[0];
+    /**
+     * The slot of each edge, by edge id (-1 if none).
+     */
+    private int[] edgeSlots = new int[0];
+    /**
+     * The distinct colors seen so far.
+     */
+    private final ArrayList<Color> palette = new ArrayList<>();
+
+    /**
+     * The slot changed by each entry.
+     */
+    private int[] entrySlot = new int[256];
+    /**
+     * The old (high 16 bits) and new (low 16 bits) palette index of each entry.
+     */
+    private int[] entryColors = new int[256];
+    /**
+     * The number of entries.
+     */
+    private int entryCount = 0;
+    /**
+     * The number of entries at the end of each step (stepEnds[0] is 0, for step 0 = "before any step").
+     */
+    private int[] stepEnds = new int[64];
+    /**
+     * The number of recorded steps.
+     */
+    private int stepCount = 0;
+
+    /**
+     * The number of steps between checkpoints.
+     */
+    private int interval = MIN_INTERVAL;
+    /**
+     * The checkpoints: checkpoints.get(i) holds the color of every slot after step i*interval.
+     */
+    private final ArrayList<int[]> checkpoints = new ArrayList<>();
+
+    /**
+     * The step whose state the graph's colors currently show.
+     */
+    private int cursor = 0;
+    /**
+     * Whether a step is currently being recorded.
+     */
+    private boolean recording = false;
+
+    /**
+     * Constructs an empty trace for a graph, taking its current colors as the
+     * state before the first step.
+     *
+     * @param graph the graph the algorithm will run on.
+     */
+    public StepTrace(Graph<GraphNode, GraphEdge> graph) {
+        this.graph = graph;
+        for (GraphNode node : graph.getVertices()) {
+            slotOf(node, node.getColor());
+        }
+        for (GraphEdge edge : graph.getEdges()) {
+            slotOf(edge, edge.getColor());
+        }
+        checkpoints.add(Arrays.copyOf(initialColor, slotCount));
+    }
+
+    /**
+     * Runs and records one step of an algorithm. If the trace is not at its
+     * last step, it is first moved there (the algorithm's own state is
+     * always at the last recorded step).
+     *
+     * @param alg the algorithm to step.
+     * @return the result of alg.step(): whether or not there are more steps.
+     */
+    public boolean record(ThreeTenAlg alg) {
+        seek(stepCount);
+        boolean ret;
+        recording = true;
+        GraphComp.setRecorder(this);
+        try {
+            ret = alg.step();
+        } finally {
+            GraphComp.setRecorder(null);
+            recording = false;
+        }
+        endStep();
+        return ret;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void colorChanged(GraphComp comp, Color oldColor, Color newColor) {
+        if (!recording || !isOwn(comp)) {
+            return;
+        }
+        if (entryCount == entrySlot.length) {
+            entrySlot = Arrays.copyOf(entrySlot, entryCount * 2);
+            entryColors = Arrays.copyOf(entryColors, entryCount * 2);
+        }
+        entrySlot[entryCount] = slotOf(comp, oldColor);
+        entryColors[entryCount] = (colorIndex(oldColor) << 16) | colorIndex(newColor);
+        entryCount++;
+    }
+
+    /**
+     * Moves the graph's colors to the state right after a recorded step
+     * (step 0 is the state before the first step).
+     *
+     * @param step the step to move to.
+     * @throws IllegalArgumentException if the step has not been recorded.
+     */
+    public void seek(int step) {
+        if (step < 0 || step > stepCount) {
+            throw new IllegalArgumentException("No such step: " + step);
+        }
+        int nearest = Math.min(step / interval, checkpoints.size() - 1);
+        int fromCheckpoint = step - nearest * interval;
+        if (fromCheckpoint < Math.abs(step - cursor)) {
+            restore(checkpoints.get(nearest));
+            cursor = nearest * interval;
+        }
+        while (cursor < step) {
+            cursor++;
+            for (int i = stepEnds[cursor - 1]; i < stepEnds[cursor]; i++) {
+                slots[entrySlot[i]].setColor(palette.get(entryColors[i] & 0xFFFF));
+            }
+        }
+        while (cursor > step) {
+            for (int i = stepEnds[cursor] - 1; i >= stepEnds[cursor - 1]; i--) {
+                slots[entrySlot[i]].setColor(palette.get(entryColors[i] >>> 16));
+            }
+            cursor--;
+        }
+    }
+
+    /**
+     * Returns the step whose state the graph currently shows.
+     *
+     * @return the current step.
+     */
+    public int getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Returns the number of recorded steps.
+     *
+     * @return the number of recorded steps.
+     */
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * Returns the total number of recorded color changes.
+     *
+     * @return the number of entries.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Internal method to close the step being recorded, taking a checkpoint if one is due.
+     */
+    private void endStep() {
+        stepCount++;
+        cursor = stepCount;
+        if (stepCount == stepEnds.length) {
+            stepEnds = Arrays.copyOf(stepEnds, stepCount * 2);
+        }
+        stepEnds[stepCount] = entryCount;
+
+        if ((long) interval * interval < stepCount) {
+            //double the interval, keeping every other checkpoint
+            interval *= 2;
+            int kept = 0;
+            for (int i = 0; i < checkpoints.size(); i += 2) {
+                checkpoints.set(kept++, checkpoints.get(i));
+            }
+            while (checkpoints.size() > kept) {
+                checkpoints.remove(checkpoints.size() - 1);
+            }
+        }
+        if (stepCount % interval == 0) {
+            int[] colors = new int[slotCount];
+            for (int i = 0; i < slotCount; i++) {
+                colors[i] = colorIndex(slots[i].getColor());
+            }
+            checkpoints.add(colors);
+        }
+    }
+
+    /**
+     * Internal method to set every slot's color from a checkpoint.
+     * Slots added after the checkpoint was taken get their initial color.
+     *
+     * @param colors the checkpoint.
+     */
+    private void restore(int[] colors) {
+        for (int i = 0; i < slotCount; i++) {
+            slots[i].setColor(palette.get(i < colors.length ? colors[i] : initialColor[i]));
+        }
+    }
+
+    /**
+     * Internal method to tell whether a component belongs to the recorded
+     * graph. Components already given a slot are matched by identity, so
+     * a component of another graph that shares an id is not taken for one
+     * of ours; only a component not seen yet makes the graph be asked.
+     *
+     * @param comp the component.
+     * @return true if its color changes are to be recorded.
+     */
+    private boolean isOwn(GraphComp comp) {
+        int[] bySlot = comp instanceof GraphNode ? nodeSlots : edgeSlots;
+        int id = comp.getId();
+        if (id >= 0 && id < bySlot.length && bySlot[id] >= 0) {
+            return slots[bySlot[id]] == comp;
+        }
+        return comp instanceof GraphNode ? graph.containsVertex((GraphNode) comp)
+            : comp instanceof GraphEdge && graph.containsEdge((GraphEdge) comp);
+    }
+
+    /**
+     * Internal method to find (or assign) the slot of a component.
+     *
+     * @param comp  the component.
+     * @param color the color of the component before the current step (used if it is new).
+     * @return the slot of the component.
+     */
+    private int slotOf(GraphComp comp, Color color) {
+        boolean isNode = comp instanceof GraphNode;
+        int[] bySlot = isNode ? nodeSlots : edgeSlots;
+        int id = comp.getId();
+        if (id < bySlot.length && bySlot[id] >= 0) {
+            return bySlot[id];
+        }
+        if (id >= bySlot.length) {
+            int oldLength = bySlot.length;
+            bySlot = Arrays.copyOf(bySlot, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(bySlot, oldLength, bySlot.length, -1);
+            if (isNode) {
+                nodeSlots = bySlot;
+            } else {
+                edgeSlots = bySlot;
+            }
+        }
+        if (slotCount == slots.length) {
+            slots = Arrays.copyOf(slots, slotCount * 2);
+            initialColor = Arrays.copyOf(initialColor, slotCount * 2);
+        }
+        slots[slotCount] = comp;
+        initialColor[slotCount] = colorIndex(color);
+        bySlot[id] = slotCount;
+        return slotCount++;
+    }
+
+    /**
+     * Internal method to find (or assign) the palette index of a color.
+     *
+     * @param color the color.
+     * @return its index in the palette.
+     */
+    private int colorIndex(Color color) {
+        //there are only a handful of colors, so a linear scan is fine
+        for (int i = 0; i < palette.size(); i++) {
+            if (Objects.equals(palette.get(i), color)) {
+                return i;
+            }
+        }
+        if (palette.size() == 0xFFFF) {
+            throw new IllegalStateException("Too many distinct colors");
+        }
+        palette.add(color);
+        return palette.size() - 1;
+    }
+}
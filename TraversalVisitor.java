@@ -0,0 +1,32 @@
+/**
+ *  Callbacks for the events of a {@link GraphTraversal}.
+ *  All vertices and edges are given by their {@link CompactGraph} indices.
+ *  Every method does nothing by default.
+ */
+interface TraversalVisitor {
+	/**
+	 *  Called when a vertex is reached for the first time.
+	 *  
+	 *  @param vertex the vertex index
+	 */
+	public default void visitVertex(int vertex) { }
+	
+	/**
+	 *  Called when an edge leads to a vertex not reached before.
+	 *  
+	 *  @param from the vertex the edge was followed from
+	 *  @param to the newly reached vertex
+	 *  @param edge the edge index
+	 */
+	public default void treeEdge(int from, int to, int edge) { }
+	
+	/**
+	 *  Called (once per edge) when an edge leads to a vertex that was already reached,
+	 *  i.e. an edge that closes a cycle.
+	 *  
+	 *  @param from the vertex the edge was followed from
+	 *  @param to the vertex that was already reached
+	 *  @param edge the edge index
+	 */
+	public default void nonTreeEdge(int from, int to, int edge) { }
+}
@@ -0,0 +1,125 @@
+import java.util.Arrays;
+
+/**
+ * A union-find (disjoint set) structure over the integers 0 to n-1, with
+ * union by size and path halving, so any sequence of operations runs in
+ * near-constant amortized time per operation.
+ *
+ * <p>Unlike {@link ComponentIndex}, which labels {@link GraphNode}s and
+ * keeps member lists, this works on plain indices and uses two int arrays
+ * only, for algorithms that stream edges over dense vertex numbers.
+ */
+class UnionFind {
+    /**
+     * The parent of each element (a root is its own parent).
+     */
+    private final int[] parent;
+    /**
+     * The size of each set, valid for roots only.
+     */
+    private final int[] size;
+    /**
+     * The number of disjoint sets.
+     */
+    private int count;
+
+    /**
+     * Constructs n singleton sets.
+     *
+     * @param n the number of elements.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    public UnionFind(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Negative size: " + n);
+        }
+        parent = new int[n];
+        size = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        Arrays.fill(size, 1);
+        count = n;
+    }
+
+    /**
+     * Returns the representative of an element's set.
+     *
+     * @param x the element.
+     * @return the root of its set.
+     * @throws IndexOutOfBoundsException if x is not an element.
+     */
+    public int find(int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /**
+     * Merges the sets of two elements.
+     *
+     * @param x the first element.
+     * @param y the second element.
+     * @return true if two different sets were merged, false if they were already one.
+     * @throws IndexOutOfBoundsException if x or y is not an element.
+     */
+    public boolean union(int x, int y) {
+        int rx = find(x);
+        int ry = find(y);
+        if (rx == ry) {
+            return false;
+        }
+        if (size[rx] < size[ry]) {
+            int tmp = rx;
+            rx = ry;
+            ry = tmp;
+        }
+        parent[ry] = rx;
+        size[rx] += size[ry];
+        count--;
+        return true;
+    }
+
+    /**
+     * Returns whether two elements are in the same set.
+     *
+     * @param x the first element.
+     * @param y the second element.
+     * @return true if they are in the same set.
+     * @throws IndexOutOfBoundsException if x or y is not an element.
+     */
+    public boolean connected(int x, int y) {
+        return find(x) == find(y);
+    }
+
+    /**
+     * Returns the size of an element's set.
+     *
+     * @param x the element.
+     * @return the number of elements in its set.
+     * @throws IndexOutOfBoundsException if x is not an element.
+     */
+    public int size(int x) {
+        return size[find(x)];
+    }
+
+    /**
+     * Returns the number of disjoint sets.
+     *
+     * @return the number of sets.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return n.
+     */
+    public int elements() {
+        return parent.length;
+    }
+}
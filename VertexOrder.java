@@ -0,0 +1,511 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Vertex orders that improve the memory locality of a {@link CompactGraph}.
+ *
+ * <p>Vertex ids follow creation order ({@code GraphNode.nodeCount++}), which
+ * usually has nothing to do with the graph's structure, so the neighbors of
+ * a vertex are scattered over every per-vertex array and a traversal misses
+ * the cache at almost every step. Renumbering the vertices so that
+ * neighbors get nearby indices (see {@link CompactGraph#reorder}) keeps the
+ * working set of a traversal, a Prim-style scan or a union-find small.
+ * Each method returns an order: the old index of each new index.
+ * {@link Graph310#setReordered} makes a graph's own traversals run on a
+ * snapshot in {@link #bfs} order.
+ */
+final class VertexOrder {
+    /**
+     * Not instantiable.
+     */
+    private VertexOrder() {
+    }
+
+    /**
+     * Returns the breadth-first order: each component in turn (in order of
+     * its smallest index), from its smallest index.
+     *
+     * @param graph the graph.
+     * @return the order.
+     */
+    public static int[] bfs(CompactGraph graph) {
+        int n = graph.getVertexCount();
+        int[] order = new int[n];
+        TraversalVisitor collect = new TraversalVisitor() {
+            /**
+             * The number of vertices collected.
+             */
+            private int count = 0;
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void visitVertex(int vertex) {
+                order[count++] = vertex;
+            }
+        };
+        GraphTraversal traversal = new GraphTraversal(graph);
+        for (int v = 0; v < n; v++) {
+            traversal.bfs(v, collect);
+        }
+        return order;
+    }
+
+    /**
+     * Returns the reverse Cuthill-McKee order, which keeps the edges close
+     * to the diagonal of the adjacency matrix. Each component is searched
+     * breadth-first from a vertex far from the center (found with one
+     * George-Liu step from a vertex of least degree), taking the new
+     * neighbors of each vertex in order of increasing degree; the whole
+     * order is then reversed.
+     *
+     * @param graph the graph.
+     * @return the order.
+     */
+    public static int[] reverseCuthillMcKee(CompactGraph graph) {
+        int n = graph.getVertexCount();
+        int[] order = new int[n];
+        boolean[] placed = new boolean[n];
+        int[] level = new int[n];
+        int[] queue = new int[n];
+        long[] keys = new long[Math.max(1, maxDegree(graph))];
+        int count = 0;
+        for (int candidate : ascendingDegree(graph)) {
+            if (placed[candidate]) {
+                continue;
+            }
+            int start = peripheral(graph, candidate, level, queue);
+            order[count++] = start;
+            placed[start] = true;
+            for (int head = count - 1; head < count; head++) {
+                int v = order[head];
+                int k = 0;
+                for (int pos = graph.adjStart(v); pos < graph.adjStart(v + 1); pos++) {
+                    int w = graph.adjTarget(pos);
+                    if (!placed[w]) {
+                        placed[w] = true;
+                        keys[k++] = (long) graph.degree(w) << 32 | w;
+                    }
+                }
+                Arrays.sort(keys, 0, k);
+                for (int i = 0; i < k; i++) {
+                    order[count++] = (int) keys[i];
+                }
+            }
+        }
+        for (int i = 0, j = n - 1; i < j; i++, j--) {
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        return order;
+    }
+
+    /**
+     * Returns the vertices by decreasing degree (ties by index), which packs
+     * the hubs that most searches pass through into a few cache lines.
+     *
+     * @param graph the graph.
+     * @return the order.
+     */
+    public static int[] byDegree(CompactGraph graph) {
+        int[] order = ascendingDegree(graph);
+        int n = order.length;
+        //reverse the ascending order, keeping ties in increasing index order
+        int[] result = new int[n];
+        int end = n;
+        while (end > 0) {
+            int start = end - 1;
+            while (start > 0 && graph.degree(order[start - 1]) == graph.degree(order[end - 1])) {
+                start--;
+            }
+            System.arraycopy(order, start, result, n - end, end - start);
+            end = start;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the inverse of an order: the new index of each old index.
+     *
+     * @param order the old index of each new index.
+     * @return the new index of each old index.
+     */
+    public static int[] inverse(int[] order) {
+        int[] inverse = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            inverse[order[i]] = i;
+        }
+        return inverse;
+    }
+
+    /**
+     * Returns the mean distance between the indices of the endpoints of the
+     * edges: the smaller, the more local the numbering.
+     *
+     * @param graph the graph.
+     * @return the mean edge span (0 if there are no edges).
+     */
+    public static double meanEdgeSpan(CompactGraph graph) {
+        int m = graph.getEdgeCount();
+        long total = 0;
+        for (int e = 0; e < m; e++) {
+            total += Math.abs(graph.getEdgeU(e) - graph.getEdgeV(e));
+        }
+        return m == 0 ? 0 : (double) total / m;
+    }
+
+    /**
+     * Internal method to sort the vertices by increasing degree (ties by index).
+     *
+     * @param graph the graph.
+     * @return the vertex indices in order.
+     */
+    private static int[] ascendingDegree(CompactGraph graph) {
+        int n = graph.getVertexCount();
+        int[] start = new int[maxDegree(graph) + 2];
+        for (int v = 0; v < n; v++) {
+            start[graph.degree(v) + 1]++;
+        }
+        for (int d = 0; d + 1 < start.length; d++) {
+            start[d + 1] += start[d];
+        }
+        int[] order = new int[n];
+        for (int v = 0; v < n; v++) {
+            order[start[graph.degree(v)]++] = v;
+        }
+        return order;
+    }
+
+    /**
+     * Internal method to find the largest degree.
+     *
+     * @param graph the graph.
+     * @return the largest degree (0 if there are no vertices).
+     */
+    private static int maxDegree(CompactGraph graph) {
+        int max = 0;
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            max = Math.max(max, graph.degree(v));
+        }
+        return max;
+    }
+
+    /**
+     * Internal method to find a vertex far from the center of a component:
+     * the vertex of least degree in the last level of a breadth-first
+     * search from the given vertex.
+     *
+     * @param graph the graph.
+     * @param from  a vertex of the component.
+     * @param level scratch space: the level of each vertex reached, plus one
+     *              (must be 0 for the component's vertices, and is left so).
+     * @param queue scratch space for the search.
+     * @return the peripheral vertex.
+     */
+    private static int peripheral(CompactGraph graph, int from, int[] level, int[] queue) {
+        int tail = 0;
+        queue[tail++] = from;
+        level[from] = 1;
+        for (int head = 0; head < tail; head++) {
+            int v = queue[head];
+            for (int pos = graph.adjStart(v); pos < graph.adjStart(v + 1); pos++) {
+                int w = graph.adjTarget(pos);
+                if (level[w] == 0) {
+                    level[w] = level[v] + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        int last = level[queue[tail - 1]];
+        int best = queue[tail - 1];
+        for (int i = tail - 1; i >= 0 && level[queue[i]] == last; i--) {
+            if (graph.degree(queue[i]) <= graph.degree(best)) {
+                best = queue[i];
+            }
+        }
+        for (int i = 0; i < tail; i++) {
+            level[queue[i]] = 0;
+        }
+        return best;
+    }
+
+    /**
+     * Times traversals and MST computations on large sparse graphs whose
+     * vertex ids are in a random creation order, before and after
+     * reordering, and checks that every order gives the same answers.
+     *
+     * @param args [0] = vertices per graph (default 1000000).
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int side = (int) Math.sqrt(n);
+        Random rand = new Random(19);
+        String[] names = {"grid", "grid + 10% shortcuts", "random (no locality)"};
+        for (int kind = 0; kind < names.length; kind++) {
+            CompactGraph graph = kind == 2 ? randomGraph(rand, side * side) : gridGraph(rand, side, kind == 1 ? side * side / 10 : 0);
+            System.out.printf("%s: %,d vertices, %,d edges%n", names[kind], graph.getVertexCount(), graph.getEdgeCount());
+            System.out.println("  order          ms   mean span      BFS ms      DFS ms     Prim ms  Kruskal ms");
+            //warm up the compiler on the creation order
+            measure(graph, 1);
+            String[] orders = {"creation", "BFS", "RCM", "degree"};
+            double[] base = null;
+            long weight = 0;
+            for (String name : orders) {
+                long start = System.nanoTime();
+                CompactGraph g = graph;
+                if (!name.equals("creation")) {
+                    int[] order = name.equals("BFS") ? bfs(graph) : name.equals("RCM") ? reverseCuthillMcKee(graph) : byDegree(graph);
+                    g = graph.reorder(order);
+                }
+                double orderMs = (System.nanoTime() - start) / 1e6;
+                double[] times = measure(g, 3);
+                if (base == null) {
+                    base = times;
+                    weight = (long) times[4];
+                } else if ((long) times[4] != weight || g.indexOf(graph.getNode(0)) < 0
+                    || g.getNode(g.indexOf(graph.getNode(0))) != graph.getNode(0)) {
+                    System.out.println("  WRONG: different MST weight or vertex mapping");
+                }
+                System.out.printf("  %-8s %8.1f %11.1f %6.1f (%3.1fx) %5.1f (%3.1fx) %5.1f (%3.1fx) %5.1f (%3.1fx)%n",
+                    name, orderMs, meanEdgeSpan(g), times[0], base[0] / times[0], times[1], base[1] / times[1],
+                    times[2], base[2] / times[2], times[3], base[3] / times[3]);
+            }
+        }
+    }
+
+    /**
+     * Internal method to time a breadth-first labeling, a depth-first
+     * search, Prim's algorithm and Kruskal's algorithm on a graph.
+     *
+     * @param g    the graph.
+     * @param reps the number of runs of each (the best time is kept).
+     * @return the times in milliseconds, then the MST weight.
+     */
+    private static double[] measure(CompactGraph g, int reps) {
+        double[] best = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, 0};
+        int[] labels = new int[g.getVertexCount()];
+        for (int r = 0; r < reps; r++) {
+            long t0 = System.nanoTime();
+            GraphTraversal traversal = new GraphTraversal(g);
+            traversal.labelComponents(labels);
+            long t1 = System.nanoTime();
+            traversal.reset();
+            for (int v = 0; v < g.getVertexCount(); v++) {
+                traversal.dfs(v, null);
+            }
+            long t2 = System.nanoTime();
+            long prim = prim(g);
+            long t3 = System.nanoTime();
+            long kruskal = kruskal(g);
+            long t4 = System.nanoTime();
+            if (prim != kruskal) {
+                throw new IllegalStateException("Prim " + prim + " != Kruskal " + kruskal);
+            }
+            best[0] = Math.min(best[0], (t1 - t0) / 1e6);
+            best[1] = Math.min(best[1], (t2 - t1) / 1e6);
+            best[2] = Math.min(best[2], (t3 - t2) / 1e6);
+            best[3] = Math.min(best[3], (t4 - t3) / 1e6);
+            best[4] = prim;
+        }
+        return best;
+    }
+
+    /**
+     * Internal method to compute the weight of a minimum spanning forest
+     * with Prim's algorithm (a binary heap of adjacency positions keyed by
+     * weight, with stale entries skipped).
+     *
+     * @param g the graph.
+     * @return the weight of the forest.
+     */
+    private static long prim(CompactGraph g) {
+        int n = g.getVertexCount();
+        boolean[] inTree = new boolean[n];
+        long[] heap = new long[2 * g.getEdgeCount() + 1];
+        long total = 0;
+        for (int root = 0; root < n; root++) {
+            if (inTree[root]) {
+                continue;
+            }
+            int size = 0;
+            int v = root;
+            while (true) {
+                inTree[v] = true;
+                for (int pos = g.adjStart(v); pos < g.adjStart(v + 1); pos++) {
+                    if (!inTree[g.adjTarget(pos)]) {
+                        //sift up
+                        long key = (long) g.getWeight(g.adjEdge(pos)) << 32 | pos;
+                        int i = size++;
+                        while (i > 0 && heap[(i - 1) >> 1] > key) {
+                            heap[i] = heap[(i - 1) >> 1];
+                            i = (i - 1) >> 1;
+                        }
+                        heap[i] = key;
+                    }
+                }
+                v = -1;
+                while (size > 0 && v < 0) {
+                    long top = heap[0];
+                    //sift the last entry down from the root
+                    long last = heap[--size];
+                    int i = 0;
+                    while (2 * i + 1 < size) {
+                        int child = 2 * i + 1;
+                        if (child + 1 < size && heap[child + 1] < heap[child]) {
+                            child++;
+                        }
+                        if (heap[child] >= last) {
+                            break;
+                        }
+                        heap[i] = heap[child];
+                        i = child;
+                    }
+                    heap[i] = last;
+                    int w = g.adjTarget((int) top);
+                    if (!inTree[w]) {
+                        total += top >> 32;
+                        v = w;
+                    }
+                }
+                if (v < 0) {
+                    break;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Internal method to compute the weight of a minimum spanning forest
+     * with Kruskal's algorithm.
+     *
+     * @param g the graph.
+     * @return the weight of the forest.
+     */
+    private static long kruskal(CompactGraph g) {
+        long[] keys = new long[g.getEdgeCount()];
+        for (int e = 0; e < keys.length; e++) {
+            keys[e] = (long) g.getWeight(e) << 32 | e;
+        }
+        Arrays.sort(keys);
+        UnionFind uf = new UnionFind(g.getVertexCount());
+        long total = 0;
+        for (long key : keys) {
+            int e = (int) key;
+            if (uf.union(g.getEdgeU(e), g.getEdgeV(e))) {
+                total += key >> 32;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Internal method to build a grid graph whose vertex ids are a random
+     * permutation of the cells, indexed in id order as Graph310 does.
+     *
+     * @param rand      the random numbers.
+     * @param side      the side of the grid.
+     * @param shortcuts the number of random edges added.
+     * @return the graph.
+     */
+    private static CompactGraph gridGraph(Random rand, int side, int shortcuts) {
+        int n = side * side;
+        int[] idOf = shuffled(rand, n);
+        int m = 2 * side * (side - 1) + shortcuts;
+        int[] edgeU = new int[m];
+        int[] edgeV = new int[m];
+        int e = 0;
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                int cell = r * side + c;
+                if (c + 1 < side) {
+                    edgeU[e] = idOf[cell];
+                    edgeV[e++] = idOf[cell + 1];
+                }
+                if (r + 1 < side) {
+                    edgeU[e] = idOf[cell];
+                    edgeV[e++] = idOf[cell + side];
+                }
+            }
+        }
+        while (e < m) {
+            int u = rand.nextInt(n);
+            int v = rand.nextInt(n);
+            if (u != v) {
+                edgeU[e] = u;
+                edgeV[e++] = v;
+            }
+        }
+        return build(rand, n, edgeU, edgeV);
+    }
+
+    /**
+     * Internal method to build a random graph with about 2 edges per vertex.
+     *
+     * @param rand the random numbers.
+     * @param n    the number of vertices.
+     * @return the graph.
+     */
+    private static CompactGraph randomGraph(Random rand, int n) {
+        int m = 2 * n;
+        int[] edgeU = new int[m];
+        int[] edgeV = new int[m];
+        int e = 0;
+        while (e < m) {
+            int u = rand.nextInt(n);
+            int v = rand.nextInt(n);
+            if (u != v) {
+                edgeU[e] = u;
+                edgeV[e++] = v;
+            }
+        }
+        return build(rand, n, edgeU, edgeV);
+    }
+
+    /**
+     * Internal method to make a snapshot of vertices 0..n-1 (vertex i has
+     * id i) and the given edges, with random weights.
+     *
+     * @param rand  the random numbers.
+     * @param n     the number of vertices.
+     * @param edgeU the first endpoints.
+     * @param edgeV the second endpoints.
+     * @return the graph.
+     */
+    private static CompactGraph build(Random rand, int n, int[] edgeU, int[] edgeV) {
+        GraphNode[] nodes = new GraphNode[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new GraphNode(i);
+        }
+        GraphEdge[] edges = new GraphEdge[edgeU.length];
+        int[] weights = new int[edgeU.length];
+        for (int e = 0; e < edges.length; e++) {
+            weights[e] = 1 + rand.nextInt(1000);
+            edges[e] = new GraphEdge(e, weights[e]);
+        }
+        return new CompactGraph(nodes, edges, edgeU, edgeV, weights);
+    }
+
+    /**
+     * Internal method to make a random permutation of 0..n-1.
+     *
+     * @param rand the random numbers.
+     * @param n    the length.
+     * @return the permutation.
+     */
+    private static int[] shuffled(Random rand, int n) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+        return a;
+    }
+}
@@ -8,6 +8,17 @@ import java.util.LinkedList; //only for the return of values(), do not use it an
  * @author Mark Allen Weiss
  */
 public class WeissBST<AnyT extends Comparable<? super AnyT>> {
+    /**
+     * The number of compareTo calls made by all trees (when metrics are on).
+     */
+    private static final Metrics.Counter COMPARISONS =
+        Metrics.counter("weissbst_comparisons_total", "compareTo calls made by WeissBST searches and updates");
+    /**
+     * The depth at which items are inserted (when metrics are on).
+     */
+    private static final Metrics.Histogram INSERT_DEPTH =
+        Metrics.histogram("weissbst_insert_depth", "Depth of the node created by a WeissBST insert (root is 0)");
+
     /**
      * The tree root.
      */
@@ -28,6 +39,9 @@ public class WeissBST<AnyT extends Comparable<? super AnyT>> {
      */
     public void insert(AnyT x) {
         root = insert(x, root);
+        if (Metrics.ENABLED) {
+            INSERT_DEPTH.record(depth(x));
+        }
     }
 
     /**
@@ -59,6 +73,28 @@ public class WeissBST<AnyT extends Comparable<? super AnyT>> {
         return elementAt(find(x, root));
     }
 
+    /**
+     * Find the smallest item in the tree that is larger than x.
+     * x does not need to be in the tree.
+     * O(H): H is the tree height.
+     *
+     * @param x the item to search from.
+     * @return the next larger item or null if there is none.
+     */
+    public AnyT successor(AnyT x) {
+        BinaryNode<AnyT> t = root;
+        BinaryNode<AnyT> best = null;
+        while (t != null) {
+            if (compare(x, t.element) < 0) {
+                best = t;
+                t = t.left;
+            } else {
+                t = t.right;
+            }
+        }
+        return elementAt(best);
+    }
+
     /**
      * Make the tree logically empty.
      */
@@ -85,6 +121,42 @@ public class WeissBST<AnyT extends Comparable<? super AnyT>> {
         return t == null ? null : t.element;
     }
 
+    /**
+     * Internal method to compare two items, counting the comparison
+     * when metrics are on.
+     *
+     * @param x the first item.
+     * @param y the second item.
+     * @return the result of x.compareTo(y).
+     */
+    private int compare(AnyT x, AnyT y) {
+        if (Metrics.ENABLED) {
+            COMPARISONS.increment();
+        }
+        return x.compareTo(y);
+    }
+
+    /**
+     * Internal method to find the depth of an item (without counting
+     * the comparisons).
+     *
+     * @param x the item, which must be in the tree.
+     * @return the number of edges from the root to x.
+     */
+    private int depth(AnyT x) {
+        int d = 0;
+        BinaryNode<AnyT> t = root;
+        while (t != null) {
+            int c = x.compareTo(t.element);
+            if (c == 0) {
+                break;
+            }
+            t = c < 0 ? t.left : t.right;
+            d++;
+        }
+        return d;
+    }
+
     /**
      * Internal method to insert into a subtree.
      *
@@ -96,9 +168,9 @@ public class WeissBST<AnyT extends Comparable<? super AnyT>> {
     private BinaryNode<AnyT> insert(AnyT x, BinaryNode<AnyT> t) {
         if (t == null)
             t = new BinaryNode<AnyT>(x);
-        else if (x.compareTo(t.element) < 0)
+        else if (compare(x, t.element) < 0)
             t.left = insert(x, t.left);
-        else if (x.compareTo(t.element) > 0)
+        else if (compare(x, t.element) > 0)
             t.right = insert(x, t.right);
         else
             throw new IllegalArgumentException("Duplicate Item: " + x);  // Duplicate
@@ -147,9 +219,9 @@ public class WeissBST<AnyT extends Comparable<? super AnyT>> {
      */
     private BinaryNode<AnyT> find(AnyT x, BinaryNode<AnyT> t) {
         while (t != null) {
-            if (x.compareTo(t.element) < 0)
+            if (compare(x, t.element) < 0)
                 t = t.left;
-            else if (x.compareTo(t.element) > 0)
+            else if (compare(x, t.element) > 0)
                 t = t.right;
             else
                 return t;    // Match
@@ -189,9 +261,9 @@ public class WeissBST<AnyT extends Comparable<? super AnyT>> {
     private BinaryNode<AnyT> remove(AnyT x, BinaryNode<AnyT> t) {
         if (t == null)
             throw new IllegalArgumentException("Item Not Found: " + x.toString());
-        if (x.compareTo(t.element) < 0) {
+        if (compare(x, t.element) < 0) {
             t.left = remove(x, t.left);
-        } else if (x.compareTo(t.element) > 0) {
+        } else if (compare(x, t.element) > 0) {
             t.right = remove(x, t.right);
         } else if (t.left != null && t.right != null) { // Two children
             t.element = findMax(t.left).element;